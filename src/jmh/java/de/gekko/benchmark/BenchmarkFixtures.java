@@ -0,0 +1,229 @@
+package de.gekko.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.websocket.HubMessageDecoder;
+import de.gekko.websocket.HubMessageHandler;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Loads the fixture files shipped in src/jmh/resources/fixtures, so every release is benchmarked against the
+ * same input:
+ * <ul>
+ * <li>bittrex-frames.txt: one raw hub frame per line, the QueryExchangeState responses of BTC-ETH, BTC-LTC and
+ * ETH-LTC followed by their interleaved updateExchangeState deltas</li>
+ * <li>bittrex-tickers.csv: best bid and ask of all markets at the start of the recording</li>
+ * <li>bittrex-ticker-updates.csv: following top of book changes</li>
+ * </ul>
+ * @author Maximilian Pfister
+ *
+ */
+public final class BenchmarkFixtures {
+
+	/* constants */
+
+	public static final String FRAMES = "/fixtures/bittrex-frames.txt";
+	public static final String TICKERS = "/fixtures/bittrex-tickers.csv";
+	public static final String TICKER_UPDATES = "/fixtures/bittrex-ticker-updates.csv";
+
+	/* constructors */
+
+	private BenchmarkFixtures() {
+	}
+
+	/* public methods */
+
+	/**
+	 * Reads all non empty lines of a fixture file.
+	 * @param resource
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<String> readLines(String resource) throws IOException {
+		InputStream inputStream = BenchmarkFixtures.class.getResourceAsStream(resource);
+		if (inputStream == null) {
+			throw new IOException("Missing fixture " + resource);
+		}
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Decodes the recorded frames once, so benchmarks can replay deltas without measuring the decoder.
+	 * @return
+	 * @throws IOException
+	 */
+	public static RecordedUpdates readRecordedUpdates() throws IOException {
+		RecordedUpdates recordedUpdates = new RecordedUpdates();
+		HubMessageDecoder decoder = new HubMessageDecoder();
+		for (String frame : readLines(FRAMES)) {
+			if (!decoder.decode(frame, recordedUpdates)) {
+				throw new IOException("Unrecognized fixture frame " + frame);
+			}
+		}
+		return recordedUpdates;
+	}
+
+	/**
+	 * Reads a ticker fixture, see {@link Ticker}.
+	 * @param resource
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<Ticker> readTickers(String resource) throws IOException {
+		List<String> lines = readLines(resource);
+		List<Ticker> tickers = new ArrayList<>(lines.size());
+		// First line is the header
+		for (String line : lines.subList(1, lines.size())) {
+			String[] columns = line.split(",");
+			tickers.add(new Ticker(columns[0], Double.parseDouble(columns[1]), Double.parseDouble(columns[2])));
+		}
+		return tickers;
+	}
+
+	/**
+	 * Converts a bittrex market name (e.g. BTC-ETH) to the xchange currency pair (ETH/BTC).
+	 * @param marketName
+	 * @return
+	 */
+	public static CurrencyPair toCurrencyPair(String marketName) {
+		int separator = marketName.indexOf('-');
+		return new CurrencyPair(marketName.substring(separator + 1), marketName.substring(0, separator));
+	}
+
+	/**
+	 * Converts an xchange currency pair (ETH/BTC) to the bittrex market name (BTC-ETH).
+	 * @param currencyPair
+	 * @return
+	 */
+	public static String toMarketName(CurrencyPair currencyPair) {
+		return currencyPair.counter.getCurrencyCode() + "-" + currencyPair.base.getCurrencyCode();
+	}
+
+	/**
+	 * Recorded exchange states and deltas, copied out of the reused decoder instance.
+	 */
+	public static class RecordedUpdates implements HubMessageHandler {
+
+		private final Map<String, ExchangeStateUpdate> exchangeStates = new LinkedHashMap<>();
+		private final List<ExchangeStateUpdate> deltas = new ArrayList<>();
+
+		/**
+		 * Gets the initial exchange state of every recorded market, in recording order.
+		 * @return
+		 */
+		public Map<String, ExchangeStateUpdate> getExchangeStates() {
+			return exchangeStates;
+		}
+
+		/**
+		 * Gets all deltas in recording order.
+		 * @return
+		 */
+		public List<ExchangeStateUpdate> getDeltas() {
+			return deltas;
+		}
+
+		/**
+		 * Creates books of all recorded markets at the state of the exchange state responses.
+		 * @return books keyed by market name
+		 */
+		public Map<String, FixedPointOrderBook> createBooks() {
+			Map<String, FixedPointOrderBook> books = new LinkedHashMap<>();
+			exchangeStates.forEach((marketName, exchangeState) -> {
+				FixedPointOrderBook book = new FixedPointOrderBook(toCurrencyPair(marketName));
+				reset(book, exchangeState);
+				books.put(marketName, book);
+			});
+			return books;
+		}
+
+		/**
+		 * Replaces a book with the recorded exchange state of its market.
+		 * @param book
+		 * @param exchangeState
+		 */
+		public static void reset(FixedPointOrderBook book, ExchangeStateUpdate exchangeState) {
+			book.clear();
+			exchangeState.getBuys().applyTo(book.getBids());
+			exchangeState.getSells().applyTo(book.getAsks());
+		}
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+			deltas.add(copy(exchangeStateUpdate));
+		}
+
+		@Override
+		public void onTransportStart() {
+		}
+
+		@Override
+		public void onResponse(int invocationIdentifier, boolean result) {
+		}
+
+		@Override
+		public void onExchangeState(int invocationIdentifier, ExchangeStateUpdate exchangeState) {
+			exchangeState.setSnapshot(true);
+			exchangeStates.put(exchangeState.getMarketName(), copy(exchangeState));
+		}
+
+		@Override
+		public void onError(int invocationIdentifier, String error) {
+		}
+
+		private static ExchangeStateUpdate copy(ExchangeStateUpdate exchangeStateUpdate) {
+			ExchangeStateUpdate copy = new ExchangeStateUpdate();
+			copy.copyFrom(exchangeStateUpdate);
+			return copy;
+		}
+	}
+
+	/**
+	 * Best bid and ask of a market.
+	 */
+	public static class Ticker {
+
+		private final String marketName;
+		private final double bid;
+		private final double ask;
+
+		public Ticker(String marketName, double bid, double ask) {
+			this.marketName = marketName;
+			this.bid = bid;
+			this.ask = ask;
+		}
+
+		public String getMarketName() {
+			return marketName;
+		}
+
+		public double getBid() {
+			return bid;
+		}
+
+		public double getAsk() {
+			return ask;
+		}
+	}
+
+}
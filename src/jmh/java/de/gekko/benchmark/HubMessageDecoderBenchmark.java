@@ -0,0 +1,165 @@
+package de.gekko.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+
+import de.gekko.websocket.HubMessageDecoder;
+import de.gekko.websocket.HubMessageHandler;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Compares the single pass streaming decoder against the former three pass Gson decoding of updateExchangeState
+ * frames. Run with -prof gc to compare bytes allocated per message.
+ * @author Maximilian Pfister
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HubMessageDecoderBenchmark {
+
+	@Param({ "1", "10", "50" })
+	public int levels;
+
+	private String frame;
+	private final Gson gson = new Gson();
+	private final HubMessageDecoder decoder = new HubMessageDecoder();
+	private final ChecksumHandler handler = new ChecksumHandler();
+
+	@Setup
+	public void setup() {
+		frame = createFrame("BTC-ETH", 1000, levels);
+	}
+
+	@Benchmark
+	public long streamingDecoder() throws Exception {
+		handler.checksum = 0;
+		decoder.decode(frame, handler);
+		return handler.checksum;
+	}
+
+	@Benchmark
+	public long gsonDecoder() {
+		long checksum = 0;
+		// Same steps as the former BittrexWebsocketClientEndpoint.onMessage
+		LegacyPersistentConnectionMessage message = gson.fromJson(frame, LegacyPersistentConnectionMessage.class);
+		for (JsonElement jsonElement : message.messageData) {
+			JsonObject jsonObject = jsonElement.getAsJsonObject();
+			if (jsonObject.get("M").getAsString().equals("updateExchangeState")) {
+				JsonArray exchangeStates = gson.fromJson(jsonObject.get("A"), JsonArray.class);
+				for (JsonElement exchangeStateElement : exchangeStates) {
+					LegacyExchangeState exchangeState = gson.fromJson(exchangeStateElement, LegacyExchangeState.class);
+					checksum += exchangeState.nounce + exchangeState.buys.size() + exchangeState.sells.size();
+				}
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Builds an updateExchangeState frame with the given number of levels per side.
+	 * @param marketName
+	 * @param nounce
+	 * @param levels
+	 * @return
+	 */
+	static String createFrame(String marketName, long nounce, int levels) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("{\"C\":\"d-B1E2C5F4-B,0|Bs4,1|Bs5,2B88\",\"M\":[{\"H\":\"CoreHub\",\"M\":\"updateExchangeState\",\"A\":[{\"MarketName\":\"")
+				.append(marketName).append("\",\"Nounce\":").append(nounce).append(",\"Buys\":[");
+		appendLevels(builder, levels, 0.04516, -0.00001);
+		builder.append("],\"Sells\":[");
+		appendLevels(builder, levels, 0.04521, 0.00001);
+		builder.append("],\"Fills\":[]}]}]}");
+		return builder.toString();
+	}
+
+	private static void appendLevels(StringBuilder builder, int levels, double rate, double step) {
+		for (int level = 0; level < levels; level++) {
+			if (level > 0) {
+				builder.append(',');
+			}
+			builder.append("{\"Type\":").append(level % 3).append(",\"Rate\":")
+					.append(BigDecimal.valueOf(rate + level * step).setScale(8, RoundingMode.HALF_UP).toPlainString())
+					.append(",\"Quantity\":").append(BigDecimal.valueOf(1.23456789 * (level + 1)).setScale(8, RoundingMode.HALF_UP).toPlainString())
+					.append('}');
+		}
+	}
+
+	private static class ChecksumHandler implements HubMessageHandler {
+
+		private long checksum;
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+			checksum += exchangeStateUpdate.getNounce() + exchangeStateUpdate.getBuys().size() + exchangeStateUpdate.getSells().size();
+		}
+
+		@Override
+		public void onTransportStart() {
+		}
+
+		@Override
+		public void onResponse(int invocationIdentifier, boolean result) {
+		}
+
+		@Override
+		public void onExchangeState(int invocationIdentifier, ExchangeStateUpdate exchangeState) {
+		}
+
+		@Override
+		public void onError(int invocationIdentifier, String error) {
+		}
+	}
+
+	/* Gson pojos of the former decoding path */
+
+	static class LegacyPersistentConnectionMessage {
+		@SerializedName("M")
+		JsonArray messageData;
+	}
+
+	static class LegacyExchangeState {
+		@SerializedName("MarketName")
+		String marketName;
+		@SerializedName("Nounce")
+		long nounce;
+		@SerializedName("Buys")
+		List<LegacyOrderUpdate> buys;
+		@SerializedName("Sells")
+		List<LegacyOrderUpdate> sells;
+	}
+
+	static class LegacyOrderUpdate {
+		@SerializedName("Quantity")
+		BigDecimal quantity;
+		@SerializedName("Rate")
+		BigDecimal rate;
+		@SerializedName("Type")
+		int type;
+	}
+
+}
@@ -0,0 +1,117 @@
+package de.gekko.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gekko.benchmark.BenchmarkFixtures.RecordedUpdates;
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Replays the recorded exchange state deltas of {@link BenchmarkFixtures#FRAMES} into fixed point books the same way
+ * the channel handler applies them, and measures materializing the resulting xchange orderbook for legacy callers
+ * of getOrderBook().
+ * @author Maximilian Pfister
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+	/* constants */
+
+	private static final String MATERIALIZED_MARKET = "BTC-ETH";
+
+	/* variables */
+
+	private ExchangeStateUpdate[] exchangeStates;
+	private FixedPointOrderBook[] books;
+	private ExchangeStateUpdate[] deltas;
+	// Index into books of each delta, resolved once so the replay does not measure map lookups
+	private int[] deltaBooks;
+	private int position = 0;
+	private FixedPointOrderBook materializedBook;
+
+	@Setup
+	public void setup() throws IOException {
+		RecordedUpdates recordedUpdates = BenchmarkFixtures.readRecordedUpdates();
+		Map<String, FixedPointOrderBook> bookMap = recordedUpdates.createBooks();
+		List<String> marketNames = new ArrayList<>(bookMap.keySet());
+		books = bookMap.values().toArray(new FixedPointOrderBook[0]);
+		exchangeStates = recordedUpdates.getExchangeStates().values().toArray(new ExchangeStateUpdate[0]);
+		deltas = recordedUpdates.getDeltas().toArray(new ExchangeStateUpdate[0]);
+		deltaBooks = new int[deltas.length];
+		for (int i = 0; i < deltas.length; i++) {
+			deltaBooks[i] = marketNames.indexOf(deltas[i].getMarketName());
+		}
+
+		// Book of the materialization benchmarks is at the end of the recording
+		materializedBook = new FixedPointOrderBook(BenchmarkFixtures.toCurrencyPair(MATERIALIZED_MARKET));
+		RecordedUpdates.reset(materializedBook, recordedUpdates.getExchangeStates().get(MATERIALIZED_MARKET));
+		for (ExchangeStateUpdate delta : deltas) {
+			if (delta.getMarketName().equals(MATERIALIZED_MARKET)) {
+				delta.getBuys().applyTo(materializedBook.getBids());
+				delta.getSells().applyTo(materializedBook.getAsks());
+			}
+		}
+	}
+
+	/**
+	 * Applies the next recorded delta. Books are reset to the recorded exchange state once all deltas were replayed,
+	 * which is amortized over the few thousand deltas of the recording.
+	 * @return
+	 */
+	@Benchmark
+	public long applyDelta() {
+		if (position == deltas.length) {
+			for (int i = 0; i < books.length; i++) {
+				RecordedUpdates.reset(books[i], exchangeStates[i]);
+			}
+			position = 0;
+		}
+		ExchangeStateUpdate delta = deltas[position];
+		FixedPointOrderBook book = books[deltaBooks[position]];
+		position++;
+		delta.getBuys().applyTo(book.getBids());
+		delta.getSells().applyTo(book.getAsks());
+		return book.getBids().bestPrice();
+	}
+
+	/**
+	 * Materializes all levels, as done by getOrderBook() after every applied delta.
+	 * @return
+	 */
+	@Benchmark
+	public OrderBook getOrderBook() {
+		return materializedBook.toOrderBook();
+	}
+
+	/**
+	 * Materializes the top ten levels per side.
+	 * @return
+	 */
+	@Benchmark
+	public OrderBook getOrderBookTopTen() {
+		return materializedBook.toOrderBook(10);
+	}
+
+}
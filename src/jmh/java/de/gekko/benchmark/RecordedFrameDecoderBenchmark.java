@@ -0,0 +1,146 @@
+package de.gekko.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gekko.benchmark.BenchmarkFixtures.RecordedUpdates;
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.websocket.HubMessageDecoder;
+import de.gekko.websocket.HubMessageHandler;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Decodes the captured hub frames of {@link BenchmarkFixtures#FRAMES} one by one, alone and together with applying
+ * the decoded delta to its book. Unlike {@link HubMessageDecoderBenchmark} the frames have the size and level mix of
+ * the recording.
+ * @author Maximilian Pfister
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordedFrameDecoderBenchmark {
+
+	/* variables */
+
+	private String[] frames;
+	// Deltas start after the exchange state responses
+	private int firstDelta;
+	private int position;
+	private RecordedUpdates recordedUpdates;
+	private final HubMessageDecoder decoder = new HubMessageDecoder();
+	private final ChecksumHandler checksumHandler = new ChecksumHandler();
+	private final BookHandler bookHandler = new BookHandler();
+
+	@Setup
+	public void setup() throws IOException {
+		frames = BenchmarkFixtures.readLines(BenchmarkFixtures.FRAMES).toArray(new String[0]);
+		recordedUpdates = BenchmarkFixtures.readRecordedUpdates();
+		firstDelta = recordedUpdates.getExchangeStates().size();
+		position = firstDelta;
+		bookHandler.books = new HashMap<>(recordedUpdates.createBooks());
+	}
+
+	/**
+	 * Decodes the next recorded delta frame.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long decodeFrame() throws IOException {
+		checksumHandler.checksum = 0;
+		decoder.decode(nextFrame(), checksumHandler);
+		return checksumHandler.checksum;
+	}
+
+	/**
+	 * Decodes the next recorded delta frame and applies it, the work done per frame between websocket and
+	 * channel handler ring buffer plus the processing thread.
+	 * @return
+	 * @throws IOException
+	 */
+	@Benchmark
+	public long decodeAndApplyFrame() throws IOException {
+		if (position == frames.length) {
+			// Replay starts over from the recorded exchange states
+			recordedUpdates.getExchangeStates()
+					.forEach((marketName, exchangeState) -> RecordedUpdates.reset(bookHandler.books.get(marketName), exchangeState));
+		}
+		decoder.decode(nextFrame(), bookHandler);
+		return bookHandler.bestPrice;
+	}
+
+	/* private methods */
+
+	private String nextFrame() {
+		if (position == frames.length) {
+			position = firstDelta;
+		}
+		return frames[position++];
+	}
+
+	private static class ChecksumHandler extends NoOpHandler {
+
+		private long checksum;
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+			checksum += exchangeStateUpdate.getNounce() + exchangeStateUpdate.getBuys().size() + exchangeStateUpdate.getSells().size();
+		}
+	}
+
+	private static class BookHandler extends NoOpHandler {
+
+		private Map<String, FixedPointOrderBook> books;
+		private long bestPrice;
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+			// Stands in for the channel handler lookup by market name
+			FixedPointOrderBook book = books.get(exchangeStateUpdate.getMarketName());
+			exchangeStateUpdate.getBuys().applyTo(book.getBids());
+			exchangeStateUpdate.getSells().applyTo(book.getAsks());
+			bestPrice = book.getBids().bestPrice();
+		}
+	}
+
+	private static class NoOpHandler implements HubMessageHandler {
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+		}
+
+		@Override
+		public void onTransportStart() {
+		}
+
+		@Override
+		public void onResponse(int invocationIdentifier, boolean result) {
+		}
+
+		@Override
+		public void onExchangeState(int invocationIdentifier, ExchangeStateUpdate exchangeState) {
+		}
+
+		@Override
+		public void onError(int invocationIdentifier, String error) {
+		}
+	}
+
+}
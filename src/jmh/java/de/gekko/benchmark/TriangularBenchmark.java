@@ -0,0 +1,163 @@
+package de.gekko.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gekko.arbitrager.CurrencyGraph;
+import de.gekko.arbitrager.TriangularCycle;
+import de.gekko.arbitrager.TriangularScanner;
+import de.gekko.arbitrager.TriangularSizer;
+import de.gekko.benchmark.BenchmarkFixtures.RecordedUpdates;
+import de.gekko.benchmark.BenchmarkFixtures.Ticker;
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Evaluates triangular arbitrage over the recorded tickers of all markets ({@link BenchmarkFixtures#TICKERS}) and
+ * sizes a cycle against the recorded books of BTC-ETH, BTC-LTC and ETH-LTC.
+ * @author Maximilian Pfister
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriangularBenchmark {
+
+	/* constants */
+
+	private static final double FEE = 0.0025;
+	private static final int SIZER_LEVELS = 10;
+	private static final double MAX_TRADE_AMOUNT = 10;
+
+	/* variables */
+
+	private TriangularScanner scanner;
+	// Recorded top of book changes
+	private int[] updateMarkets;
+	private double[] updateBids;
+	private double[] updateAsks;
+	private int position = 0;
+
+	private final TriangularSizer sizer = new TriangularSizer(SIZER_LEVELS);
+	private TriangularCycle sizedCycle;
+	private FixedPointOrderBook[] sizedBooks;
+
+	@Setup
+	public void setup() throws IOException {
+		setupScanner();
+		setupSizer();
+	}
+
+	/**
+	 * Evaluates every cycle of all markets, as after a full orderbook poll.
+	 * @return
+	 */
+	@Benchmark
+	public int evaluateAll() {
+		return scanner.evaluateAll();
+	}
+
+	/**
+	 * Applies the next recorded top of book change and evaluates the cycles through its market.
+	 * @return
+	 */
+	@Benchmark
+	public int updateAndEvaluate() {
+		if (position == updateMarkets.length) {
+			position = 0;
+		}
+		scanner.updateTopOfBook(updateMarkets[position], updateBids[position], updateAsks[position]);
+		position++;
+		return scanner.evaluate();
+	}
+
+	/**
+	 * Sizes the profitable cycle against the top levels of the recorded books.
+	 * @return
+	 */
+	@Benchmark
+	public double sizeCycle() {
+		for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+			boolean sell = sizedCycle.isSell(leg);
+			sizer.setLeg(leg, sell, FEE, sell ? sizedBooks[leg].getBids() : sizedBooks[leg].getAsks());
+		}
+		sizer.size(MAX_TRADE_AMOUNT);
+		return sizer.getProfit();
+	}
+
+	/* private methods */
+
+	private void setupScanner() throws IOException {
+		List<Ticker> tickers = BenchmarkFixtures.readTickers(BenchmarkFixtures.TICKERS);
+		List<CurrencyPair> currencyPairs = new ArrayList<>(tickers.size());
+		for (Ticker ticker : tickers) {
+			currencyPairs.add(BenchmarkFixtures.toCurrencyPair(ticker.getMarketName()));
+		}
+		CurrencyGraph graph = new CurrencyGraph(currencyPairs);
+		scanner = new TriangularScanner(graph, 0);
+		for (Ticker ticker : tickers) {
+			int market = graph.getMarketIndex(BenchmarkFixtures.toCurrencyPair(ticker.getMarketName()));
+			scanner.setFee(market, FEE);
+			scanner.updateTopOfBook(market, ticker.getBid(), ticker.getAsk());
+		}
+		scanner.evaluateAll();
+
+		List<Ticker> updates = BenchmarkFixtures.readTickers(BenchmarkFixtures.TICKER_UPDATES);
+		updateMarkets = new int[updates.size()];
+		updateBids = new double[updates.size()];
+		updateAsks = new double[updates.size()];
+		for (int i = 0; i < updates.size(); i++) {
+			Ticker update = updates.get(i);
+			updateMarkets[i] = graph.getMarketIndex(BenchmarkFixtures.toCurrencyPair(update.getMarketName()));
+			updateBids[i] = update.getBid();
+			updateAsks[i] = update.getAsk();
+		}
+	}
+
+	private void setupSizer() throws IOException {
+		// Books at the end of the recording
+		RecordedUpdates recordedUpdates = BenchmarkFixtures.readRecordedUpdates();
+		Map<String, FixedPointOrderBook> books = recordedUpdates.createBooks();
+		for (ExchangeStateUpdate delta : recordedUpdates.getDeltas()) {
+			FixedPointOrderBook book = books.get(delta.getMarketName());
+			delta.getBuys().applyTo(book.getBids());
+			delta.getSells().applyTo(book.getAsks());
+		}
+		List<CurrencyPair> currencyPairs = new ArrayList<>();
+		for (String marketName : books.keySet()) {
+			currencyPairs.add(BenchmarkFixtures.toCurrencyPair(marketName));
+		}
+
+		// Pick the direction of the triangle that is profitable in the recording
+		for (TriangularCycle cycle : new CurrencyGraph(currencyPairs).findTriangularCycles()) {
+			FixedPointOrderBook[] cycleBooks = new FixedPointOrderBook[TriangularCycle.LEGS];
+			for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+				cycleBooks[leg] = books.get(BenchmarkFixtures.toMarketName(cycle.getCurrencyPair(leg)));
+			}
+			sizedCycle = cycle;
+			sizedBooks = cycleBooks;
+			if (sizeCycle() > 0) {
+				return;
+			}
+		}
+	}
+
+}
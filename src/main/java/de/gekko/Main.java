@@ -1,52 +1,94 @@
 package de.gekko;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.exceptions.ExchangeException;
 import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
 import org.knowm.xchange.exceptions.NotYetImplementedForExchangeException;
-import de.gekko.arbitrager.LimitOrderArbitrager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.arbitrager.CrossExchangeSpreadEngine;
+import de.gekko.concurrency.NetworkExecutor;
 import de.gekko.exchanges.AbstractArbitrageExchange;
 import de.gekko.io.ResourceManager;
+import de.gekko.journal.FrameJournal;
+import de.gekko.metrics.MetricsServer;
+import de.gekko.polling.OrderBookPoller;
 
 public class Main {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger("Arbitrager");
+
 	public static void main(String[] args) throws NotAvailableFromExchangeException,
 			NotYetImplementedForExchangeException, ExchangeException, IOException, InterruptedException {
 		/**
-		 * Hier das derzeitige CurrencyPair eintragen.
+		 * Metriken für Prometheus unter http://localhost:9404/metrics bereitstellen.
 		 */
-		CurrencyPair currencyPair = new CurrencyPair(Currency.ETH, Currency.BTC);
+		MetricsServer.createInstance(Integer.getInteger("gekko.metrics.port", MetricsServer.DEFAULT_PORT));
 
 		/**
-		 * Lade Exchanges aus Configfile und erstelle Arbitrager entsprechend der
-		 * Anzahl.
+		 * So viele Keep-Alive-Verbindungen je Exchange offen halten, wie Anfragen gleichzeitig laufen dürfen, damit die
+		 * gleichzeitig gesendeten Orders des OrderGateways keine neuen Verbindungen aufbauen (JDK-Standard: 5). Muss vor
+		 * der ersten HTTP-Anfrage gesetzt werden.
+		 */
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", Integer.toString(NetworkExecutor.DEFAULT_MAX_CONCURRENT_REQUESTS));
+		}
+
+		/**
+		 * Lade Exchanges aus Configfile. Eine Engine vergleicht die CurrencyPairs über alle Exchanges hinweg, jedes
+		 * OrderBook wird nur einmal benötigt. Die CurrencyPairs werden auf einen Worker pro Kern verteilt. Limit
+		 * Orders, daher Maker-Fees.
 		 */
-		List<LimitOrderArbitrager> listArbitrager = new ArrayList<>();
 		List<AbstractArbitrageExchange> listExchanges = ResourceManager.loadConfigFile();
+		CrossExchangeSpreadEngine spreadEngine = CrossExchangeSpreadEngine.createInstance(listExchanges, true,
+				spread -> LOGGER.info("FOUND ARBITRAGE OPPORTUNITY {}", spread),
+				Integer.getInteger("gekko.spread.workers", Runtime.getRuntime().availableProcessors()));
 
-		for (int i = 0; i < listExchanges.size() - 1; i++) {
-			for (int j = i + 1; j < listExchanges.size(); j++) {
-				listArbitrager.add(new LimitOrderArbitrager(listExchanges.get(i), listExchanges.get(j), currencyPair));
-			}
+		/**
+		 * Mit -Dgekko.journal=Verzeichnis werden alle OrderBooks für den CrossExchangeBacktest aufgezeichnet.
+		 */
+		String journalDirectory = System.getProperty("gekko.journal");
+		if (journalDirectory != null) {
+			spreadEngine.setJournal(new FrameJournal(Paths.get(journalDirectory), "orderbooks"));
 		}
 
-		while (true) {
-			try {
-				for (LimitOrderArbitrager arbitrager : listArbitrager) {
-					arbitrager.limitOrderArbitrage();
-
-					Thread.sleep(3000);
-				}
-			} catch (Exception e) {
-				System.err.println("Connection Failed. Retry in 30 sec...");
-				Thread.sleep(30000);
-			}
+		/**
+		 * CurrencyPairs über -Dgekko.pairs=ETH/BTC,LTC/BTC oder -Dgekko.pairs=all für alle CurrencyPairs, die auf
+		 * mindestens zwei Exchanges gehandelt werden.
+		 */
+		Collection<CurrencyPair> currencyPairs = parseCurrencyPairs(System.getProperty("gekko.pairs", "ETH/BTC"),
+				listExchanges);
+		LOGGER.info("Comparing {} currency pairs on {} exchanges", currencyPairs.size(), listExchanges.size());
+
+		/**
+		 * Jedes OrderBook wird einmal pro Abfrage geholt und an die Engine übergeben. Märkte nahe der Profitschwelle
+		 * werden öfter abgefragt. Die Poll-Threads laufen nach dem Ende von main weiter.
+		 */
+		OrderBookPoller poller = OrderBookPoller.createInstance(Long.getLong("gekko.poll.minIntervalMs", 1000),
+				Long.getLong("gekko.poll.maxIntervalMs", 10000), TimeUnit.MILLISECONDS,
+				OrderBookPoller.DEFAULT_POLL_THREADS);
+		for (CurrencyPair currencyPair : currencyPairs) {
+			spreadEngine.subscribe(poller, currencyPair);
+		}
+	}
+
+	private static Collection<CurrencyPair> parseCurrencyPairs(String pairs, List<AbstractArbitrageExchange> exchanges) {
+		if (pairs.equals("all")) {
+			return CrossExchangeSpreadEngine.findCommonPairs(exchanges);
+		}
+		List<CurrencyPair> currencyPairs = new ArrayList<>();
+		for (String pair : pairs.split(",")) {
+			currencyPairs.add(new CurrencyPair(pair.trim()));
 		}
+		return currencyPairs;
 	}
 
 }
@@ -3,8 +3,6 @@ package de.gekko.arbitrager;
 import java.io.IOException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.knowm.xchange.currency.CurrencyPair;
@@ -81,11 +79,6 @@ public class Arbitrager {
 	private OrderBook exchange2Orderbook;
 	private Wallet exchange2Wallet;
 
-	/**
-	 * Speichert den Executor Service für Netzwerkanfragen auf die Exchanges.
-	 */
-	private ExecutorService networkExecutorService = Executors.newFixedThreadPool(2);
-
 	// /**
 	// * Startup variable um programmstart zu erkennen
 	// */
@@ -227,8 +220,8 @@ public class Arbitrager {
 					return bidExchange.placeLimitOrderBid(currencyPair, exchange2Price, tradeAmount);
 				};
 
-				Future<String> future_exchange1Order = networkExecutorService.submit(callable_exchange1Trade);
-				Future<String> future_exchange2Order = networkExecutorService.submit(callable_exchange2Trade);
+				Future<String> future_exchange1Order = askExchange.getNetworkExecutor().submitPriority(callable_exchange1Trade);
+				Future<String> future_exchange2Order = bidExchange.getNetworkExecutor().submitPriority(callable_exchange2Trade);
 
 				String orderID_exchange1 = "";
 				String orderID_exchange2 = "";
@@ -281,8 +274,8 @@ public class Arbitrager {
 			return exchange2.getOrderbook(currencyPair);
 		};
 
-		Future<OrderBook> future_exchange1Orderbook = networkExecutorService.submit(callable_exchange1Orderbook);
-		Future<OrderBook> future_exchange2Orderbook = networkExecutorService.submit(callable_exchange2Orderbook);
+		Future<OrderBook> future_exchange1Orderbook = exchange1.getNetworkExecutor().submit(callable_exchange1Orderbook);
+		Future<OrderBook> future_exchange2Orderbook = exchange2.getNetworkExecutor().submit(callable_exchange2Orderbook);
 
 		try {
 			exchange1Orderbook = future_exchange1Orderbook.get();
@@ -323,8 +316,8 @@ public class Arbitrager {
 				return exchange2.getWallets();
 			};
 
-			Future<Wallet> futureExchange1Wallets = networkExecutorService.submit(callableExchange1Wallets);
-			Future<Wallet> futureExchange2Wallets = networkExecutorService.submit(callableExchange2Wallets);
+			Future<Wallet> futureExchange1Wallets = exchange1.getNetworkExecutor().submit(callableExchange1Wallets);
+			Future<Wallet> futureExchange2Wallets = exchange2.getNetworkExecutor().submit(callableExchange2Wallets);
 
 			try {
 				exchange1Wallet = futureExchange1Wallets.get();
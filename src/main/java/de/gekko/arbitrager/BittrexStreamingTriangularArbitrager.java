@@ -2,10 +2,8 @@ package de.gekko.arbitrager;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.knowm.xchange.currency.CurrencyPair;
@@ -13,16 +11,15 @@ import org.knowm.xchange.dto.marketdata.OrderBook;
 import org.knowm.xchange.exceptions.ExchangeException;
 import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
 import org.knowm.xchange.exceptions.NotYetImplementedForExchangeException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import de.gekko.concurrency.BinarySemaphore;
 import de.gekko.exception.CurrencyMismatchException;
 import de.gekko.exchanges.BittrexArbitrageExchange;
+import de.gekko.tracing.LatencyTracer;
 import de.gekko.wallet.AsyncWalletProvider;
 import de.gekko.websocket.BittrexWebsocket;
-import de.gekko.websocket.OrderBookUpdate;
-import de.gekko.websocket.ReceiveOrderbook;
+import de.gekko.websocket.ReceiveTopOfBook;
+import de.gekko.websocket.TopOfBookUpdate;
 
 /**
  * Class that performs triangular arbitrage (aka. inter market arbitrage) on the Bittrex exchange.
@@ -30,14 +27,19 @@ import de.gekko.websocket.ReceiveOrderbook;
  * @author Maximilian Pfister
  *
  */
-public class BittrexStreamingTriangularArbitrager extends TriangularArbitrager implements Runnable, ReceiveOrderbook {
+public class BittrexStreamingTriangularArbitrager extends TriangularArbitrager implements Runnable, ReceiveTopOfBook {
 	
-	private static final Logger LOGGER = LoggerFactory.getLogger(BittrexStreamingTriangularArbitrager.class);
+	/**
+	 * Only the best level of each side is evaluated.
+	 */
+	private static final int TOP_OF_BOOK_DEPTH = 1;
+	
+	private static final String ARBITRAGE_COUNT_EVENT = "Number of Arbitrage Chances: {}";
 	
 	private boolean stop = false;
 	private boolean active = false;
 	private final BinarySemaphore processUpdateSem = new BinarySemaphore(false);
-	Map<CurrencyPair, PriorityQueue<OrderBook>> orderBookQueues = new HashMap<>();	
+	Map<CurrencyPair, TopOfBookUpdate> latestUpdates = new HashMap<>();	
 	Map<CurrencyPair, ReentrantLock> locks = new HashMap<>();
 
 	private BittrexStreamingTriangularArbitrager(BittrexArbitrageExchange exchange, AsyncWalletProvider walletProvider, CurrencyPair basePair,
@@ -46,24 +48,10 @@ public class BittrexStreamingTriangularArbitrager extends TriangularArbitrager i
 		
 		BittrexWebsocket bittrexWebsocket = BittrexWebsocket.getInstance();
 		
-		Comparator<OrderBook> byTimeStamp = (orderBook1, orderBook2) -> {
-			if(orderBook1.getTimeStamp() != null && orderBook1.getTimeStamp() != null) {
-				if(orderBook1.getTimeStamp().before(orderBook2.getTimeStamp())) {
-					return 1;
-				} else {
-					return -1;
-				}
-			} else {
-				return 0;
-			}
-
-		};
-		
 		getCurrencyPairs().forEach(currencyPair -> {
 			locks.put(currencyPair, new ReentrantLock());
-			orderBookQueues.put(currencyPair, new PriorityQueue<>(byTimeStamp));
 			try {
-				bittrexWebsocket.registerSubscriber(currencyPair, this);
+				bittrexWebsocket.registerTopOfBookSubscriber(currencyPair, this, TOP_OF_BOOK_DEPTH);
 			} catch (Exception e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -79,6 +67,7 @@ public class BittrexStreamingTriangularArbitrager extends TriangularArbitrager i
 	public void run() {
 		active = true;
 		Map<CurrencyPair, OrderBook> orderBooks = new HashMap<>();
+		Map<CurrencyPair, TopOfBookUpdate> evaluatedUpdates = new HashMap<>();
 		int arbitCounter = 0;
 		
 		while(!stop) {
@@ -89,21 +78,29 @@ public class BittrexStreamingTriangularArbitrager extends TriangularArbitrager i
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
-			orderBookQueues.forEach((currencyPair, queue) -> {
-				// lock access to queue for thread safe clearing
-				locks.get(currencyPair).lock();
-				// if update is available
-				if(queue.peek() != null) {
-					// get most recently updated orderbook
-					orderBooks.put(currencyPair, queue.poll());
-					// clear queue because older updates are irrelevant
-					queue.clear();
+			boolean changed = false;
+			long triggerTime = 0;
+			for(Map.Entry<CurrencyPair, ReentrantLock> entry : locks.entrySet()) {
+				CurrencyPair currencyPair = entry.getKey();
+				// lock access to latest update
+				entry.getValue().lock();
+				TopOfBookUpdate update = latestUpdates.get(currencyPair);
+				entry.getValue().unlock();
+				// only rebuild orderbook if top of book moved since last evaluation
+				if(update != null && update != evaluatedUpdates.get(currencyPair)) {
+					evaluatedUpdates.put(currencyPair, update);
+					orderBooks.put(currencyPair, update.toOrderBook());
+					changed = true;
+					// newest frame triggers the evaluation
+					if(update.getReceiveTime() != 0 && (triggerTime == 0 || update.getReceiveTime() - triggerTime > 0)) {
+						triggerTime = update.getReceiveTime();
+					}
 				}
-				// done editing queue, release lock
-				locks.get(currencyPair).unlock();
-			});
+			}
 			
-			if(orderBooks.containsKey(getBasePair()) && orderBooks.containsKey(getCrossPair1()) && orderBooks.containsKey(getCrossPair2())) {
+			// only re-evaluate if one of the three books moved
+			if(changed && orderBooks.containsKey(getBasePair()) && orderBooks.containsKey(getCrossPair1()) && orderBooks.containsKey(getCrossPair2())) {
+				setTriggerTime(triggerTime);
 				try {
 					if(triangularArbitrageAskBid(orderBooks.get(getBasePair()), orderBooks.get(getCrossPair1()), orderBooks.get(getCrossPair2()))){
 						arbitCounter++;
@@ -116,23 +113,28 @@ public class BittrexStreamingTriangularArbitrager extends TriangularArbitrager i
 					// TODO Auto-generated catch block
 					e.printStackTrace();
 				}
-				LOGGER.info("Number of Arbitrage Chances: {}", arbitCounter);
+				getEventLog().claim(ARBITRAGE_COUNT_EVENT).add(arbitCounter).publish();
 			}
 		}
 		active = false;
 	}
 	
 	/**
-	 * Thread safe updating of orderbooks.
+	 * Thread safe updating of top of book. Events may arrive out of order, older sequence numbers are dropped.
 	 */
 	@Override
-	public void receiveUpdate(OrderBookUpdate orderBookUpdate) {
+	public void receiveTopOfBook(TopOfBookUpdate topOfBookUpdate) {
+		LatencyTracer.getInstance().record(LatencyTracer.Stage.BROADCAST, topOfBookUpdate.getPublishTime(), System.nanoTime());
+		CurrencyPair currencyPair = topOfBookUpdate.getCurrencyPair();
 		// acquire lock for specific orderbook
-		locks.get(orderBookUpdate.getCurrencyPair()).lock();
-		// push updated orderbook onto queue
-		orderBookQueues.get(orderBookUpdate.getCurrencyPair()).add(orderBookUpdate.getOrderBook());
+		locks.get(currencyPair).lock();
+		// keep most recent update only
+		TopOfBookUpdate latest = latestUpdates.get(currencyPair);
+		if(latest == null || latest.getSequence() < topOfBookUpdate.getSequence()) {
+			latestUpdates.put(currencyPair, topOfBookUpdate);
+		}
 		// release the acquired lock
-		locks.get(orderBookUpdate.getCurrencyPair()).unlock();
+		locks.get(currencyPair).unlock();
 		// release update semaphore to start processing updates in processor thread
 		processUpdateSem.release();
 	}
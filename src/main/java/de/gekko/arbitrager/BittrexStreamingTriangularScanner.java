@@ -0,0 +1,335 @@
+package de.gekko.arbitrager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToDoubleFunction;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.concurrency.BinarySemaphore;
+import de.gekko.exchanges.BittrexArbitrageExchange;
+import de.gekko.logging.EventLog;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.tracing.LatencyTracer;
+import de.gekko.wallet.AsyncWalletProvider;
+import de.gekko.websocket.BittrexChannelHandler;
+import de.gekko.websocket.BittrexWebsocket;
+import de.gekko.websocket.ReceiveTopOfBook;
+import de.gekko.websocket.TopOfBookUpdate;
+
+/**
+ * Scans all triangular cycles of the Bittrex exchange. The currency graph is built from the exchange metadata, every
+ * market is subscribed once via websocket (channelHandlers are shared with all other subscribers) and after each
+ * batch of top of book updates the cycles of the changed markets are evaluated by a {@link TriangularScanner}.
+ * Candidates that are profitable at the top of book are sized against the top levels of all three books by a
+ * {@link TriangularSizer}, only cycles that stay profitable are passed on to subscribers.
+ * @author Maximilian Pfister
+ *
+ */
+public class BittrexStreamingTriangularScanner implements Runnable, ReceiveTopOfBook, ReceiveTriangularOpportunity {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BittrexStreamingTriangularScanner.class);
+
+	/**
+	 * Levels per side used for sizing, evaluation only uses the best level.
+	 */
+	private static final int TOP_OF_BOOK_DEPTH = 10;
+
+	private static final String OPPORTUNITY_COUNT_EVENT = "Number of Arbitrage Chances: {}";
+	private static final String SIZED_OPPORTUNITY_EVENT = "{}: amount {} -> profit {} ({} top of book)";
+
+	private volatile boolean stop = false;
+	private boolean active = false;
+	private final BinarySemaphore processUpdateSem = new BinarySemaphore(false);
+	private final TriangularScanner scanner;
+	// Market index by websocket currency pair
+	private final Map<CurrencyPair, Integer> marketIndices = new HashMap<>();
+	private final AtomicReferenceArray<TopOfBookUpdate> latestUpdates;
+	private final TopOfBookUpdate[] evaluatedUpdates;
+	// System.nanoTime when the latest update of a market arrived, for tracing
+	private final AtomicLongArray arrivalTimes;
+	private final int[] changedMarkets;
+	private final LatencyTracer tracer = LatencyTracer.getInstance();
+	private long triggerTime = 0;
+	private final AtomicLong receivedUpdateCount = new AtomicLong();
+	private volatile long evaluatedUpdateCount = 0;
+	private final TriangularSizer sizer = new TriangularSizer(TOP_OF_BOOK_DEPTH);
+	private final Map<Currency, Double> maxTradeAmounts = new ConcurrentHashMap<>();
+	private AsyncWalletProvider walletProvider = null;
+	private volatile long sizedOpportunityCount = 0;
+	private final Set<ReceiveTriangularOpportunity> subscribers = new CopyOnWriteArraySet<>();
+	// Only written by the scanner thread
+	private final EventLog eventLog = EventLog.createInstance(BittrexStreamingTriangularScanner.class.getName());
+
+	private BittrexStreamingTriangularScanner(Collection<CurrencyPair> currencyPairs, ToDoubleFunction<CurrencyPair> tradingFees,
+			double minProfit) {
+		CurrencyGraph graph = new CurrencyGraph(currencyPairs);
+		scanner = new TriangularScanner(graph, minProfit);
+		latestUpdates = new AtomicReferenceArray<>(graph.getMarketCount());
+		evaluatedUpdates = new TopOfBookUpdate[graph.getMarketCount()];
+		arrivalTimes = new AtomicLongArray(graph.getMarketCount());
+		changedMarkets = new int[graph.getMarketCount()];
+		scanner.addSubscriber(this);
+
+		BittrexWebsocket bittrexWebsocket = BittrexWebsocket.getInstance();
+		for (int market = 0; market < graph.getMarketCount(); market++) {
+			CurrencyPair currencyPair = graph.getMarket(market);
+			scanner.setFee(market, tradingFees.applyAsDouble(currencyPair));
+			CurrencyPair websocketPair = toWebsocketPair(currencyPair);
+			marketIndices.put(websocketPair, market);
+			try {
+				bittrexWebsocket.registerTopOfBookSubscriber(websocketPair, this, TOP_OF_BOOK_DEPTH);
+			} catch (Exception e) {
+				// Cycles through a market without books would never be evaluated, so do not scan at all
+				LOGGER.error("Subscribing {} failed", websocketPair, e);
+				for (CurrencyPair registeredPair : marketIndices.keySet()) {
+					BittrexChannelHandler channelHandler = bittrexWebsocket.getChannelHandler(registeredPair);
+					if (channelHandler != null) {
+						channelHandler.removeTopOfBookSubscriber(this);
+					}
+				}
+				eventLog.stop();
+				throw new IllegalStateException("Market " + websocketPair + " could not be subscribed", e);
+			}
+		}
+
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		metrics.counter("gekko_scanner_cycle_evaluations_total", "Triangular cycles evaluated",
+				scanner::getEvaluationCount);
+		metrics.counter("gekko_scanner_opportunities_total", "Cycles profitable at the top of book",
+				scanner::getOpportunityCount);
+		metrics.counter("gekko_scanner_sized_opportunities_total", "Cycles profitable after sizing",
+				() -> sizedOpportunityCount);
+		metrics.counter("gekko_scanner_updates_total", "Top of book updates received", receivedUpdateCount::get);
+		LOGGER.info("Scanning {} cycles on {} markets.", scanner.getCycles().size(), graph.getMarketCount());
+	}
+
+	/**
+	 * Main scanning routine, returns when stopped or interrupted.
+	 */
+	@Override
+	public void run() {
+		active = true;
+
+		while (!stop && !Thread.currentThread().isInterrupted()) {
+			try {
+				// wait for updates
+				processUpdateSem.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			// Updates received from here on release the semaphore again
+			long receivedUpdates = receivedUpdateCount.get();
+			// only touch markets whose top of book moved since last evaluation
+			int changedMarketCount = 0;
+			for (int market = 0; market < evaluatedUpdates.length; market++) {
+				TopOfBookUpdate update = latestUpdates.get(market);
+				if (update != evaluatedUpdates[market]) {
+					evaluatedUpdates[market] = update;
+					scanner.updateTopOfBook(market, update.getBestBidPrice(), update.getBestAskPrice());
+					changedMarkets[changedMarketCount++] = market;
+				}
+			}
+			if (scanner.evaluate() > 0) {
+				eventLog.claim(OPPORTUNITY_COUNT_EVENT).add(sizedOpportunityCount).publish();
+			}
+			long evaluatedTime = System.nanoTime();
+			for (int i = 0; i < changedMarketCount; i++) {
+				tracer.record(LatencyTracer.Stage.DETECTION, arrivalTimes.get(changedMarkets[i]), evaluatedTime);
+			}
+			evaluatedUpdateCount = receivedUpdates;
+		}
+		if (!stop) {
+			LOGGER.warn("Scanner thread interrupted, markets are no longer evaluated");
+		}
+		active = false;
+	}
+
+	/**
+	 * Lock free updating of top of book. Events may arrive out of order, older sequence numbers are dropped.
+	 */
+	@Override
+	public void receiveTopOfBook(TopOfBookUpdate topOfBookUpdate) {
+		long arrivalTime = System.nanoTime();
+		tracer.record(LatencyTracer.Stage.BROADCAST, topOfBookUpdate.getPublishTime(), arrivalTime);
+		Integer market = marketIndices.get(topOfBookUpdate.getCurrencyPair());
+		if (market == null) {
+			return;
+		}
+		// keep most recent update only
+		TopOfBookUpdate latest;
+		do {
+			latest = latestUpdates.get(market);
+			if (latest != null && latest.getSequence() >= topOfBookUpdate.getSequence()) {
+				return;
+			}
+		} while (!latestUpdates.compareAndSet(market, latest, topOfBookUpdate));
+		arrivalTimes.lazySet(market, arrivalTime);
+		receivedUpdateCount.incrementAndGet();
+		// release update semaphore to start processing updates in scanner thread
+		processUpdateSem.release();
+	}
+
+	/**
+	 * Sizes a candidate of the scanner against the top levels of its books. Called by the scanner thread.
+	 */
+	@Override
+	public void receiveOpportunity(TriangularCycle cycle, double profit) {
+		triggerTime = 0;
+		for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+			int market = cycle.getMarket(leg);
+			// the newest of the three books triggered the opportunity
+			long receiveTime = evaluatedUpdates[market].getReceiveTime();
+			if (receiveTime != 0 && (triggerTime == 0 || receiveTime - triggerTime > 0)) {
+				triggerTime = receiveTime;
+			}
+			sizer.setLeg(leg, cycle.isSell(leg), scanner.getFee(market), evaluatedUpdates[market]);
+			if (walletProvider != null) {
+				sizer.setBalance(leg, walletProvider.getBalance(cycle.getCurrency(leg)));
+			}
+		}
+		Double maxTradeAmount = maxTradeAmounts.get(cycle.getCurrency(0));
+		if (!sizer.size(maxTradeAmount == null ? Double.POSITIVE_INFINITY : maxTradeAmount)) {
+			return;
+		}
+		sizedOpportunityCount++;
+		eventLog.claim(SIZED_OPPORTUNITY_EVENT).add(cycle).add(sizer.getAmount()).add(sizer.getProfit()).add(profit).publish();
+		double sizedProfit = sizer.getProfit() / sizer.getAmount();
+		for (ReceiveTriangularOpportunity subscriber : subscribers) {
+			subscriber.receiveOpportunity(cycle, sizedProfit);
+		}
+	}
+
+	/**
+	 * Adds a subscriber that is notified by the scanner thread about cycles that are profitable after sizing. The
+	 * per leg quantities and limit prices can be read from {@link #getSizer()} during the callback.
+	 * @param subscriber
+	 */
+	public void addSubscriber(ReceiveTriangularOpportunity subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	public void removeSubscriber(ReceiveTriangularOpportunity subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	/**
+	 * Limits the amount of a start currency traded by one cycle, like MAX_TRADE_AMOUNT of the other arbitragers.
+	 * Cycles starting in currencies without limit are only limited by depth and wallet.
+	 * @param currency
+	 * @param maxTradeAmount
+	 */
+	public void setMaxTradeAmount(Currency currency, double maxTradeAmount) {
+		maxTradeAmounts.put(currency, maxTradeAmount);
+	}
+
+	/**
+	 * Limits every leg by the available balance of the currency it sells.
+	 * @param walletProvider
+	 */
+	public void setWalletProvider(AsyncWalletProvider walletProvider) {
+		this.walletProvider = walletProvider;
+	}
+
+	/**
+	 * Gets sizing of the last sized cycle, only valid inside of subscriber callbacks.
+	 * @return
+	 */
+	public TriangularSizer getSizer() {
+		return sizer;
+	}
+
+	/**
+	 * Gets System.nanoTime when the websocket frame that triggered the last sized cycle was received, the start of its
+	 * tick to trade latency (see {@link LatencyTracer.Stage#TICK_TO_TRADE}). Only valid inside of subscriber callbacks.
+	 * @return 0 if unknown
+	 */
+	public long getTriggerTime() {
+		return triggerTime;
+	}
+
+	/**
+	 * Checks if every received top of book update was evaluated and its opportunities were passed on.
+	 * @return
+	 */
+	public boolean isIdle() {
+		return evaluatedUpdateCount == receivedUpdateCount.get();
+	}
+
+	public TriangularScanner getScanner() {
+		return scanner;
+	}
+
+	/**
+	 * Static factory method that creates an BittrexStreamingTriangularScanner instance and runs it in a new thread.
+	 * @param exchange
+	 * @param minProfit minimum relative profit after fees to report a cycle
+	 * @return
+	 * @throws IllegalStateException if a market cannot be subscribed
+	 */
+	public static BittrexStreamingTriangularScanner createInstance(BittrexArbitrageExchange exchange, double minProfit) {
+		BittrexStreamingTriangularScanner scanner = new BittrexStreamingTriangularScanner(exchange.getCurrencyPairs(),
+				exchange::fetchTradingFee, minProfit);
+		Thread thread = new Thread(scanner);
+		thread.start();
+		return scanner;
+	}
+
+	/**
+	 * Static factory method for markets known up front, e.g. when replaying journaled frames without exchange
+	 * connection. Creates an BittrexStreamingTriangularScanner instance and runs it in a new thread.
+	 * @param currencyPairs markets in xchange notation (ETH/BTC)
+	 * @param tradingFee fee of every market
+	 * @param minProfit minimum relative profit after fees to report a cycle
+	 * @return
+	 * @throws IllegalStateException if a market cannot be subscribed
+	 */
+	public static BittrexStreamingTriangularScanner createInstance(Collection<CurrencyPair> currencyPairs, double tradingFee,
+			double minProfit) {
+		BittrexStreamingTriangularScanner scanner = new BittrexStreamingTriangularScanner(currencyPairs,
+				currencyPair -> tradingFee, minProfit);
+		Thread thread = new Thread(scanner);
+		thread.start();
+		return scanner;
+	}
+
+	/**
+	 * Launches scanner thread.
+	 */
+	public void start() {
+		if (!active) {
+			Thread thread = new Thread(this);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops scanner thread.
+	 */
+	public void stop() {
+		stop = true;
+		// Scanner thread may be waiting for updates
+		processUpdateSem.release();
+	}
+
+	/**
+	 * Converts xchange currency pair (ETH/BTC, price in BTC) to the notation of the websocket (BTC-ETH).
+	 * @param currencyPair
+	 * @return
+	 */
+	private static CurrencyPair toWebsocketPair(CurrencyPair currencyPair) {
+		return new CurrencyPair(currencyPair.counter, currencyPair.base);
+	}
+
+}
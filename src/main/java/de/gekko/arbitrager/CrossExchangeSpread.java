@@ -0,0 +1,102 @@
+package de.gekko.arbitrager;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+import de.gekko.exchanges.AbstractArbitrageExchange;
+
+/**
+ * Best combination of one market across exchanges: buy at the ask of one exchange, sell at the bid of another.
+ * @author Maximilian Pfister
+ *
+ */
+public class CrossExchangeSpread {
+
+	/* variables */
+
+	private final CurrencyPair currencyPair;
+	private final AbstractArbitrageExchange buyExchange;
+	private final AbstractArbitrageExchange sellExchange;
+	private final double askPrice;
+	private final double askAmount;
+	private final double bidPrice;
+	private final double bidAmount;
+	private final double spread;
+
+	/* constructors */
+
+	/**
+	 * @param currencyPair
+	 * @param buyExchange exchange with the ask
+	 * @param sellExchange exchange with the bid
+	 * @param askPrice
+	 * @param askAmount
+	 * @param bidPrice
+	 * @param bidAmount
+	 * @param spread relative profit after fees, e.g. 0.004 for 0.4%
+	 */
+	public CrossExchangeSpread(CurrencyPair currencyPair, AbstractArbitrageExchange buyExchange,
+			AbstractArbitrageExchange sellExchange, double askPrice, double askAmount, double bidPrice,
+			double bidAmount, double spread) {
+		this.currencyPair = currencyPair;
+		this.buyExchange = buyExchange;
+		this.sellExchange = sellExchange;
+		this.askPrice = askPrice;
+		this.askAmount = askAmount;
+		this.bidPrice = bidPrice;
+		this.bidAmount = bidAmount;
+		this.spread = spread;
+	}
+
+	/* public methods */
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	public AbstractArbitrageExchange getBuyExchange() {
+		return buyExchange;
+	}
+
+	public AbstractArbitrageExchange getSellExchange() {
+		return sellExchange;
+	}
+
+	public double getAskPrice() {
+		return askPrice;
+	}
+
+	public double getAskAmount() {
+		return askAmount;
+	}
+
+	public double getBidPrice() {
+		return bidPrice;
+	}
+
+	public double getBidAmount() {
+		return bidAmount;
+	}
+
+	/**
+	 * Gets amount available at both top levels.
+	 * @return base currency
+	 */
+	public double getAmount() {
+		return Math.min(askAmount, bidAmount);
+	}
+
+	/**
+	 * Gets relative profit after fees.
+	 * @return e.g. 0.004 for 0.4%
+	 */
+	public double getSpread() {
+		return spread;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s buy %s %.8f sell %s %.8f amount %.8f: %.4f%%", currencyPair, buyExchange, askPrice,
+				sellExchange, bidPrice, getAmount(), spread * 100);
+	}
+
+}
@@ -0,0 +1,554 @@
+package de.gekko.arbitrager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.journal.FrameJournal;
+import de.gekko.journal.OrderBookFrame;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.polling.OrderBookPoller;
+import de.gekko.polling.PolledMarket;
+import de.gekko.polling.ReceivePolledOrderBook;
+import de.gekko.streaming.StreamingChannelHandler;
+
+/**
+ * Finds the best cross exchange arbitrage of every market over any number of exchanges. Keeps the latest order book of
+ * each exchange per market and two {@link VenueHeap}s of the top of book prices after fees, bids highest first and
+ * asks lowest first. An update changes one entry of each heap in O(log n), the best (buy, sell) combination of
+ * different exchanges is then read from the tops in O(1). Replaces one arbitrager per pair of exchanges, each order
+ * book is needed only once.
+ * <p>
+ * Markets are sharded over a fixed pool of workers, by default one per core. Every market is owned by exactly one
+ * worker that applies all of its updates in order, so market state needs no locks and throughput grows with the
+ * number of workers. Order books are handed to the owner through its queue and evaluated asynchronously.
+ * <p>
+ * Received order books can be recorded into a {@link FrameJournal} and replayed by
+ * {@link de.gekko.backtest.CrossExchangeBacktest}, which evaluates them synchronously with
+ * {@link #evaluate(AbstractArbitrageExchange, CurrencyPair, OrderBook)}.
+ * @author Maximilian Pfister
+ *
+ */
+public class CrossExchangeSpreadEngine implements ReceivePolledOrderBook {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrossExchangeSpreadEngine.class);
+
+	// Lets a waiting worker check the stop flag
+	private static final SpreadUpdate WAKE_UP = new SpreadUpdate(-1, null, null, null, 0);
+
+	/**
+	 * Levels per side written to the journal.
+	 */
+	public static final int JOURNAL_DEPTH = 20;
+
+	/* variables */
+
+	private final List<AbstractArbitrageExchange> exchanges;
+	private final Map<AbstractArbitrageExchange, Integer> venues = new IdentityHashMap<>();
+	private final boolean makerFees;
+	private final ReceiveCrossExchangeSpread receiver;
+	private final List<SpreadWorker> workers = new ArrayList<>();
+	private final Map<CurrencyPair, SpreadWorker> owners = new ConcurrentHashMap<>();
+	// Latest best combination per market, written by the owners
+	private final Map<CurrencyPair, CrossExchangeSpread> bestSpreads = new ConcurrentHashMap<>();
+	private final Set<AbstractArbitrageExchange> feesFetched = Collections.newSetFromMap(new IdentityHashMap<>());
+	// Markets evaluated by the callers of evaluate()
+	private final Map<CurrencyPair, MarketSpreads> evaluatedMarkets = new ConcurrentHashMap<>();
+	private volatile FrameJournal journal = null;
+	private volatile double threshold = 0;
+	private volatile boolean stop = false;
+
+	/* constructors */
+
+	private CrossExchangeSpreadEngine(Collection<AbstractArbitrageExchange> exchanges, boolean makerFees,
+			ReceiveCrossExchangeSpread receiver, int workerCount) {
+		if (workerCount < 0) {
+			throw new IllegalArgumentException("Negative worker count: " + workerCount);
+		}
+		this.exchanges = Collections.unmodifiableList(new ArrayList<>(exchanges));
+		for (int venue = 0; venue < this.exchanges.size(); venue++) {
+			venues.put(this.exchanges.get(venue), venue);
+		}
+		this.makerFees = makerFees;
+		this.receiver = receiver;
+		for (int worker = 0; worker < workerCount; worker++) {
+			workers.add(new SpreadWorker(worker));
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates a CrossExchangeSpreadEngine with one worker per core and runs the workers in
+	 * new threads.
+	 * @param exchanges
+	 * @param makerFees true to calculate with maker fees (limit orders), false with taker fees
+	 * @param receiver receives spreads above the threshold, called by the workers
+	 * @return
+	 */
+	public static CrossExchangeSpreadEngine createInstance(Collection<AbstractArbitrageExchange> exchanges,
+			boolean makerFees, ReceiveCrossExchangeSpread receiver) {
+		return createInstance(exchanges, makerFees, receiver, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Static factory method that creates a CrossExchangeSpreadEngine and runs its workers in new threads.
+	 * @param exchanges
+	 * @param makerFees true to calculate with maker fees (limit orders), false with taker fees
+	 * @param receiver receives spreads above the threshold, called by the workers
+	 * @param workerCount 0 for an engine that is only evaluated by its callers, see
+	 * {@link #evaluate(AbstractArbitrageExchange, CurrencyPair, OrderBook)}
+	 * @return
+	 */
+	public static CrossExchangeSpreadEngine createInstance(Collection<AbstractArbitrageExchange> exchanges,
+			boolean makerFees, ReceiveCrossExchangeSpread receiver, int workerCount) {
+		CrossExchangeSpreadEngine engine = new CrossExchangeSpreadEngine(exchanges, makerFees, receiver, workerCount);
+		for (SpreadWorker worker : engine.workers) {
+			Thread thread = new Thread(worker, "spread-worker-" + worker.index);
+			thread.start();
+		}
+		LOGGER.info("Spread engine: {} exchanges, {} workers", engine.exchanges.size(), workerCount);
+		return engine;
+	}
+
+	/**
+	 * Finds markets traded on at least two of the exchanges.
+	 * @param exchanges
+	 * @return
+	 */
+	public static Set<CurrencyPair> findCommonPairs(Collection<AbstractArbitrageExchange> exchanges) {
+		Map<CurrencyPair, Integer> exchangeCounts = new HashMap<>();
+		for (AbstractArbitrageExchange exchange : exchanges) {
+			for (CurrencyPair currencyPair : exchange.getCurrencyPairs()) {
+				exchangeCounts.merge(currencyPair, 1, Integer::sum);
+			}
+		}
+		Set<CurrencyPair> commonPairs = new TreeSet<>();
+		exchangeCounts.forEach((currencyPair, count) -> {
+			if (count > 1) {
+				commonPairs.add(currencyPair);
+			}
+		});
+		return commonPairs;
+	}
+
+	/**
+	 * Subscribes to the order books of a market on all exchanges that trade it. Order books of exchanges that support
+	 * streaming are streamed, the others are polled. Fetches the trading fee of an exchange with its first market.
+	 * @param poller
+	 * @param currencyPair
+	 */
+	public synchronized void subscribe(OrderBookPoller poller, CurrencyPair currencyPair) {
+		for (AbstractArbitrageExchange exchange : exchanges) {
+			if (!exchange.getCurrencyPairs().contains(currencyPair)) {
+				continue;
+			}
+			if (feesFetched.add(exchange)) {
+				exchange.setTradingFee(exchange.fetchTradingFee(currencyPair));
+			}
+			if (exchange.isStreamingSupported() && stream(exchange, currencyPair)) {
+				continue;
+			}
+			poller.subscribe(exchange, currencyPair, this);
+		}
+	}
+
+	/**
+	 * Hands the new order book to the owner of the market. The owner reports how far the best spread involving the
+	 * exchange is from the threshold, so markets of exchanges close to an opportunity are polled more often.
+	 */
+	@Override
+	public void receivePolledOrderBook(PolledMarket market) {
+		update(market.getExchange(), market.getCurrencyPair(), market.getOrderBook(), market, 0);
+	}
+
+	/**
+	 * Hands latest order book of an exchange to the owner of the market. The owner hands the best spread of the
+	 * market to the receiver if it exceeds the threshold.
+	 * @param exchange
+	 * @param currencyPair
+	 * @param orderBook
+	 */
+	public void update(AbstractArbitrageExchange exchange, CurrencyPair currencyPair, OrderBook orderBook) {
+		update(exchange, currencyPair, orderBook, null, 0);
+	}
+
+	/**
+	 * Applies latest order book of an exchange in the calling thread and returns the best combination of the market,
+	 * the receiver is not called. For callers that own the markets themselves, e.g. a backtest that replays recorded
+	 * order books in order. A market must only be evaluated by one thread and not be updated through the workers.
+	 * @param exchange
+	 * @param currencyPair
+	 * @param orderBook
+	 * @return null if less than two exchanges have prices
+	 */
+	public CrossExchangeSpread evaluate(AbstractArbitrageExchange exchange, CurrencyPair currencyPair,
+			OrderBook orderBook) {
+		int venue = getVenue(exchange);
+		MarketSpreads market = evaluatedMarkets.computeIfAbsent(currencyPair, MarketSpreads::new);
+		market.update(venue, orderBook, getFee(exchange));
+		return market.createBestSpread();
+	}
+
+	/**
+	 * Gets the best combination of a market after the last evaluated update.
+	 * @param currencyPair
+	 * @return null if less than two exchanges have prices
+	 */
+	public CrossExchangeSpread getBestSpread(CurrencyPair currencyPair) {
+		return bestSpreads.get(currencyPair);
+	}
+
+	/**
+	 * Gets number of order book updates evaluated by all workers.
+	 * @return
+	 */
+	public long getEvaluationCount() {
+		long evaluationCount = 0;
+		for (SpreadWorker worker : workers) {
+			evaluationCount += worker.evaluationCount;
+		}
+		return evaluationCount;
+	}
+
+	/**
+	 * Checks if all handed over order books were evaluated.
+	 * @return
+	 */
+	public boolean isDrained() {
+		for (SpreadWorker worker : workers) {
+			if (worker.pendingUpdates.get() > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public List<AbstractArbitrageExchange> getExchanges() {
+		return exchanges;
+	}
+
+	public int getWorkerCount() {
+		return workers.size();
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets minimum spread that is handed to the receiver.
+	 * @param threshold relative profit after fees, e.g. 0.004 for 0.4%
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Records every received order book from now on, e.g. for {@link de.gekko.backtest.CrossExchangeBacktest}. Streamed
+	 * markets only record {@link #JOURNAL_DEPTH} levels if they are subscribed after the journal was set, otherwise
+	 * their top of book.
+	 * @param journal null stops recording
+	 */
+	public void setJournal(FrameJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Stops workers, queued order books are dropped.
+	 */
+	public void stop() {
+		stop = true;
+		for (SpreadWorker worker : workers) {
+			worker.queue.offer(WAKE_UP);
+		}
+	}
+
+	/* private methods */
+
+	/**
+	 * @param sequence of a top of book event, older ones are dropped by the owner; 0 if not ordered
+	 */
+	private void update(AbstractArbitrageExchange exchange, CurrencyPair currencyPair, OrderBook orderBook,
+			PolledMarket polledMarket, long sequence) {
+		int venue = getVenue(exchange);
+		if (workers.isEmpty()) {
+			throw new IllegalStateException("Engine without workers, order books must be evaluated by the caller");
+		}
+		FrameJournal journal = this.journal;
+		if (journal != null) {
+			journal.append(OrderBookFrame.encode(exchange.toString(), currencyPair, orderBook, JOURNAL_DEPTH),
+					System.nanoTime());
+		}
+		SpreadWorker owner = owners.computeIfAbsent(currencyPair,
+				pair -> workers.get(owners.size() % workers.size()));
+		owner.pendingUpdates.incrementAndGet();
+		owner.queue.offer(new SpreadUpdate(venue, currencyPair, orderBook, polledMarket, sequence));
+	}
+
+	private int getVenue(AbstractArbitrageExchange exchange) {
+		Integer venue = venues.get(exchange);
+		if (venue == null) {
+			throw new IllegalArgumentException("Unknown exchange " + exchange);
+		}
+		return venue;
+	}
+
+	private double getFee(AbstractArbitrageExchange exchange) {
+		return makerFees ? exchange.getMakerFee() : exchange.getTakerFee();
+	}
+
+	/**
+	 * Hands every change of the top of the streamed order book to the owner of the market. Only the levels that are
+	 * evaluated or journaled are materialized.
+	 * @param exchange
+	 * @param currencyPair
+	 * @return false if the market could not be subscribed
+	 */
+	private boolean stream(AbstractArbitrageExchange exchange, CurrencyPair currencyPair) {
+		StreamingChannelHandler channelHandler;
+		try {
+			channelHandler = exchange.streamOrderbook(currencyPair);
+		} catch (IOException e) {
+			LOGGER.warn("Could not stream {} {}, polling instead: {}", exchange, currencyPair, e.toString());
+			return false;
+		}
+		int depth = journal != null ? JOURNAL_DEPTH : 1;
+		channelHandler.addTopOfBookSubscriber(topOfBookUpdate -> update(exchange, currencyPair,
+				topOfBookUpdate.toOrderBook(), null, topOfBookUpdate.getSequence()), depth);
+		return true;
+	}
+
+	/* inner classes */
+
+	/**
+	 * Order book of one exchange on its way to the owner of the market.
+	 */
+	private static class SpreadUpdate {
+
+		private final int venue;
+		private final CurrencyPair currencyPair;
+		private final OrderBook orderBook;
+		private final PolledMarket polledMarket; // null if not polled
+		private final long sequence; // 0 if not ordered
+
+		SpreadUpdate(int venue, CurrencyPair currencyPair, OrderBook orderBook, PolledMarket polledMarket,
+				long sequence) {
+			this.venue = venue;
+			this.currencyPair = currencyPair;
+			this.orderBook = orderBook;
+			this.polledMarket = polledMarket;
+			this.sequence = sequence;
+		}
+
+	}
+
+	/**
+	 * Owner of a shard of the markets. Only its thread touches their state.
+	 */
+	private class SpreadWorker implements Runnable {
+
+		private final int index;
+		private final BlockingQueue<SpreadUpdate> queue = new LinkedBlockingQueue<>();
+		private final Map<CurrencyPair, MarketSpreads> markets = new HashMap<>();
+		private final AtomicInteger pendingUpdates = new AtomicInteger();
+		private volatile long evaluationCount = 0;
+
+		SpreadWorker(int index) {
+			this.index = index;
+			MetricsRegistry.getInstance().counter("gekko_spread_evaluations_total",
+					"Order book updates evaluated by the spread engine", () -> evaluationCount, "worker",
+					Integer.toString(index));
+		}
+
+		/**
+		 * Evaluation routine, returns when stopped or interrupted.
+		 */
+		@Override
+		public void run() {
+			while (!stop) {
+				SpreadUpdate update;
+				try {
+					update = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					LOGGER.warn("Spread worker {} interrupted, its markets are no longer evaluated", index);
+					return;
+				}
+				if (update == WAKE_UP) {
+					continue;
+				}
+				try {
+					evaluate(update);
+				} catch (RuntimeException e) {
+					LOGGER.warn("Evaluation of {} failed", update.currencyPair, e);
+				}
+				pendingUpdates.decrementAndGet();
+			}
+		}
+
+		private void evaluate(SpreadUpdate update) {
+			MarketSpreads market = markets.computeIfAbsent(update.currencyPair, MarketSpreads::new);
+			// Top of book events are broadcasted by several threads and may overtake each other
+			if (update.sequence != 0) {
+				if (update.sequence <= market.sequences[update.venue]) {
+					return;
+				}
+				market.sequences[update.venue] = update.sequence;
+			}
+			market.update(update.venue, update.orderBook, getFee(exchanges.get(update.venue)));
+			evaluationCount++;
+			CrossExchangeSpread bestSpread = market.createBestSpread();
+			if (bestSpread != null) {
+				bestSpreads.put(update.currencyPair, bestSpread);
+			} else {
+				bestSpreads.remove(update.currencyPair);
+			}
+			if (update.polledMarket != null) {
+				double venueSpread = market.getVenueSpread(update.venue);
+				if (!Double.isNaN(venueSpread)) {
+					update.polledMarket.reportMargin((venueSpread - threshold) * 100);
+				}
+			}
+			if (bestSpread != null && bestSpread.getSpread() > threshold) {
+				receiver.receiveSpread(bestSpread);
+			}
+		}
+
+	}
+
+	/**
+	 * Top of book of one market on all exchanges. Owned by one worker.
+	 */
+	private class MarketSpreads {
+
+		private final CurrencyPair currencyPair;
+		private final OrderBook[] orderBooks;
+		private final double[] bidPrices;
+		private final double[] bidAmounts;
+		private final double[] askPrices;
+		private final double[] askAmounts;
+		private final long[] sequences; // latest top of book event per venue
+		// Prices after fees
+		private final VenueHeap bids;
+		private final VenueHeap asks;
+
+		MarketSpreads(CurrencyPair currencyPair) {
+			int size = exchanges.size();
+			this.currencyPair = currencyPair;
+			this.orderBooks = new OrderBook[size];
+			this.bidPrices = new double[size];
+			this.bidAmounts = new double[size];
+			this.askPrices = new double[size];
+			this.askAmounts = new double[size];
+			this.sequences = new long[size];
+			this.bids = new VenueHeap(size, true);
+			this.asks = new VenueHeap(size, false);
+		}
+
+		void update(int venue, OrderBook orderBook, double fee) {
+			orderBooks[venue] = orderBook;
+			List<LimitOrder> orderBookBids = orderBook.getBids();
+			if (orderBookBids.isEmpty()) {
+				bids.remove(venue);
+			} else {
+				LimitOrder bid = orderBookBids.get(0);
+				bidPrices[venue] = bid.getLimitPrice().doubleValue();
+				bidAmounts[venue] = bid.getOriginalAmount().doubleValue();
+				bids.set(venue, bidPrices[venue] * (1 - fee));
+			}
+			List<LimitOrder> orderBookAsks = orderBook.getAsks();
+			if (orderBookAsks.isEmpty()) {
+				asks.remove(venue);
+			} else {
+				LimitOrder ask = orderBookAsks.get(0);
+				askPrices[venue] = ask.getLimitPrice().doubleValue();
+				askAmounts[venue] = ask.getOriginalAmount().doubleValue();
+				asks.set(venue, askPrices[venue] * (1 + fee));
+			}
+		}
+
+		/**
+		 * Gets best spread in which the venue buys or sells.
+		 * @param venue
+		 * @return NaN if there is none
+		 */
+		double getVenueSpread(int venue) {
+			// NaN if the venue has no price on that side
+			double sellHere = spread(asks.bestExcept(venue), venue);
+			double buyHere = spread(venue, bids.bestExcept(venue));
+			return max(sellHere, buyHere);
+		}
+
+		/**
+		 * Creates the best combination.
+		 * @return null if less than two exchanges have prices
+		 */
+		CrossExchangeSpread createBestSpread() {
+			int sellVenue = bids.best();
+			int buyVenue = asks.best();
+			if (sellVenue < 0 || buyVenue < 0) {
+				return null;
+			}
+			if (sellVenue == buyVenue) {
+				int secondBuyVenue = asks.secondBest();
+				int secondSellVenue = bids.secondBest();
+				if (secondSellVenue < 0 && secondBuyVenue < 0) {
+					return null;
+				}
+				if (secondSellVenue < 0
+						|| (secondBuyVenue >= 0 && spread(secondBuyVenue, sellVenue) >= spread(buyVenue, secondSellVenue))) {
+					buyVenue = secondBuyVenue;
+				} else {
+					sellVenue = secondSellVenue;
+				}
+			}
+			return new CrossExchangeSpread(currencyPair, exchanges.get(buyVenue), exchanges.get(sellVenue),
+					askPrices[buyVenue], askAmounts[buyVenue], bidPrices[sellVenue], bidAmounts[sellVenue],
+					spread(buyVenue, sellVenue));
+		}
+
+		/**
+		 * Gets relative profit of buying on one venue and selling on another after fees.
+		 * @return NaN if a venue is -1 or has no price
+		 */
+		private double spread(int buyVenue, int sellVenue) {
+			if (buyVenue < 0 || sellVenue < 0) {
+				return Double.NaN;
+			}
+			return 1 - asks.getPrice(buyVenue) / bids.getPrice(sellVenue);
+		}
+
+		/**
+		 * Maximum that ignores NaN.
+		 */
+		private double max(double a, double b) {
+			if (Double.isNaN(a)) {
+				return b;
+			}
+			return Double.isNaN(b) ? a : Math.max(a, b);
+		}
+
+	}
+
+}
@@ -0,0 +1,147 @@
+package de.gekko.arbitrager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+
+/**
+ * Undirected graph of currencies (nodes) connected by the markets (edges) of an exchange. Used to find all cycles of
+ * three trades instead of wiring currency pairs by hand.
+ * @author Maximilian Pfister
+ *
+ */
+public class CurrencyGraph {
+
+	/* variables */
+
+	private final List<Currency> currencies = new ArrayList<>();
+	private final Map<Currency, Integer> currencyIndices = new HashMap<>();
+	private final List<CurrencyPair> markets = new ArrayList<>();
+	private final Map<CurrencyPair, Integer> marketIndices = new HashMap<>();
+	private final List<List<Integer>> neighbours = new ArrayList<>();
+	// Market index by currency index pair, -1 if not connected
+	private final int[] edges;
+
+	/* constructors */
+
+	/**
+	 * Builds graph from the markets of an exchange, see {@link de.gekko.exchanges.AbstractArbitrageExchange#getCurrencyPairs()}.
+	 * @param currencyPairs
+	 */
+	public CurrencyGraph(Collection<CurrencyPair> currencyPairs) {
+		for (CurrencyPair currencyPair : currencyPairs) {
+			if (marketIndices.containsKey(currencyPair) || currencyPair.base.equals(currencyPair.counter)) {
+				continue;
+			}
+			addCurrency(currencyPair.base);
+			addCurrency(currencyPair.counter);
+			marketIndices.put(currencyPair, markets.size());
+			markets.add(currencyPair);
+		}
+		int currencyCount = currencies.size();
+		edges = new int[currencyCount * currencyCount];
+		Arrays.fill(edges, -1);
+		for (int market = 0; market < markets.size(); market++) {
+			CurrencyPair currencyPair = markets.get(market);
+			int base = currencyIndices.get(currencyPair.base);
+			int counter = currencyIndices.get(currencyPair.counter);
+			// Keep first market if an exchange lists both directions
+			if (edges[base * currencyCount + counter] != -1) {
+				continue;
+			}
+			edges[base * currencyCount + counter] = market;
+			edges[counter * currencyCount + base] = market;
+			neighbours.get(base).add(counter);
+			neighbours.get(counter).add(base);
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Enumerates all cycles of three markets. Every triangle of currencies is traded in both directions, so it yields
+	 * two cycles, both starting at the currency with the lowest index.
+	 * @return
+	 */
+	public List<TriangularCycle> findTriangularCycles() {
+		List<TriangularCycle> cycles = new ArrayList<>();
+		int currencyCount = currencies.size();
+		for (int a = 0; a < currencyCount; a++) {
+			for (int b : neighbours.get(a)) {
+				if (b <= a) {
+					continue;
+				}
+				for (int c : neighbours.get(b)) {
+					if (c <= b || edges[c * currencyCount + a] == -1) {
+						continue;
+					}
+					cycles.add(createCycle(cycles.size(), a, b, c));
+					cycles.add(createCycle(cycles.size(), a, c, b));
+				}
+			}
+		}
+		return cycles;
+	}
+
+	public int getCurrencyCount() {
+		return currencies.size();
+	}
+
+	public int getMarketCount() {
+		return markets.size();
+	}
+
+	public CurrencyPair getMarket(int market) {
+		return markets.get(market);
+	}
+
+	/**
+	 * Gets index of a market.
+	 * @param currencyPair
+	 * @return index or -1 if not part of the graph
+	 */
+	public int getMarketIndex(CurrencyPair currencyPair) {
+		Integer market = marketIndices.get(currencyPair);
+		return market == null ? -1 : market;
+	}
+
+	public List<CurrencyPair> getMarkets() {
+		return markets;
+	}
+
+	/* private methods */
+
+	private void addCurrency(Currency currency) {
+		if (!currencyIndices.containsKey(currency)) {
+			currencyIndices.put(currency, currencies.size());
+			currencies.add(currency);
+			neighbours.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Creates cycle first -> second -> third -> first.
+	 */
+	private TriangularCycle createCycle(int index, int first, int second, int third) {
+		int currencyCount = currencies.size();
+		int[] path = { first, second, third };
+		Currency[] cycleCurrencies = new Currency[TriangularCycle.LEGS];
+		CurrencyPair[] cyclePairs = new CurrencyPair[TriangularCycle.LEGS];
+		int[] cycleMarkets = new int[TriangularCycle.LEGS];
+		for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+			int from = path[leg];
+			int to = path[(leg + 1) % TriangularCycle.LEGS];
+			cycleCurrencies[leg] = currencies.get(from);
+			cycleMarkets[leg] = edges[from * currencyCount + to];
+			cyclePairs[leg] = markets.get(cycleMarkets[leg]);
+		}
+		return new TriangularCycle(index, cycleCurrencies, cyclePairs, cycleMarkets);
+	}
+
+}
@@ -2,8 +2,6 @@ package de.gekko.arbitrager;
 
 import java.io.IOException;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.knowm.xchange.currency.CurrencyPair;
@@ -17,8 +15,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.polling.OrderBookPoller;
+import de.gekko.polling.PolledMarket;
+import de.gekko.polling.ReceivePolledOrderBook;
 
-public class LimitOrderArbitrager {
+public class LimitOrderArbitrager implements ReceivePolledOrderBook {
 
 	/**
 	 * Speichert den Logger.
@@ -47,9 +48,11 @@ public class LimitOrderArbitrager {
 	private AbstractArbitrageExchange exchange2;
 
 	/**
-	 * Speichert den Executor Service für Netzwerkanfragen auf die Exchanges.
+	 * Speichert die vom OrderBookPoller abonnierten Märkte, null ohne Abonnement.
 	 */
-	private ExecutorService networkExecutorService = Executors.newFixedThreadPool(2);
+	private PolledMarket market1;
+
+	private PolledMarket market2;
 
 	/**
 	 * Speichert die Flag, die bestimmt ob Wallets aktualisiert werden. Zum
@@ -112,8 +115,53 @@ public class LimitOrderArbitrager {
 
 		// Arbitrage prüfen und ggf. durchführen
 		try {
-			oneWay_limitOrderArbitrage(exchange1, exchange2);
-			oneWay_limitOrderArbitrage(exchange2, exchange1);
+			oneWay_limitOrderArbitrage(exchange1, exchange1.getOrderbook(), exchange2, exchange2.getOrderbook());
+			oneWay_limitOrderArbitrage(exchange2, exchange2.getOrderbook(), exchange1, exchange1.getOrderbook());
+		} catch (NotAvailableFromExchangeException | NotYetImplementedForExchangeException | ExchangeException
+				| IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Abonniert die OrderBooks beider Exchanges beim OrderBookPoller. Danach wird bei jedem neuen OrderBook auf
+	 * Arbitrage geprüft, {@link #limitOrderArbitrage()} wird nicht mehr benötigt.
+	 * 
+	 * @param poller
+	 */
+	public synchronized void subscribe(OrderBookPoller poller) {
+		market1 = poller.subscribe(exchange1, currencyPair, this);
+		market2 = poller.subscribe(exchange2, currencyPair, this);
+	}
+
+	/**
+	 * Prüft mit den zuletzt abgefragten OrderBooks beider Exchanges auf Arbitrage und führt sie ggf. durch. Meldet
+	 * die beste Arbitrage beider Richtungen an den Poller, damit Märkte nahe der Profitschwelle öfter abgefragt
+	 * werden.
+	 */
+	@Override
+	public synchronized void receivePolledOrderBook(PolledMarket market) {
+		if (market1 == null || market2 == null || market1.getOrderBook() == null || market2.getOrderBook() == null) {
+			return;
+		}
+		OrderBook orderBook1 = market1.getOrderBook();
+		OrderBook orderBook2 = market2.getOrderBook();
+
+		if (updateWallets) {
+			// Wallets aktualisieren
+			updateWallet(exchange1, exchange2);
+			updateWallets = false;
+		}
+
+		// Arbitrage prüfen und ggf. durchführen
+		try {
+			double arbitragePercentage = Math.max(
+					oneWay_limitOrderArbitrage(exchange1, orderBook1, exchange2, orderBook2),
+					oneWay_limitOrderArbitrage(exchange2, orderBook2, exchange1, orderBook1));
+			// Profitschwelle liegt bei 0
+			market1.reportMargin(arbitragePercentage);
+			market2.reportMargin(arbitragePercentage);
 		} catch (NotAvailableFromExchangeException | NotYetImplementedForExchangeException | ExchangeException
 				| IOException e) {
 			// TODO Auto-generated catch block
@@ -128,22 +176,23 @@ public class LimitOrderArbitrager {
 	 * @param askExchangeOrderBook
 	 * @param bidExchange
 	 * @param bidExchangeOrderBook
+	 * @return die Arbitrage unter Berücksichtigung der Fees.
 	 * @throws NotAvailableFromExchangeException
 	 * @throws NotYetImplementedForExchangeException
 	 * @throws ExchangeException
 	 * @throws IOException
 	 */
-	void oneWay_limitOrderArbitrage(AbstractArbitrageExchange askExchange, AbstractArbitrageExchange bidExchange)
-			throws NotAvailableFromExchangeException, NotYetImplementedForExchangeException, ExchangeException,
-			IOException {
+	double oneWay_limitOrderArbitrage(AbstractArbitrageExchange askExchange, OrderBook askExchangeOrderBook,
+			AbstractArbitrageExchange bidExchange, OrderBook bidExchangeOrderBook) throws NotAvailableFromExchangeException,
+			NotYetImplementedForExchangeException, ExchangeException, IOException {
 		LOGGER.trace("Checking for Arbitrage opportunity...");
 
 		// ASK-Exchange
-		double priceAskExchange = askExchange.getOrderbook().getAsks().get(0).getLimitPrice().doubleValue();
+		double priceAskExchange = askExchangeOrderBook.getAsks().get(0).getLimitPrice().doubleValue();
 		LOGGER.trace("[{}, ASK] Price: {}", askExchange, priceAskExchange);
 
 		// BID-Exchange
-		double priceBidExchange = bidExchange.getOrderbook().getBids().get(0).getLimitPrice().doubleValue();
+		double priceBidExchange = bidExchangeOrderBook.getBids().get(0).getLimitPrice().doubleValue();
 		LOGGER.trace("[{}, BID] Price: {}", bidExchange, priceBidExchange);
 
 		// Arbitrage berechnen
@@ -204,8 +253,8 @@ public class LimitOrderArbitrager {
 					return bidExchange.placeLimitOrderBid(currencyPair, exchange2Price, tradeAmount);
 				};
 
-				Future<String> future_exchange1Order = networkExecutorService.submit(callable_exchange1Trade);
-				Future<String> future_exchange2Order = networkExecutorService.submit(callable_exchange2Trade);
+				Future<String> future_exchange1Order = askExchange.getNetworkExecutor().submitPriority(callable_exchange1Trade);
+				Future<String> future_exchange2Order = bidExchange.getNetworkExecutor().submitPriority(callable_exchange2Trade);
 
 				String orderID_exchange1 = "";
 				String orderID_exchange2 = "";
@@ -235,6 +284,7 @@ public class LimitOrderArbitrager {
 
 		}
 
+		return arbitragePercentage;
 	}
 
 	/**
@@ -254,8 +304,8 @@ public class LimitOrderArbitrager {
 			return exchangeTwo.fetchOrderbook(currencyPair);
 		};
 
-		Future<OrderBook> futureOrderbook1 = networkExecutorService.submit(callableOrderbook1);
-		Future<OrderBook> futureOrderbook2 = networkExecutorService.submit(callableOrderbook2);
+		Future<OrderBook> futureOrderbook1 = exchangeOne.getNetworkExecutor().submit(callableOrderbook1);
+		Future<OrderBook> futureOrderbook2 = exchangeTwo.getNetworkExecutor().submit(callableOrderbook2);
 
 		try {
 			exchangeOne.setOrderBook(futureOrderbook1.get());
@@ -283,8 +333,8 @@ public class LimitOrderArbitrager {
 			return exchangeTwo.fetchTicker(currencyPair);
 		};
 
-		Future<Ticker> futureTicker1 = networkExecutorService.submit(callableTicker1);
-		Future<Ticker> futureTicker2 = networkExecutorService.submit(callableTicker2);
+		Future<Ticker> futureTicker1 = exchangeOne.getNetworkExecutor().submit(callableTicker1);
+		Future<Ticker> futureTicker2 = exchangeTwo.getNetworkExecutor().submit(callableTicker2);
 
 		try {
 			exchangeOne.setTicker(futureTicker1.get());
@@ -312,8 +362,8 @@ public class LimitOrderArbitrager {
 			return exchangeTwo.fetchWallet();
 		};
 
-		Future<Wallet> futureExchange1Wallets = networkExecutorService.submit(callableExchange1Wallet);
-		Future<Wallet> futureExchange2Wallets = networkExecutorService.submit(callableExchange2Wallet);
+		Future<Wallet> futureExchange1Wallets = exchangeOne.getNetworkExecutor().submit(callableExchange1Wallet);
+		Future<Wallet> futureExchange2Wallets = exchangeTwo.getNetworkExecutor().submit(callableExchange2Wallet);
 
 		try {
 			exchangeOne.setWallet(futureExchange1Wallets.get());
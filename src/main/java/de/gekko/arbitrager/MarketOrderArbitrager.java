@@ -4,8 +4,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.knowm.xchange.currency.CurrencyPair;
@@ -31,10 +29,6 @@ public class MarketOrderArbitrager implements Runnable {
 	private Map<String, AbstractArbitrageExchange> mapExchanges;
 	private String nameExchangeOne;
 	private String nameExchangeTwo;
-	/**
-	 * Speichert den Executor Service für Netzwerkanfragen auf die Exchanges.
-	 */
-	private ExecutorService networkExecutorService = Executors.newFixedThreadPool(2);
 	/**
 	 * Speichert die Flag, die bestimmt ob Wallets aktualisiert werden. Zum
 	 * Programmstart und nachdem erfolgreich Trades durchgeführt, wird die Flag auf
@@ -151,8 +145,8 @@ public class MarketOrderArbitrager implements Runnable {
 					return bidExchange.placeLimitOrderBid(currencyPair, exchange2Price, tradeAmount);
 				};
 
-				Future<String> future_exchange1Order = networkExecutorService.submit(callable_exchange1Trade);
-				Future<String> future_exchange2Order = networkExecutorService.submit(callable_exchange2Trade);
+				Future<String> future_exchange1Order = askExchange.getNetworkExecutor().submitPriority(callable_exchange1Trade);
+				Future<String> future_exchange2Order = bidExchange.getNetworkExecutor().submitPriority(callable_exchange2Trade);
 
 				String orderID_exchange1 = "";
 				String orderID_exchange2 = "";
@@ -220,8 +214,8 @@ public class MarketOrderArbitrager implements Runnable {
 			return exchangeTwo.fetchOrderbook(currencyPair);
 		};
 
-		Future<OrderBook> futureOrderbook1 = networkExecutorService.submit(callableOrderbook1);
-		Future<OrderBook> futureOrderbook2 = networkExecutorService.submit(callableOrderbook2);
+		Future<OrderBook> futureOrderbook1 = exchangeOne.getNetworkExecutor().submit(callableOrderbook1);
+		Future<OrderBook> futureOrderbook2 = exchangeTwo.getNetworkExecutor().submit(callableOrderbook2);
 
 		try {
 			exchangeOne.setOrderBook(futureOrderbook1.get());
@@ -249,8 +243,8 @@ public class MarketOrderArbitrager implements Runnable {
 			return exchangeTwo.fetchTicker(currencyPair);
 		};
 
-		Future<Ticker> futureTicker1 = networkExecutorService.submit(callableTicker1);
-		Future<Ticker> futureTicker2 = networkExecutorService.submit(callableTicker2);
+		Future<Ticker> futureTicker1 = exchangeOne.getNetworkExecutor().submit(callableTicker1);
+		Future<Ticker> futureTicker2 = exchangeTwo.getNetworkExecutor().submit(callableTicker2);
 
 		try {
 			exchangeOne.setTicker(futureTicker1.get());
@@ -278,8 +272,8 @@ public class MarketOrderArbitrager implements Runnable {
 			return exchangeTwo.fetchWallet();
 		};
 
-		Future<Wallet> futureExchange1Wallets = networkExecutorService.submit(callableExchange1Wallet);
-		Future<Wallet> futureExchange2Wallets = networkExecutorService.submit(callableExchange2Wallet);
+		Future<Wallet> futureExchange1Wallets = exchangeOne.getNetworkExecutor().submit(callableExchange1Wallet);
+		Future<Wallet> futureExchange2Wallets = exchangeTwo.getNetworkExecutor().submit(callableExchange2Wallet);
 
 		try {
 			exchangeOne.setWallet(futureExchange1Wallets.get());
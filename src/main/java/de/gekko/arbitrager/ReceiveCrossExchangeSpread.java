@@ -0,0 +1,11 @@
+package de.gekko.arbitrager;
+
+public interface ReceiveCrossExchangeSpread {
+
+	/**
+	 * Called by the thread that delivered the order book, for every update after which the best spread of the market
+	 * exceeds the threshold.
+	 * @param spread
+	 */
+	public void receiveSpread(CrossExchangeSpread spread);
+}
@@ -0,0 +1,11 @@
+package de.gekko.arbitrager;
+
+public interface ReceiveTriangularOpportunity {
+
+	/**
+	 * Called by the scanning thread for every cycle whose profit after fees exceeds the threshold.
+	 * @param cycle
+	 * @param profit relative profit after fees, e.g. 0.004 for 0.4%
+	 */
+	public void receiveOpportunity(TriangularCycle cycle, double profit);
+}
@@ -7,12 +7,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.dto.Order.OrderType;
 import org.knowm.xchange.dto.account.Wallet;
 import org.knowm.xchange.dto.marketdata.OrderBook;
 import org.knowm.xchange.exceptions.ExchangeException;
@@ -23,6 +22,11 @@ import org.slf4j.LoggerFactory;
 
 import de.gekko.exception.CurrencyMismatchException;
 import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.logging.EventLog;
+import de.gekko.order.OrderGateway;
+import de.gekko.order.OrderLeg;
+import de.gekko.order.TrackedExecution;
+import de.gekko.tracing.LatencyTracer;
 import de.gekko.wallet.AsyncWalletProvider;
 
 /**
@@ -43,6 +47,21 @@ public class TriangularArbitrager {
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger("Arbitrager");
 	
+	/**
+	 * Meldungen der Auswertung, werden ohne Formatierung in das EventLog geschrieben.
+	 */
+	private static final String ASK_BID_EVENT = "ASK: {} [{}/{}] -- BID: {} [X {}/{}] -- ARBITRAGE = {}";
+	private static final String BID_ASK_EVENT = "BID: {} [{}/{}] -- ASK: {} [X {}/{}] -- ARBITRAGE = {}";
+	private static final String DEBUG_TRADE_EVENT = "=== DEBUG TRADE #{} ===";
+	private static final String DEBUG_LEG_EVENT = "Sell {}: {} for {}: {} [price: {}, volume: {} ({})]";
+	private static final String DEBUG_AMOUNTS_EVENT = "Sell {}: {} for {}: {}";
+	private static final String DEBUG_ARBITRAGE_EVENT = "DEBUG ARBITRAGE = {}";
+	private static final String ARBITRAGE_EVENT = "=====> Arbitrage (with fees): {}";
+	private static final String ARBITRAGE2_EVENT = "=====> Arbitrage2 (with fees): {}";
+	private static final String ORDERS_SUBMITTED_EVENT = "Orders submitted, tracking {} legs";
+	private static final String ORDERS_OPEN_EVENT = "Orders of the last chance still open, not traded";
+	private static final String ARBITRAGE_COUNT_EVENT = "Numer of Arbitrage Chances: {}";
+	
 	/**
 	 * Speichert die Exchange
 	 */
@@ -61,16 +80,31 @@ public class TriangularArbitrager {
 	private boolean twistCrossPair1 = false;
 	private CurrencyPair crossPair2;
 	private boolean twistCrossPair2 = false;
+	private final CurrencyPair invertedBasePair;
+	private final CurrencyPair invertedCrossPair1;
+	private final CurrencyPair invertedCrossPair2;
 	
 	private AsyncWalletProvider walletProvider;
 	private Map<Currency, Double> balanceMap = new HashMap<>();
 	
+	volatile boolean updateWallets = true;
+
 	/**
-	 * Speichert den Executor Service für Netzwerkanfragen auf die Exchange.
+	 * Speichert die Orders der zuletzt gehandelten Chance. Nur vom auswertenden Thread verwendet.
 	 */
-	private ExecutorService networkExecutorService = Executors.newFixedThreadPool(3);
+	private TrackedExecution execution = null;
 	
-	boolean updateWallets = true;
+	/**
+	 * Speichert System.nanoTime des Websocket Frames, der die aktuelle Auswertung ausgelöst hat (0 wenn unbekannt).
+	 */
+	private long triggerTime = 0;
+	
+	private final LatencyTracer tracer = LatencyTracer.getInstance();
+	
+	/**
+	 * Speichert das EventLog, nur vom auswertenden Thread beschrieben.
+	 */
+	private final EventLog eventLog;
 	
 	public TriangularArbitrager(AbstractArbitrageExchange exchange, AsyncWalletProvider walletProvider, CurrencyPair basePair,
 			CurrencyPair crossPair1, CurrencyPair crossPair2, double MAX_TRADE_AMOUNT) throws IOException, CurrencyMismatchException {
@@ -81,7 +115,17 @@ public class TriangularArbitrager {
 		this.crossPair1 = crossPair1;
 		this.crossPair2 = crossPair2;
 		alignCurrencyPairs();
+		this.invertedBasePair = new CurrencyPair(basePair.counter, basePair.base);
+		this.invertedCrossPair1 = new CurrencyPair(crossPair1.counter, crossPair1.base);
+		this.invertedCrossPair2 = new CurrencyPair(crossPair2.counter, crossPair2.base);
+		// Templates of all legs are ready before the first chance
+		OrderGateway orderGateway = exchange.getOrderGateway();
+		orderGateway.prepare(invertedBasePair);
+		orderGateway.prepare(invertedCrossPair1);
+		orderGateway.prepare(invertedCrossPair2);
 		this.walletProvider = walletProvider;
+		// Eindeutiger Name je Exchange und Dreieck
+		this.eventLog = EventLog.createInstance("Arbitrager." + exchange + "." + basePair + "." + crossPair1 + "." + crossPair2);
 
 		updateWallet();
 		System.out.println(twistCrossPair1);
@@ -198,7 +242,7 @@ public class TriangularArbitrager {
 		if(triangularArbitrageBidAsk(orderBook1, orderBook2, orderBook3)){
 			arbitCounter++;
 		}
-		LOGGER.info("Numer of Arbitrage Chances: {}", arbitCounter);
+		eventLog.claim(ARBITRAGE_COUNT_EVENT).add(arbitCounter).publish();
 	}
 	
 	/**
@@ -254,17 +298,18 @@ public class TriangularArbitrager {
 		double arb = (crossExchangeRate/basePairPrice -1)*100;
 		
 		// Abitrage info
-		LOGGER.info("ASK: {} [{}/{}] -- BID: {} [X {}/{}] -- ARBITRAGE = {}", basePairPrice, basePair.base.toString(), basePair.counter.toString(), String.format("%.8f", crossExchangeRate), crossPair1.base.toString(), crossPair2.base.toString(), arb);
+		eventLog.claim(ASK_BID_EVENT).add(basePairPrice).add(basePair.base).add(basePair.counter).add(crossExchangeRate, 8).add(crossPair1.base).add(crossPair2.base).add(arb).publish();
 
 		
 		if(debug1){
+			int decimals = exchange.getDecimals();
 			// Simulated trading for debugging and testing
-			LOGGER.info("=== DEBUG TRADE #1 ===");
+			eventLog.claim(DEBUG_TRADE_EVENT).add(1).publish();
 			double tradeAmount = 1;
 			// Base pair
 			double sellAmountBasePair = tradeAmount; //BTC Verkaufen
 			double buyAmountBasePair = sellAmountBasePair/basePairPrice;
-			LOGGER.info("Sell {}: {} for {}: {} [price: {}, volume: {} ({})]", basePair.base, formatDecimals(sellAmountBasePair), basePair.counter, formatDecimals(buyAmountBasePair), formatDecimals(basePairPrice), formatDecimals(basePairVolume), basePair.counter);
+			eventLog.claim(DEBUG_LEG_EVENT).add(basePair.base).add(sellAmountBasePair, decimals).add(basePair.counter).add(buyAmountBasePair, decimals).add(basePairPrice, decimals).add(basePairVolume, decimals).add(basePair.counter).publish();
 			
 			// Cross pair 1
 			double sellAmountCrossPair1;
@@ -272,11 +317,11 @@ public class TriangularArbitrager {
 			if(twistCrossPair1) {
 				sellAmountCrossPair1 = (sellAmountBasePair/basePairPrice)/crossPair2Price; //OMG VERKAUFEN
 				buyAmountCrossPair1 = sellAmountCrossPair1*crossPair1Price;
-				LOGGER.info("Sell {}: {} for {}: {} [price: {}, volume: {} ({})]", crossPair1.counter, formatDecimals(sellAmountCrossPair1), crossPair1.base, formatDecimals(buyAmountCrossPair1), formatDecimals(crossPair1Price), formatDecimals(crossPair1Volume), crossPair1.counter);
+				eventLog.claim(DEBUG_LEG_EVENT).add(crossPair1.counter).add(sellAmountCrossPair1, decimals).add(crossPair1.base).add(buyAmountCrossPair1, decimals).add(crossPair1Price, decimals).add(crossPair1Volume, decimals).add(crossPair1.counter).publish();
 			} else {
 				sellAmountCrossPair1 = (sellAmountBasePair/basePairPrice)/crossPair2Price; //OMG VERKAUFEN
 				buyAmountCrossPair1 = sellAmountCrossPair1*crossPair1Price;
-				LOGGER.info("Sell {}: {} for {}: {} [price: {}, volume: {} ({})]", crossPair1.counter, formatDecimals(sellAmountCrossPair1), crossPair1.base, formatDecimals(buyAmountCrossPair1), formatDecimals(crossPair1Price), formatDecimals(crossPair1Volume), crossPair1.counter);
+				eventLog.claim(DEBUG_LEG_EVENT).add(crossPair1.counter).add(sellAmountCrossPair1, decimals).add(crossPair1.base).add(buyAmountCrossPair1, decimals).add(crossPair1Price, decimals).add(crossPair1Volume, decimals).add(crossPair1.counter).publish();
 			}
 			
 			// Cross pair 2
@@ -285,15 +330,15 @@ public class TriangularArbitrager {
 			if(twistCrossPair2) {
 				sellAmountCrossPair2 = sellAmountBasePair/basePairPrice;  //ETH VERKAUFEN
 				buyAmountCrossPair2 = sellAmountCrossPair2/crossPair2Price;
-				LOGGER.info("Sell {}: {} for {}: {} [price: {}, volume: {} ({})]", crossPair2.base, formatDecimals(sellAmountCrossPair2), crossPair2.counter, formatDecimals(buyAmountCrossPair2), formatDecimals(crossPair2Price), formatDecimals(crossPair2Volume), crossPair2.counter);
+				eventLog.claim(DEBUG_LEG_EVENT).add(crossPair2.base).add(sellAmountCrossPair2, decimals).add(crossPair2.counter).add(buyAmountCrossPair2, decimals).add(crossPair2Price, decimals).add(crossPair2Volume, decimals).add(crossPair2.counter).publish();
 			} else {
 				sellAmountCrossPair2 = sellAmountBasePair/basePairPrice;  //ETH VERKAUFEN
 				buyAmountCrossPair2 = sellAmountCrossPair2/crossPair2Price;
-				LOGGER.info("Sell {}: {} for {}: {} [price: {}, volume: {} ({})]", crossPair2.base, formatDecimals(sellAmountCrossPair2), crossPair2.counter, formatDecimals(buyAmountCrossPair2), formatDecimals(crossPair2Price), formatDecimals(crossPair2Volume), crossPair2.counter);
+				eventLog.claim(DEBUG_LEG_EVENT).add(crossPair2.base).add(sellAmountCrossPair2, decimals).add(crossPair2.counter).add(buyAmountCrossPair2, decimals).add(crossPair2Price, decimals).add(crossPair2Volume, decimals).add(crossPair2.counter).publish();
 			}
 		
 
-			LOGGER.info("DEBUG ARBITRAGE = {}", (buyAmountCrossPair1/sellAmountBasePair -1)*100);
+			eventLog.claim(DEBUG_ARBITRAGE_EVENT).add((buyAmountCrossPair1/sellAmountBasePair -1)*100).publish();
 
 			// if arbitrage chance exists set return value to true
 			if ((arb - 0.75) > 0) {
@@ -301,8 +346,13 @@ public class TriangularArbitrager {
 			}
 			
 		} else {
-			if ((arb - 0.8) > 0) {
-				System.out.println("=====> Arbitrage (with fees): " + String.format("%.8f", arb - 0.75));
+			if ((arb - 0.8) > 0 && !isReadyToTrade()) {
+				eventLog.claim(ARBITRAGE_EVENT).add(arb - 0.75, 8).publish();
+				eventLog.claim(ORDERS_OPEN_EVENT).publish();
+				ret = true;
+			} else if ((arb - 0.8) > 0) {
+				long decisionTime = System.nanoTime();
+				eventLog.claim(ARBITRAGE_EVENT).add(arb - 0.75, 8).publish();
 				
 				double basePairAmount = 0;
 				// Calculate maximum tradeable amount
@@ -333,107 +383,16 @@ public class TriangularArbitrager {
 
 				}
 
-				// Set up order for base pair
+				// Legs on the pairs as given, or opposite orders on the inverted pairs if the exchange does not trade them
 				double sellAmountBasePair = basePairAmount;
-				Callable<String> callable_orderBasePair = () -> {
-					String baseTrade;
-//					try {
-//						baseTrade = exchange.placeLimitOrderAsk(basePair, basePairPrice, sellAmountBasePair);
-//					} catch (Exception e) {
-//						e.printStackTrace();
-						baseTrade = exchange.placeLimitOrderBid(new CurrencyPair(basePair.counter, basePair.base), basePairPrice, (sellAmountBasePair/basePairPrice)); // BTC verkaufen bzw ETH kaufen korrekt
-//					}
-					return baseTrade;
-				};
-				
-				// Set up orders for cross pair 1
-				Callable<String> callable_orderCrossPair1;
-//				if(twistCrossPair1) {
-//					Double sellAmountCrossPair1 = (sellAmountBasePair/basePairPrice)/crossPair2Price; //OMG VERKAUFEN
-//					callable_orderCrossPair1 = () -> {
-//						String cross1Trade;
-//						try {
-//							cross1Trade = exchange.placeLimitOrderBid(crossPair1, crossPair1Price, sellAmountCrossPair1);
-//						} catch (Exception e) {
-//							e.printStackTrace();
-//							cross1Trade = exchange.placeLimitOrderAsk(new CurrencyPair(crossPair2.counter, crossPair2.base), crossPair1Price, sellAmountCrossPair1);
-//						}
-//						return cross1Trade;
-//					};	
-//				} else {
-					double sellAmountCrossPair1 = ((sellAmountBasePair/basePairPrice)/crossPair2Price)*0.9975; 
-					callable_orderCrossPair1 = () -> {
-						String cross1Trade;
-//						try {
-//							cross1Trade = exchange.placeLimitOrderBid(crossPair1, crossPair1Price, sellAmountCrossPair1); //OMG verkaufen
-//						} catch (Exception e) {
-//							e.printStackTrace();
-							cross1Trade = exchange.placeLimitOrderAsk(new CurrencyPair(crossPair1.counter, crossPair1.base), crossPair1Price, sellAmountCrossPair1); //OMG verkaufen korrekt
-//						}
-						return cross1Trade;
-					};	
-//				}
-
-				
-				// Set up order for cross pair 2
-				Callable<String> callable_orderCrossPair2;
-//				if(twistCrossPair2) {
-					double sellAmountCrossPair2 = (sellAmountBasePair/basePairPrice)*0.9975; 
-					callable_orderCrossPair2 = () -> {
-						String cross2Trade;
-//						try {
-//							cross2Trade = exchange.placeLimitOrderAsk(crossPair2, crossPair2Price, sellAmountCrossPair2);
-//						} catch (Exception e) {
-//							e.printStackTrace();
-							cross2Trade = exchange.placeLimitOrderBid(new CurrencyPair(crossPair2.counter, crossPair2.base), crossPair2Price, (sellAmountCrossPair2/crossPair2Price));
-//						}
-						return cross2Trade;
-					};
-//				} else {
-//					callable_orderCrossPair2 = () -> {
-//						String cross2Trade;
-//						try {
-//							cross2Trade = exchange.placeLimitOrderAsk(crossPair2, crossPair2Price, sellAmountCrossPair2);
-//						} catch (Exception e) {
-//							e.printStackTrace();
-//							cross2Trade = exchange.placeLimitOrderBid(new CurrencyPair(crossPair2.counter, crossPair2.base), crossPair2Price, sellAmountCrossPair2);
-//						}
-//						return cross2Trade;
-//
-//					};
-//				}
+				double sellAmountCrossPair1 = ((sellAmountBasePair/basePairPrice)/crossPair2Price)*0.9975;
+				double sellAmountCrossPair2 = (sellAmountBasePair/basePairPrice)*0.9975;
+				OrderLeg baseLeg = createLeg(basePair, invertedBasePair, OrderType.BID, basePairPrice, sellAmountBasePair/basePairPrice); // BTC verkaufen bzw ETH kaufen
+				OrderLeg cross1Leg = createLeg(crossPair1, invertedCrossPair1, OrderType.ASK, crossPair1Price, sellAmountCrossPair1); //OMG verkaufen
+				OrderLeg cross2Leg = createLeg(crossPair2, invertedCrossPair2, OrderType.BID, crossPair2Price, sellAmountCrossPair2/crossPair2Price);
 				
-				
-				// Send orders
-				Future<String> future_order1 = networkExecutorService.submit(callable_orderBasePair);
-				Future<String> future_order2 = networkExecutorService.submit(callable_orderCrossPair1);
-				Future<String> future_order3 = networkExecutorService.submit(callable_orderCrossPair2);
-
-				// Order IDs
-				String orderID_trade1 = "";
-				String orderID_trade2 = "";
-				String orderID_trade3 = "";
-				try {
-					// Get order IDs
-					orderID_trade1 = future_order1.get();
-					LOGGER.info("Order1 Placed. ID: {}", orderID_trade1);
-					orderID_trade2 = future_order2.get();
-					LOGGER.info("Order2 Placed. ID: {}", orderID_trade2);
-					orderID_trade3 = future_order3.get();
-					LOGGER.info("Order2 Placed. ID: {}", orderID_trade3);
-				} catch (Exception e) {
-					e.printStackTrace();
-					// If something went wrong, try to cancel remaining orders
-					boolean cancelledTrade1 = exchange.cancelOrder(orderID_trade1);
-					boolean cancelledTrade2 = exchange.cancelOrder(orderID_trade2);
-					boolean cancelledTrade3 = exchange.cancelOrder(orderID_trade3);
-					System.err.println("Fatal trade error, terminating application.");
-//					System.exit(1);
-				}
-				Thread.sleep(30000);
-				updateWallets = true;
-				updateWallet();
-				System.exit(0);
+				// Send all legs at once, the tracker unwinds them if one is rejected or gets stuck
+				submit(decisionTime, baseLeg, cross1Leg, cross2Leg);
 				ret = true;
 			}
 		}
@@ -476,16 +435,17 @@ public class TriangularArbitrager {
 		}
 		double arb = (basePairPrice/crossExchangeRate -1)*100;
 
-		LOGGER.info("BID: {} [{}/{}] -- ASK: {} [X {}/{}] -- ARBITRAGE = {}", basePairPrice, basePair.base.toString(), basePair.counter.toString(), String.format("%.8f", crossExchangeRate), crossPair1.counter.toString(), crossPair2.counter.toString(), arb);
+		eventLog.claim(BID_ASK_EVENT).add(basePairPrice).add(basePair.base).add(basePair.counter).add(crossExchangeRate, 8).add(crossPair1.counter).add(crossPair2.counter).add(arb).publish();
 
 		if(debug2){
+			int decimals = exchange.getDecimals();
 			 //Simulated trading for debugging and testing
-			LOGGER.info("=== DEBUG TRADE #2 ===");
+			eventLog.claim(DEBUG_TRADE_EVENT).add(2).publish();
 			double tradeAmount = 1;
 			// Base pair
 			double sellBasePair = tradeAmount/basePairPrice;
 			double buyBasePair = tradeAmount;
-			LOGGER.info("Sell {}: {} for {}: {}", basePair.counter, formatDecimals(sellBasePair), basePair.base, formatDecimals(buyBasePair));
+			eventLog.claim(DEBUG_AMOUNTS_EVENT).add(basePair.counter).add(sellBasePair, decimals).add(basePair.base).add(buyBasePair, decimals).publish();
 			
 			// Cross pair 1
 			double sellCrossPair1;
@@ -497,7 +457,7 @@ public class TriangularArbitrager {
 //			} else {
 				sellCrossPair1 = tradeAmount;
 				buyCrossPair1 = sellCrossPair1/crossPair1Price;
-				LOGGER.info("Sell {}: {} for {}: {}", crossPair1.base, formatDecimals(sellCrossPair1), crossPair1.counter, formatDecimals(buyCrossPair1));
+				eventLog.claim(DEBUG_AMOUNTS_EVENT).add(crossPair1.base).add(sellCrossPair1, decimals).add(crossPair1.counter).add(buyCrossPair1, decimals).publish();
 //			}
 
 			// Cross pair 2
@@ -506,14 +466,14 @@ public class TriangularArbitrager {
 //			if(twistCrossPair2) {
 				sellCrossPair2 = (tradeAmount/crossPair1Price);
 				buyCrossPair2 = sellCrossPair2*crossPair2Price;
-				LOGGER.info("Sell {}: {} for {}: {}", crossPair2.counter, formatDecimals(sellCrossPair2), crossPair2.base, formatDecimals(buyCrossPair2));
+				eventLog.claim(DEBUG_AMOUNTS_EVENT).add(crossPair2.counter).add(sellCrossPair2, decimals).add(crossPair2.base).add(buyCrossPair2, decimals).publish();
 //			} else {
 //				sellCrossPair2 = sellCrossPair1/crossPair1Price;
 //				buyCrossPair2 = sellCrossPair2*crossPair2Price;
 //				LOGGER.info("Sell {}: {} for {}: {}", crossPair2.base, formatDecimals(sellCrossPair2), crossPair2.counter, formatDecimals(buyCrossPair2));
 //			}
 			
-			LOGGER.info("DEBUG ARBITRAGE = {}", (buyCrossPair2/sellBasePair -1)*100);
+			eventLog.claim(DEBUG_ARBITRAGE_EVENT).add((buyCrossPair2/sellBasePair -1)*100).publish();
 			
 			if((arb - 0.75) > 0) {
 				ret = true;
@@ -521,108 +481,29 @@ public class TriangularArbitrager {
 			
 		} else {
 		
-		if((arb - 0.75) > 0) {
-			System.out.println("=====> Arbitrage2 (with fees): " + String.format("%.8f", arb - 0.75));
+		if((arb - 0.75) > 0 && !isReadyToTrade()) {
+			eventLog.claim(ARBITRAGE2_EVENT).add(arb - 0.75, 8).publish();
+			eventLog.claim(ORDERS_OPEN_EVENT).publish();
+			ret = true;
+		} else if((arb - 0.75) > 0) {
+			long decisionTime = System.nanoTime();
+			eventLog.claim(ARBITRAGE2_EVENT).add(arb - 0.75, 8).publish();
 			
 			double tradeAmount = 0.3;
 			
-			// Trade basePair
-
+			// Legs on the pairs as given, or opposite orders on the inverted pairs if the exchange does not trade them
 			double sellAmountbasePair = tradeAmount*basePairPrice;
-			Callable<String> callable_orderBasePair = () -> {
-				String baseTrade;
-				try {
-					baseTrade = exchange.placeLimitOrderBid(basePair, basePairPrice, sellAmountbasePair);
-				} catch (Exception e) {
-//					e.printStackTrace();
-					baseTrade = exchange.placeLimitOrderAsk(new CurrencyPair(basePair.counter, basePair.base), basePairPrice, sellAmountbasePair);
-				}
-				return baseTrade;
-			};
+			OrderLeg baseLeg = createLeg(basePair, invertedBasePair, OrderType.BID, basePairPrice, sellAmountbasePair);
 			
-			// Trade crossPair1
 			double sellAmountCrossPair1 = tradeAmount;
-			Callable<String> callable_orderCrossPair1;
-			if(twistCrossPair1) {
-				callable_orderCrossPair1 = () -> {
-					String cross1Trade;
-					try {
-						cross1Trade = exchange.placeLimitOrderBid(crossPair1, crossPair1Price, sellAmountCrossPair1);
-					} catch (Exception e) {
-//						e.printStackTrace();
-						cross1Trade = exchange.placeLimitOrderAsk(new CurrencyPair(crossPair1.counter, crossPair1.base), crossPair1Price, sellAmountCrossPair1);
-					}
-					return cross1Trade;
-				};
-			} else {
-				callable_orderCrossPair1 = () -> {
-					String cross1Trade;
-					try {
-						cross1Trade = exchange.placeLimitOrderAsk(crossPair1, crossPair1Price, sellAmountCrossPair1);
-					} catch (Exception e) {
-//						e.printStackTrace();
-						cross1Trade = exchange.placeLimitOrderBid(new CurrencyPair(crossPair1.counter, crossPair1.base), crossPair1Price, sellAmountCrossPair1);
-					}
-					return cross1Trade;
-				};
-			}
-
-			// Trade crossPair2
-			Callable<String> callable_orderCrossPair2;
-			if(twistCrossPair2) {
-				double sellAmountCrossPair2 = sellAmountCrossPair1*crossPair1Price;
-				callable_orderCrossPair2 = () -> {
-					String cross2Trade;
-					try {
-						cross2Trade = exchange.placeLimitOrderBid(crossPair1, crossPair2Price, sellAmountCrossPair2);
-					} catch (Exception e) {
-//						e.printStackTrace();
-						cross2Trade = exchange.placeLimitOrderAsk(new CurrencyPair(crossPair1.counter, crossPair1.base), crossPair2Price, sellAmountCrossPair2);
-					}
-					return cross2Trade;
-				};
-			} else {
-				double sellAmountCrossPair2 = sellAmountCrossPair1/crossPair1Price;
-				callable_orderCrossPair2 = () -> {
-					String cross2Trade;
-					try {
-						cross2Trade = exchange.placeLimitOrderAsk(crossPair1, crossPair2Price, sellAmountCrossPair2);
-					} catch (Exception e) {
-//						e.printStackTrace();
-						cross2Trade = exchange.placeLimitOrderBid(new CurrencyPair(crossPair1.counter, crossPair1.base), crossPair2Price, sellAmountCrossPair2);
-					}
-					return cross2Trade;
-				};
-			}
-
+			OrderLeg cross1Leg = createLeg(crossPair1, invertedCrossPair1, twistCrossPair1 ? OrderType.BID : OrderType.ASK,
+					crossPair1Price, sellAmountCrossPair1);
+			
+			double sellAmountCrossPair2 = twistCrossPair2 ? sellAmountCrossPair1*crossPair1Price : sellAmountCrossPair1/crossPair1Price;
+			OrderLeg cross2Leg = createLeg(crossPair2, invertedCrossPair2, twistCrossPair2 ? OrderType.BID : OrderType.ASK,
+					crossPair2Price, sellAmountCrossPair2);
 
-			Future<String> future_order1 = networkExecutorService.submit(callable_orderBasePair);
-			Future<String> future_order2 = networkExecutorService.submit(callable_orderCrossPair1);
-			Future<String> future_order3 = networkExecutorService.submit(callable_orderCrossPair2);
-
-			String orderID_trade1 = "";
-			String orderID_trade2 = "";
-			String orderID_trade3 = "";
-			try {
-				orderID_trade1 = future_order1.get();
-				LOGGER.info("Order1 Placed. ID: {}", orderID_trade1);
-				orderID_trade2 = future_order2.get();
-				LOGGER.info("Order2 Placed. ID: {}", orderID_trade2);
-				orderID_trade3 = future_order3.get();
-				LOGGER.info("Order2 Placed. ID: {}", orderID_trade3);
-
-			} catch (Exception e) {
-				e.printStackTrace();
-//				 boolean exchange1_cancelled =
-//				 exchange1.cancelOrder(orderID_exchange1);
-//				 boolean exchange2_cancelled =
-//				 exchange2.cancelOrder(orderID_exchange1);
-				System.err.println("Fatal trade error, terminating application.");
-				System.exit(1);
-			}
-			Thread.sleep(2000);
-			updateWallet();
-			System.exit(0);
+			submit(decisionTime, baseLeg, cross1Leg, cross2Leg);
 			ret = true;
 			}
 
@@ -656,9 +537,9 @@ public class TriangularArbitrager {
 			return exchange.fetchOrderbook(crossPair2);
 		};
 
-		Future<OrderBook> future_Orderbook1 = networkExecutorService.submit(callable_Orderbook1);
-		Future<OrderBook> future_Orderbook2 = networkExecutorService.submit(callable_Orderbook2);
-		Future<OrderBook> future_Orderbook3 = networkExecutorService.submit(callable_Orderbook3);
+		Future<OrderBook> future_Orderbook1 = exchange.getNetworkExecutor().submit(callable_Orderbook1);
+		Future<OrderBook> future_Orderbook2 = exchange.getNetworkExecutor().submit(callable_Orderbook2);
+		Future<OrderBook> future_Orderbook3 = exchange.getNetworkExecutor().submit(callable_Orderbook3);
 
 		try {
 			orderBook1 = future_Orderbook1.get();
@@ -742,8 +623,90 @@ public class TriangularArbitrager {
 		return crossPair2;
 	}
 	
-	public String formatDecimals(double doubleVal) {
-		return String.format("%." + exchange.getDecimals() + "f", doubleVal);
+	/**
+	 * Sets System.nanoTime of the websocket frame that triggered the next evaluation, so submitted orders record
+	 * their tick to trade latency.
+	 * @param triggerTime 0 if unknown
+	 */
+	protected void setTriggerTime(long triggerTime) {
+		this.triggerTime = triggerTime;
+	}
+	
+	/**
+	 * Gets EventLog for messages of the evaluating thread.
+	 * @return
+	 */
+	protected EventLog getEventLog() {
+		return eventLog;
+	}
+	
+	/**
+	 * Creates leg on the pair if the exchange trades it, otherwise the opposite order on the inverted pair. Price and
+	 * amount are converted for the inverted pair, the counter amount of the order stays the same.
+	 * @param currencyPair
+	 * @param invertedPair
+	 * @param orderType order type on currencyPair
+	 * @param price on currencyPair
+	 * @param amount in the base currency of currencyPair
+	 * @return
+	 */
+	private OrderLeg createLeg(CurrencyPair currencyPair, CurrencyPair invertedPair, OrderType orderType, double price,
+			double amount) {
+		OrderGateway orderGateway = exchange.getOrderGateway();
+		if (exchange.getCurrencyPairs().contains(currencyPair)) {
+			return new OrderLeg(orderGateway.getTemplate(currencyPair, orderType), price, amount);
+		}
+		OrderType oppositeType = orderType == OrderType.BID ? OrderType.ASK : OrderType.BID;
+		// Buying amount base for amount*price counter is selling amount*price counter at 1/price
+		return new OrderLeg(orderGateway.getTemplate(invertedPair, oppositeType), 1 / price, amount * price);
+	}
+	
+	/**
+	 * Checks if the orders of the last traded chance are done. Balances are updated once they are.
+	 * @return false while orders are open
+	 * @throws NotAvailableFromExchangeException
+	 * @throws NotYetImplementedForExchangeException
+	 * @throws ExchangeException
+	 * @throws IOException
+	 */
+	private boolean isReadyToTrade() throws NotAvailableFromExchangeException, NotYetImplementedForExchangeException,
+			ExchangeException, IOException {
+		if (execution != null && !execution.isDone()) {
+			return false;
+		}
+		updateWallet();
+		return true;
+	}
+
+	/**
+	 * Submits legs of a chance to the order tracker of the exchange and returns without waiting for the exchange.
+	 * @param decisionTime System.nanoTime when the arbitrage chance was detected
+	 * @param legs
+	 */
+	private void submit(long decisionTime, OrderLeg... legs) {
+		execution = exchange.getOrderTracker().submitAll(legs);
+		recordDispatch(decisionTime);
+		eventLog.claim(ORDERS_SUBMITTED_EVENT).add(legs.length).publish();
+		execution.getCompletion().thenAccept(this::receiveExecution);
+	}
+
+	/**
+	 * Receives orders of a chance when they are done, called by the order tracker.
+	 * @param trackedExecution
+	 */
+	private void receiveExecution(TrackedExecution trackedExecution) {
+		LOGGER.info("[{}] Orders done: {}", exchange, trackedExecution);
+		updateWallets = true;
+	}
+	
+	/**
+	 * Records latencies of orders just submitted to the network executor.
+	 * @param decisionTime System.nanoTime when the arbitrage chance was detected
+	 */
+	private void recordDispatch(long decisionTime) {
+		long dispatchTime = System.nanoTime();
+		tracer.record(LatencyTracer.Stage.DISPATCH, decisionTime, dispatchTime);
+		tracer.record(LatencyTracer.Stage.TICK_TO_TRADE, triggerTime, dispatchTime);
 	}
 	
 	/**
@@ -0,0 +1,92 @@
+package de.gekko.arbitrager;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+
+/**
+ * Directed cycle of three trades that starts and ends in the same currency, e.g. BTC -> ETH -> OMG -> BTC. Each leg
+ * either sells the base currency of its market at the bid or buys it at the ask.
+ * @author Maximilian Pfister
+ *
+ */
+public class TriangularCycle {
+
+	/* constants */
+
+	public static final int LEGS = 3;
+
+	/* variables */
+
+	private final int index;
+	private final Currency[] currencies;
+	private final CurrencyPair[] currencyPairs;
+	private final int[] markets;
+	private final boolean[] sell;
+
+	/* constructors */
+
+	/**
+	 * @param index position of the cycle in the list of cycles of its graph
+	 * @param currencies currency held before each leg
+	 * @param currencyPairs market of each leg
+	 * @param markets market index of each leg in the graph
+	 */
+	public TriangularCycle(int index, Currency[] currencies, CurrencyPair[] currencyPairs, int[] markets) {
+		this.index = index;
+		this.currencies = currencies;
+		this.currencyPairs = currencyPairs;
+		this.markets = markets;
+		this.sell = new boolean[LEGS];
+		for (int leg = 0; leg < LEGS; leg++) {
+			// Holding the base currency means selling it
+			sell[leg] = currencyPairs[leg].base.equals(currencies[leg]);
+		}
+	}
+
+	/* public methods */
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets currency that is held before the leg and sold by it.
+	 * @param leg
+	 * @return
+	 */
+	public Currency getCurrency(int leg) {
+		return currencies[leg];
+	}
+
+	public CurrencyPair getCurrencyPair(int leg) {
+		return currencyPairs[leg];
+	}
+
+	public int getMarket(int leg) {
+		return markets[leg];
+	}
+
+	/**
+	 * Checks if the leg sells the base currency of its market (at the bid) or buys it (at the ask).
+	 * @param leg
+	 * @return
+	 */
+	public boolean isSell(int leg) {
+		return sell[leg];
+	}
+
+	/**
+	 * Checks if the cycle trades on a market.
+	 * @param market
+	 * @return
+	 */
+	public boolean containsMarket(int market) {
+		return markets[0] == market || markets[1] == market || markets[2] == market;
+	}
+
+	@Override
+	public String toString() {
+		return currencies[0] + " -> " + currencies[1] + " -> " + currencies[2] + " -> " + currencies[0];
+	}
+
+}
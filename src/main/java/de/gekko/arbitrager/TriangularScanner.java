@@ -0,0 +1,287 @@
+package de.gekko.arbitrager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Evaluates the triangular cycles of a {@link CurrencyGraph} against the best prices of its markets. Prices and fees
+ * are folded into one conversion rate per market and direction, kept in flat arrays together with its logarithm.
+ * <p>
+ * Evaluation is incremental: each cycle caches the log-rates of its three legs and their sum, and an index from
+ * market to the legs trading on it limits every evaluation to the cycles of the markets that changed since the last
+ * one. The cost of an update is therefore proportional to the cycles of its market, not to all cycles.
+ * <p>
+ * Not thread safe, prices are expected to be updated and evaluated by the same thread.
+ * @author Maximilian Pfister
+ *
+ */
+public class TriangularScanner {
+
+	/* variables */
+
+	private final CurrencyGraph graph;
+	private final List<TriangularCycle> cycles;
+	// Rate index of each leg, cycle c uses leg slots 3c to 3c+2
+	private final int[] cycleRates;
+	// Amount received per unit sold: index 2m sells base of market m at the bid, 2m+1 buys it at the ask
+	private final double[] rates;
+	private final double[] logRates;
+	private final double[] bidPrices;
+	private final double[] askPrices;
+	private final double[] fees;
+
+	// Cached log-rate of each leg slot and sum per cycle
+	private final double[] legLogRates;
+	private final double[] cycleLogRates;
+	// Leg slots by market, slots of market m are marketLegs[marketLegOffsets[m]] to marketLegs[marketLegOffsets[m + 1] - 1]
+	private final int[] marketLegOffsets;
+	private final int[] marketLegs;
+
+	// Markets changed since last evaluation
+	private final int[] dirtyMarkets;
+	private final boolean[] dirty;
+	private int dirtyCount = 0;
+	// Cycles touched by the current evaluation
+	private final int[] touchedCycles;
+	private final int[] cycleStamps;
+	private int stamp = 0;
+
+	private double minProfit;
+	private double minLogRate;
+	// Read by other threads, e.g. for metrics
+	private volatile long opportunityCount = 0;
+	private volatile long evaluationCount = 0;
+	private final Set<ReceiveTriangularOpportunity> subscribers = new CopyOnWriteArraySet<>();
+
+	/* constructors */
+
+	/**
+	 * @param graph
+	 * @param minProfit minimum relative profit after fees to report a cycle, fees are set per market
+	 */
+	public TriangularScanner(CurrencyGraph graph, double minProfit) {
+		this.graph = graph;
+		this.cycles = graph.findTriangularCycles();
+		setMinProfit(minProfit);
+		int marketCount = graph.getMarketCount();
+		int legCount = TriangularCycle.LEGS * cycles.size();
+		this.rates = new double[2 * marketCount];
+		this.logRates = new double[2 * marketCount];
+		this.bidPrices = new double[marketCount];
+		this.askPrices = new double[marketCount];
+		this.fees = new double[marketCount];
+		this.cycleRates = new int[legCount];
+		this.legLogRates = new double[legCount];
+		this.cycleLogRates = new double[cycles.size()];
+		this.dirtyMarkets = new int[marketCount];
+		this.dirty = new boolean[marketCount];
+		this.touchedCycles = new int[cycles.size()];
+		this.cycleStamps = new int[cycles.size()];
+
+		// Build market to leg index
+		this.marketLegOffsets = new int[marketCount + 1];
+		this.marketLegs = new int[legCount];
+		for (TriangularCycle cycle : cycles) {
+			for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+				cycleRates[TriangularCycle.LEGS * cycle.getIndex() + leg] = 2 * cycle.getMarket(leg) + (cycle.isSell(leg) ? 0 : 1);
+				marketLegOffsets[cycle.getMarket(leg) + 1]++;
+			}
+		}
+		for (int market = 0; market < marketCount; market++) {
+			marketLegOffsets[market + 1] += marketLegOffsets[market];
+		}
+		int[] positions = new int[marketCount];
+		for (int slot = 0; slot < legCount; slot++) {
+			int market = cycleRates[slot] >> 1;
+			marketLegs[marketLegOffsets[market] + positions[market]++] = slot;
+		}
+
+		// No prices yet, nothing is profitable
+		for (int rate = 0; rate < logRates.length; rate++) {
+			logRates[rate] = Double.NEGATIVE_INFINITY;
+		}
+		for (int slot = 0; slot < legCount; slot++) {
+			legLogRates[slot] = Double.NEGATIVE_INFINITY;
+		}
+		for (int cycle = 0; cycle < cycleLogRates.length; cycle++) {
+			cycleLogRates[cycle] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Sets best prices of a market. Missing sides (price 0) make every cycle through the market unprofitable.
+	 * @param market
+	 * @param bidPrice
+	 * @param askPrice
+	 */
+	public void updateTopOfBook(int market, double bidPrice, double askPrice) {
+		bidPrices[market] = bidPrice;
+		askPrices[market] = askPrice;
+		updateRates(market);
+	}
+
+	/**
+	 * Re-evaluates the cycles of all markets that changed since the last evaluation and notifies subscribers about
+	 * the profitable ones.
+	 * @return number of profitable cycles among the re-evaluated ones
+	 */
+	public int evaluate() {
+		if (++stamp == 0) {
+			// Stamp wrapped around, forget old stamps
+			Arrays.fill(cycleStamps, 0);
+			stamp = 1;
+		}
+		// Refresh cached legs of changed markets and collect their cycles
+		int touchedCount = 0;
+		for (int i = 0; i < dirtyCount; i++) {
+			int market = dirtyMarkets[i];
+			dirty[market] = false;
+			for (int k = marketLegOffsets[market]; k < marketLegOffsets[market + 1]; k++) {
+				int slot = marketLegs[k];
+				legLogRates[slot] = logRates[cycleRates[slot]];
+				int cycle = slot / TriangularCycle.LEGS;
+				if (cycleStamps[cycle] != stamp) {
+					cycleStamps[cycle] = stamp;
+					touchedCycles[touchedCount++] = cycle;
+				}
+			}
+		}
+		dirtyCount = 0;
+
+		// Re-sum touched cycles, untouched legs are reused from cache
+		int profitable = 0;
+		for (int i = 0; i < touchedCount; i++) {
+			int cycle = touchedCycles[i];
+			int offset = TriangularCycle.LEGS * cycle;
+			double logRate = legLogRates[offset] + legLogRates[offset + 1] + legLogRates[offset + 2];
+			cycleLogRates[cycle] = logRate;
+			if (logRate > minLogRate) {
+				profitable++;
+				notifySubscribers(cycles.get(cycle), Math.expm1(logRate));
+			}
+		}
+		evaluationCount += touchedCount;
+		opportunityCount += profitable;
+		return profitable;
+	}
+
+	/**
+	 * Re-evaluates every cycle regardless of changes.
+	 * @return number of profitable cycles
+	 */
+	public int evaluateAll() {
+		for (int market = 0; market < dirty.length; market++) {
+			markDirty(market);
+		}
+		return evaluate();
+	}
+
+	/**
+	 * Gets relative profit after fees of a single cycle at the current prices.
+	 * @param cycle
+	 * @return
+	 */
+	public double getProfit(TriangularCycle cycle) {
+		int offset = TriangularCycle.LEGS * cycle.getIndex();
+		return rates[cycleRates[offset]] * rates[cycleRates[offset + 1]] * rates[cycleRates[offset + 2]] - 1;
+	}
+
+	/**
+	 * Sets trading fee of a market.
+	 * @param market
+	 * @param fee e.g. 0.0025
+	 */
+	public void setFee(int market, double fee) {
+		fees[market] = fee;
+		updateRates(market);
+	}
+
+	public double getFee(int market) {
+		return fees[market];
+	}
+
+	/**
+	 * Sets minimum relative profit after fees, only applies to cycles evaluated afterwards.
+	 * @param minProfit
+	 */
+	public void setMinProfit(double minProfit) {
+		this.minProfit = minProfit;
+		this.minLogRate = Math.log1p(minProfit);
+	}
+
+	public double getMinProfit() {
+		return minProfit;
+	}
+
+	public void addSubscriber(ReceiveTriangularOpportunity subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	public void removeSubscriber(ReceiveTriangularOpportunity subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	public CurrencyGraph getGraph() {
+		return graph;
+	}
+
+	public List<TriangularCycle> getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Gets number of cycles trading on a market.
+	 * @param market
+	 * @return
+	 */
+	public int getCycleCount(int market) {
+		return marketLegOffsets[market + 1] - marketLegOffsets[market];
+	}
+
+	/**
+	 * Gets number of profitable cycles found by all evaluations so far.
+	 * @return
+	 */
+	public long getOpportunityCount() {
+		return opportunityCount;
+	}
+
+	/**
+	 * Gets number of cycles re-evaluated by all evaluations so far.
+	 * @return
+	 */
+	public long getEvaluationCount() {
+		return evaluationCount;
+	}
+
+	/* private methods */
+
+	private void updateRates(int market) {
+		double feeFactor = 1 - fees[market];
+		double bidPrice = bidPrices[market];
+		double askPrice = askPrices[market];
+		rates[2 * market] = bidPrice > 0 ? bidPrice * feeFactor : 0;
+		rates[2 * market + 1] = askPrice > 0 ? feeFactor / askPrice : 0;
+		logRates[2 * market] = Math.log(rates[2 * market]);
+		logRates[2 * market + 1] = Math.log(rates[2 * market + 1]);
+		markDirty(market);
+	}
+
+	private void markDirty(int market) {
+		if (!dirty[market]) {
+			dirty[market] = true;
+			dirtyMarkets[dirtyCount++] = market;
+		}
+	}
+
+	private void notifySubscribers(TriangularCycle cycle, double profit) {
+		for (ReceiveTriangularOpportunity subscriber : subscribers) {
+			subscriber.receiveOpportunity(cycle, profit);
+		}
+	}
+
+}
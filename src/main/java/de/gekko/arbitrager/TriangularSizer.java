@@ -0,0 +1,272 @@
+package de.gekko.arbitrager;
+
+import de.gekko.orderbook.BookSide;
+import de.gekko.orderbook.FixedPoint;
+import de.gekko.websocket.TopOfBookUpdate;
+
+/**
+ * Finds the profit maximizing size of a triangular cycle by walking multiple levels of all three books. Each leg is a
+ * piecewise linear conversion with decreasing rate per level, so the whole cycle is concave in the start amount: the
+ * walk advances from breakpoint to breakpoint (the next level of any leg or a limit) as long as the marginal rate of
+ * the three current levels after fees is above one.
+ * <p>
+ * Levels are copied into preallocated arrays and results are kept in fields, so sizing does not allocate. An instance
+ * is reused for all cycles of one thread, results are valid until the next call of {@link #size(double)}.
+ * @author Maximilian Pfister
+ *
+ */
+public class TriangularSizer {
+
+	/* constants */
+
+	private static final int LEGS = TriangularCycle.LEGS;
+	private static final double EPSILON = 1e-12;
+
+	/* variables */
+
+	private final int maxLevels;
+
+	// Leg input
+	private final double[][] prices;
+	private final double[][] quantities;
+	private final int[] levels = new int[LEGS];
+	private final boolean[] sell = new boolean[LEGS];
+	private final double[] feeFactors = new double[LEGS];
+	private final double[] balances = new double[LEGS];
+
+	// Walk state
+	private final int[] level = new int[LEGS];
+	private final double[] remaining = new double[LEGS];
+	private final double[] rates = new double[LEGS];
+
+	// Results
+	private double amount;
+	private double profit;
+	private boolean depthExhausted;
+	private final double[] inputAmounts = new double[LEGS];
+	private final double[] outputAmounts = new double[LEGS];
+	private final double[] baseQuantities = new double[LEGS];
+	private final double[] limitPrices = new double[LEGS];
+	private final int[] levelsUsed = new int[LEGS];
+
+	/* constructors */
+
+	/**
+	 * @param maxLevels maximum number of levels per leg that are considered
+	 */
+	public TriangularSizer(int maxLevels) {
+		this.maxLevels = maxLevels;
+		this.prices = new double[LEGS][maxLevels];
+		this.quantities = new double[LEGS][maxLevels];
+	}
+
+	/* public methods */
+
+	/**
+	 * Sets the book levels a leg trades against: bids if the leg sells the base currency, asks if it buys it.
+	 * @param leg
+	 * @param sell
+	 * @param fee trading fee of the market, e.g. 0.0025
+	 * @param side
+	 */
+	public void setLeg(int leg, boolean sell, double fee, BookSide side) {
+		int count = Math.min(maxLevels, side.size());
+		for (int i = 0; i < count; i++) {
+			prices[leg][i] = FixedPoint.toDouble(side.price(i));
+			quantities[leg][i] = FixedPoint.toDouble(side.quantity(i));
+		}
+		setLeg(leg, sell, fee, count);
+	}
+
+	/**
+	 * Sets the book levels a leg trades against from a top of book event, see {@link #setLeg(int, boolean, double, BookSide)}.
+	 * @param leg
+	 * @param sell
+	 * @param fee
+	 * @param update
+	 */
+	public void setLeg(int leg, boolean sell, double fee, TopOfBookUpdate update) {
+		int count = Math.min(maxLevels, sell ? update.getBidLevels() : update.getAskLevels());
+		for (int i = 0; i < count; i++) {
+			prices[leg][i] = FixedPoint.toDouble(sell ? update.getBidPrice(i) : update.getAskPrice(i));
+			quantities[leg][i] = FixedPoint.toDouble(sell ? update.getBidQuantity(i) : update.getAskQuantity(i));
+		}
+		setLeg(leg, sell, fee, count);
+	}
+
+	/**
+	 * Sets the available balance of the currency a leg sells. Legs are fired at the same time, so every leg is limited
+	 * by its own balance.
+	 * @param leg
+	 * @param balance
+	 */
+	public void setBalance(int leg, double balance) {
+		balances[leg] = balance;
+	}
+
+	/**
+	 * Computes the profit maximizing amount of the start currency and the resulting per leg quantities.
+	 * @param maxAmount maximum amount of the start currency, e.g. MAX_TRADE_AMOUNT
+	 * @return true if trading a positive amount is profitable
+	 */
+	public boolean size(double maxAmount) {
+		amount = 0;
+		profit = 0;
+		depthExhausted = false;
+		for (int leg = 0; leg < LEGS; leg++) {
+			inputAmounts[leg] = 0;
+			outputAmounts[leg] = 0;
+			baseQuantities[leg] = 0;
+			limitPrices[leg] = 0;
+			levelsUsed[leg] = 0;
+			level[leg] = 0;
+			remaining[leg] = levels[leg] > 0 ? quantities[leg][0] : 0;
+		}
+
+		while (true) {
+			// Current level of every leg
+			for (int leg = 0; leg < LEGS; leg++) {
+				if (level[leg] >= levels[leg]) {
+					depthExhausted = true;
+					return finish();
+				}
+				double price = prices[leg][level[leg]];
+				rates[leg] = sell[leg] ? price * feeFactors[leg] : feeFactors[leg] / price;
+			}
+			double scale1 = rates[0];
+			double scale2 = rates[0] * rates[1];
+			if (scale2 * rates[2] <= 1) {
+				return finish();
+			}
+
+			// Largest step in start currency until the next breakpoint
+			double step = maxAmount - amount;
+			step = Math.min(step, inputCapacity(0));
+			step = Math.min(step, inputCapacity(1) / scale1);
+			step = Math.min(step, inputCapacity(2) / scale2);
+			step = Math.min(step, balances[0] - inputAmounts[0]);
+			step = Math.min(step, (balances[1] - inputAmounts[1]) / scale1);
+			step = Math.min(step, (balances[2] - inputAmounts[2]) / scale2);
+			if (step <= 0) {
+				return finish();
+			}
+
+			consume(0, step);
+			consume(1, step * scale1);
+			consume(2, step * scale2);
+			amount += step;
+		}
+	}
+
+	/**
+	 * Gets sized amount of the start currency.
+	 * @return
+	 */
+	public double getAmount() {
+		return amount;
+	}
+
+	/**
+	 * Gets expected profit in start currency after fees.
+	 * @return
+	 */
+	public double getProfit() {
+		return profit;
+	}
+
+	/**
+	 * Checks if the size was limited by the number of available levels rather than prices or limits.
+	 * @return
+	 */
+	public boolean isDepthExhausted() {
+		return depthExhausted;
+	}
+
+	/**
+	 * Gets amount of the currency sold by a leg.
+	 * @param leg
+	 * @return
+	 */
+	public double getInputAmount(int leg) {
+		return inputAmounts[leg];
+	}
+
+	/**
+	 * Gets amount of the currency bought by a leg after fees.
+	 * @param leg
+	 * @return
+	 */
+	public double getOutputAmount(int leg) {
+		return outputAmounts[leg];
+	}
+
+	/**
+	 * Gets order quantity of a leg in the base currency of its market.
+	 * @param leg
+	 * @return
+	 */
+	public double getBaseQuantity(int leg) {
+		return baseQuantities[leg];
+	}
+
+	/**
+	 * Gets worst price a leg trades at, to be used as limit price of its order.
+	 * @param leg
+	 * @return
+	 */
+	public double getLimitPrice(int leg) {
+		return limitPrices[leg];
+	}
+
+	/**
+	 * Gets number of levels a leg trades against.
+	 * @param leg
+	 * @return
+	 */
+	public int getLevelsUsed(int leg) {
+		return levelsUsed[leg];
+	}
+
+	/* private methods */
+
+	private void setLeg(int leg, boolean sell, double fee, int count) {
+		this.sell[leg] = sell;
+		this.feeFactors[leg] = 1 - fee;
+		this.levels[leg] = count;
+		this.balances[leg] = Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Gets amount of the sold currency the current level of a leg can still take.
+	 */
+	private double inputCapacity(int leg) {
+		return sell[leg] ? remaining[leg] : remaining[leg] * prices[leg][level[leg]];
+	}
+
+	/**
+	 * Trades input amount against the current level of a leg, moves to the next level once it is used up.
+	 */
+	private void consume(int leg, double input) {
+		double price = prices[leg][level[leg]];
+		double quantity = sell[leg] ? input : input / price;
+		inputAmounts[leg] += input;
+		outputAmounts[leg] += input * rates[leg];
+		baseQuantities[leg] += quantity;
+		limitPrices[leg] = price;
+		levelsUsed[leg] = level[leg] + 1;
+		remaining[leg] -= quantity;
+		if (remaining[leg] <= quantities[leg][level[leg]] * EPSILON) {
+			level[leg]++;
+			remaining[leg] = level[leg] < levels[leg] ? quantities[leg][level[leg]] : 0;
+		}
+	}
+
+	private boolean finish() {
+		if (amount <= 0) {
+			return false;
+		}
+		profit = outputAmounts[LEGS - 1] - amount;
+		return profit > 0;
+	}
+
+}
@@ -0,0 +1,161 @@
+package de.gekko.arbitrager;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary heap of one price per venue (exchange index), best price on top. Setting or removing the price of a
+ * venue is O(log n), the best and second best venue are read in O(1).
+ * @author Maximilian Pfister
+ *
+ */
+class VenueHeap {
+
+	/* variables */
+
+	private final boolean highestFirst;
+	private final double[] prices;
+	private final int[] heap;
+	private final int[] positions; // -1 if the venue has no price
+	private int size = 0;
+
+	/* constructors */
+
+	/**
+	 * @param venues number of venues
+	 * @param highestFirst true for bids, false for asks
+	 */
+	VenueHeap(int venues, boolean highestFirst) {
+		this.highestFirst = highestFirst;
+		this.prices = new double[venues];
+		this.heap = new int[venues];
+		this.positions = new int[venues];
+		Arrays.fill(positions, -1);
+	}
+
+	/* package methods */
+
+	/**
+	 * Sets price of a venue.
+	 * @param venue
+	 * @param price NaN removes the venue
+	 */
+	void set(int venue, double price) {
+		if (Double.isNaN(price)) {
+			remove(venue);
+			return;
+		}
+		int position = positions[venue];
+		if (position < 0) {
+			prices[venue] = price;
+			position = size++;
+			place(venue, position);
+			siftUp(position);
+			return;
+		}
+		boolean better = isBetter(price, prices[venue]);
+		prices[venue] = price;
+		if (better) {
+			siftUp(position);
+		} else {
+			siftDown(position);
+		}
+	}
+
+	void remove(int venue) {
+		int position = positions[venue];
+		if (position < 0) {
+			return;
+		}
+		positions[venue] = -1;
+		int last = heap[--size];
+		if (position == size) {
+			return;
+		}
+		place(last, position);
+		siftUp(position);
+		siftDown(positions[last]);
+	}
+
+	/**
+	 * Gets venue with the best price.
+	 * @return -1 if empty
+	 */
+	int best() {
+		return size > 0 ? heap[0] : -1;
+	}
+
+	/**
+	 * Gets venue with the second best price, one of the children of the top.
+	 * @return -1 if less than two venues have a price
+	 */
+	int secondBest() {
+		if (size < 2) {
+			return -1;
+		}
+		if (size == 2 || isBetter(prices[heap[1]], prices[heap[2]])) {
+			return heap[1];
+		}
+		return heap[2];
+	}
+
+	/**
+	 * Gets best venue other than the excluded one.
+	 * @param excludedVenue
+	 * @return -1 if there is none
+	 */
+	int bestExcept(int excludedVenue) {
+		int best = best();
+		return best == excludedVenue ? secondBest() : best;
+	}
+
+	double getPrice(int venue) {
+		return positions[venue] < 0 ? Double.NaN : prices[venue];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/* private methods */
+
+	private boolean isBetter(double price, double other) {
+		return highestFirst ? price > other : price < other;
+	}
+
+	private void place(int venue, int position) {
+		heap[position] = venue;
+		positions[venue] = position;
+	}
+
+	private void siftUp(int position) {
+		int venue = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (!isBetter(prices[venue], prices[heap[parent]])) {
+				break;
+			}
+			place(heap[parent], position);
+			position = parent;
+		}
+		place(venue, position);
+	}
+
+	private void siftDown(int position) {
+		int venue = heap[position];
+		int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if (right < size && isBetter(prices[heap[right]], prices[heap[child]])) {
+				child = right;
+			}
+			if (!isBetter(prices[heap[child]], prices[venue])) {
+				break;
+			}
+			place(heap[child], position);
+			position = child;
+		}
+		place(venue, position);
+	}
+
+}
@@ -0,0 +1,345 @@
+package de.gekko.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.concurrency.BlockingWaitStrategy;
+import de.gekko.concurrency.RingBuffer;
+
+/**
+ * Simulates trading of a subset of keys, triangular cycles or markets traded across exchanges. Consumes recorded
+ * events in recording order, subclasses evaluate them and signal keys above a threshold. All legs of a signalled key
+ * are sent at once as immediate or cancel limit orders.
+ * <p>
+ * A leg arrives after latency plus jitter and is filled by the subclass against the recorded book of its market at
+ * arrival time, up to its limit price. Every threshold is simulated independently and a key is not sent again while
+ * one of its executions is in flight. Orders do not consume recorded liquidity.
+ * @author Maximilian Pfister
+ *
+ * @param <E> recorded event
+ * @param <K> simulated key
+ * @param <L> leg of an execution
+ */
+abstract class AbstractBacktestPartition<E extends BacktestEvent, K, L extends AbstractBacktestPartition.Leg>
+		implements Runnable {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractBacktestPartition.class);
+
+	private static final int RING_BUFFER_CAPACITY = 4096;
+	private static final double FILL_EPSILON = 1e-9;
+
+	/* variables */
+
+	private final RingBuffer<E> ringBuffer;
+	private final double[] thresholds;
+	private final long latency;
+	private final long jitter;
+
+	// Legs in flight by market
+	private final List<List<L>> pendingLegs;
+	// Execution in flight and results by threshold and key
+	private final boolean[][] executing;
+	private final List<List<BacktestResult<K>>> results;
+	// Jitter per key, so results do not depend on the partitioning
+	private final SplittableRandom[] randoms;
+	private long time = 0;
+
+	/* constructors */
+
+	/**
+	 * @param eventFactory
+	 * @param keys all keys of the recording
+	 * @param ownedKeys keys simulated by this partition, indices into keys
+	 * @param marketCount markets of the recording
+	 * @param thresholds one simulation each
+	 * @param latency nanoseconds from decision to arrival of an order
+	 * @param jitter maximum random nanoseconds added to the latency of each leg
+	 * @param seed
+	 */
+	protected AbstractBacktestPartition(Supplier<E> eventFactory, List<K> keys, List<Integer> ownedKeys, int marketCount,
+			double[] thresholds, long latency, long jitter, long seed) {
+		this.ringBuffer = new RingBuffer<>(eventFactory, RING_BUFFER_CAPACITY, new BlockingWaitStrategy());
+		this.thresholds = thresholds;
+		this.latency = latency;
+		this.jitter = jitter;
+
+		this.pendingLegs = new ArrayList<>(marketCount);
+		for (int market = 0; market < marketCount; market++) {
+			pendingLegs.add(new ArrayList<>());
+		}
+		this.executing = new boolean[thresholds.length][keys.size()];
+		this.results = new ArrayList<>(thresholds.length);
+		for (int threshold = 0; threshold < thresholds.length; threshold++) {
+			List<BacktestResult<K>> thresholdResults = new ArrayList<>(keys.size());
+			for (int key = 0; key < keys.size(); key++) {
+				thresholdResults.add(null);
+			}
+			results.add(thresholdResults);
+		}
+		this.randoms = new SplittableRandom[keys.size()];
+		for (int key : ownedKeys) {
+			randoms[key] = new SplittableRandom(seed ^ key);
+			for (int threshold = 0; threshold < thresholds.length; threshold++) {
+				results.get(threshold).set(key, new BacktestResult<>(keys.get(key), thresholds[threshold]));
+			}
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Simulation routine, returns after the end of the recording.
+	 */
+	@Override
+	public void run() {
+		long sequence = 0;
+		while (true) {
+			long available;
+			try {
+				available = ringBuffer.waitFor(sequence);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOGGER.warn("Interrupted, results are incomplete");
+				return;
+			}
+			for (; sequence <= available; sequence++) {
+				E event = ringBuffer.get(sequence);
+				if (event.getMarket() == BacktestEvent.END_OF_RECORDING) {
+					ringBuffer.release(sequence);
+					finish();
+					return;
+				}
+				processEvent(event);
+			}
+			ringBuffer.release(available);
+		}
+	}
+
+	/* protected methods */
+
+	/**
+	 * Evaluates a recorded event. Called with the events of the partition in recording order, see
+	 * {@link #advance(long, int)}.
+	 * @param event
+	 */
+	protected abstract void processEvent(E event);
+
+	/**
+	 * Creates the legs of an execution and adds it to the result. Called for a signalled key without execution in
+	 * flight.
+	 * @param key index of the key
+	 * @param result result of the key at the signalled threshold
+	 * @return null if nothing was sent
+	 */
+	protected abstract List<L> send(int key, BacktestResult<K> result);
+
+	/**
+	 * Fills leg as immediate or cancel limit order against the recorded levels of its market.
+	 * @param leg
+	 * @return filled base quantity
+	 */
+	protected abstract double fill(L leg);
+
+	/**
+	 * Calculates profit of an execution whose legs were all filled or cancelled.
+	 * @param legs legs returned by {@link #send(int, BacktestResult)}
+	 * @return
+	 */
+	protected abstract double settle(List<L> legs);
+
+	/**
+	 * Checks if a value passes a threshold.
+	 * @param value
+	 * @param threshold
+	 * @return
+	 */
+	protected boolean passes(double value, double threshold) {
+		return value >= threshold;
+	}
+
+	/**
+	 * Moves simulation time to a recorded event and fills the legs of its market that arrived until then, against the
+	 * books before the event.
+	 * @param time
+	 * @param market
+	 */
+	protected void advance(long time, int market) {
+		this.time = time;
+		fillArrived(market, time);
+	}
+
+	/**
+	 * Sends key for every threshold the value passes.
+	 * @param key index of the key
+	 * @param value e.g. relative profit
+	 */
+	protected void signal(int key, double value) {
+		for (int threshold = 0; threshold < thresholds.length; threshold++) {
+			if (!passes(value, thresholds[threshold])) {
+				continue;
+			}
+			BacktestResult<K> result = results.get(threshold).get(key);
+			result.addSignal();
+			if (executing[threshold][key]) {
+				continue;
+			}
+			List<L> legs = send(key, result);
+			if (legs == null) {
+				continue;
+			}
+			Execution<K, L> execution = new Execution<>(threshold, key, result, legs);
+			for (L leg : legs) {
+				leg.execution = execution;
+				pendingLegs.get(leg.market).add(leg);
+			}
+			executing[threshold][key] = true;
+		}
+	}
+
+	/**
+	 * Gets arrival time of a leg sent now.
+	 * @param key index of the key, draws its jitter
+	 * @return
+	 */
+	protected long arrivalTime(int key) {
+		return time + latency + (jitter > 0 ? randoms[key].nextLong(jitter + 1) : 0);
+	}
+
+	/* package methods */
+
+	RingBuffer<E> getRingBuffer() {
+		return ringBuffer;
+	}
+
+	/**
+	 * Gets results of the owned keys.
+	 * @param threshold index of the threshold
+	 * @return
+	 */
+	List<BacktestResult<K>> getResults(int threshold) {
+		List<BacktestResult<K>> owned = new ArrayList<>();
+		for (BacktestResult<K> result : results.get(threshold)) {
+			if (result != null) {
+				owned.add(result);
+			}
+		}
+		return owned;
+	}
+
+	/**
+	 * Gets results of all partitions.
+	 * @param partitions
+	 * @param thresholdCount
+	 * @return results by threshold
+	 */
+	static <K> List<List<BacktestResult<K>>> collectResults(List<? extends AbstractBacktestPartition<?, K, ?>> partitions,
+			int thresholdCount) {
+		List<List<BacktestResult<K>>> results = new ArrayList<>();
+		for (int threshold = 0; threshold < thresholdCount; threshold++) {
+			List<BacktestResult<K>> thresholdResults = new ArrayList<>();
+			for (AbstractBacktestPartition<?, K, ?> partition : partitions) {
+				thresholdResults.addAll(partition.getResults(threshold));
+			}
+			results.add(thresholdResults);
+		}
+		return results;
+	}
+
+	/* private methods */
+
+	/**
+	 * Fills all legs of a market that arrived until the given time.
+	 */
+	private void fillArrived(int market, long time) {
+		List<L> legs = pendingLegs.get(market);
+		for (int i = 0; i < legs.size();) {
+			L leg = legs.get(i);
+			if (leg.arrivalTime > time) {
+				i++;
+				continue;
+			}
+			// Order within the list does not matter
+			legs.set(i, legs.get(legs.size() - 1));
+			legs.remove(legs.size() - 1);
+			filled(leg, fill(leg));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void filled(L leg, double filledQuantity) {
+		Execution<K, L> execution = (Execution<K, L>) leg.execution;
+		leg.filledQuantity = filledQuantity;
+		execution.result.addFill(leg.quantity, filledQuantity);
+		if (++execution.filledLegs < execution.legs.size()) {
+			return;
+		}
+		boolean complete = true;
+		for (L executionLeg : execution.legs) {
+			complete &= executionLeg.filledQuantity >= executionLeg.quantity * (1 - FILL_EPSILON);
+		}
+		execution.result.addSettlement(complete, settle(execution.legs));
+		executing[execution.threshold][execution.key] = false;
+	}
+
+	/**
+	 * Fills the legs still in flight at the end of the recording against the last books.
+	 */
+	private void finish() {
+		for (int market = 0; market < pendingLegs.size(); market++) {
+			fillArrived(market, Long.MAX_VALUE);
+		}
+	}
+
+	/* inner classes */
+
+	/**
+	 * Limit order of one leg, subclasses add price and fill details.
+	 */
+	protected static class Leg {
+
+		// Package private, members of a type variable do not include private fields
+		final int market;
+		final double quantity; // base currency of the market
+		final long arrivalTime;
+		Execution<?, ?> execution;
+		double filledQuantity;
+
+		/**
+		 * @param market market whose events fill the leg
+		 * @param quantity
+		 * @param arrivalTime see {@link AbstractBacktestPartition#arrivalTime(int)}
+		 */
+		protected Leg(int market, double quantity, long arrivalTime) {
+			this.market = market;
+			this.quantity = quantity;
+			this.arrivalTime = arrivalTime;
+		}
+	}
+
+	/**
+	 * Legs sent at once.
+	 */
+	private static class Execution<K, L extends Leg> {
+
+		private final int threshold;
+		private final int key;
+		private final BacktestResult<K> result;
+		private final List<L> legs;
+		private int filledLegs = 0;
+
+		Execution(int threshold, int key, BacktestResult<K> result, List<L> legs) {
+			this.threshold = threshold;
+			this.key = key;
+			this.result = result;
+			this.legs = legs;
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package de.gekko.backtest;
+
+/**
+ * Ring buffer entry handing a recorded event of one market to an {@link AbstractBacktestPartition}. Entries are
+ * reused.
+ * @author Maximilian Pfister
+ *
+ */
+abstract class BacktestEvent {
+
+	/* constants */
+
+	/**
+	 * Market of the event that ends the recording.
+	 */
+	static final int END_OF_RECORDING = -1;
+
+	/* variables */
+
+	private long time;
+	private int market;
+
+	/* package methods */
+
+	void set(long time, int market) {
+		this.time = time;
+		this.market = market;
+	}
+
+	/**
+	 * Gets receive time of the recorded frame.
+	 * @return System.nanoTime of the recording
+	 */
+	long getTime() {
+		return time;
+	}
+
+	int getMarket() {
+		return market;
+	}
+
+}
@@ -0,0 +1,165 @@
+package de.gekko.backtest;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.knowm.xchange.currency.Currency;
+
+/**
+ * Results of a backtest, per threshold and key: per cycle of a {@link TriangularBacktest}, per market of a
+ * {@link CrossExchangeBacktest}.
+ * @author Maximilian Pfister
+ *
+ * @param <K> simulated key
+ */
+public class BacktestReport<K> {
+
+	/* constants */
+
+	private static final int PRINTED_KEYS = 10;
+
+	/* variables */
+
+	private final double[] thresholds;
+	private final List<List<BacktestResult<K>>> results;
+	private final Function<K, Currency> profitCurrency;
+	private final String summary;
+	private final long elapsedTime;
+
+	/* constructors */
+
+	/**
+	 * @param thresholds
+	 * @param results results by threshold
+	 * @param profitCurrency currency of the profit of a key
+	 * @param summary replayed recording, e.g. number of frames
+	 * @param elapsedTime nanoseconds
+	 */
+	BacktestReport(double[] thresholds, List<List<BacktestResult<K>>> results, Function<K, Currency> profitCurrency,
+			String summary, long elapsedTime) {
+		this.thresholds = thresholds;
+		this.results = results;
+		this.profitCurrency = profitCurrency;
+		this.summary = summary;
+		this.elapsedTime = elapsedTime;
+	}
+
+	/* public methods */
+
+	public double[] getThresholds() {
+		return thresholds.clone();
+	}
+
+	/**
+	 * Gets results of all keys at a threshold.
+	 * @param threshold index into {@link #getThresholds()}
+	 * @return
+	 */
+	public List<BacktestResult<K>> getResults(int threshold) {
+		return Collections.unmodifiableList(results.get(threshold));
+	}
+
+	public long getSignalCount(int threshold) {
+		long signalCount = 0;
+		for (BacktestResult<K> result : results.get(threshold)) {
+			signalCount += result.getSignalCount();
+		}
+		return signalCount;
+	}
+
+	public long getExecutionCount(int threshold) {
+		long executionCount = 0;
+		for (BacktestResult<K> result : results.get(threshold)) {
+			executionCount += result.getExecutionCount();
+		}
+		return executionCount;
+	}
+
+	public long getCompleteExecutionCount(int threshold) {
+		long completeExecutionCount = 0;
+		for (BacktestResult<K> result : results.get(threshold)) {
+			completeExecutionCount += result.getCompleteExecutionCount();
+		}
+		return completeExecutionCount;
+	}
+
+	/**
+	 * Gets filled share of the ordered base quantity over all legs of all keys.
+	 * @param threshold
+	 * @return
+	 */
+	public double getFillRate(int threshold) {
+		double ordered = 0;
+		double filled = 0;
+		for (BacktestResult<K> result : results.get(threshold)) {
+			ordered += result.getOrderedQuantity();
+			filled += result.getFilledQuantity();
+		}
+		return ordered == 0 ? 0 : filled / ordered;
+	}
+
+	/**
+	 * Gets profit by currency, profits of different currencies can not be added up.
+	 * @param threshold
+	 * @return
+	 */
+	public Map<Currency, Double> getProfits(int threshold) {
+		Map<Currency, Double> profits = new TreeMap<>();
+		for (BacktestResult<K> result : results.get(threshold)) {
+			if (result.getExecutionCount() > 0) {
+				profits.merge(profitCurrency.apply(result.getKey()), result.getProfit(), Double::sum);
+			}
+		}
+		return profits;
+	}
+
+	/**
+	 * Gets summary of the replayed recording, e.g. number of frames.
+	 * @return
+	 */
+	public String getSummary() {
+		return summary;
+	}
+
+	/**
+	 * Gets duration of the backtest.
+	 * @return nanoseconds
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Prints summary per threshold and the most profitable keys.
+	 * @param out
+	 */
+	public void print(PrintStream out) {
+		out.println(String.format("%s in %.3f s", summary, elapsedTime / 1e9));
+		for (int threshold = 0; threshold < thresholds.length; threshold++) {
+			out.println();
+			out.println(String.format("Threshold %.4f: %d signals, %d executions (%d complete), fill rate %.4f",
+					thresholds[threshold], getSignalCount(threshold), getExecutionCount(threshold),
+					getCompleteExecutionCount(threshold), getFillRate(threshold)));
+			getProfits(threshold).forEach((currency, profit) -> out.println(String.format("  PnL %s: %.8f", currency, profit)));
+
+			List<BacktestResult<K>> executed = new ArrayList<>();
+			for (BacktestResult<K> result : results.get(threshold)) {
+				if (result.getExecutionCount() > 0) {
+					executed.add(result);
+				}
+			}
+			executed.sort(Comparator.comparingDouble(BacktestResult<K>::getProfit).reversed());
+			for (BacktestResult<K> result : executed.subList(0, Math.min(PRINTED_KEYS, executed.size()))) {
+				out.println(String.format("  %s: %d executions, fill rate %.4f, PnL %.8f (expected %.8f)", result.getKey(),
+						result.getExecutionCount(), result.getFillRate(), result.getProfit(), result.getExpectedProfit()));
+			}
+		}
+	}
+
+}
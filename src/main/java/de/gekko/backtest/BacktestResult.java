@@ -0,0 +1,135 @@
+package de.gekko.backtest;
+
+/**
+ * Simulated trading of one key at one threshold, a triangular cycle or a market traded across exchanges. Amounts and
+ * profits are in the currency the key is traded from: the start currency of a cycle, the counter currency of a market.
+ * @author Maximilian Pfister
+ *
+ */
+public class BacktestResult<K> {
+
+	/* variables */
+
+	private final K key;
+	private final double threshold;
+	private long signalCount = 0;
+	private long executionCount = 0;
+	private long completeExecutionCount = 0;
+	private double orderedQuantity = 0;
+	private double filledQuantity = 0;
+	private double volume = 0;
+	private double expectedProfit = 0;
+	private double profit = 0;
+
+	/* constructors */
+
+	BacktestResult(K key, double threshold) {
+		this.key = key;
+		this.threshold = threshold;
+	}
+
+	/* public methods */
+
+	/**
+	 * Gets simulated cycle or market.
+	 * @return
+	 */
+	public K getKey() {
+		return key;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Gets number of evaluations that found the key above the threshold, including those while an execution of the key
+	 * was still in flight.
+	 * @return
+	 */
+	public long getSignalCount() {
+		return signalCount;
+	}
+
+	/**
+	 * Gets number of times all legs were sent at once.
+	 * @return
+	 */
+	public long getExecutionCount() {
+		return executionCount;
+	}
+
+	/**
+	 * Gets number of executions whose legs were all filled completely.
+	 * @return
+	 */
+	public long getCompleteExecutionCount() {
+		return completeExecutionCount;
+	}
+
+	/**
+	 * Gets filled share of the ordered base quantity over all legs.
+	 * @return 0 to 1, 0 without executions
+	 */
+	public double getFillRate() {
+		return orderedQuantity == 0 ? 0 : filledQuantity / orderedQuantity;
+	}
+
+	double getOrderedQuantity() {
+		return orderedQuantity;
+	}
+
+	double getFilledQuantity() {
+		return filledQuantity;
+	}
+
+	/**
+	 * Gets traded amount at the time of the decisions.
+	 * @return
+	 */
+	public double getVolume() {
+		return volume;
+	}
+
+	/**
+	 * Gets profit expected at the time of the decisions.
+	 * @return
+	 */
+	public double getExpectedProfit() {
+		return expectedProfit;
+	}
+
+	/**
+	 * Gets profit after simulated fills and fees. Leftovers of partially filled legs are valued at the rates of the
+	 * decision.
+	 * @return
+	 */
+	public double getProfit() {
+		return profit;
+	}
+
+	/* package methods */
+
+	void addSignal() {
+		signalCount++;
+	}
+
+	void addExecution(double amount, double expectedProfit) {
+		executionCount++;
+		volume += amount;
+		this.expectedProfit += expectedProfit;
+	}
+
+	void addFill(double orderedQuantity, double filledQuantity) {
+		this.orderedQuantity += orderedQuantity;
+		this.filledQuantity += filledQuantity;
+	}
+
+	void addSettlement(boolean complete, double profit) {
+		if (complete) {
+			completeExecutionCount++;
+		}
+		this.profit += profit;
+	}
+
+}
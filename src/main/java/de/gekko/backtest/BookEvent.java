@@ -0,0 +1,28 @@
+package de.gekko.backtest;
+
+import de.gekko.websocket.TopOfBookUpdate;
+
+/**
+ * Event handing a changed top of book from the decoding thread to a {@link CyclePartition}. The referenced update is
+ * immutable and may be kept.
+ * @author Maximilian Pfister
+ *
+ */
+class BookEvent extends BacktestEvent {
+
+	/* variables */
+
+	private TopOfBookUpdate update;
+
+	/* package methods */
+
+	void set(long time, int market, TopOfBookUpdate update) {
+		set(time, market);
+		this.update = update;
+	}
+
+	TopOfBookUpdate getUpdate() {
+		return update;
+	}
+
+}
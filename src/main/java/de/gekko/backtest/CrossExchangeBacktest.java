@@ -0,0 +1,316 @@
+package de.gekko.backtest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.arbitrager.CrossExchangeSpreadEngine;
+import de.gekko.concurrency.RingBuffer;
+import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.exchanges.SimulatedArbitrageExchange;
+import de.gekko.journal.FrameJournal;
+import de.gekko.journal.FrameJournalReader;
+import de.gekko.journal.OrderBookFrame;
+
+/**
+ * Backtests cross exchange arbitrage on a {@link FrameJournal} of order books recorded by the
+ * {@link CrossExchangeSpreadEngine} ({@link CrossExchangeSpreadEngine#setJournal(FrameJournal)}). Every recorded
+ * exchange is represented by a {@link SimulatedArbitrageExchange} with the configured fee, the books are evaluated by
+ * the same engine code as live. Markets are spread over one {@link SpreadPartition} per core, each decoding and
+ * evaluating the books of its markets on its own thread, while the calling thread only reads the journal.
+ * <p>
+ * Several spread thresholds are simulated in one pass, e.g. to compare the 0.45% arbitrageMargin of
+ * {@link de.gekko.arbitrager.Arbitrager} (0.0045) with lower ones. Results are deterministic for a given seed,
+ * independent of the number of partitions.
+ * @author Maximilian Pfister
+ *
+ */
+public class CrossExchangeBacktest {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrossExchangeBacktest.class);
+
+	/* variables */
+
+	private double defaultFee = 0.0025;
+	private final Map<String, Double> fees = new HashMap<>();
+	private boolean makerFees = true;
+	private double[] thresholds = { 0 };
+	private long latency = 0;
+	private long jitter = 0;
+	private long seed = 0;
+	private int partitionCount = Runtime.getRuntime().availableProcessors();
+	private double maxTradeAmount = Double.POSITIVE_INFINITY;
+
+	/* public methods */
+
+	/**
+	 * Runs backtest over all segments of a journal. Blocks until all partitions are done, an instance runs once.
+	 * @param directory
+	 * @param name prefix of the segment files
+	 * @return
+	 * @throws IOException
+	 */
+	public BacktestReport<CurrencyPair> run(Path directory, String name) throws IOException {
+		long startTime = System.nanoTime();
+		// Exchange and markets of every recorded book
+		Map<String, Set<CurrencyPair>> exchangeMarkets = new TreeMap<>();
+		Set<CurrencyPair> marketSet = new TreeSet<>();
+		try (FrameJournalReader reader = new FrameJournalReader(directory, name)) {
+			Set<String> recordedMarkets = new TreeSet<>();
+			while (reader.next()) {
+				String market = OrderBookFrame.readMarket(reader.getFrame());
+				if (market != null) {
+					recordedMarkets.add(market);
+				}
+			}
+			for (String market : recordedMarkets) {
+				int separator = market.lastIndexOf('|');
+				CurrencyPair currencyPair = new CurrencyPair(market.substring(separator + 1));
+				exchangeMarkets.computeIfAbsent(market.substring(0, separator), exchange -> new TreeSet<>())
+						.add(currencyPair);
+				marketSet.add(currencyPair);
+			}
+		}
+		List<AbstractArbitrageExchange> exchanges = new ArrayList<>();
+		double[] exchangeFees = new double[exchangeMarkets.size()];
+		Map<String, Integer> venues = new HashMap<>();
+		for (Map.Entry<String, Set<CurrencyPair>> entry : exchangeMarkets.entrySet()) {
+			SimulatedArbitrageExchange exchange = new SimulatedArbitrageExchange(entry.getKey(), entry.getValue());
+			double fee = fees.getOrDefault(entry.getKey(), defaultFee);
+			exchange.setTradingFee(fee);
+			exchangeFees[exchanges.size()] = fee;
+			venues.put(entry.getKey(), exchanges.size());
+			exchanges.add(exchange);
+		}
+		List<CurrencyPair> currencyPairs = new ArrayList<>(marketSet);
+		Map<CurrencyPair, Integer> marketIndices = new HashMap<>();
+		for (int market = 0; market < currencyPairs.size(); market++) {
+			marketIndices.put(currencyPairs.get(market), market);
+		}
+		LOGGER.info("Backtesting {} markets on {} exchanges with {} partitions", currencyPairs.size(), exchanges.size(),
+				partitionCount);
+
+		// Markets are evaluated by their partition only
+		CrossExchangeSpreadEngine engine = CrossExchangeSpreadEngine.createInstance(exchanges, makerFees, spread -> {
+		}, 0);
+		List<List<Integer>> partitionMarkets = new ArrayList<>();
+		for (int partition = 0; partition < partitionCount; partition++) {
+			partitionMarkets.add(new ArrayList<>());
+		}
+		for (int market = 0; market < currencyPairs.size(); market++) {
+			partitionMarkets.get(market % partitionCount).add(market);
+		}
+		List<SpreadPartition> partitions = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int partition = 0; partition < partitionCount; partition++) {
+			SpreadPartition spreadPartition = new SpreadPartition(engine, currencyPairs, partitionMarkets.get(partition),
+					exchangeFees, thresholds, latency, jitter, seed, maxTradeAmount);
+			partitions.add(spreadPartition);
+			Thread thread = new Thread(spreadPartition, "spread-backtest-partition-" + partition);
+			threads.add(thread);
+			thread.start();
+		}
+
+		// Read on this thread, partitions decode
+		long frameCount = 0;
+		long invalidFrameCount = 0;
+		Map<String, int[]> frameMarkets = new HashMap<>();
+		try (FrameJournalReader reader = new FrameJournalReader(directory, name)) {
+			while (reader.next()) {
+				String frame = reader.getFrame();
+				String market = OrderBookFrame.readMarket(frame);
+				if (market == null) {
+					invalidFrameCount++;
+					continue;
+				}
+				// Market and venue
+				int[] indices = frameMarkets.computeIfAbsent(market, key -> {
+					int separator = key.lastIndexOf('|');
+					return new int[] { marketIndices.get(new CurrencyPair(key.substring(separator + 1))),
+							venues.get(key.substring(0, separator)) };
+				});
+				frameCount++;
+				publish(partitions.get(indices[0] % partitionCount), reader.getReceiveTime(), indices[0], indices[1],
+						frame);
+			}
+		} finally {
+			for (SpreadPartition partition : partitions) {
+				publish(partition, 0, OrderBookEvent.END_OF_RECORDING, 0, null);
+			}
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for partitions", e);
+			}
+		}
+
+		for (SpreadPartition partition : partitions) {
+			invalidFrameCount += partition.getInvalidFrameCount();
+		}
+		// Profits are in the counter currency of a market
+		return new BacktestReport<>(thresholds.clone(),
+				AbstractBacktestPartition.collectResults(partitions, thresholds.length), currencyPair -> currencyPair.counter,
+				String.format("%d order books, %d invalid", frameCount, invalidFrameCount), System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Sets trading fee of exchanges without own fee.
+	 * @param fee e.g. 0.0025
+	 */
+	public void setFee(double fee) {
+		this.defaultFee = fee;
+	}
+
+	/**
+	 * Sets trading fee of one exchange.
+	 * @param exchangeName name the order books were recorded with
+	 * @param fee e.g. 0.0025
+	 */
+	public void setFee(String exchangeName, double fee) {
+		fees.put(exchangeName, fee);
+	}
+
+	/**
+	 * Sets whether spreads are calculated with maker fees (limit orders, default) or taker fees. The simulated
+	 * exchanges use the same fee for both.
+	 * @param makerFees
+	 */
+	public void setMakerFees(boolean makerFees) {
+		this.makerFees = makerFees;
+	}
+
+	/**
+	 * Sets minimum spreads after fees, each is simulated independently.
+	 * @param thresholds e.g. 0.0045 for the arbitrageMargin of {@link de.gekko.arbitrager.Arbitrager}, see
+	 * {@link CrossExchangeSpreadEngine#setThreshold(double)}
+	 */
+	public void setThresholds(double... thresholds) {
+		if (thresholds.length == 0) {
+			throw new IllegalArgumentException("At least one threshold is required");
+		}
+		this.thresholds = thresholds.clone();
+	}
+
+	/**
+	 * Sets time from decision to arrival of the orders at the exchanges.
+	 * @param latency nanoseconds
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets maximum random delay added to the latency of each leg.
+	 * @param jitter nanoseconds
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets number of partitions (threads) the markets are spread over.
+	 * @param partitionCount
+	 */
+	public void setPartitionCount(int partitionCount) {
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException("Partition count must be positive: " + partitionCount);
+		}
+		this.partitionCount = partitionCount;
+	}
+
+	/**
+	 * Limits the base amount traded by one execution, by default only the top levels limit executions.
+	 * @param maxTradeAmount
+	 */
+	public void setMaxTradeAmount(double maxTradeAmount) {
+		this.maxTradeAmount = maxTradeAmount;
+	}
+
+	/**
+	 * Usage: CrossExchangeBacktest directory name [--thresholds=0.0025,0.0045] [--fee=0.0025]
+	 * [--fees=Kraken:0.0026,Poloniex:0.0015] [--taker] [--latency-ms=50] [--jitter-ms=20] [--partitions=n] [--seed=0]
+	 * [--max-amount=0.03]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: CrossExchangeBacktest directory name [--thresholds=0.0025,0.0045] [--fee=0.0025] "
+					+ "[--fees=Kraken:0.0026,Poloniex:0.0015] [--taker] [--latency-ms=50] [--jitter-ms=20] "
+					+ "[--partitions=n] [--seed=0] [--max-amount=0.03]");
+			return;
+		}
+		CrossExchangeBacktest backtest = new CrossExchangeBacktest();
+		for (int i = 2; i < args.length; i++) {
+			String arg = args[i];
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--thresholds=")) {
+				String[] values = value.split(",");
+				double[] thresholds = new double[values.length];
+				for (int threshold = 0; threshold < values.length; threshold++) {
+					thresholds[threshold] = Double.parseDouble(values[threshold]);
+				}
+				backtest.setThresholds(thresholds);
+			} else if (arg.startsWith("--fee=")) {
+				backtest.setFee(Double.parseDouble(value));
+			} else if (arg.startsWith("--fees=")) {
+				for (String exchangeFee : value.split(",")) {
+					String[] nameFee = exchangeFee.split(":");
+					backtest.setFee(nameFee[0], Double.parseDouble(nameFee[1]));
+				}
+			} else if (arg.equals("--taker")) {
+				backtest.setMakerFees(false);
+			} else if (arg.startsWith("--latency-ms=")) {
+				backtest.setLatency((long) (Double.parseDouble(value) * 1_000_000));
+			} else if (arg.startsWith("--jitter-ms=")) {
+				backtest.setJitter((long) (Double.parseDouble(value) * 1_000_000));
+			} else if (arg.startsWith("--partitions=")) {
+				backtest.setPartitionCount(Integer.parseInt(value));
+			} else if (arg.startsWith("--seed=")) {
+				backtest.setSeed(Long.parseLong(value));
+			} else if (arg.startsWith("--max-amount=")) {
+				backtest.setMaxTradeAmount(Double.parseDouble(value));
+			} else {
+				throw new IllegalArgumentException("Unknown argument: " + arg);
+			}
+		}
+		backtest.run(Paths.get(args[0]), args[1]).print(System.out);
+	}
+
+	/* private methods */
+
+	/**
+	 * Hands recorded order book to a partition, waits while its ring buffer is full.
+	 */
+	private void publish(SpreadPartition partition, long time, int market, int venue, String frame) {
+		RingBuffer<OrderBookEvent> ringBuffer = partition.getRingBuffer();
+		long sequence = ringBuffer.tryNext();
+		while (sequence < 0) {
+			Thread.yield();
+			sequence = ringBuffer.tryNext();
+		}
+		ringBuffer.get(sequence).set(time, market, venue, frame);
+		ringBuffer.publish(sequence);
+	}
+
+}
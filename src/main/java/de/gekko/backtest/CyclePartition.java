@@ -0,0 +1,198 @@
+package de.gekko.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.knowm.xchange.currency.Currency;
+
+import de.gekko.arbitrager.CurrencyGraph;
+import de.gekko.arbitrager.ReceiveTriangularOpportunity;
+import de.gekko.arbitrager.TriangularCycle;
+import de.gekko.arbitrager.TriangularScanner;
+import de.gekko.arbitrager.TriangularSizer;
+import de.gekko.orderbook.FixedPoint;
+import de.gekko.websocket.TopOfBookUpdate;
+
+/**
+ * Simulates trading of a subset of the triangular cycles. Consumes the top of book changes of the markets of its
+ * cycles in recording order, evaluates them with a {@link TriangularScanner}, sizes candidates with a
+ * {@link TriangularSizer} like {@link de.gekko.arbitrager.BittrexStreamingTriangularScanner} and sends the three legs
+ * of a cycle at once. Cycles sharing a market may both fill against the same levels.
+ * @author Maximilian Pfister
+ *
+ */
+class CyclePartition extends AbstractBacktestPartition<BookEvent, TriangularCycle, CyclePartition.CycleLeg>
+		implements ReceiveTriangularOpportunity {
+
+	/* variables */
+
+	private final TriangularScanner scanner;
+	private final TriangularSizer sizer;
+	private final Map<Currency, Double> maxTradeAmounts;
+	private final double defaultMaxTradeAmount;
+
+	private final boolean[] ownedCycles;
+	private final TopOfBookUpdate[] books;
+
+	/* constructors */
+
+	/**
+	 * @param graph markets of the recording
+	 * @param cycles cycles simulated by this partition, indices of {@link CurrencyGraph#findTriangularCycles()}
+	 * @param fee trading fee of every market
+	 * @param thresholds minimum relative profits after sizing, one simulation each
+	 * @param depth levels per side used for sizing
+	 * @param latency nanoseconds from decision to arrival of an order
+	 * @param jitter maximum random nanoseconds added to the latency of each leg
+	 * @param seed
+	 * @param maxTradeAmounts maximum amount of a start currency per execution
+	 * @param defaultMaxTradeAmount maximum amount of start currencies without entry
+	 */
+	CyclePartition(CurrencyGraph graph, List<Integer> cycles, double fee, double[] thresholds, int depth, long latency,
+			long jitter, long seed, Map<Currency, Double> maxTradeAmounts, double defaultMaxTradeAmount) {
+		this(new TriangularScanner(graph, minThreshold(thresholds)), graph, cycles, fee, thresholds, depth, latency,
+				jitter, seed, maxTradeAmounts, defaultMaxTradeAmount);
+	}
+
+	private CyclePartition(TriangularScanner scanner, CurrencyGraph graph, List<Integer> cycles, double fee,
+			double[] thresholds, int depth, long latency, long jitter, long seed, Map<Currency, Double> maxTradeAmounts,
+			double defaultMaxTradeAmount) {
+		super(BookEvent::new, scanner.getCycles(), cycles, graph.getMarketCount(), thresholds, latency, jitter, seed);
+		this.scanner = scanner;
+		this.sizer = new TriangularSizer(depth);
+		this.maxTradeAmounts = maxTradeAmounts;
+		this.defaultMaxTradeAmount = defaultMaxTradeAmount;
+
+		this.books = new TopOfBookUpdate[graph.getMarketCount()];
+		for (int market = 0; market < books.length; market++) {
+			scanner.setFee(market, fee);
+		}
+		this.ownedCycles = new boolean[scanner.getCycles().size()];
+		for (int cycle : cycles) {
+			ownedCycles[cycle] = true;
+		}
+		scanner.addSubscriber(this);
+	}
+
+	/* public methods */
+
+	/**
+	 * Sends the legs of a sized candidate for every threshold it passes. Called by the scanner during evaluation.
+	 */
+	@Override
+	public void receiveOpportunity(TriangularCycle cycle, double profit) {
+		if (!ownedCycles[cycle.getIndex()]) {
+			return;
+		}
+		for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+			int market = cycle.getMarket(leg);
+			sizer.setLeg(leg, cycle.isSell(leg), scanner.getFee(market), books[market]);
+		}
+		Double maxTradeAmount = maxTradeAmounts.get(cycle.getCurrency(0));
+		if (!sizer.size(maxTradeAmount == null ? defaultMaxTradeAmount : maxTradeAmount)) {
+			return;
+		}
+		signal(cycle.getIndex(), sizer.getProfit() / sizer.getAmount());
+	}
+
+	/* protected methods */
+
+	/**
+	 * Fills legs that arrived before the change against the previous book, then evaluates the new book.
+	 */
+	@Override
+	protected void processEvent(BookEvent event) {
+		int market = event.getMarket();
+		TopOfBookUpdate update = event.getUpdate();
+		advance(event.getTime(), market);
+		books[market] = update;
+		scanner.updateTopOfBook(market, update.getBestBidPrice(), update.getBestAskPrice());
+		scanner.evaluate();
+	}
+
+	@Override
+	protected List<CycleLeg> send(int index, BacktestResult<TriangularCycle> result) {
+		TriangularCycle cycle = result.getKey();
+		List<CycleLeg> legs = new ArrayList<>(TriangularCycle.LEGS);
+		for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+			// Rate of the decision values leftovers of partial fills
+			legs.add(new CycleLeg(cycle, leg, sizer.getBaseQuantity(leg), FixedPoint.fromDouble(sizer.getLimitPrice(leg)),
+					sizer.getOutputAmount(leg) / sizer.getInputAmount(leg), arrivalTime(index)));
+		}
+		result.addExecution(sizer.getAmount(), sizer.getProfit());
+		return legs;
+	}
+
+	@Override
+	protected double fill(CycleLeg leg) {
+		int market = leg.cycle.getMarket(leg.leg);
+		TopOfBookUpdate book = books[market];
+		boolean sell = leg.cycle.isSell(leg.leg);
+		int levels = sell ? book.getBidLevels() : book.getAskLevels();
+		double remaining = leg.quantity;
+		double filled = 0;
+		double counterAmount = 0;
+		for (int level = 0; level < levels && remaining > 0; level++) {
+			long price = sell ? book.getBidPrice(level) : book.getAskPrice(level);
+			if (sell ? price < leg.limitPrice : price > leg.limitPrice) {
+				break;
+			}
+			double quantity = Math.min(remaining, FixedPoint.toDouble(sell ? book.getBidQuantity(level) : book.getAskQuantity(level)));
+			filled += quantity;
+			counterAmount += quantity * FixedPoint.toDouble(price);
+			remaining -= quantity;
+		}
+		double feeFactor = 1 - scanner.getFee(market);
+		// Amount of the held currency sold and of the next currency received
+		leg.inputAmount = sell ? filled : counterAmount;
+		leg.outputAmount = (sell ? counterAmount : filled) * feeFactor;
+		return filled;
+	}
+
+	@Override
+	protected double settle(List<CycleLeg> legs) {
+		CycleLeg leg0 = legs.get(0);
+		CycleLeg leg1 = legs.get(1);
+		CycleLeg leg2 = legs.get(2);
+		// Change of the currency held before each leg
+		double change0 = leg2.outputAmount - leg0.inputAmount;
+		double change1 = leg0.outputAmount - leg1.inputAmount;
+		double change2 = leg1.outputAmount - leg2.inputAmount;
+		return change0 + change1 / leg0.rate + change2 / (leg0.rate * leg1.rate);
+	}
+
+	/* private methods */
+
+	private static double minThreshold(double[] thresholds) {
+		double minThreshold = Double.POSITIVE_INFINITY;
+		for (double threshold : thresholds) {
+			minThreshold = Math.min(minThreshold, threshold);
+		}
+		return minThreshold;
+	}
+
+	/* inner classes */
+
+	/**
+	 * Limit order of one leg of a cycle.
+	 */
+	static class CycleLeg extends AbstractBacktestPartition.Leg {
+
+		private final TriangularCycle cycle;
+		private final int leg;
+		private final long limitPrice; // fixed point
+		private final double rate; // output per input amount of the decision
+		private double inputAmount;
+		private double outputAmount;
+
+		CycleLeg(TriangularCycle cycle, int leg, double quantity, long limitPrice, double rate, long arrivalTime) {
+			super(cycle.getMarket(leg), quantity, arrivalTime);
+			this.cycle = cycle;
+			this.leg = leg;
+			this.limitPrice = limitPrice;
+			this.rate = rate;
+		}
+	}
+
+}
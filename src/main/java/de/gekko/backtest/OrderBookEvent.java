@@ -0,0 +1,39 @@
+package de.gekko.backtest;
+
+/**
+ * Event handing a recorded order book frame from the reading thread to a {@link SpreadPartition}, which decodes it.
+ * @author Maximilian Pfister
+ *
+ */
+class OrderBookEvent extends BacktestEvent {
+
+	/* variables */
+
+	private int venue;
+	private String frame;
+
+	/* package methods */
+
+	void set(long time, int market, int venue, String frame) {
+		set(time, market);
+		this.venue = venue;
+		this.frame = frame;
+	}
+
+	/**
+	 * Gets index of the exchange in the spread engine.
+	 * @return
+	 */
+	int getVenue() {
+		return venue;
+	}
+
+	/**
+	 * Gets recorded frame, see {@link de.gekko.journal.OrderBookFrame}.
+	 * @return
+	 */
+	String getFrame() {
+		return frame;
+	}
+
+}
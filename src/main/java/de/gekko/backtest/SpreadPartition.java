@@ -0,0 +1,179 @@
+package de.gekko.backtest;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import de.gekko.arbitrager.CrossExchangeSpread;
+import de.gekko.arbitrager.CrossExchangeSpreadEngine;
+import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.journal.OrderBookFrame;
+
+/**
+ * Simulates cross exchange trading of a subset of the markets. Decodes the recorded order books of its markets in
+ * recording order, evaluates them with the {@link CrossExchangeSpreadEngine} and sends both legs of a best spread
+ * above a threshold at once: buy at the ask of one exchange, sell at the bid of the other.
+ * @author Maximilian Pfister
+ *
+ */
+class SpreadPartition extends AbstractBacktestPartition<OrderBookEvent, CurrencyPair, SpreadPartition.SpreadLeg> {
+
+	/* variables */
+
+	private final CrossExchangeSpreadEngine engine;
+	private final List<CurrencyPair> currencyPairs;
+	private final Map<AbstractArbitrageExchange, Integer> venues = new IdentityHashMap<>();
+	private final double[] fees;
+	private final double maxTradeAmount;
+
+	// Latest order book by market and venue
+	private final OrderBook[][] books;
+	// Spread of the current evaluation
+	private CrossExchangeSpread spread;
+	private long invalidFrameCount = 0;
+
+	/* constructors */
+
+	/**
+	 * @param engine engine without workers, the markets of this partition are only evaluated by it
+	 * @param currencyPairs markets of the recording
+	 * @param markets markets simulated by this partition, indices into currencyPairs
+	 * @param fees fee of every exchange of the engine, as used by the engine
+	 * @param thresholds minimum spreads after fees, one simulation each
+	 * @param latency nanoseconds from decision to arrival of an order
+	 * @param jitter maximum random nanoseconds added to the latency of each leg
+	 * @param seed
+	 * @param maxTradeAmount maximum base amount per execution
+	 */
+	SpreadPartition(CrossExchangeSpreadEngine engine, List<CurrencyPair> currencyPairs, List<Integer> markets,
+			double[] fees, double[] thresholds, long latency, long jitter, long seed, double maxTradeAmount) {
+		super(OrderBookEvent::new, currencyPairs, markets, currencyPairs.size(), thresholds, latency, jitter, seed);
+		this.engine = engine;
+		this.currencyPairs = currencyPairs;
+		List<AbstractArbitrageExchange> exchanges = engine.getExchanges();
+		for (int venue = 0; venue < exchanges.size(); venue++) {
+			venues.put(exchanges.get(venue), venue);
+		}
+		this.fees = fees;
+		this.maxTradeAmount = maxTradeAmount;
+		this.books = new OrderBook[currencyPairs.size()][exchanges.size()];
+	}
+
+	/* protected methods */
+
+	/**
+	 * Fills legs that arrived before the order book against the previous books, then evaluates the new one.
+	 */
+	@Override
+	protected void processEvent(OrderBookEvent event) {
+		OrderBook orderBook;
+		try {
+			orderBook = OrderBookFrame.decode(event.getFrame()).getOrderBook();
+		} catch (IllegalArgumentException e) {
+			invalidFrameCount++;
+			return;
+		}
+		int market = event.getMarket();
+		int venue = event.getVenue();
+		advance(event.getTime(), market);
+		books[market][venue] = orderBook;
+		spread = engine.evaluate(engine.getExchanges().get(venue), currencyPairs.get(market), orderBook);
+		if (spread != null) {
+			signal(market, spread.getSpread());
+		}
+	}
+
+	/**
+	 * Passes spreads above the threshold, like the engine.
+	 */
+	@Override
+	protected boolean passes(double value, double threshold) {
+		return value > threshold;
+	}
+
+	@Override
+	protected List<SpreadLeg> send(int market, BacktestResult<CurrencyPair> result) {
+		double amount = Math.min(spread.getAmount(), maxTradeAmount);
+		if (amount <= 0) {
+			return null;
+		}
+		SpreadLeg buy = new SpreadLeg(market, venues.get(spread.getBuyExchange()), true, amount, spread.getAskPrice(),
+				arrivalTime(market));
+		SpreadLeg sell = new SpreadLeg(market, venues.get(spread.getSellExchange()), false, amount, spread.getBidPrice(),
+				arrivalTime(market));
+		result.addExecution(amount, amount * (spread.getBidPrice() * (1 - fees[sell.venue])
+				- spread.getAskPrice() * (1 + fees[buy.venue])));
+		return Arrays.asList(buy, sell);
+	}
+
+	@Override
+	protected double fill(SpreadLeg leg) {
+		OrderBook book = books[leg.market][leg.venue];
+		List<LimitOrder> levels = leg.buy ? book.getAsks() : book.getBids();
+		double remaining = leg.quantity;
+		double filled = 0;
+		double counterAmount = 0;
+		for (int level = 0; level < levels.size() && remaining > 0; level++) {
+			LimitOrder order = levels.get(level);
+			double price = order.getLimitPrice().doubleValue();
+			if (leg.buy ? price > leg.limitPrice : price < leg.limitPrice) {
+				break;
+			}
+			double quantity = Math.min(remaining, order.getOriginalAmount().doubleValue());
+			filled += quantity;
+			counterAmount += quantity * price;
+			remaining -= quantity;
+		}
+		leg.counterAmount = counterAmount;
+		return filled;
+	}
+
+	/**
+	 * Fees are paid in counter currency.
+	 */
+	@Override
+	protected double settle(List<SpreadLeg> legs) {
+		SpreadLeg buy = legs.get(0);
+		SpreadLeg sell = legs.get(1);
+		double profit = sell.counterAmount * (1 - fees[sell.venue]) - buy.counterAmount * (1 + fees[buy.venue]);
+		// Bought more than sold is worth the bid of the decision, sold more than bought costs its ask
+		double leftover = buy.filledQuantity - sell.filledQuantity;
+		return profit + leftover * (leftover > 0 ? sell.limitPrice : buy.limitPrice);
+	}
+
+	/* package methods */
+
+	/**
+	 * Gets number of frames that could not be decoded.
+	 * @return
+	 */
+	long getInvalidFrameCount() {
+		return invalidFrameCount;
+	}
+
+	/* inner classes */
+
+	/**
+	 * Limit order on one exchange, the limit is the price of the decision.
+	 */
+	static class SpreadLeg extends AbstractBacktestPartition.Leg {
+
+		private final int venue;
+		private final boolean buy;
+		private final double limitPrice;
+		private double counterAmount;
+
+		SpreadLeg(int market, int venue, boolean buy, double quantity, double limitPrice, long arrivalTime) {
+			super(market, quantity, arrivalTime);
+			this.venue = venue;
+			this.buy = buy;
+			this.limitPrice = limitPrice;
+		}
+	}
+
+}
@@ -0,0 +1,495 @@
+package de.gekko.backtest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import de.gekko.arbitrager.CurrencyGraph;
+import de.gekko.arbitrager.TriangularCycle;
+import de.gekko.concurrency.RingBuffer;
+import de.gekko.journal.FrameJournal;
+import de.gekko.journal.FrameJournalReader;
+import de.gekko.orderbook.BookSide;
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.websocket.BittrexWebsocketReplay;
+import de.gekko.websocket.HubMessageDecoder;
+import de.gekko.websocket.HubMessageHandler;
+import de.gekko.websocket.TopOfBookUpdate;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+import de.gekko.websocket.pojo.HubMessage;
+
+/**
+ * Backtests triangular arbitrage on a {@link FrameJournal} of Bittrex frames. The calling thread decodes the frames
+ * and builds the books of all subscribed markets, every change of the top levels is handed to the
+ * {@link CyclePartition}s whose cycles trade on the market. Cycles are spread over one partition per core, each
+ * running on its own thread, so evaluation, sizing and fill simulation scale with the cores while the books are built
+ * only once.
+ * <p>
+ * Several profit thresholds are simulated in one pass, e.g. to compare the 0.75% and 0.8% of
+ * {@link de.gekko.arbitrager.TriangularArbitrager} with lower ones. Cross exchange arbitrage is backtested by
+ * {@link CrossExchangeBacktest}. Results are deterministic for a given seed, independent of the number of partitions.
+ * @author Maximilian Pfister
+ *
+ */
+public class TriangularBacktest {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TriangularBacktest.class);
+
+	public static final int DEFAULT_DEPTH = 10;
+
+	private static final int MAX_BUFFERED_DELTAS = 1024;
+
+	/* variables */
+
+	private double fee = 0.0025;
+	private double[] thresholds = { 0 };
+	private int depth = DEFAULT_DEPTH;
+	private long latency = 0;
+	private long jitter = 0;
+	private long seed = 0;
+	private int partitionCount = Runtime.getRuntime().availableProcessors();
+	private final Map<Currency, Double> maxTradeAmounts = new ConcurrentHashMap<>();
+	private double defaultMaxTradeAmount = Double.POSITIVE_INFINITY;
+
+	// Decoding state
+	private final Gson gson = new Gson();
+	private final HubMessageDecoder decoder = new HubMessageDecoder();
+	private final Map<Integer, String> invocations = new HashMap<>();
+	private final Map<String, MarketBook> marketBooks = new HashMap<>();
+	private List<CyclePartition> partitions;
+	private long time;
+	private long bookChangeCount;
+	private long gapCount;
+
+	private final HubMessageHandler hubMessageHandler = new HubMessageHandler() {
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+			MarketBook marketBook = marketBooks.get(exchangeStateUpdate.getMarketName());
+			if (marketBook != null) {
+				marketBook.applyDelta(exchangeStateUpdate);
+			}
+		}
+
+		@Override
+		public void onTransportStart() {
+		}
+
+		@Override
+		public void onResponse(int invocationIdentifier, boolean result) {
+			invocations.remove(invocationIdentifier);
+		}
+
+		@Override
+		public void onExchangeState(int invocationIdentifier, ExchangeStateUpdate exchangeState) {
+			String marketName = invocations.remove(invocationIdentifier);
+			MarketBook marketBook = marketName == null ? null : marketBooks.get(marketName);
+			if (marketBook != null) {
+				marketBook.applyExchangeState(exchangeState);
+			}
+		}
+
+		@Override
+		public void onError(int invocationIdentifier, String error) {
+			invocations.remove(invocationIdentifier);
+		}
+	};
+
+	/* public methods */
+
+	/**
+	 * Runs backtest over all segments of a journal. Blocks until all partitions are done, an instance runs once.
+	 * @param directory
+	 * @param name prefix of the segment files
+	 * @return
+	 * @throws IOException
+	 */
+	public BacktestReport<TriangularCycle> run(Path directory, String name) throws IOException {
+		long startTime = System.nanoTime();
+		Set<String> marketNames;
+		try (FrameJournalReader reader = new FrameJournalReader(directory, name)) {
+			marketNames = BittrexWebsocketReplay.readSubscribedMarkets(reader);
+		}
+		List<CurrencyPair> currencyPairs = new ArrayList<>();
+		for (String marketName : marketNames) {
+			currencyPairs.add(toCurrencyPair(marketName));
+		}
+		CurrencyGraph graph = new CurrencyGraph(currencyPairs);
+		List<TriangularCycle> cycles = graph.findTriangularCycles();
+		LOGGER.info("Backtesting {} cycles on {} markets with {} partitions", cycles.size(), graph.getMarketCount(),
+				partitionCount);
+
+		// Spread cycles evenly, markets are fed to every partition trading on them
+		List<List<Integer>> partitionCycles = new ArrayList<>();
+		for (int partition = 0; partition < partitionCount; partition++) {
+			partitionCycles.add(new ArrayList<>());
+		}
+		boolean[][] marketPartitions = new boolean[graph.getMarketCount()][partitionCount];
+		for (TriangularCycle cycle : cycles) {
+			int partition = cycle.getIndex() % partitionCount;
+			partitionCycles.get(partition).add(cycle.getIndex());
+			for (int leg = 0; leg < TriangularCycle.LEGS; leg++) {
+				marketPartitions[cycle.getMarket(leg)][partition] = true;
+			}
+		}
+		partitions = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int partition = 0; partition < partitionCount; partition++) {
+			CyclePartition cyclePartition = new CyclePartition(graph, partitionCycles.get(partition), fee, thresholds, depth,
+					latency, jitter, seed, maxTradeAmounts, defaultMaxTradeAmount);
+			partitions.add(cyclePartition);
+			Thread thread = new Thread(cyclePartition, "backtest-partition-" + partition);
+			threads.add(thread);
+			thread.start();
+		}
+		for (String marketName : marketNames) {
+			int market = graph.getMarketIndex(toCurrencyPair(marketName));
+			List<CyclePartition> subscribed = new ArrayList<>();
+			for (int partition = 0; partition < partitionCount; partition++) {
+				if (marketPartitions[market][partition]) {
+					subscribed.add(partitions.get(partition));
+				}
+			}
+			marketBooks.put(marketName, new MarketBook(market, toCurrencyPair(marketName), subscribed));
+		}
+
+		// Decode on this thread
+		long frameCount = 0;
+		try (FrameJournalReader reader = new FrameJournalReader(directory, name)) {
+			while (reader.next()) {
+				String frame = reader.getFrame();
+				time = reader.getReceiveTime();
+				if (frame.startsWith("{\"H\"")) {
+					addInvocation(frame);
+					continue;
+				}
+				frameCount++;
+				try {
+					decoder.decode(frame, hubMessageHandler);
+				} catch (IOException e) {
+					LOGGER.info("Could not decode frame: {}", e.toString());
+				}
+			}
+		} finally {
+			for (CyclePartition partition : partitions) {
+				publish(partition, BookEvent.END_OF_RECORDING, null);
+			}
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for partitions", e);
+			}
+		}
+
+		// Profits are in the start currency of a cycle
+		return new BacktestReport<>(thresholds.clone(),
+				AbstractBacktestPartition.collectResults(partitions, thresholds.length), cycle -> cycle.getCurrency(0),
+				String.format("%d frames, %d book changes, %d gaps", frameCount, bookChangeCount, gapCount),
+				System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Sets trading fee of every market.
+	 * @param fee e.g. 0.0025
+	 */
+	public void setFee(double fee) {
+		this.fee = fee;
+	}
+
+	/**
+	 * Sets minimum relative profits after sizing, each is simulated independently.
+	 * @param thresholds e.g. 0.0075 for the 0.75% of {@link de.gekko.arbitrager.TriangularArbitrager}
+	 */
+	public void setThresholds(double... thresholds) {
+		if (thresholds.length == 0) {
+			throw new IllegalArgumentException("At least one threshold is required");
+		}
+		this.thresholds = thresholds.clone();
+	}
+
+	/**
+	 * Sets levels per side used for sizing and filling.
+	 * @param depth
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets time from decision to arrival of the orders at the exchange.
+	 * @param latency nanoseconds
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets maximum random delay added to the latency of each leg.
+	 * @param jitter nanoseconds
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets number of partitions (threads) the cycles are spread over.
+	 * @param partitionCount
+	 */
+	public void setPartitionCount(int partitionCount) {
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException("Partition count must be positive: " + partitionCount);
+		}
+		this.partitionCount = partitionCount;
+	}
+
+	/**
+	 * Limits the amount of a start currency traded by one execution.
+	 * @param currency
+	 * @param maxTradeAmount
+	 */
+	public void setMaxTradeAmount(Currency currency, double maxTradeAmount) {
+		maxTradeAmounts.put(currency, maxTradeAmount);
+	}
+
+	/**
+	 * Limits the amount of start currencies without own limit, by default only depth limits executions.
+	 * @param defaultMaxTradeAmount
+	 */
+	public void setDefaultMaxTradeAmount(double defaultMaxTradeAmount) {
+		this.defaultMaxTradeAmount = defaultMaxTradeAmount;
+	}
+
+	/**
+	 * Usage: TriangularBacktest directory name [--thresholds=0.0025,0.0075] [--fee=0.0025] [--latency-ms=50]
+	 * [--jitter-ms=20] [--depth=10] [--partitions=n] [--seed=0] [--max-amount=BTC:0.1]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: TriangularBacktest directory name [--thresholds=0.0025,0.0075] [--fee=0.0025] "
+					+ "[--latency-ms=50] [--jitter-ms=20] [--depth=10] [--partitions=n] [--seed=0] [--max-amount=BTC:0.1]");
+			return;
+		}
+		TriangularBacktest backtest = new TriangularBacktest();
+		for (int i = 2; i < args.length; i++) {
+			String arg = args[i];
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--thresholds=")) {
+				String[] values = value.split(",");
+				double[] thresholds = new double[values.length];
+				for (int threshold = 0; threshold < values.length; threshold++) {
+					thresholds[threshold] = Double.parseDouble(values[threshold]);
+				}
+				backtest.setThresholds(thresholds);
+			} else if (arg.startsWith("--fee=")) {
+				backtest.setFee(Double.parseDouble(value));
+			} else if (arg.startsWith("--latency-ms=")) {
+				backtest.setLatency((long) (Double.parseDouble(value) * 1_000_000));
+			} else if (arg.startsWith("--jitter-ms=")) {
+				backtest.setJitter((long) (Double.parseDouble(value) * 1_000_000));
+			} else if (arg.startsWith("--depth=")) {
+				backtest.setDepth(Integer.parseInt(value));
+			} else if (arg.startsWith("--partitions=")) {
+				backtest.setPartitionCount(Integer.parseInt(value));
+			} else if (arg.startsWith("--seed=")) {
+				backtest.setSeed(Long.parseLong(value));
+			} else if (arg.startsWith("--max-amount=")) {
+				String[] currencyAmount = value.split(":");
+				backtest.setMaxTradeAmount(Currency.getInstance(currencyAmount[0]), Double.parseDouble(currencyAmount[1]));
+			} else {
+				throw new IllegalArgumentException("Unknown argument: " + arg);
+			}
+		}
+		backtest.run(Paths.get(args[0]), args[1]).print(System.out);
+	}
+
+	/* private methods */
+
+	/**
+	 * Remembers a journaled hub invocation, so the exchange state it returned finds its market.
+	 * @param frame
+	 */
+	private void addInvocation(String frame) {
+		try {
+			HubMessage hubMessage = gson.fromJson(frame, HubMessage.class);
+			if (hubMessage.getMethodName().equals("QueryExchangeState")) {
+				invocations.put(hubMessage.getInvocationIdentifier(), hubMessage.getArguments().get(0));
+			}
+		} catch (JsonSyntaxException e) {
+			LOGGER.info("Could not read invocation: {}", frame);
+		}
+	}
+
+	/**
+	 * Hands event to a partition, waits while its ring buffer is full.
+	 */
+	private void publish(CyclePartition partition, int market, TopOfBookUpdate update) {
+		RingBuffer<BookEvent> ringBuffer = partition.getRingBuffer();
+		long sequence = ringBuffer.tryNext();
+		while (sequence < 0) {
+			Thread.yield();
+			sequence = ringBuffer.tryNext();
+		}
+		ringBuffer.get(sequence).set(time, market, update);
+		ringBuffer.publish(sequence);
+	}
+
+	/**
+	 * Converts bittrex currency string (BTC-ETH) to xchange currency pair (ETH/BTC).
+	 * @param marketName
+	 * @return
+	 */
+	private static CurrencyPair toCurrencyPair(String marketName) {
+		String[] currencies = marketName.split("-");
+		return new CurrencyPair(Currency.getInstance(currencies[1]), Currency.getInstance(currencies[0]));
+	}
+
+	/**
+	 * Book of one market, applies deltas in nounce order like the channelHandler. After a gap the book waits for the
+	 * next recorded exchange state, deltas received meanwhile are replayed on top of it.
+	 */
+	private class MarketBook {
+
+		private final int market;
+		private final CurrencyPair currencyPair;
+		private final CyclePartition[] partitions;
+		private final FixedPointOrderBook book;
+		private long nounce = 0;
+		private boolean synced = false;
+		private final List<ExchangeStateUpdate> buffered = new ArrayList<>();
+		private TopOfBookUpdate published;
+		private long sequence = 0;
+
+		MarketBook(int market, CurrencyPair currencyPair, List<CyclePartition> partitions) {
+			this.market = market;
+			this.currencyPair = currencyPair;
+			this.partitions = partitions.toArray(new CyclePartition[0]);
+			this.book = new FixedPointOrderBook(currencyPair);
+		}
+
+		void applyExchangeState(ExchangeStateUpdate exchangeState) {
+			book.clear();
+			exchangeState.getBuys().applyTo(book.getBids());
+			exchangeState.getSells().applyTo(book.getAsks());
+			nounce = exchangeState.getNounce();
+			synced = true;
+			// A gap in the buffered deltas keeps the rest buffered for the next exchange state
+			int replayed = 0;
+			while (replayed < buffered.size() && apply(buffered.get(replayed))) {
+				replayed++;
+			}
+			buffered.subList(0, replayed).clear();
+			publishIfChanged();
+		}
+
+		void applyDelta(ExchangeStateUpdate delta) {
+			if (synced) {
+				apply(delta);
+				publishIfChanged();
+			}
+			if (!synced) {
+				buffer(delta);
+			}
+		}
+
+		/**
+		 * Applies delta if it carries the next nounce, older ones are dropped.
+		 * @return false if a gap was found, the book is out of sync then
+		 */
+		private boolean apply(ExchangeStateUpdate delta) {
+			if (delta.getNounce() <= nounce) {
+				return true;
+			}
+			if (delta.getNounce() != nounce + 1) {
+				// Live the channelHandler recovers, the exchange state it requested is part of the recording
+				gapCount++;
+				synced = false;
+				return false;
+			}
+			nounce = delta.getNounce();
+			delta.getBuys().applyTo(book.getBids());
+			delta.getSells().applyTo(book.getAsks());
+			return true;
+		}
+
+		private void buffer(ExchangeStateUpdate delta) {
+			if (buffered.size() >= MAX_BUFFERED_DELTAS) {
+				buffered.clear();
+			}
+			// Decoder reuses the update
+			ExchangeStateUpdate copy = new ExchangeStateUpdate();
+			copy.copyFrom(delta);
+			buffered.add(copy);
+		}
+
+		private void publishIfChanged() {
+			if (!synced || (published != null && !changed(book.getBids(), true) && !changed(book.getAsks(), false))) {
+				return;
+			}
+			published = createTopOfBook();
+			bookChangeCount++;
+			for (CyclePartition partition : partitions) {
+				publish(partition, market, published);
+			}
+		}
+
+		private boolean changed(BookSide side, boolean bids) {
+			int levels = Math.min(depth, side.size());
+			if (levels != (bids ? published.getBidLevels() : published.getAskLevels())) {
+				return true;
+			}
+			for (int level = 0; level < levels; level++) {
+				if (side.price(level) != (bids ? published.getBidPrice(level) : published.getAskPrice(level))
+						|| side.quantity(level) != (bids ? published.getBidQuantity(level) : published.getAskQuantity(level))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private TopOfBookUpdate createTopOfBook() {
+			BookSide bids = book.getBids();
+			BookSide asks = book.getAsks();
+			int bidLevels = Math.min(depth, bids.size());
+			int askLevels = Math.min(depth, asks.size());
+			long[] bidPrices = new long[bidLevels];
+			long[] bidQuantities = new long[bidLevels];
+			long[] askPrices = new long[askLevels];
+			long[] askQuantities = new long[askLevels];
+			for (int level = 0; level < bidLevels; level++) {
+				bidPrices[level] = bids.price(level);
+				bidQuantities[level] = bids.quantity(level);
+			}
+			for (int level = 0; level < askLevels; level++) {
+				askPrices[level] = asks.price(level);
+				askQuantities[level] = asks.quantity(level);
+			}
+			return new TopOfBookUpdate(currencyPair, ++sequence, bidPrices, bidQuantities, askPrices, askQuantities);
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package de.gekko.concurrency;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Parks the consumer on a condition until signalled. The producer only takes the lock if the consumer announced that
+ * it is about to wait, so publishing to a busy consumer stays lock free.
+ * @author Maximilian Pfister
+ *
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+	/* variables */
+
+	private final Lock lock = new ReentrantLock();
+	private final Condition condition = lock.newCondition();
+	private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+	/* public methods */
+
+	@Override
+	public long waitFor(long sequence, RingBuffer<?> ringBuffer) throws InterruptedException {
+		long available = ringBuffer.getCursor();
+		if (available >= sequence || ringBuffer.isAlerted()) {
+			return available;
+		}
+		lock.lock();
+		try {
+			while (true) {
+				// Announce before checking, so a concurrent publish either is seen here or signals
+				signalNeeded.set(true);
+				available = ringBuffer.getCursor();
+				if (available >= sequence || ringBuffer.isAlerted()) {
+					return available;
+				}
+				condition.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signal() {
+		if (signalNeeded.getAndSet(false)) {
+			lock.lock();
+			try {
+				condition.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package de.gekko.concurrency;
+
+/**
+ * Spins on the cursor without ever giving up the consumer thread. Lowest latency, but occupies a core per consumer,
+ * only use with pinned threads and more cores than consumers.
+ * @author Maximilian Pfister
+ *
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+	/* public methods */
+
+	@Override
+	public long waitFor(long sequence, RingBuffer<?> ringBuffer) throws InterruptedException {
+		long available;
+		while ((available = ringBuffer.getCursor()) < sequence && !ringBuffer.isAlerted()) {
+			// spin
+		}
+		return available;
+	}
+
+	@Override
+	public void signal() {
+	}
+
+}
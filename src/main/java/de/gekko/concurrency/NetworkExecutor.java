@@ -0,0 +1,320 @@
+package de.gekko.concurrency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.metrics.MetricsRegistry;
+
+/**
+ * Runs blocking network calls of one exchange with a limited number of concurrent requests. On JVMs with virtual
+ * threads (Java 21+) every call gets its own virtual thread from a process wide executor and waits for a permit
+ * without occupying an OS thread, so any number of arbitragers can share an exchange. Older JVMs, or with
+ * -Dgekko.network.platformThreads=true, fall back to a pool of as many platform threads as permits.
+ * <p>
+ * Calls submitted with priority (orders) take the next free permit before waiting calls without priority (polls).
+ * In the platform thread mode they run on a pool of their own, so they are not queued behind polls either. A call
+ * that waits for something other than the network, e.g. a client side rate limit, releases its permit meanwhile with
+ * {@link #awaitWithoutPermit(BlockingWait)}.
+ * @author Maximilian Pfister
+ *
+ */
+public class NetworkExecutor {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NetworkExecutor.class);
+
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+	public static final String PLATFORM_THREADS_PROPERTY = "gekko.network.platformThreads";
+
+	private static final long IDLE_TIMEOUT = 60; // seconds
+
+	// Null if the JVM has no virtual threads
+	private static final ExecutorService VIRTUAL_THREAD_EXECUTOR = createVirtualThreadExecutor();
+
+	// Permit of the call running on the current thread
+	private static final ThreadLocal<Permit> CURRENT_PERMIT = new ThreadLocal<>();
+
+	/* variables */
+
+	private final String name;
+	private final int maxConcurrentRequests;
+	private final Lock permitLock = new ReentrantLock();
+	private final Condition permitReleased = permitLock.newCondition();
+	private int availablePermits;
+	private int waitingPriorityRequests = 0;
+	private final ExecutorService executorService;
+	private final ExecutorService priorityExecutorService;
+	private final boolean virtualThreads;
+	private final AtomicInteger waitingRequests = new AtomicInteger();
+	private final AtomicInteger activeRequests = new AtomicInteger();
+
+	/* constructors */
+
+	private NetworkExecutor(String name, int maxConcurrentRequests, boolean virtualThreads) {
+		if (maxConcurrentRequests < 1) {
+			throw new IllegalArgumentException("At least one concurrent request required: " + maxConcurrentRequests);
+		}
+		this.name = name;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.availablePermits = maxConcurrentRequests;
+		this.virtualThreads = virtualThreads;
+		if (virtualThreads) {
+			this.executorService = VIRTUAL_THREAD_EXECUTOR;
+			this.priorityExecutorService = VIRTUAL_THREAD_EXECUTOR;
+		} else {
+			this.executorService = createPlatformThreadExecutor(name, maxConcurrentRequests);
+			this.priorityExecutorService = createPlatformThreadExecutor(name + "-priority", maxConcurrentRequests);
+		}
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		metrics.gauge("gekko_network_requests_active", "Network requests running", activeRequests::get, "exchange", name);
+		metrics.gauge("gekko_network_requests_waiting", "Network requests waiting for the concurrency limit",
+				waitingRequests::get, "exchange", name);
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates a NetworkExecutor on virtual threads if the JVM supports them and they are
+	 * not disabled by {@link #PLATFORM_THREADS_PROPERTY}, else on platform threads.
+	 * @param name exchange name, used for thread names and metrics
+	 * @param maxConcurrentRequests
+	 * @return
+	 */
+	public static NetworkExecutor createInstance(String name, int maxConcurrentRequests) {
+		boolean virtualThreads = isVirtualThreadSupported() && !Boolean.getBoolean(PLATFORM_THREADS_PROPERTY);
+		return createInstance(name, maxConcurrentRequests, virtualThreads);
+	}
+
+	/**
+	 * Static factory method that creates a NetworkExecutor in a specific mode.
+	 * @param name
+	 * @param maxConcurrentRequests
+	 * @param virtualThreads
+	 * @return
+	 * @throws UnsupportedOperationException if virtual threads are requested but not supported
+	 */
+	public static NetworkExecutor createInstance(String name, int maxConcurrentRequests, boolean virtualThreads) {
+		if (virtualThreads && !isVirtualThreadSupported()) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21");
+		}
+		LOGGER.info("Network executor [{}]: {} concurrent requests on {} threads", name, maxConcurrentRequests,
+				virtualThreads ? "virtual" : "platform");
+		return new NetworkExecutor(name, maxConcurrentRequests, virtualThreads);
+	}
+
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/**
+	 * Waits without the permit of the calling network call, so other calls of the exchange run meanwhile. The permit
+	 * is taken again after the wait, with the priority of the call. Outside of a call the wait runs as is.
+	 * @param wait e.g. waiting for a rate limit token
+	 * @return result of the wait
+	 * @throws InterruptedException if interrupted while waiting, the call does not hold a permit anymore
+	 */
+	public static long awaitWithoutPermit(BlockingWait wait) throws InterruptedException {
+		Permit permit = CURRENT_PERMIT.get();
+		if (permit == null || !permit.held) {
+			return wait.await();
+		}
+		NetworkExecutor executor = permit.executor;
+		executor.activeRequests.decrementAndGet();
+		permit.held = false;
+		executor.releasePermit();
+		long result = wait.await();
+		executor.waitingRequests.incrementAndGet();
+		try {
+			executor.acquirePermit(permit.priority);
+		} finally {
+			executor.waitingRequests.decrementAndGet();
+		}
+		permit.held = true;
+		executor.activeRequests.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Submits a blocking call. It runs as soon as fewer than the maximum number of requests of this exchange are
+	 * running and no call with priority is waiting.
+	 * @param call
+	 * @return
+	 */
+	public <T> Future<T> submit(Callable<T> call) {
+		return submit(call, false, executorService);
+	}
+
+	/**
+	 * Submits a blocking call that runs before all waiting calls without priority, e.g. placing or cancelling
+	 * orders.
+	 * @param call
+	 * @return
+	 */
+	public <T> Future<T> submitPriority(Callable<T> call) {
+		return submit(call, true, priorityExecutorService);
+	}
+
+	/**
+	 * Stops accepting calls. The shared virtual thread executor keeps running for other exchanges.
+	 */
+	public void shutdown() {
+		if (!virtualThreads) {
+			executorService.shutdown();
+			priorityExecutorService.shutdown();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Gets number of calls currently running.
+	 * @return
+	 */
+	public int getActiveRequests() {
+		return activeRequests.get();
+	}
+
+	/**
+	 * Gets number of submitted calls waiting for the concurrency limit.
+	 * @return
+	 */
+	public int getWaitingRequests() {
+		return waitingRequests.get();
+	}
+
+	/* private methods */
+
+	private <T> Future<T> submit(Callable<T> call, boolean priority, ExecutorService executor) {
+		waitingRequests.incrementAndGet();
+		return executor.submit(() -> {
+			try {
+				acquirePermit(priority);
+			} finally {
+				waitingRequests.decrementAndGet();
+			}
+			Permit permit = new Permit(this, priority);
+			CURRENT_PERMIT.set(permit);
+			activeRequests.incrementAndGet();
+			try {
+				return call.call();
+			} finally {
+				CURRENT_PERMIT.remove();
+				// Not held if interrupted while waiting without it
+				if (permit.held) {
+					activeRequests.decrementAndGet();
+					releasePermit();
+				}
+			}
+		});
+	}
+
+	private void acquirePermit(boolean priority) throws InterruptedException {
+		permitLock.lock();
+		try {
+			if (priority) {
+				waitingPriorityRequests++;
+			}
+			try {
+				while (availablePermits == 0 || (!priority && waitingPriorityRequests > 0)) {
+					permitReleased.await();
+				}
+				availablePermits--;
+			} finally {
+				if (priority && --waitingPriorityRequests == 0) {
+					// Calls without priority may go again
+					permitReleased.signalAll();
+				}
+			}
+		} finally {
+			permitLock.unlock();
+		}
+	}
+
+	private void releasePermit() {
+		permitLock.lock();
+		try {
+			availablePermits++;
+			permitReleased.signalAll();
+		} finally {
+			permitLock.unlock();
+		}
+	}
+
+	/**
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor, the sources are compiled for Java 8.
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// Preview feature of Java 19 and 20 that was not enabled
+			return null;
+		}
+	}
+
+	private static ExecutorService createPlatformThreadExecutor(String name, int threads) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, IDLE_TIMEOUT, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "network-" + name + "-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		// Idle exchanges do not keep threads
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/* inner classes */
+
+	/**
+	 * Wait of a network call that does not need its permit.
+	 */
+	public interface BlockingWait {
+
+		long await() throws InterruptedException;
+
+	}
+
+	/**
+	 * Permit of a running call.
+	 */
+	private static class Permit {
+
+		private final NetworkExecutor executor;
+		private final boolean priority;
+		private boolean held = true;
+
+		Permit(NetworkExecutor executor, boolean priority) {
+			this.executor = executor;
+			this.priority = priority;
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package de.gekko.concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Preallocated lock free single producer, single consumer ring buffer (disruptor style). Entries are created once and
+ * reused: the producer claims a sequence, writes into the entry of that slot and publishes it, the consumer waits for
+ * published sequences with a {@link WaitStrategy}, reads the entries in sequence order and releases them.
+ * <p>
+ * Only one thread may produce and one thread may consume at a time.
+ * @author Maximilian Pfister
+ *
+ * @param <T> entry type
+ */
+public class RingBuffer<T> {
+
+	/* variables */
+
+	private final Object[] entries;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+	// Last published sequence
+	private final Sequence cursor = new Sequence(-1);
+	// Last released sequence
+	private final Sequence consumerSequence = new Sequence(-1);
+	// Wake ups requested so far
+	private final AtomicLong alerts = new AtomicLong();
+
+	// Consumer only
+	private long consumedAlerts = 0;
+	private long observedAlerts = 0;
+
+	// Producer only
+	private long nextSequence = 0;
+	private long cachedConsumerSequence = -1;
+
+	/* constructors */
+
+	/**
+	 * Creates ring buffer and all of its entries.
+	 * @param entryFactory
+	 * @param capacity power of two
+	 * @param waitStrategy
+	 */
+	public RingBuffer(Supplier<T> entryFactory, int capacity, WaitStrategy waitStrategy) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		this.entries = new Object[capacity];
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy;
+		for (int i = 0; i < capacity; i++) {
+			entries[i] = entryFactory.get();
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Claims the next sequence for the producer without waiting.
+	 * @return claimed sequence or -1 if the buffer is full
+	 */
+	public long tryNext() {
+		long sequence = nextSequence;
+		long wrapPoint = sequence - entries.length;
+		if (wrapPoint > cachedConsumerSequence) {
+			cachedConsumerSequence = consumerSequence.get();
+			if (wrapPoint > cachedConsumerSequence) {
+				return -1;
+			}
+		}
+		nextSequence = sequence + 1;
+		return sequence;
+	}
+
+	/**
+	 * Gets entry of a sequence. The producer may only write claimed, the consumer only read published sequences.
+	 * @param sequence
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long sequence) {
+		return (T) entries[(int) sequence & mask];
+	}
+
+	/**
+	 * Makes a claimed sequence visible to the consumer.
+	 * @param sequence
+	 */
+	public void publish(long sequence) {
+		cursor.set(sequence);
+		waitStrategy.signal();
+	}
+
+	/**
+	 * Waits until the sequence was published or {@link #wakeUp()} was called since the last wake up this consumer saw.
+	 * @param sequence
+	 * @return highest published sequence, smaller than sequence if woken up
+	 * @throws InterruptedException
+	 */
+	public long waitFor(long sequence) throws InterruptedException {
+		long available = waitStrategy.waitFor(sequence, this);
+		// Only wake ups the wait strategy saw are consumed, later ones end the next call
+		consumedAlerts = observedAlerts;
+		return available;
+	}
+
+	/**
+	 * Hands all entries up to and including the sequence back to the producer.
+	 * @param sequence
+	 */
+	public void release(long sequence) {
+		consumerSequence.setOrdered(sequence);
+	}
+
+	/**
+	 * Lets a waiting consumer return without a new entry, e.g. to handle a request of another thread.
+	 */
+	public void wakeUp() {
+		alerts.incrementAndGet();
+		waitStrategy.signal();
+	}
+
+	public long getCursor() {
+		return cursor.get();
+	}
+
+	/**
+	 * Gets the last sequence released by the consumer.
+	 * @return
+	 */
+	public long getConsumerSequence() {
+		return consumerSequence.get();
+	}
+
+	/**
+	 * Checks if a wake up is pending. Called by the wait strategy on the consumer thread.
+	 * @return
+	 */
+	public boolean isAlerted() {
+		observedAlerts = alerts.get();
+		return observedAlerts != consumedAlerts;
+	}
+
+	public int getCapacity() {
+		return entries.length;
+	}
+
+}
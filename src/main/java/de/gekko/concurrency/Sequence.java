@@ -0,0 +1,67 @@
+package de.gekko.concurrency;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Padded volatile long used as producer and consumer cursor of a {@link RingBuffer}. The padding keeps both cursors on
+ * separate cache lines, so the producer and the consumer do not invalidate each other's line on every update.
+ * @author Maximilian Pfister
+ *
+ */
+public class Sequence extends SequenceValue {
+
+	/* variables */
+
+	protected long p9, p10, p11, p12, p13, p14, p15;
+
+	/* constructors */
+
+	public Sequence(long initialValue) {
+		this.value = initialValue;
+	}
+
+	/* public methods */
+
+	public long get() {
+		return value;
+	}
+
+	/**
+	 * Volatile write, visible to other threads before any subsequent read of this thread.
+	 * @param value
+	 */
+	public void set(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * Ordered write without store-load barrier, for cursors nobody blocks on.
+	 * @param value
+	 */
+	public void setOrdered(long value) {
+		UPDATER.lazySet(this, value);
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+
+}
+
+/**
+ * Left padding of {@link Sequence}, field layout is only kept in class hierarchy order.
+ */
+class SequencePadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * Value of {@link Sequence}.
+ */
+class SequenceValue extends SequencePadding {
+
+	static final AtomicLongFieldUpdater<SequenceValue> UPDATER = AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+	protected volatile long value;
+}
@@ -0,0 +1,45 @@
+package de.gekko.concurrency;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parks the consumer for a fixed interval between checks. Publishing never touches a lock or another thread, so the
+ * producer pays nothing for the consumer; meant for background consumers like log writers where latency does not
+ * matter.
+ * @author Maximilian Pfister
+ *
+ */
+public class SleepingWaitStrategy implements WaitStrategy {
+
+	/* variables */
+
+	private final long sleepTime;
+
+	/* constructors */
+
+	/**
+	 * @param sleepTime nanoseconds between checks
+	 */
+	public SleepingWaitStrategy(long sleepTime) {
+		this.sleepTime = sleepTime;
+	}
+
+	/* public methods */
+
+	@Override
+	public long waitFor(long sequence, RingBuffer<?> ringBuffer) throws InterruptedException {
+		long available;
+		while ((available = ringBuffer.getCursor()) < sequence && !ringBuffer.isAlerted()) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			LockSupport.parkNanos(sleepTime);
+		}
+		return available;
+	}
+
+	@Override
+	public void signal() {
+	}
+
+}
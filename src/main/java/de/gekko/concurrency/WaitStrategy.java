@@ -0,0 +1,26 @@
+package de.gekko.concurrency;
+
+/**
+ * Strategy of the consumer of a {@link RingBuffer} to wait for published entries. Trades latency against CPU usage:
+ * {@link BlockingWaitStrategy} parks the consumer, {@link YieldingWaitStrategy} spins and yields and
+ * {@link BusySpinWaitStrategy} burns a core for the lowest latency.
+ * @author Maximilian Pfister
+ *
+ */
+public interface WaitStrategy {
+
+	/**
+	 * Waits until the cursor of the ring buffer reached the sequence or the ring buffer was woken up.
+	 * @param sequence
+	 * @param ringBuffer
+	 * @return cursor value, smaller than sequence if woken up
+	 * @throws InterruptedException
+	 */
+	public long waitFor(long sequence, RingBuffer<?> ringBuffer) throws InterruptedException;
+
+	/**
+	 * Called after publishing or waking up, notifies a waiting consumer.
+	 */
+	public void signal();
+
+}
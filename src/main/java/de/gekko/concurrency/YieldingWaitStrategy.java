@@ -0,0 +1,38 @@
+package de.gekko.concurrency;
+
+/**
+ * Spins for a short while and then yields the consumer thread between checks. Low latency without permanently
+ * occupying a core when other threads need it.
+ * @author Maximilian Pfister
+ *
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+	/* constants */
+
+	private static final int SPIN_TRIES = 100;
+
+	/* public methods */
+
+	@Override
+	public long waitFor(long sequence, RingBuffer<?> ringBuffer) throws InterruptedException {
+		int counter = SPIN_TRIES;
+		long available;
+		while ((available = ringBuffer.getCursor()) < sequence && !ringBuffer.isAlerted()) {
+			if (counter > 0) {
+				counter--;
+			} else {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				Thread.yield();
+			}
+		}
+		return available;
+	}
+
+	@Override
+	public void signal() {
+	}
+
+}
@@ -2,9 +2,16 @@ package de.gekko.exchanges;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.dto.Order.OrderType;
 import org.knowm.xchange.dto.account.Wallet;
 import org.knowm.xchange.dto.marketdata.OrderBook;
@@ -19,6 +26,15 @@ import org.knowm.xchange.service.account.AccountService;
 import org.knowm.xchange.service.marketdata.MarketDataService;
 import org.knowm.xchange.service.trade.TradeService;
 
+import de.gekko.concurrency.NetworkExecutor;
+import de.gekko.order.OrderGateway;
+import de.gekko.order.OrderTracker;
+import de.gekko.order.ReceiveOrderUpdate;
+import de.gekko.ratelimit.EndpointClass;
+import de.gekko.ratelimit.RateLimiter;
+import de.gekko.streaming.StreamingChannelHandler;
+import de.gekko.streaming.StreamingMarketData;
+
 /**
  * @author max boilerplate for implementing exchanges
  */
@@ -54,11 +70,27 @@ public abstract class AbstractArbitrageExchange {
 	 */
 	private double makerFee = -1;
 
+	/**
+	 * Maximale Anzahl gleichzeitiger Anfragen an den Exchange, über alle Arbitrager hinweg.
+	 */
+	private int maxConcurrentRequests = NetworkExecutor.DEFAULT_MAX_CONCURRENT_REQUESTS;
+
 	/**
 	 * Speichert den MarketDataService.
 	 */
 	private MarketDataService marketDataService;
 
+	/**
+	 * Führt die Netzwerkanfragen aller Arbitrager auf diesem Exchange aus, wird bei Bedarf erzeugt.
+	 */
+	private NetworkExecutor networkExecutor;
+
+	/**
+	 * Begrenzt die Anfragen aller Arbitrager an den Exchange je Endpunktklasse, wird bei Bedarf erzeugt. Volatile, damit
+	 * {@link #throttle(EndpointClass)} ohne Monitor auskommt.
+	 */
+	private volatile RateLimiter rateLimiter;
+
 	/**
 	 * Speichert die minimale Menge, die getraded werden muss auf dem Exchange.
 	 */
@@ -69,12 +101,32 @@ public abstract class AbstractArbitrageExchange {
 	 */
 	private OrderBook orderBook;
 
+	/**
+	 * Streaming-Schnittstelle für Marktdaten, wird bei Bedarf erzeugt. Null, wenn der Exchange nur REST unterstützt.
+	 */
+	private StreamingMarketData streamingMarketData;
+
+	/**
+	 * Speichert die ChannelHandler der gestreamten OrderBooks je CurrencyPair.
+	 */
+	private final Map<CurrencyPair, StreamingChannelHandler> streamingChannelHandlers = new HashMap<>();
+
 	/**
 	 * When you place an order at the market price that gets filled immediately, you
 	 * are considered a taker and will pay a fee.
 	 */
 	private double takerFee = -1;
 
+	/**
+	 * Sendet die Orders aller Arbitrager auf diesem Exchange, wird bei Bedarf erzeugt.
+	 */
+	private OrderGateway orderGateway;
+
+	/**
+	 * Verfolgt die Orders aller Arbitrager auf diesem Exchange bis zum Ende, wird bei Bedarf erzeugt.
+	 */
+	private OrderTracker orderTracker;
+
 	/**
 	 * Speichert den Ticker des Exchanges
 	 */
@@ -107,9 +159,48 @@ public abstract class AbstractArbitrageExchange {
 	 */
 	public boolean cancelOrder(String orderID) throws NotAvailableFromExchangeException,
 			NotYetImplementedForExchangeException, ExchangeException, IOException {
+		throttle(EndpointClass.TRADING);
 		return tradeService.cancelOrder(orderID);
 	}
 
+	/**
+	 * Meldet Zustandsänderungen der eigenen Orders an den Subscriber, wenn der Exchange sie streamt.
+	 * 
+	 * @param subscriber
+	 * @return false, wenn der Exchange keine Order-Updates streamt und Orders abgefragt werden müssen
+	 */
+	public boolean addOrderSubscriber(ReceiveOrderUpdate subscriber) {
+		return false;
+	}
+
+	/**
+	 * Erzeugt die Streaming-Schnittstelle des Exchanges. Subklassen, deren Exchange Snapshots und Deltas über einen
+	 * Websocket anbietet, überschreiben diese Methode, z.B. mit einem {@link de.gekko.streaming.JsonWebsocketMarketData}
+	 * im Format des Exchanges.
+	 * 
+	 * @return null, wenn der Exchange nur REST unterstützt.
+	 */
+	protected StreamingMarketData createStreamingMarketData() {
+		return null;
+	}
+
+	/**
+	 * Fragt den Zustand einer eigenen Order ab.
+	 *
+	 * @param orderID
+	 * @return Order mit Status und gefüllter Menge, null wenn der Exchange die Order nicht kennt
+	 * @throws NotAvailableFromExchangeException
+	 * @throws NotYetImplementedForExchangeException
+	 * @throws ExchangeException
+	 * @throws IOException
+	 */
+	public Order fetchOrder(String orderID) throws NotAvailableFromExchangeException,
+			NotYetImplementedForExchangeException, ExchangeException, IOException {
+		throttle(EndpointClass.TRADING);
+		Collection<Order> orders = tradeService.getOrder(orderID);
+		return orders == null || orders.isEmpty() ? null : orders.iterator().next();
+	}
+
 	/**
 	 * Liefert die minimale Menge, die auf dem Exchange getraded werden muss
 	 * abhängig vom CurrencyPair.
@@ -126,13 +217,24 @@ public abstract class AbstractArbitrageExchange {
 		}
 	}
 
+	/**
+	 * Liefert alle CurrencyPairs, die auf dem Exchange gehandelt werden.
+	 * 
+	 * @return CurrencyPairs aus den Metadaten des Exchanges.
+	 */
+	public Set<CurrencyPair> getCurrencyPairs() {
+		return Collections.unmodifiableSet(currencyPairs.keySet());
+	}
+
 	public OrderBook fetchOrderbook(CurrencyPair currencyPair) throws NotAvailableFromExchangeException,
 			NotYetImplementedForExchangeException, ExchangeException, IOException {
+		throttle(EndpointClass.MARKET_DATA);
 		return getMarketDataService().getOrderBook(currencyPair);
 	}
 
 	public Ticker fetchTicker(CurrencyPair currencyPair) throws NotAvailableFromExchangeException,
 			NotYetImplementedForExchangeException, ExchangeException, IOException {
+		throttle(EndpointClass.MARKET_DATA);
 		return getMarketDataService().getTicker(currencyPair);
 	}
 
@@ -157,6 +259,7 @@ public abstract class AbstractArbitrageExchange {
 
 	public Wallet fetchWallet() throws NotAvailableFromExchangeException, NotYetImplementedForExchangeException,
 			ExchangeException, IOException {
+		throttle(EndpointClass.ACCOUNT);
 		return getAccountService().getAccountInfo().getWallet();
 	}
 
@@ -188,10 +291,47 @@ public abstract class AbstractArbitrageExchange {
 		return minimumAmount;
 	}
 
+	/**
+	 * Liefert das gemeinsame OrderGateway dieses Exchanges. Die Order-Templates aller CurrencyPairs werden beim ersten
+	 * Aufruf erzeugt.
+	 * 
+	 * @return
+	 */
+	public synchronized OrderGateway getOrderGateway() {
+		if (orderGateway == null) {
+			orderGateway = OrderGateway.createInstance(this);
+		}
+		return orderGateway;
+	}
+
+	/**
+	 * Liefert den gemeinsamen OrderTracker dieses Exchanges, der beim ersten Aufruf gestartet wird.
+	 * 
+	 * @return
+	 */
+	public synchronized OrderTracker getOrderTracker() {
+		if (orderTracker == null) {
+			orderTracker = OrderTracker.createInstance(this);
+		}
+		return orderTracker;
+	}
+
 	public OrderBook getOrderbook() {
 		return orderBook;
 	}
 
+	/**
+	 * Liefert die Streaming-Schnittstelle des Exchanges.
+	 * 
+	 * @return null, wenn der Exchange nur REST unterstützt.
+	 */
+	public synchronized StreamingMarketData getStreamingMarketData() {
+		if (streamingMarketData == null) {
+			streamingMarketData = createStreamingMarketData();
+		}
+		return streamingMarketData;
+	}
+
 	public double getTakerFee() {
 		if (takerFee == -1) {
 			return getTradingFee();
@@ -200,6 +340,39 @@ public abstract class AbstractArbitrageExchange {
 		}
 	}
 
+	/**
+	 * Liefert den gemeinsamen Executor für blockierende Anfragen an diesen Exchange.
+	 * 
+	 * @return
+	 */
+	public synchronized NetworkExecutor getNetworkExecutor() {
+		if (networkExecutor == null) {
+			networkExecutor = NetworkExecutor.createInstance(toString(), maxConcurrentRequests);
+		}
+		return networkExecutor;
+	}
+
+	/**
+	 * Liefert die gemeinsamen Rate Limits dieses Exchanges. Standardmäßig ist nur eine Account-Anfrage pro Sekunde
+	 * erlaubt.
+	 * 
+	 * @return
+	 */
+	public RateLimiter getRateLimiter() {
+		RateLimiter rateLimiter = this.rateLimiter;
+		if (rateLimiter == null) {
+			synchronized (this) {
+				rateLimiter = this.rateLimiter;
+				if (rateLimiter == null) {
+					rateLimiter = new RateLimiter(toString());
+					rateLimiter.setLimit(EndpointClass.ACCOUNT, 1, 1, TimeUnit.SECONDS);
+					this.rateLimiter = rateLimiter;
+				}
+			}
+		}
+		return rateLimiter;
+	}
+
 	public Ticker getTicker() {
 		return ticker;
 	}
@@ -216,6 +389,15 @@ public abstract class AbstractArbitrageExchange {
 		return wallet;
 	}
 
+	/**
+	 * Prüft, ob OrderBooks gestreamt werden können.
+	 * 
+	 * @return
+	 */
+	public boolean isStreamingSupported() {
+		return getStreamingMarketData() != null;
+	}
+
 	protected void initServices() {
 		marketDataService = exchange.getMarketDataService();
 		tradeService = exchange.getTradeService();
@@ -243,7 +425,7 @@ public abstract class AbstractArbitrageExchange {
 		BigDecimal askAmount = BigDecimal.valueOf(askAmountDouble).setScale(decimals, BigDecimal.ROUND_HALF_UP);
 
 		LimitOrder limitOrder = new LimitOrder.Builder(OrderType.ASK, currencyPair).limitPrice(askPrice).originalAmount(askAmount).build();
-		return tradeService.placeLimitOrder(limitOrder);
+		return placeLimitOrder(limitOrder);
 	}
 
 	/**
@@ -266,6 +448,22 @@ public abstract class AbstractArbitrageExchange {
 
 		LimitOrder limitOrder = new LimitOrder.Builder(OrderType.BID, currencyPair).limitPrice(bidPrice_D)
 				.originalAmount(bidAmount_D).build();
+		return placeLimitOrder(limitOrder);
+	}
+
+	/**
+	 * Führt eine fertige Limitorder aus, z.B. aus einem {@link de.gekko.order.OrderTemplate}.
+	 * 
+	 * @param limitOrder
+	 * @return
+	 * @throws NotAvailableFromExchangeException
+	 * @throws NotYetImplementedForExchangeException
+	 * @throws ExchangeException
+	 * @throws IOException
+	 */
+	public String placeLimitOrder(LimitOrder limitOrder) throws NotAvailableFromExchangeException,
+			NotYetImplementedForExchangeException, ExchangeException, IOException {
+		throttle(EndpointClass.TRADING);
 		return tradeService.placeLimitOrder(limitOrder);
 	}
 
@@ -285,6 +483,7 @@ public abstract class AbstractArbitrageExchange {
 			IOException {
 		BigDecimal askAmount = BigDecimal.valueOf(askAmountDouble).setScale(decimals, BigDecimal.ROUND_HALF_UP);
 
+		throttle(EndpointClass.TRADING);
 		return getTradeService().placeMarketOrder(new MarketOrder(OrderType.ASK, askAmount, currencyPair));
 	}
 
@@ -304,9 +503,66 @@ public abstract class AbstractArbitrageExchange {
 			IOException {
 		BigDecimal askAmount = BigDecimal.valueOf(bidAmountDouble).setScale(decimals, BigDecimal.ROUND_HALF_UP);
 
+		throttle(EndpointClass.TRADING);
 		return getTradeService().placeMarketOrder(new MarketOrder(OrderType.BID, askAmount, currencyPair));
 	}
 
+	/**
+	 * Wartet, bis eine Anfrage der Endpunktklasse das Rate Limit nicht überschreitet. Muss vor jeder Anfrage an den
+	 * Exchange aufgerufen werden.
+	 * 
+	 * @param endpoint
+	 * @throws ExchangeException
+	 *             wenn der Thread beim Warten unterbrochen wird
+	 */
+	protected void throttle(EndpointClass endpoint) {
+		try {
+			getRateLimiter().acquire(endpoint);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExchangeException("Interrupted while waiting for rate limit");
+		}
+	}
+
+	/**
+	 * Streamt das OrderBook eines CurrencyPairs. Der ChannelHandler hält das Buch aus Snapshot und Deltas aktuell und
+	 * wird von allen Arbitragern geteilt. Der ChannelHandler wird unter dem Monitor registriert, die Subscription
+	 * (Verbindungsaufbau) läuft ohne ihn. Bis der Snapshot da ist, ist der ChannelHandler nicht synchron.
+	 * 
+	 * @param currencyPair
+	 * @return
+	 * @throws NotAvailableFromExchangeException
+	 *             wenn der Exchange nur REST unterstützt
+	 * @throws IOException
+	 */
+	public StreamingChannelHandler streamOrderbook(CurrencyPair currencyPair)
+			throws NotAvailableFromExchangeException, IOException {
+		StreamingChannelHandler channelHandler;
+		StreamingMarketData source;
+		synchronized (this) {
+			channelHandler = streamingChannelHandlers.get(currencyPair);
+			if (channelHandler != null) {
+				return channelHandler;
+			}
+			source = getStreamingMarketData();
+			if (source == null) {
+				throw new NotAvailableFromExchangeException();
+			}
+			channelHandler = StreamingChannelHandler.createInstance(toString(), currencyPair, source);
+			streamingChannelHandlers.put(currencyPair, channelHandler);
+		}
+		try {
+			source.subscribe(currencyPair, channelHandler);
+		} catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				streamingChannelHandlers.remove(currencyPair, channelHandler);
+			}
+			channelHandler.stop();
+			throw e;
+		}
+		return channelHandler;
+	}
+
 	public void setDecimals(int decimals) {
 		this.decimals = decimals;
 	}
@@ -319,6 +575,18 @@ public abstract class AbstractArbitrageExchange {
 		this.makerFee = makerFee;
 	}
 
+	/**
+	 * Setzt die maximale Anzahl gleichzeitiger Anfragen. Muss vor der ersten Anfrage gesetzt werden.
+	 * 
+	 * @param maxConcurrentRequests
+	 */
+	public synchronized void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		if (networkExecutor != null) {
+			throw new IllegalStateException("Network executor already started");
+		}
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
 	public void setMinimumAmount(double minimumAmount) {
 		this.minimumAmount = minimumAmount;
 	}
@@ -327,6 +595,19 @@ public abstract class AbstractArbitrageExchange {
 		this.orderBook = orderBook;
 	}
 
+	/**
+	 * Setzt die Streaming-Schnittstelle, z.B. aus dem Configfile. Muss vor dem ersten gestreamten OrderBook gesetzt
+	 * werden.
+	 * 
+	 * @param streamingMarketData
+	 */
+	public synchronized void setStreamingMarketData(StreamingMarketData streamingMarketData) {
+		if (!streamingChannelHandlers.isEmpty()) {
+			throw new IllegalStateException("Order books already streamed");
+		}
+		this.streamingMarketData = streamingMarketData;
+	}
+
 	public void setTakerFee(double takerFee) {
 		this.takerFee = takerFee;
 	}
@@ -0,0 +1,554 @@
+package de.gekko.exchanges;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.Order.OrderStatus;
+import org.knowm.xchange.dto.Order.OrderType;
+import org.knowm.xchange.dto.account.Wallet;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.MarketOrder;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.knowm.xchange.exceptions.FrequencyLimitExceededException;
+import org.knowm.xchange.exceptions.FundsExceededException;
+
+import de.gekko.order.ReceiveOrderUpdate;
+import de.gekko.orderbook.FixedPoint;
+import de.gekko.ratelimit.EndpointClass;
+import de.gekko.simulation.MatchingEngine;
+import de.gekko.simulation.ReceiveFill;
+import de.gekko.simulation.SimulatedWallet;
+import de.gekko.websocket.ReceiveTopOfBook;
+import de.gekko.websocket.TopOfBookUpdate;
+
+/**
+ * Exchange running in process on one {@link MatchingEngine} per market instead of a remote API. Orders of the
+ * account go through the simulated latency and rate limit, reserve funds in a {@link SimulatedWallet} and pay maker
+ * or taker fees when they fill. Liquidity orders (see {@link #submitLiquidity(CurrencyPair, boolean, long, long, boolean)})
+ * bypass all of that, so the exchange can be filled with order flow at engine speed and serve as load generator.
+ * <p>
+ * Top of book changes are pushed to subscribers on the thread that changed the book, as are fills and cancellations
+ * of account orders to order subscribers.
+ * @author Maximilian Pfister
+ *
+ */
+public class SimulatedArbitrageExchange extends AbstractArbitrageExchange {
+
+	/* constants */
+
+	private static final int DEFAULT_DEPTH = 5;
+	// set on engine ids of account orders, cleared on ids of liquidity orders
+	private static final long ACCOUNT_ORDER = 1L << 62;
+
+	/* variables */
+
+	private final String name;
+	private final Map<CurrencyPair, SimulatedMarket> markets = new HashMap<>();
+	private final Map<Long, SimulatedOrder> accountOrders = new ConcurrentHashMap<>();
+	private final SimulatedWallet wallet = new SimulatedWallet();
+	private final List<ReceiveTopOfBook> subscribers = new CopyOnWriteArrayList<>();
+	private final List<ReceiveOrderUpdate> orderSubscribers = new CopyOnWriteArrayList<>();
+	private final AtomicLong orderIdCounter = new AtomicLong();
+	private volatile int depth = DEFAULT_DEPTH;
+	private volatile long latency = 0;
+	private volatile long jitter = 0;
+
+	private final Object rateLimitLock = new Object();
+	private int rateLimit = 0;
+	private long ratePeriod = 0;
+	private long rateWindowStart = 0;
+	private int rateWindowRequests = 0;
+
+	/* constructors */
+
+	public SimulatedArbitrageExchange(String name, Collection<CurrencyPair> currencyPairs) {
+		this.name = name;
+		for (CurrencyPair currencyPair : currencyPairs) {
+			markets.put(currencyPair, new SimulatedMarket(currencyPair));
+		}
+	}
+
+	/* public methods */
+
+	@Override
+	public boolean cancelOrder(String orderID) {
+		request(EndpointClass.TRADING);
+		long orderId;
+		try {
+			orderId = Long.parseLong(orderID) | ACCOUNT_ORDER;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		SimulatedOrder order = accountOrders.get(orderId);
+		if (order == null) {
+			return false;
+		}
+		SimulatedMarket market = markets.get(order.currencyPair);
+		synchronized (market) {
+			if (!market.engine.cancel(orderId)) {
+				return false;
+			}
+			close(order, OrderStatus.CANCELED);
+			publish(market);
+		}
+		return true;
+	}
+
+	@Override
+	public Order fetchOrder(String orderID) {
+		request(EndpointClass.TRADING);
+		SimulatedOrder order = getOrder(orderID);
+		if (order == null) {
+			return null;
+		}
+		OrderType orderType = order.buy ? OrderType.BID : OrderType.ASK;
+		BigDecimal amount = FixedPoint.toBigDecimal(order.amount);
+		BigDecimal filled = FixedPoint.toBigDecimal(order.filled);
+		if (order.marketOrder) {
+			return new MarketOrder(orderType, amount, order.currencyPair, orderID, null, null, filled, order.status);
+		}
+		return new LimitOrder(orderType, amount, order.currencyPair, orderID, null, FixedPoint.toBigDecimal(order.price),
+				null, filled, order.status);
+	}
+
+	@Override
+	public double fetchMinimumAmount(CurrencyPair currencyPair) {
+		return getMinimumAmount() > 0 ? getMinimumAmount() : -1;
+	}
+
+	@Override
+	public Set<CurrencyPair> getCurrencyPairs() {
+		return Collections.unmodifiableSet(markets.keySet());
+	}
+
+	@Override
+	public OrderBook fetchOrderbook(CurrencyPair currencyPair) {
+		request(EndpointClass.MARKET_DATA);
+		SimulatedMarket market = getMarket(currencyPair);
+		synchronized (market) {
+			return market.snapshot(Integer.MAX_VALUE, market.sequence).toOrderBook();
+		}
+	}
+
+	@Override
+	public Ticker fetchTicker(CurrencyPair currencyPair) {
+		request(EndpointClass.MARKET_DATA);
+		SimulatedMarket market = getMarket(currencyPair);
+		Ticker.Builder builder = new Ticker.Builder().currencyPair(currencyPair).timestamp(new Date());
+		synchronized (market) {
+			MatchingEngine engine = market.engine;
+			if (engine.getBidLevels() > 0) {
+				builder.bid(FixedPoint.toBigDecimal(engine.getBidPrice(0)));
+			}
+			if (engine.getAskLevels() > 0) {
+				builder.ask(FixedPoint.toBigDecimal(engine.getAskPrice(0)));
+			}
+			if (engine.getTradeCount() > 0) {
+				builder.last(FixedPoint.toBigDecimal(engine.getLastPrice()));
+			}
+		}
+		return builder.build();
+	}
+
+	@Override
+	public double fetchTradingFee(CurrencyPair currencyPair) {
+		return getTakerFee();
+	}
+
+	@Override
+	public Wallet fetchWallet() {
+		request(EndpointClass.ACCOUNT);
+		return wallet.toWallet();
+	}
+
+	@Override
+	public String placeLimitOrderAsk(CurrencyPair currencyPair, double askPriceDouble, double askAmountDouble) {
+		return place(currencyPair, false, FixedPoint.fromDouble(askPriceDouble), FixedPoint.fromDouble(askAmountDouble),
+				false);
+	}
+
+	@Override
+	public String placeLimitOrderBid(CurrencyPair currencyPair, double bidPrice, double bidAmount) {
+		return place(currencyPair, true, FixedPoint.fromDouble(bidPrice), FixedPoint.fromDouble(bidAmount), false);
+	}
+
+	@Override
+	public String placeLimitOrder(LimitOrder limitOrder) {
+		return place(limitOrder.getCurrencyPair(), limitOrder.getType() == OrderType.BID,
+				FixedPoint.fromBigDecimal(limitOrder.getLimitPrice()),
+				FixedPoint.fromBigDecimal(limitOrder.getOriginalAmount()), false);
+	}
+
+	@Override
+	public String placeMarketOrderAsk(CurrencyPair currencyPair, double askAmountDouble) {
+		return place(currencyPair, false, 0, FixedPoint.fromDouble(askAmountDouble), true);
+	}
+
+	@Override
+	public String placeMarketOrderBid(CurrencyPair currencyPair, double bidAmountDouble) {
+		return place(currencyPair, true, Long.MAX_VALUE, FixedPoint.fromDouble(bidAmountDouble), true);
+	}
+
+	/**
+	 * Gets state of an order placed through the account.
+	 * @param orderId id returned by one of the place methods
+	 * @return NEW, PARTIALLY_FILLED, FILLED or CANCELED, null if the order is unknown
+	 */
+	public OrderStatus getOrderStatus(String orderId) {
+		SimulatedOrder order = getOrder(orderId);
+		return order == null ? null : order.status;
+	}
+
+	/**
+	 * Gets filled base quantity of an order placed through the account.
+	 * @param orderId id returned by one of the place methods
+	 * @return 0 if the order is unknown
+	 */
+	public double getFilledAmount(String orderId) {
+		SimulatedOrder order = getOrder(orderId);
+		return order == null ? 0 : FixedPoint.toDouble(order.filled);
+	}
+
+	/**
+	 * Submits an order that does not belong to the account. No latency, rate limit, funds or fees apply.
+	 * @param currencyPair
+	 * @param buy
+	 * @param price fixed point limit price
+	 * @param quantity fixed point base quantity
+	 * @param immediateOrCancel
+	 * @return id of the order to cancel it with {@link #cancelLiquidity(CurrencyPair, long)}
+	 */
+	public long submitLiquidity(CurrencyPair currencyPair, boolean buy, long price, long quantity,
+			boolean immediateOrCancel) {
+		SimulatedMarket market = getMarket(currencyPair);
+		long orderId = orderIdCounter.incrementAndGet();
+		synchronized (market) {
+			market.engine.submit(orderId, buy, price, quantity, immediateOrCancel);
+			publish(market);
+		}
+		return orderId;
+	}
+
+	/**
+	 * Cancels an order submitted with {@link #submitLiquidity(CurrencyPair, boolean, long, long, boolean)}.
+	 * @param currencyPair
+	 * @param orderId
+	 * @return false if the order was filled or cancelled already
+	 */
+	public boolean cancelLiquidity(CurrencyPair currencyPair, long orderId) {
+		SimulatedMarket market = getMarket(currencyPair);
+		synchronized (market) {
+			boolean cancelled = market.engine.cancel(orderId);
+			publish(market);
+			return cancelled;
+		}
+	}
+
+	public void addSubscriber(ReceiveTopOfBook subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	/**
+	 * Pushes fills and cancellations of account orders to the subscriber.
+	 */
+	@Override
+	public boolean addOrderSubscriber(ReceiveOrderUpdate subscriber) {
+		orderSubscribers.add(subscriber);
+		return true;
+	}
+
+	/**
+	 * Gets wallet of the account, deposit start balances here.
+	 * @return
+	 */
+	public SimulatedWallet getSimulatedWallet() {
+		return wallet;
+	}
+
+	/**
+	 * Sets number of levels per side pushed to subscribers.
+	 * @param depth
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets delay of every account request before it reaches the engine.
+	 * @param latency nanoseconds
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets maximum random delay added to the latency of each request.
+	 * @param jitter nanoseconds
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Limits account requests per period, further requests of the period fail with
+	 * {@link FrequencyLimitExceededException}.
+	 * @param maxRequests 0 disables the limit
+	 * @param period nanoseconds
+	 */
+	public void setRateLimit(int maxRequests, long period) {
+		synchronized (rateLimitLock) {
+			rateLimit = maxRequests;
+			ratePeriod = period;
+			rateWindowStart = System.nanoTime() - period;
+			rateWindowRequests = 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/* private methods */
+
+	private String place(CurrencyPair currencyPair, boolean buy, long price, long amount, boolean marketOrder) {
+		request(EndpointClass.TRADING);
+		if (amount <= 0) {
+			throw new ExchangeException("Amount has to be positive");
+		}
+		SimulatedMarket market = getMarket(currencyPair);
+		long orderId = orderIdCounter.incrementAndGet() | ACCOUNT_ORDER;
+		SimulatedOrder order = new SimulatedOrder(Long.toString(orderId & ~ACCOUNT_ORDER), currencyPair, buy, price,
+				amount, marketOrder);
+		synchronized (market) {
+			long reservation = amount;
+			if (buy) {
+				long notional = marketOrder ? market.engine.getMarketNotional(true, amount) : notional(price, amount);
+				reservation = notional + fee(notional, Math.max(getMakerFee(), getTakerFee()));
+			}
+			if (!wallet.reserve(buy ? currencyPair.counter : currencyPair.base, reservation)) {
+				throw new FundsExceededException("Insufficient funds for " + FixedPoint.toBigDecimal(amount) + " "
+						+ currencyPair);
+			}
+			order.reserved = reservation;
+			accountOrders.put(orderId, order);
+			if (marketOrder) {
+				market.engine.submitMarket(orderId, buy, amount);
+				if (order.status != OrderStatus.FILLED) {
+					close(order, OrderStatus.CANCELED);
+				}
+			} else {
+				market.engine.submit(orderId, buy, price, amount, false);
+			}
+			publish(market);
+		}
+		return order.id;
+	}
+
+	/**
+	 * Books a fill of an account order, called by the engine while the market is locked.
+	 */
+	private void settle(SimulatedOrder order, long price, long quantity, double feeRate) {
+		long notional = notional(price, quantity);
+		long fee = fee(notional, feeRate);
+		if (order.buy) {
+			long cost = Math.min(notional + fee, order.reserved);
+			order.reserved -= cost;
+			wallet.spend(order.currencyPair.counter, cost);
+			wallet.receive(order.currencyPair.base, quantity);
+		} else {
+			order.reserved -= quantity;
+			wallet.spend(order.currencyPair.base, quantity);
+			wallet.receive(order.currencyPair.counter, notional - fee);
+		}
+		order.filled += quantity;
+		if (order.filled == order.amount) {
+			close(order, OrderStatus.FILLED);
+		} else {
+			order.status = OrderStatus.PARTIALLY_FILLED;
+			publish(order);
+		}
+	}
+
+	/**
+	 * Releases funds still reserved by an order that can not fill any more.
+	 */
+	private void close(SimulatedOrder order, OrderStatus status) {
+		wallet.release(order.buy ? order.currencyPair.counter : order.currencyPair.base, order.reserved);
+		order.reserved = 0;
+		order.status = status;
+		publish(order);
+	}
+
+	/**
+	 * Pushes state of an account order to order subscribers, called while its market is locked.
+	 */
+	private void publish(SimulatedOrder order) {
+		if (orderSubscribers.isEmpty()) {
+			return;
+		}
+		double filledAmount = FixedPoint.toDouble(order.filled);
+		for (ReceiveOrderUpdate subscriber : orderSubscribers) {
+			subscriber.receiveOrderUpdate(order.id, order.status, filledAmount);
+		}
+	}
+
+	/**
+	 * Pushes top of book to subscribers if one of the pushed levels changed, called while the market is locked so
+	 * subscribers receive the updates of a market in order.
+	 */
+	private void publish(SimulatedMarket market) {
+		int changedDepth = market.engine.pollChangedDepth();
+		if (changedDepth >= depth || subscribers.isEmpty()) {
+			return;
+		}
+		TopOfBookUpdate topOfBookUpdate = market.snapshot(depth, ++market.sequence);
+		for (ReceiveTopOfBook subscriber : subscribers) {
+			subscriber.receiveTopOfBook(topOfBookUpdate);
+		}
+	}
+
+	/**
+	 * Simulates the way of a request to the exchange: waits for the client side rate limit, latency and jitter, then
+	 * applies the rate limit of the exchange.
+	 */
+	private void request(EndpointClass endpoint) {
+		throttle(endpoint);
+		long delay = latency;
+		if (jitter > 0) {
+			delay += ThreadLocalRandom.current().nextLong(jitter + 1);
+		}
+		long deadline = System.nanoTime() + delay;
+		while (delay > 0) {
+			LockSupport.parkNanos(delay);
+			delay = deadline - System.nanoTime();
+		}
+		synchronized (rateLimitLock) {
+			if (rateLimit == 0) {
+				return;
+			}
+			long now = System.nanoTime();
+			if (now - rateWindowStart >= ratePeriod) {
+				rateWindowStart = now;
+				rateWindowRequests = 0;
+			}
+			if (++rateWindowRequests > rateLimit) {
+				throw new FrequencyLimitExceededException("Rate limit of " + rateLimit + " requests exceeded");
+			}
+		}
+	}
+
+	private SimulatedMarket getMarket(CurrencyPair currencyPair) {
+		SimulatedMarket market = markets.get(currencyPair);
+		if (market == null) {
+			throw new ExchangeException("Market " + currencyPair + " is not traded on " + name);
+		}
+		return market;
+	}
+
+	private SimulatedOrder getOrder(String orderId) {
+		try {
+			return accountOrders.get(Long.parseLong(orderId) | ACCOUNT_ORDER);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static long notional(long price, long quantity) {
+		return FixedPoint.fromDouble(FixedPoint.toDouble(price) * FixedPoint.toDouble(quantity));
+	}
+
+	private static long fee(long notional, double feeRate) {
+		return FixedPoint.fromDouble(FixedPoint.toDouble(notional) * feeRate);
+	}
+
+	/* inner classes */
+
+	/**
+	 * Engine of one market, the instance is also the lock for its engine.
+	 */
+	private class SimulatedMarket implements ReceiveFill {
+
+		private final CurrencyPair currencyPair;
+		private final MatchingEngine engine = new MatchingEngine(this);
+		// sequence of the last update pushed to subscribers
+		private long sequence = 0;
+
+		private SimulatedMarket(CurrencyPair currencyPair) {
+			this.currencyPair = currencyPair;
+		}
+
+		@Override
+		public void receiveFill(long takerOrderId, long makerOrderId, boolean takerBuy, long price, long quantity) {
+			if ((takerOrderId & ACCOUNT_ORDER) != 0) {
+				settle(accountOrders.get(takerOrderId), price, quantity, getTakerFee());
+			}
+			if ((makerOrderId & ACCOUNT_ORDER) != 0) {
+				settle(accountOrders.get(makerOrderId), price, quantity, getMakerFee());
+			}
+		}
+
+		private TopOfBookUpdate snapshot(int maxLevels, long sequence) {
+			int bidLevels = Math.min(maxLevels, engine.getBidLevels());
+			int askLevels = Math.min(maxLevels, engine.getAskLevels());
+			long[] bidPrices = new long[bidLevels];
+			long[] bidQuantities = new long[bidLevels];
+			long[] askPrices = new long[askLevels];
+			long[] askQuantities = new long[askLevels];
+			for (int level = 0; level < bidLevels; level++) {
+				bidPrices[level] = engine.getBidPrice(level);
+				bidQuantities[level] = engine.getBidQuantity(level);
+			}
+			for (int level = 0; level < askLevels; level++) {
+				askPrices[level] = engine.getAskPrice(level);
+				askQuantities[level] = engine.getAskQuantity(level);
+			}
+			return new TopOfBookUpdate(currencyPair, sequence, bidPrices, bidQuantities, askPrices, askQuantities);
+		}
+
+	}
+
+	/**
+	 * Order of the account, modified while its market is locked.
+	 */
+	private static class SimulatedOrder {
+
+		private final String id;
+		private final CurrencyPair currencyPair;
+		private final boolean buy;
+		private final long price;
+		private final long amount;
+		private final boolean marketOrder;
+		private volatile long filled = 0;
+		// funds still reserved: counter currency for bids, base currency for asks
+		private long reserved = 0;
+		private volatile OrderStatus status = OrderStatus.NEW;
+
+		private SimulatedOrder(String id, CurrencyPair currencyPair, boolean buy, long price, long amount,
+				boolean marketOrder) {
+			this.id = id;
+			this.currencyPair = currencyPair;
+			this.buy = buy;
+			this.price = price;
+			this.amount = amount;
+			this.marketOrder = marketOrder;
+		}
+
+	}
+
+}
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URI;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -14,6 +15,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +35,12 @@ import de.gekko.exchanges.CoinfloorArbitrageExchange;
 import de.gekko.exchanges.GDaxArbitragerExchange;
 import de.gekko.exchanges.KrakenArbitrageExchange;
 import de.gekko.exchanges.PoloniexArbitrageExchange;
+import de.gekko.order.OrderTracker;
+import de.gekko.order.UnwindPolicy;
+import de.gekko.ratelimit.EndpointClass;
+import de.gekko.ratelimit.RateLimiter;
+import de.gekko.streaming.JsonFeedFormat;
+import de.gekko.streaming.JsonWebsocketMarketData;
 import javafx.scene.image.Image;
 
 /**
@@ -132,6 +140,7 @@ public class ResourceManager {
 			final ExchangeType type = ExchangeType.valueOf(exchange.get("name").getAsString());
 			final String apiKey = exchange.get("apikey").getAsString();
 			final String secretKey = exchange.get("secretkey").getAsString();
+			final int exchangeCount = listExchanges.size();
 
 			switch (type) {
 			case BITFINEX:
@@ -169,10 +178,106 @@ public class ResourceManager {
 			default:
 				break;
 			}
+
+			// Optionales Limit gleichzeitiger Anfragen
+			if (listExchanges.size() > exchangeCount && exchange.has("maxconcurrentrequests")) {
+				listExchanges.get(exchangeCount).setMaxConcurrentRequests(exchange.get("maxconcurrentrequests").getAsInt());
+			}
+
+			// Optionale Rate Limits, z.B. "ratelimits": {"marketdata": {"requests": 6, "periodms": 1000}}
+			if (listExchanges.size() > exchangeCount && exchange.has("ratelimits")) {
+				parseRateLimits(exchange.getAsJsonObject("ratelimits"),
+						listExchanges.get(exchangeCount).getRateLimiter());
+			}
+
+			// Optionaler JSON-Websocket für gestreamte OrderBooks, z.B. "streaming": {"url": "ws://localhost:8765"}
+			if (listExchanges.size() > exchangeCount && exchange.has("streaming")) {
+				listExchanges.get(exchangeCount)
+						.setStreamingMarketData(parseStreaming(exchange.getAsJsonObject("streaming")));
+			}
+
+			// Optionale Order-Verfolgung, z.B. "orders": {"unwind": "reprice", "filltimeoutms": 500}
+			if (listExchanges.size() > exchangeCount && exchange.has("orders")) {
+				parseOrderTracking(exchange.getAsJsonObject("orders"),
+						listExchanges.get(exchangeCount).getOrderTracker());
+			}
 		}
 		return listExchanges;
 	}
 
+	private static void parseOrderTracking(JsonObject orders, OrderTracker orderTracker) {
+		if (orders.has("unwind")) {
+			orderTracker.setUnwindPolicy(
+					UnwindPolicy.valueOf(orders.get("unwind").getAsString().toUpperCase().replace("-", "_")));
+		}
+		if (orders.has("filltimeoutms")) {
+			orderTracker.setFillTimeout(orders.get("filltimeoutms").getAsLong(), TimeUnit.MILLISECONDS);
+		}
+		if (orders.has("pollintervalms")) {
+			orderTracker.setPollInterval(orders.get("pollintervalms").getAsLong(), TimeUnit.MILLISECONDS);
+		}
+		if (orders.has("maxreprices")) {
+			orderTracker.setMaxReprices(orders.get("maxreprices").getAsInt());
+		}
+	}
+
+	/**
+	 * Erzeugt JSON-Websocket aus der URL und optionalen Feldnamen, die vom Standardformat abweichen.
+	 * 
+	 * @param streaming
+	 * @return
+	 */
+	private static JsonWebsocketMarketData parseStreaming(JsonObject streaming) {
+		final JsonFeedFormat format = new JsonFeedFormat();
+		if (streaming.has("typefield")) {
+			format.setTypeField(streaming.get("typefield").getAsString());
+		}
+		if (streaming.has("snapshottype")) {
+			format.setSnapshotType(streaming.get("snapshottype").getAsString());
+		}
+		if (streaming.has("updatetype")) {
+			format.setUpdateType(streaming.get("updatetype").getAsString());
+		}
+		if (streaming.has("marketfield")) {
+			format.setMarketField(streaming.get("marketfield").getAsString());
+		}
+		if (streaming.has("sequencefield")) {
+			format.setSequenceField(streaming.get("sequencefield").getAsString());
+		}
+		if (streaming.has("bidsfield")) {
+			format.setBidsField(streaming.get("bidsfield").getAsString());
+		}
+		if (streaming.has("asksfield")) {
+			format.setAsksField(streaming.get("asksfield").getAsString());
+		}
+		if (streaming.has("separator")) {
+			format.setSymbolSeparator(streaming.get("separator").getAsString());
+		}
+		if (streaming.has("subscribe")) {
+			format.setSubscribeTemplate(streaming.get("subscribe").getAsString());
+		}
+		if (streaming.has("snapshot")) {
+			format.setSnapshotTemplate(streaming.get("snapshot").getAsString());
+		}
+		return new JsonWebsocketMarketData(URI.create(streaming.get("url").getAsString()), format);
+	}
+
+	private static void parseRateLimits(JsonObject rateLimits, RateLimiter rateLimiter) {
+		for (EndpointClass endpoint : EndpointClass.values()) {
+			final String key = endpoint.name().toLowerCase().replace("_", "");
+			if (rateLimits.has(key)) {
+				final JsonObject limit = rateLimits.getAsJsonObject(key);
+				rateLimiter.setLimit(endpoint, limit.get("requests").getAsInt(), limit.get("periodms").getAsLong(),
+						TimeUnit.MILLISECONDS);
+			}
+		}
+		if (rateLimits.has("total")) {
+			final JsonObject limit = rateLimits.getAsJsonObject("total");
+			rateLimiter.setTotalLimit(limit.get("requests").getAsInt(), limit.get("periodms").getAsLong(),
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
 	private static void parseResourceFile(String json) throws IOException {
 		final JsonArray icons = new JsonParser().parse(json).getAsJsonObject().getAsJsonArray("icons");
 		for (int i = 0; i < icons.size(); i++) {
@@ -0,0 +1,357 @@
+package de.gekko.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only journal of raw websocket frames with their receive time. Frames are written into memory mapped segment
+ * files, so appending is a plain memory copy without system calls; only rolling over to the next segment maps a new
+ * file. Frames are UTF-8 encoded from the delivered String into a reused buffer, nothing is allocated per frame.
+ * <p>
+ * Segment layout (little endian): a {@link #SEGMENT_HEADER_SIZE} byte header (magic, version, segment index, wall
+ * clock millis and System.nanoTime when the segment was created) followed by records of int length, long receive
+ * time (System.nanoTime) and the frame bytes. The length is written last, so a record torn by a crash reads as length
+ * zero, which ends the segment. A new journal continues after the last segment in the directory.
+ * <p>
+ * Appending is synchronized, frames of several connections can share a journal. The next segment is created and
+ * pre-faulted by a background thread, so there is always one spare segment on disk while the journal is open.
+ * @author Maximilian Pfister
+ *
+ */
+public class FrameJournal implements Closeable {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FrameJournal.class);
+
+	public static final int MAGIC = 0x474B4A31; // GKJ1
+	public static final int VERSION = 1;
+	public static final int SEGMENT_HEADER_SIZE = 64;
+	public static final int RECORD_HEADER_SIZE = 12;
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final String SEGMENT_SUFFIX = ".journal";
+
+	private static final int PAGE_SIZE = 4096;
+
+	/* variables */
+
+	private final Path directory;
+	private final String name;
+	private final int segmentSize;
+	private final ExecutorService segmentPreparer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "journal-segment-preparer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private Segment segment;
+	private Future<Segment> nextSegment;
+	private MappedByteBuffer buffer;
+	private byte[] scratch = new byte[16 * 1024];
+	private boolean closed = false;
+	private long frameCount = 0;
+	private long droppedFrames = 0;
+
+	/* constructors */
+
+	/**
+	 * Opens journal with segments of {@link #DEFAULT_SEGMENT_SIZE}.
+	 * @param directory
+	 * @param name prefix of the segment files
+	 * @throws IOException
+	 */
+	public FrameJournal(Path directory, String name) throws IOException {
+		this(directory, name, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param directory
+	 * @param name prefix of the segment files, e.g. bittrex gives bittrex-00000000.journal
+	 * @param segmentSize bytes per segment, frames larger than a segment are dropped
+	 * @throws IOException
+	 */
+	public FrameJournal(Path directory, String name, int segmentSize) throws IOException {
+		if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+			throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+		}
+		this.directory = directory;
+		this.name = name;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		List<Path> segments = listSegments(directory, name);
+		long segmentIndex = segments.isEmpty() ? 0 : segmentIndex(segments.get(segments.size() - 1), name) + 1;
+		useSegment(createSegment(segmentIndex));
+	}
+
+	/* public methods */
+
+	/**
+	 * Appends frame. Does not block on I/O, the operating system writes dirty pages back in the background.
+	 * @param frame raw frame as delivered by the websocket container
+	 * @param receiveTime System.nanoTime when the frame was received
+	 */
+	public synchronized void append(String frame, long receiveTime) {
+		if (closed) {
+			return;
+		}
+		int length = encode(frame);
+		if (RECORD_HEADER_SIZE + length > buffer.remaining()) {
+			if (RECORD_HEADER_SIZE + length > segmentSize - SEGMENT_HEADER_SIZE) {
+				droppedFrames++;
+				LOGGER.info("Frame of {} bytes exceeds journal segment size, dropped", length);
+				return;
+			}
+			try {
+				rollSegment();
+			} catch (IOException e) {
+				// Journal is optional, keep receiving without it
+				LOGGER.info("Could not roll journal segment {}: {}", segment.index + 1, e.toString());
+				closed = true;
+				return;
+			}
+		}
+		int recordPosition = buffer.position();
+		buffer.position(recordPosition + 4);
+		buffer.putLong(receiveTime);
+		buffer.put(scratch, 0, length);
+		buffer.putInt(recordPosition, length);
+		frameCount++;
+	}
+
+	/**
+	 * Forces written frames to the storage device. Blocks, not meant to be called from the I/O thread.
+	 */
+	public synchronized void flush() {
+		if (!closed) {
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Gets number of frames appended since opening.
+	 * @return
+	 */
+	public synchronized long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Gets number of frames that were too large for a segment.
+	 * @return
+	 */
+	public synchronized long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Closes current segment, trimming it to the written records.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		closeSegment(segment, buffer.position());
+		buffer = null;
+		// Discard prepared segment
+		try {
+			Segment unused = nextSegment.get();
+			unused.channel.close();
+			Files.delete(unused.file);
+		} catch (InterruptedException | ExecutionException e) {
+			// Nothing was created
+		} finally {
+			segmentPreparer.shutdown();
+		}
+	}
+
+	/**
+	 * Lists segment files of a journal in append order.
+	 * @param directory
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<Path> listSegments(Path directory, String name) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return segments;
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			files.filter(file -> segmentIndex(file, name) >= 0).forEach(segments::add);
+		}
+		segments.sort((a, b) -> Long.compare(segmentIndex(a, name), segmentIndex(b, name)));
+		return segments;
+	}
+
+	/* private methods */
+
+	/**
+	 * Creates, maps and pre-faults a segment. Writing every page once up front keeps page faults and file block
+	 * allocation off the appending thread.
+	 * @param segmentIndex
+	 * @return
+	 * @throws IOException
+	 */
+	private Segment createSegment(long segmentIndex) throws IOException {
+		Path file = directory.resolve(String.format("%s-%08d%s", name, segmentIndex, SEGMENT_SUFFIX));
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		for (int page = 0; page < segmentSize; page += PAGE_SIZE) {
+			buffer.put(page, (byte) 0);
+		}
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(segmentIndex);
+		buffer.putLong(System.currentTimeMillis());
+		buffer.putLong(System.nanoTime());
+		buffer.position(SEGMENT_HEADER_SIZE);
+		return new Segment(segmentIndex, file, channel, buffer);
+	}
+
+	/**
+	 * Makes segment the current one and starts preparing the next.
+	 * @param segment
+	 */
+	private void useSegment(Segment segment) {
+		this.segment = segment;
+		this.buffer = segment.buffer;
+		long nextIndex = segment.index + 1;
+		nextSegment = segmentPreparer.submit(() -> createSegment(nextIndex));
+		LOGGER.info("Journal segment {} opened", segment.file);
+	}
+
+	/**
+	 * Trims segment to the written records and closes it.
+	 * @param segment
+	 * @param size
+	 * @throws IOException
+	 */
+	private static void closeSegment(Segment segment, int size) throws IOException {
+		// Mapping stays valid until garbage collected, the truncated tail is never touched again
+		try {
+			segment.channel.truncate(size);
+		} catch (IOException e) {
+			// Not possible while mapped on some platforms, readers stop at the zero length after the last record
+			LOGGER.info("Could not trim journal segment {}: {}", segment.file, e.toString());
+		}
+		segment.channel.close();
+	}
+
+	private void rollSegment() throws IOException {
+		// Trimming may wait for writeback, leave it to the background thread as well
+		Segment full = segment;
+		int size = buffer.position();
+		buffer = null;
+		segmentPreparer.submit(() -> {
+			closeSegment(full, size);
+			return null;
+		});
+		try {
+			useSegment(nextSegment.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for journal segment", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not create journal segment", e.getCause());
+		}
+	}
+
+	/**
+	 * Encodes frame as UTF-8 into the scratch buffer, which is copied into the segment in bulk.
+	 * @return encoded length
+	 */
+	private int encode(String frame) {
+		int length = frame.length();
+		// UTF-8 needs at most three bytes per char
+		if (scratch.length < 3 * length) {
+			scratch = new byte[Math.max(3 * length, 2 * scratch.length)];
+		}
+		byte[] bytes = scratch;
+		int position = 0;
+		for (int i = 0; i < length; i++) {
+			char c = frame.charAt(i);
+			if (c < 0x80) {
+				bytes[position++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[position++] = (byte) (0xC0 | (c >> 6));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(frame.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, frame.charAt(++i));
+				bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, same replacement as String.getBytes
+				bytes[position++] = (byte) '?';
+			} else {
+				bytes[position++] = (byte) (0xE0 | (c >> 12));
+				bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Parses segment index from file name.
+	 * @return index or -1 if the file is no segment of the journal
+	 */
+	private static long segmentIndex(Path file, String name) {
+		String fileName = file.getFileName().toString();
+		String prefix = name + "-";
+		if (!fileName.startsWith(prefix) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Mapped segment file.
+	 */
+	private static class Segment {
+
+		private final long index;
+		private final Path file;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+
+		Segment(long index, Path file, FileChannel channel, MappedByteBuffer buffer) {
+			this.index = index;
+			this.file = file;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+package de.gekko.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sequential reader of a {@link FrameJournal}. Segments are memory mapped read only one after another, so iterating
+ * runs at the speed of the page cache or disk. Reads closed journals, segments still being appended to are read up
+ * to the last complete record.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (FrameJournalReader reader = new FrameJournalReader(directory, "bittrex")) {
+ *     while (reader.next()) {
+ *         process(reader.getReceiveTime(), reader.getFrame());
+ *     }
+ * }
+ * </pre>
+ * @author Maximilian Pfister
+ *
+ */
+public class FrameJournalReader implements Closeable {
+
+	/* variables */
+
+	private final List<Path> segments;
+	private int segment = -1;
+	private MappedByteBuffer buffer;
+	private long segmentWallClockTime;
+	private long segmentNanoTime;
+
+	// Current record
+	private int frameOffset;
+	private int frameLength;
+	private long receiveTime;
+	private byte[] frameBytes = new byte[4096];
+
+	/* constructors */
+
+	/**
+	 * Opens all segments of a journal.
+	 * @param directory
+	 * @param name prefix of the segment files
+	 * @throws IOException
+	 */
+	public FrameJournalReader(Path directory, String name) throws IOException {
+		this(FrameJournal.listSegments(directory, name));
+	}
+
+	/**
+	 * Opens the given segments, read in list order.
+	 * @param segments
+	 */
+	public FrameJournalReader(List<Path> segments) {
+		this.segments = segments;
+	}
+
+	/* public methods */
+
+	/**
+	 * Moves to the next frame.
+	 * @return false if all segments were read
+	 * @throws IOException if a segment can not be mapped or is no journal segment
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (buffer != null && buffer.remaining() >= FrameJournal.RECORD_HEADER_SIZE) {
+				int length = buffer.getInt(buffer.position());
+				if (length > 0 && length <= buffer.remaining() - FrameJournal.RECORD_HEADER_SIZE) {
+					frameLength = length;
+					receiveTime = buffer.getLong(buffer.position() + 4);
+					frameOffset = buffer.position() + FrameJournal.RECORD_HEADER_SIZE;
+					buffer.position(frameOffset + length);
+					return true;
+				}
+			}
+			// Segment ends with its size or the first zero length
+			if (!openNextSegment()) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Gets System.nanoTime when the current frame was received.
+	 * @return
+	 */
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	/**
+	 * Gets approximate wall clock time when the current frame was received, derived from the segment header.
+	 * @return milliseconds since epoch
+	 */
+	public long getWallClockTime() {
+		return segmentWallClockTime + (receiveTime - segmentNanoTime) / 1_000_000;
+	}
+
+	/**
+	 * Gets UTF-8 length of the current frame.
+	 * @return
+	 */
+	public int getFrameLength() {
+		return frameLength;
+	}
+
+	/**
+	 * Decodes the current frame.
+	 * @return
+	 */
+	public String getFrame() {
+		return new String(getFrameBytes(), 0, frameLength, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Copies the UTF-8 bytes of the current frame into a buffer reused between frames.
+	 * @return buffer holding the frame in the first {@link #getFrameLength()} bytes
+	 */
+	public byte[] getFrameBytes() {
+		if (frameBytes.length < frameLength) {
+			frameBytes = new byte[Math.max(frameLength, frameBytes.length * 2)];
+		}
+		// Bulk get, position is restored to the next record afterwards
+		int position = buffer.position();
+		buffer.position(frameOffset);
+		buffer.get(frameBytes, 0, frameLength);
+		buffer.position(position);
+		return frameBytes;
+	}
+
+	/**
+	 * Gets the segment file of the current frame.
+	 * @return
+	 */
+	public Path getSegment() {
+		return segment < 0 ? null : segments.get(segment);
+	}
+
+	@Override
+	public void close() {
+		buffer = null;
+		segment = segments.size();
+	}
+
+	/* private methods */
+
+	private boolean openNextSegment() throws IOException {
+		buffer = null;
+		if (++segment >= segments.size()) {
+			segment = segments.size();
+			return false;
+		}
+		Path file = segments.get(segment);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// Mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < FrameJournal.SEGMENT_HEADER_SIZE || buffer.getInt(0) != FrameJournal.MAGIC) {
+			throw new IOException("No journal segment: " + file);
+		}
+		if (buffer.getInt(4) != FrameJournal.VERSION) {
+			throw new IOException("Unsupported journal version " + buffer.getInt(4) + ": " + file);
+		}
+		segmentWallClockTime = buffer.getLong(16);
+		segmentNanoTime = buffer.getLong(24);
+		buffer.position(FrameJournal.SEGMENT_HEADER_SIZE);
+		return true;
+	}
+
+}
@@ -0,0 +1,140 @@
+package de.gekko.journal;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order.OrderType;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+/**
+ * Order book of one exchange as recorded in a {@link FrameJournal}, e.g. the polled and streamed books of the cross
+ * exchange spread engine. A frame is a single line of text:
+ * <pre>
+ * exchange|ETH/BTC|bidPrice:bidAmount,...|askPrice:askAmount,...
+ * </pre>
+ * Levels are written best first with their exact decimal values.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderBookFrame {
+
+	/* constants */
+
+	private static final char FIELD_SEPARATOR = '|';
+	private static final char LEVEL_SEPARATOR = ',';
+	private static final char AMOUNT_SEPARATOR = ':';
+
+	/* variables */
+
+	private final String exchangeName;
+	private final CurrencyPair currencyPair;
+	private final OrderBook orderBook;
+
+	/* constructors */
+
+	private OrderBookFrame(String exchangeName, CurrencyPair currencyPair, OrderBook orderBook) {
+		this.exchangeName = exchangeName;
+		this.currencyPair = currencyPair;
+		this.orderBook = orderBook;
+	}
+
+	/* public methods */
+
+	/**
+	 * Encodes the top levels of an order book.
+	 * @param exchangeName
+	 * @param currencyPair
+	 * @param orderBook
+	 * @param depth levels per side
+	 * @return
+	 */
+	public static String encode(String exchangeName, CurrencyPair currencyPair, OrderBook orderBook, int depth) {
+		StringBuilder builder = new StringBuilder(64 + 48 * depth);
+		builder.append(exchangeName).append(FIELD_SEPARATOR).append(currencyPair).append(FIELD_SEPARATOR);
+		appendLevels(builder, orderBook.getBids(), depth);
+		builder.append(FIELD_SEPARATOR);
+		appendLevels(builder, orderBook.getAsks(), depth);
+		return builder.toString();
+	}
+
+	/**
+	 * Decodes a frame written by {@link #encode(String, CurrencyPair, OrderBook, int)}.
+	 * @param frame
+	 * @return
+	 * @throws IllegalArgumentException if the frame is no order book frame
+	 */
+	public static OrderBookFrame decode(String frame) {
+		int exchangeEnd = frame.indexOf(FIELD_SEPARATOR);
+		int pairEnd = exchangeEnd < 0 ? -1 : frame.indexOf(FIELD_SEPARATOR, exchangeEnd + 1);
+		int bidsEnd = pairEnd < 0 ? -1 : frame.indexOf(FIELD_SEPARATOR, pairEnd + 1);
+		if (bidsEnd < 0) {
+			throw new IllegalArgumentException("No order book frame: " + frame);
+		}
+		CurrencyPair currencyPair = new CurrencyPair(frame.substring(exchangeEnd + 1, pairEnd));
+		List<LimitOrder> bids = parseLevels(frame, pairEnd + 1, bidsEnd, OrderType.BID, currencyPair);
+		List<LimitOrder> asks = parseLevels(frame, bidsEnd + 1, frame.length(), OrderType.ASK, currencyPair);
+		return new OrderBookFrame(frame.substring(0, exchangeEnd), currencyPair, new OrderBook(null, asks, bids));
+	}
+
+	/**
+	 * Reads exchange and market of a frame without decoding its levels.
+	 * @param frame
+	 * @return exchange name and currency pair separated by '|', null if the frame is no order book frame
+	 */
+	public static String readMarket(String frame) {
+		int exchangeEnd = frame.indexOf(FIELD_SEPARATOR);
+		int pairEnd = exchangeEnd < 0 ? -1 : frame.indexOf(FIELD_SEPARATOR, exchangeEnd + 1);
+		return pairEnd < 0 ? null : frame.substring(0, pairEnd);
+	}
+
+	public String getExchangeName() {
+		return exchangeName;
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	/* private methods */
+
+	private static void appendLevels(StringBuilder builder, List<LimitOrder> orders, int depth) {
+		int levels = Math.min(depth, orders.size());
+		for (int level = 0; level < levels; level++) {
+			LimitOrder order = orders.get(level);
+			if (level > 0) {
+				builder.append(LEVEL_SEPARATOR);
+			}
+			builder.append(order.getLimitPrice().toPlainString()).append(AMOUNT_SEPARATOR)
+					.append(order.getOriginalAmount().toPlainString());
+		}
+	}
+
+	private static List<LimitOrder> parseLevels(String frame, int start, int end, OrderType orderType,
+			CurrencyPair currencyPair) {
+		List<LimitOrder> orders = new ArrayList<>();
+		int position = start;
+		while (position < end) {
+			int levelEnd = frame.indexOf(LEVEL_SEPARATOR, position);
+			if (levelEnd < 0 || levelEnd > end) {
+				levelEnd = end;
+			}
+			int amountStart = frame.indexOf(AMOUNT_SEPARATOR, position);
+			if (amountStart < 0 || amountStart > levelEnd) {
+				throw new IllegalArgumentException("Level without amount: " + frame.substring(position, levelEnd));
+			}
+			BigDecimal price = new BigDecimal(frame.substring(position, amountStart));
+			BigDecimal amount = new BigDecimal(frame.substring(amountStart + 1, levelEnd));
+			orders.add(new LimitOrder(orderType, amount, currencyPair, null, null, price));
+			position = levelEnd + 1;
+		}
+		return orders;
+	}
+
+}
@@ -0,0 +1,286 @@
+package de.gekko.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.concurrency.RingBuffer;
+import de.gekko.concurrency.SleepingWaitStrategy;
+import de.gekko.metrics.MetricsRegistry;
+
+/**
+ * Asynchronous log for hot paths. The producer fills a preallocated {@link EventRecord} in a {@link RingBuffer} with
+ * primitive arguments and publishes it without formatting, boxing, allocating or locking; a background thread
+ * renders the records and writes them to an slf4j logger or a file. If the writer falls behind, events are dropped
+ * instead of blocking the producer and the number of dropped events is logged.
+ * <p>
+ * Every producer thread gets its own EventLog with a unique name, a single daemon thread writes all EventLogs of the
+ * process.
+ * <p>
+ * Usage, from a single producer thread:
+ * <pre>
+ * eventLog.claim("Sell {}: {} for {}").add(currency).add(amount, 8).add(price).publish();
+ * </pre>
+ * @author Maximilian Pfister
+ *
+ */
+public class EventLog {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventLog.class);
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static final long WRITER_SLEEP_TIME = 1_000_000; // nanoseconds
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+			.withZone(ZoneId.systemDefault());
+
+	// Event logs that are not stopped yet, registration is guarded by the list
+	private static final List<EventLog> EVENT_LOGS = new CopyOnWriteArrayList<>();
+	private static Thread writerThread = null;
+
+	/* variables */
+
+	private final String name;
+	private final RingBuffer<EventRecord> ringBuffer;
+	// Handed out while the ring buffer is full, publishing it only counts the drop
+	private final EventRecord overflowRecord = new EventRecord(this);
+	private final Logger logger;
+	private final Writer writer;
+	private volatile long droppedEvents = 0;
+	// Writer thread only
+	private long nextSequence = 0;
+	private long reportedDroppedEvents = 0;
+	private volatile boolean stop = false;
+	private volatile boolean active = false;
+
+	/* constructors */
+
+	private EventLog(String name, Logger logger, Writer writer, int capacity) {
+		this.name = name;
+		this.logger = logger;
+		this.writer = writer;
+		this.ringBuffer = new RingBuffer<>(() -> new EventRecord(this), capacity,
+				new SleepingWaitStrategy(WRITER_SLEEP_TIME));
+		MetricsRegistry.getInstance().counter("gekko_event_log_dropped_total",
+				"Events dropped because the event log writer fell behind", () -> droppedEvents, "log", name);
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates an EventLog writing to the slf4j logger of the name and registers it with the
+	 * writer thread, which is started with the first EventLog.
+	 * @param name unique among the EventLogs that are not stopped
+	 * @return
+	 * @throws IllegalArgumentException if an EventLog of the name exists
+	 */
+	public static EventLog createInstance(String name) {
+		return register(new EventLog(name, LoggerFactory.getLogger(name), null, DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Static factory method that creates an EventLog appending timestamped lines to a file and registers it with the
+	 * writer thread, which is started with the first EventLog.
+	 * @param name unique among the EventLogs that are not stopped
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalArgumentException if an EventLog of the name exists
+	 */
+	public static EventLog createInstance(String name, Path file) throws IOException {
+		checkName(name);
+		Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+		try {
+			return register(new EventLog(name, null, writer, DEFAULT_CAPACITY));
+		} catch (IllegalArgumentException e) {
+			writer.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Claims a record for the next event. Must only be called by one thread at a time, the record has to be
+	 * published by the same thread before the next claim.
+	 * @param pattern message with {} placeholders, should be a constant
+	 * @return
+	 */
+	public EventRecord claim(String pattern) {
+		long sequence = ringBuffer.tryNext();
+		EventRecord record = sequence < 0 ? overflowRecord : ringBuffer.get(sequence);
+		record.reset(pattern, sequence, System.currentTimeMillis());
+		return record;
+	}
+
+	/**
+	 * Stops writing after all events published before were written and closes the file.
+	 */
+	public void stop() {
+		stop = true;
+	}
+
+	/**
+	 * Checks if all published events were written.
+	 * @return
+	 */
+	public boolean isDrained() {
+		return ringBuffer.getConsumerSequence() == ringBuffer.getCursor();
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Gets number of events dropped because the writer fell behind.
+	 * @return
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents;
+	}
+
+	/* package methods */
+
+	void publish(EventRecord record) {
+		if (record == overflowRecord) {
+			droppedEvents++;
+		} else {
+			ringBuffer.publish(record.getSequence());
+		}
+	}
+
+	/* private methods */
+
+	private static void checkName(String name) {
+		for (EventLog eventLog : EVENT_LOGS) {
+			if (!eventLog.stop && eventLog.name.equals(name)) {
+				throw new IllegalArgumentException("Event log exists: " + name);
+			}
+		}
+	}
+
+	private static EventLog register(EventLog eventLog) {
+		synchronized (EVENT_LOGS) {
+			checkName(eventLog.name);
+			eventLog.active = true;
+			EVENT_LOGS.add(eventLog);
+			if (writerThread == null) {
+				writerThread = new Thread(EventLog::writeAll, "event-log-writer");
+				// Must not keep the application alive, pending events are lost on exit
+				writerThread.setDaemon(true);
+				writerThread.start();
+			}
+		}
+		return eventLog;
+	}
+
+	/**
+	 * Writer routine of all EventLogs, parks while none of them has new events. Returns when interrupted, after
+	 * writing all published events.
+	 */
+	private static void writeAll() {
+		StringBuilder line = new StringBuilder(256);
+		boolean interrupted = false;
+		while (!interrupted) {
+			interrupted = Thread.currentThread().isInterrupted();
+			boolean written = false;
+			for (EventLog eventLog : EVENT_LOGS) {
+				// Events published before the stop are written by this drain
+				boolean stopped = eventLog.stop || interrupted;
+				written |= eventLog.drain(line);
+				if (stopped) {
+					eventLog.close();
+				}
+			}
+			if (!written) {
+				LockSupport.parkNanos(WRITER_SLEEP_TIME);
+			}
+		}
+		synchronized (EVENT_LOGS) {
+			writerThread = null;
+		}
+		LOGGER.warn("Event log writer interrupted");
+	}
+
+	/**
+	 * Writes all published events.
+	 * @return true if an event was written
+	 */
+	private boolean drain(StringBuilder line) {
+		long available = ringBuffer.getCursor();
+		if (available < nextSequence) {
+			reportDroppedEvents();
+			return false;
+		}
+		for (; nextSequence <= available; nextSequence++) {
+			write(ringBuffer.get(nextSequence), line);
+		}
+		ringBuffer.release(available);
+		reportDroppedEvents();
+		flush();
+		return true;
+	}
+
+	private void reportDroppedEvents() {
+		long dropped = droppedEvents;
+		if (dropped != reportedDroppedEvents) {
+			LOGGER.warn("Dropped {} events [{}]", dropped - reportedDroppedEvents, name);
+			reportedDroppedEvents = dropped;
+		}
+	}
+
+	private void close() {
+		EVENT_LOGS.remove(this);
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				LOGGER.info("Could not close event log [{}]: {}", name, e.toString());
+			}
+		}
+		active = false;
+	}
+
+	private void write(EventRecord record, StringBuilder line) {
+		line.setLength(0);
+		if (writer == null) {
+			record.render(line);
+			logger.info(line.toString());
+			return;
+		}
+		TIME_FORMAT.formatTo(Instant.ofEpochMilli(record.getTime()), line);
+		line.append(' ');
+		record.render(line);
+		line.append(System.lineSeparator());
+		try {
+			writer.append(line);
+		} catch (IOException e) {
+			LOGGER.info("Could not write event log [{}]: {}", name, e.toString());
+		}
+	}
+
+	private void flush() {
+		if (writer != null) {
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				LOGGER.info("Could not flush event log [{}]: {}", name, e.toString());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package de.gekko.logging;
+
+/**
+ * Preallocated entry of an {@link EventLog}: a message pattern with {} placeholders and its arguments as raw values.
+ * Doubles and longs are stored as primitives, objects by reference, so filling a record neither boxes nor
+ * allocates. Referenced objects are rendered later by the writer thread and should be immutable (currencies, order
+ * ids, cycles).
+ * @author Maximilian Pfister
+ *
+ */
+public class EventRecord {
+
+	/* constants */
+
+	public static final int MAX_ARGUMENTS = 8;
+
+	private static final byte DOUBLE = 0;
+	private static final byte DECIMAL = 1;
+	private static final byte LONG = 2;
+	private static final byte OBJECT = 3;
+
+	/* variables */
+
+	private final EventLog eventLog;
+	private final byte[] kinds = new byte[MAX_ARGUMENTS];
+	private final byte[] decimals = new byte[MAX_ARGUMENTS];
+	private final long[] values = new long[MAX_ARGUMENTS];
+	private final Object[] objects = new Object[MAX_ARGUMENTS];
+	private String pattern;
+	private int argumentCount;
+	private long sequence;
+	private long time;
+
+	/* constructors */
+
+	EventRecord(EventLog eventLog) {
+		this.eventLog = eventLog;
+	}
+
+	/* public methods */
+
+	/**
+	 * Adds argument, rendered like {@link Double#toString(double)}.
+	 * @param value
+	 * @return this
+	 */
+	public EventRecord add(double value) {
+		return set(DOUBLE, 0, Double.doubleToRawLongBits(value), null);
+	}
+
+	/**
+	 * Adds argument rendered with a fixed number of decimals.
+	 * @param value
+	 * @param decimals
+	 * @return this
+	 */
+	public EventRecord add(double value, int decimals) {
+		return set(DECIMAL, decimals, Double.doubleToRawLongBits(value), null);
+	}
+
+	public EventRecord add(long value) {
+		return set(LONG, 0, value, null);
+	}
+
+	public EventRecord add(Object value) {
+		return set(OBJECT, 0, 0, value);
+	}
+
+	/**
+	 * Hands the record to the writer thread. The record must not be touched afterwards.
+	 */
+	public void publish() {
+		eventLog.publish(this);
+	}
+
+	/* package methods */
+
+	void reset(String pattern, long sequence, long time) {
+		// Drop references of the previous use
+		for (int i = 0; i < argumentCount; i++) {
+			objects[i] = null;
+		}
+		this.pattern = pattern;
+		this.sequence = sequence;
+		this.time = time;
+		this.argumentCount = 0;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	long getTime() {
+		return time;
+	}
+
+	/**
+	 * Renders pattern with arguments, placeholders without argument stay {}.
+	 * @param out
+	 */
+	void render(StringBuilder out) {
+		int argument = 0;
+		int start = 0;
+		int placeholder;
+		while ((placeholder = pattern.indexOf("{}", start)) >= 0) {
+			out.append(pattern, start, placeholder);
+			if (argument < argumentCount) {
+				renderArgument(out, argument++);
+			} else {
+				out.append("{}");
+			}
+			start = placeholder + 2;
+		}
+		out.append(pattern, start, pattern.length());
+	}
+
+	/* private methods */
+
+	private EventRecord set(byte kind, int decimal, long value, Object object) {
+		if (argumentCount < MAX_ARGUMENTS) {
+			kinds[argumentCount] = kind;
+			decimals[argumentCount] = (byte) decimal;
+			values[argumentCount] = value;
+			objects[argumentCount] = object;
+			argumentCount++;
+		}
+		return this;
+	}
+
+	private void renderArgument(StringBuilder out, int argument) {
+		switch (kinds[argument]) {
+		case DOUBLE:
+			out.append(Double.longBitsToDouble(values[argument]));
+			break;
+		case DECIMAL:
+			out.append(String.format("%." + decimals[argument] + "f", Double.longBitsToDouble(values[argument])));
+			break;
+		case LONG:
+			out.append(values[argument]);
+			break;
+		default:
+			out.append(objects[argument]);
+		}
+	}
+
+}
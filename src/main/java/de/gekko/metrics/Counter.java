@@ -0,0 +1,35 @@
+package de.gekko.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing count, lock free and allocation free to update.
+ * @author Maximilian Pfister
+ *
+ */
+public class Counter {
+
+	/* variables */
+
+	private final AtomicLong value = new AtomicLong();
+
+	/* constructors */
+
+	Counter() {
+	}
+
+	/* public methods */
+
+	public void increment() {
+		value.incrementAndGet();
+	}
+
+	public void add(long amount) {
+		value.addAndGet(amount);
+	}
+
+	public long get() {
+		return value.get();
+	}
+
+}
@@ -0,0 +1,41 @@
+package de.gekko.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Value that goes up and down, lock free and allocation free to update. Values that already exist elsewhere are
+ * better registered as callback (see {@link MetricsRegistry#gauge(String, String, java.util.function.DoubleSupplier,
+ * String...)}), so the hot path does not have to update anything.
+ * @author Maximilian Pfister
+ *
+ */
+public class Gauge {
+
+	/* variables */
+
+	private final AtomicLong value = new AtomicLong();
+
+	/* constructors */
+
+	Gauge() {
+	}
+
+	/* public methods */
+
+	public void set(long value) {
+		this.value.set(value);
+	}
+
+	public void increment() {
+		value.incrementAndGet();
+	}
+
+	public void decrement() {
+		value.decrementAndGet();
+	}
+
+	public long get() {
+		return value.get();
+	}
+
+}
@@ -0,0 +1,232 @@
+package de.gekko.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import de.gekko.tracing.LatencyHistogram;
+
+/**
+ * Registry of all metrics of the process, written in the Prometheus text format by the {@link MetricsServer}.
+ * Metrics are registered once at setup (which allocates) and updated on the hot paths through {@link Counter},
+ * {@link Gauge} and {@link LatencyHistogram}, which are lock free and allocation free. Values that are kept anyway,
+ * like queue positions or counts of the scanner, are registered as callbacks and only read when scraped.
+ * @author Maximilian Pfister
+ *
+ */
+public class MetricsRegistry {
+
+	/* constants */
+
+	private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+	// Upper bounds of the exported histogram buckets in nanoseconds, 1 us to 10 s
+	private static final long[] HISTOGRAM_BOUNDS = { 1_000L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L,
+			500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L,
+			250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L };
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	/* variables */
+
+	private final Map<String, MetricFamily> families = new ConcurrentSkipListMap<>();
+
+	/* constructors */
+
+	MetricsRegistry() {
+	}
+
+	/* public methods */
+
+	public static MetricsRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets or registers a counter.
+	 * @param name e.g. gekko_feed_messages_total
+	 * @param help
+	 * @param labels alternating label names and values
+	 * @return
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return (Counter) family(name, help, "counter").samples.computeIfAbsent(toLabelString(labels), key -> new Counter());
+	}
+
+	/**
+	 * Registers a counter read from a callback when scraped. Replaces a callback registered with the same labels.
+	 * @param name
+	 * @param help
+	 * @param supplier
+	 * @param labels alternating label names and values
+	 */
+	public void counter(String name, String help, LongSupplier supplier, String... labels) {
+		family(name, help, "counter").samples.put(toLabelString(labels), supplier);
+	}
+
+	/**
+	 * Gets or registers a gauge.
+	 * @param name
+	 * @param help
+	 * @param labels alternating label names and values
+	 * @return
+	 */
+	public Gauge gauge(String name, String help, String... labels) {
+		return (Gauge) family(name, help, "gauge").samples.computeIfAbsent(toLabelString(labels), key -> new Gauge());
+	}
+
+	/**
+	 * Registers a gauge read from a callback when scraped. Replaces a callback registered with the same labels.
+	 * @param name
+	 * @param help
+	 * @param supplier
+	 * @param labels alternating label names and values
+	 */
+	public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+		family(name, help, "gauge").samples.put(toLabelString(labels), supplier);
+	}
+
+	/**
+	 * Gets or registers a latency histogram, exported in seconds.
+	 * @param name e.g. gekko_wallet_refresh_seconds
+	 * @param help
+	 * @param labels alternating label names and values
+	 * @return
+	 */
+	public LatencyHistogram histogram(String name, String help, String... labels) {
+		return (LatencyHistogram) family(name, help, "histogram").samples.computeIfAbsent(toLabelString(labels),
+				key -> new LatencyHistogram());
+	}
+
+	/**
+	 * Registers an existing latency histogram, exported in seconds.
+	 * @param name
+	 * @param help
+	 * @param histogram
+	 * @param labels alternating label names and values
+	 */
+	public void histogram(String name, String help, LatencyHistogram histogram, String... labels) {
+		family(name, help, "histogram").samples.put(toLabelString(labels), histogram);
+	}
+
+	/**
+	 * Removes all metrics of a name.
+	 * @param name
+	 */
+	public void remove(String name) {
+		families.remove(name);
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text exposition format (version 0.0.4).
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException {
+		StringBuilder out = new StringBuilder();
+		for (MetricFamily family : families.values()) {
+			out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Object> sample : family.samples.entrySet()) {
+				writeSample(out, family.name, sample.getKey(), sample.getValue());
+			}
+		}
+		writer.write(out.toString());
+	}
+
+	/* private methods */
+
+	private MetricFamily family(String name, String help, String type) {
+		MetricFamily family = families.computeIfAbsent(name, key -> new MetricFamily(name, help, type));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException(name + " is registered as " + family.type);
+		}
+		return family;
+	}
+
+	private static void writeSample(StringBuilder out, String name, String labels, Object sample) {
+		if (sample instanceof LatencyHistogram) {
+			LatencyHistogram histogram = (LatencyHistogram) sample;
+			// Read count first, buckets recorded concurrently may exceed it slightly
+			long count = histogram.getCount();
+			String separator = labels.isEmpty() ? "" : ",";
+			for (long bound : HISTOGRAM_BOUNDS) {
+				out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"")
+						.append(formatValue(bound / NANOS_PER_SECOND)).append("\"} ")
+						.append(Math.min(histogram.getCountAtOrBelow(bound), count)).append('\n');
+			}
+			out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"+Inf\"} ").append(count)
+					.append('\n');
+			appendSample(out, name + "_sum", labels, formatValue(histogram.getTotal() / NANOS_PER_SECOND));
+			appendSample(out, name + "_count", labels, Long.toString(count));
+		} else if (sample instanceof Counter) {
+			appendSample(out, name, labels, Long.toString(((Counter) sample).get()));
+		} else if (sample instanceof Gauge) {
+			appendSample(out, name, labels, Long.toString(((Gauge) sample).get()));
+		} else if (sample instanceof LongSupplier) {
+			appendSample(out, name, labels, Long.toString(((LongSupplier) sample).getAsLong()));
+		} else if (sample instanceof DoubleSupplier) {
+			appendSample(out, name, labels, formatValue(((DoubleSupplier) sample).getAsDouble()));
+		}
+	}
+
+	private static void appendSample(StringBuilder out, String name, String labels, String value) {
+		out.append(name);
+		if (!labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ').append(value).append('\n');
+	}
+
+	private static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Renders label pairs as name="value",... with escaped values.
+	 */
+	private static String toLabelString(String[] labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels have to be name value pairs");
+		}
+		StringBuilder labelString = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				labelString.append(',');
+			}
+			labelString.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")
+					.replace("\n", "\\n")).append('"');
+		}
+		return labelString.toString();
+	}
+
+	private static String escapeHelp(String help) {
+		return help.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+	/**
+	 * Metrics of one name, keyed by label string.
+	 */
+	private static class MetricFamily {
+
+		private final String name;
+		private final String help;
+		private final String type;
+		private final Map<String, Object> samples = new ConcurrentSkipListMap<>();
+
+		MetricFamily(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package de.gekko.metrics;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP endpoint serving the {@link MetricsRegistry} at /metrics in the Prometheus text format. Uses the
+ * HTTP server of the JDK, scrapes are answered by a single background thread.
+ * @author Maximilian Pfister
+ *
+ */
+public class MetricsServer {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+
+	public static final int DEFAULT_PORT = 9404;
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/* variables */
+
+	private final HttpServer server;
+	private final ExecutorService executorService = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "metrics-server");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/* constructors */
+
+	private MetricsServer(InetSocketAddress address, MetricsRegistry registry) throws IOException {
+		server = HttpServer.create(address, 0);
+		server.createContext("/metrics", httpExchange -> handle(httpExchange, registry));
+		server.setExecutor(executorService);
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates a MetricsServer for the process wide registry on all interfaces and starts
+	 * it.
+	 * @param port
+	 * @return
+	 * @throws IOException if the port can not be bound
+	 */
+	public static MetricsServer createInstance(int port) throws IOException {
+		return createInstance(new InetSocketAddress(port), MetricsRegistry.getInstance());
+	}
+
+	/**
+	 * Static factory method that creates a MetricsServer and starts it.
+	 * @param address
+	 * @param registry
+	 * @return
+	 * @throws IOException if the address can not be bound
+	 */
+	public static MetricsServer createInstance(InetSocketAddress address, MetricsRegistry registry) throws IOException {
+		MetricsServer metricsServer = new MetricsServer(address, registry);
+		metricsServer.server.start();
+		LOGGER.info("Serving metrics on {}", metricsServer.server.getAddress());
+		return metricsServer;
+	}
+
+	/**
+	 * Gets bound port, useful if the server was created with port 0.
+	 * @return
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops serving metrics.
+	 */
+	public void stop() {
+		server.stop(0);
+		executorService.shutdown();
+	}
+
+	/* private methods */
+
+	private static void handle(HttpExchange httpExchange, MetricsRegistry registry) throws IOException {
+		try {
+			if (!httpExchange.getRequestMethod().equals("GET")) {
+				httpExchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			httpExchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			// Chunked, the size is not known up front
+			httpExchange.sendResponseHeaders(200, 0);
+			try (Writer writer = new OutputStreamWriter(httpExchange.getResponseBody(), StandardCharsets.UTF_8)) {
+				registry.write(writer);
+			}
+		} finally {
+			httpExchange.close();
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package de.gekko.order;
+
+/**
+ * Outcome of a submitted {@link OrderLeg}: the order id or the error of the exchange, and when the leg passed the
+ * stages of the gateway. Times are System.nanoTime.
+ * @author Maximilian Pfister
+ *
+ */
+public class LegExecution {
+
+	/* variables */
+
+	private final OrderLeg leg;
+	private final String orderId;
+	private final Exception error;
+	private final long submitTime;
+	private final long startTime;
+	private final long ackTime;
+
+	/* constructors */
+
+	/**
+	 * @param leg
+	 * @param orderId null if the order failed
+	 * @param error null if the order was placed
+	 * @param submitTime leg handed to the gateway
+	 * @param startTime network thread started sending
+	 * @param ackTime exchange answered
+	 */
+	public LegExecution(OrderLeg leg, String orderId, Exception error, long submitTime, long startTime, long ackTime) {
+		this.leg = leg;
+		this.orderId = orderId;
+		this.error = error;
+		this.submitTime = submitTime;
+		this.startTime = startTime;
+		this.ackTime = ackTime;
+	}
+
+	/* public methods */
+
+	/**
+	 * Checks if the exchange accepted the order.
+	 * @return
+	 */
+	public boolean isPlaced() {
+		return error == null;
+	}
+
+	public OrderLeg getLeg() {
+		return leg;
+	}
+
+	/**
+	 * Gets id of the placed order.
+	 * @return null if the order failed
+	 */
+	public String getOrderId() {
+		return orderId;
+	}
+
+	/**
+	 * Gets error of a failed order.
+	 * @return null if the order was placed
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	public long getSubmitTime() {
+		return submitTime;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getAckTime() {
+		return ackTime;
+	}
+
+	/**
+	 * Gets time the leg waited for a free network thread.
+	 * @return nanoseconds
+	 */
+	public long getQueueTime() {
+		return startTime - submitTime;
+	}
+
+	/**
+	 * Gets time from sending until the exchange answered, including the wait for the trading rate limit.
+	 * @return nanoseconds
+	 */
+	public long getExchangeTime() {
+		return ackTime - startTime;
+	}
+
+	/**
+	 * Gets time from submission until the exchange answered.
+	 * @return nanoseconds
+	 */
+	public long getTotalTime() {
+		return ackTime - submitTime;
+	}
+
+	@Override
+	public String toString() {
+		return leg + (isPlaced() ? " placed " + orderId : " failed " + error) + String.format(
+				" [queue %.3f ms, exchange %.3f ms]", getQueueTime() / 1e6, getExchangeTime() / 1e6);
+	}
+
+}
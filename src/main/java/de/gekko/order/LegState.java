@@ -0,0 +1,71 @@
+package de.gekko.order;
+
+import org.knowm.xchange.dto.Order.OrderStatus;
+
+/**
+ * Lifecycle of a tracked order leg. A leg starts PENDING, becomes ACKED when the exchange returned the order id and
+ * ends FILLED, CANCELLED or REJECTED.
+ * @author Maximilian Pfister
+ *
+ */
+public enum LegState {
+
+	/** Submitted, the exchange did not answer yet. */
+	PENDING(false),
+	/** Resting on the exchange without fills. */
+	ACKED(false),
+	/** Resting on the exchange with some fills. */
+	PARTIALLY_FILLED(false),
+	/** Filled completely. */
+	FILLED(true),
+	/** Cancelled, expired or replaced, possibly after some fills. */
+	CANCELLED(true),
+	/** Refused by the exchange or failed before it was placed. */
+	REJECTED(true);
+
+	private final boolean terminal;
+
+	private LegState(boolean terminal) {
+		this.terminal = terminal;
+	}
+
+	/**
+	 * Checks if the leg can not change any more.
+	 * @return
+	 */
+	public boolean isTerminal() {
+		return terminal;
+	}
+
+	/**
+	 * Maps order status reported by the exchange.
+	 * @param status
+	 * @param filled true if the order has fills
+	 * @return null if the status does not tell the state, e.g. while a cancel is pending
+	 */
+	public static LegState of(OrderStatus status, boolean filled) {
+		if (status == null) {
+			return null;
+		}
+		switch (status) {
+		case PENDING_NEW:
+			return PENDING;
+		case NEW:
+			return filled ? PARTIALLY_FILLED : ACKED;
+		case PARTIALLY_FILLED:
+			return PARTIALLY_FILLED;
+		case FILLED:
+			return FILLED;
+		case CANCELED:
+		case EXPIRED:
+		case REPLACED:
+		case STOPPED:
+			return CANCELLED;
+		case REJECTED:
+			return REJECTED;
+		default:
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package de.gekko.order;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order.OrderType;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import de.gekko.concurrency.NetworkExecutor;
+import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.metrics.Gauge;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.tracing.LatencyHistogram;
+
+/**
+ * Submits limit orders of one exchange. Order templates of all markets of the exchange are prepared when the gateway
+ * is created, so submitting a leg only rounds price and amount. All legs of an execution are built first and then
+ * handed to the priority lane of the {@link NetworkExecutor} in one go, where they are sent concurrently. Every leg
+ * gets its own future that completes with a {@link LegExecution} when the exchange answered, failed orders complete
+ * normally with the error.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderGateway {
+
+	/* variables */
+
+	private final AbstractArbitrageExchange exchange;
+	private final Map<CurrencyPair, OrderTemplate> bidTemplates = new ConcurrentHashMap<>();
+	private final Map<CurrencyPair, OrderTemplate> askTemplates = new ConcurrentHashMap<>();
+	private final Gauge ordersInFlight;
+	private final LatencyHistogram queueTimes;
+	private final LatencyHistogram exchangeTimes;
+
+	/* constructors */
+
+	private OrderGateway(AbstractArbitrageExchange exchange) {
+		this.exchange = exchange;
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		String name = exchange.toString();
+		this.ordersInFlight = metrics.gauge("gekko_orders_in_flight",
+				"Orders submitted and not answered by the exchange yet", "exchange", name);
+		this.queueTimes = metrics.histogram("gekko_order_leg_seconds", "Order legs by stage of the gateway",
+				"exchange", name, "stage", "queue");
+		this.exchangeTimes = metrics.histogram("gekko_order_leg_seconds", "Order legs by stage of the gateway",
+				"exchange", name, "stage", "exchange");
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates an OrderGateway with templates for all markets of the exchange.
+	 * @param exchange
+	 * @return
+	 */
+	public static OrderGateway createInstance(AbstractArbitrageExchange exchange) {
+		OrderGateway gateway = new OrderGateway(exchange);
+		for (CurrencyPair currencyPair : exchange.getCurrencyPairs()) {
+			gateway.prepare(currencyPair);
+		}
+		return gateway;
+	}
+
+	/**
+	 * Prepares templates of both sides of a market, for pairs not listed by the exchange.
+	 * @param currencyPair
+	 */
+	public void prepare(CurrencyPair currencyPair) {
+		getTemplate(currencyPair, OrderType.BID);
+		getTemplate(currencyPair, OrderType.ASK);
+	}
+
+	/**
+	 * Gets template of a market and side, created on first use if the market was not prepared.
+	 * @param currencyPair
+	 * @param orderType BID or ASK
+	 * @return
+	 */
+	public OrderTemplate getTemplate(CurrencyPair currencyPair, OrderType orderType) {
+		Map<CurrencyPair, OrderTemplate> templates;
+		switch (orderType) {
+		case BID:
+			templates = bidTemplates;
+			break;
+		case ASK:
+			templates = askTemplates;
+			break;
+		default:
+			throw new IllegalArgumentException("Limit orders are BID or ASK: " + orderType);
+		}
+		OrderTemplate template = templates.get(currencyPair);
+		if (template == null) {
+			template = templates.computeIfAbsent(currencyPair,
+					pair -> new OrderTemplate(pair, orderType, exchange.getDecimals()));
+		}
+		return template;
+	}
+
+	/**
+	 * Submits one leg.
+	 * @param leg
+	 * @return completes when the exchange answered
+	 */
+	public CompletableFuture<LegExecution> submit(OrderLeg leg) {
+		return submitAll(leg).get(0);
+	}
+
+	/**
+	 * Submits all legs at once, they are sent concurrently up to the concurrency limit of the exchange.
+	 * @param legs
+	 * @return one future per leg in the same order, completes when the exchange answered; completes exceptionally with
+	 *         a {@link RejectedExecutionException} if the network executor was shut down
+	 */
+	public List<CompletableFuture<LegExecution>> submitAll(OrderLeg... legs) {
+		// Build all orders before the first one is sent
+		LimitOrder[] limitOrders = new LimitOrder[legs.length];
+		for (int i = 0; i < legs.length; i++) {
+			limitOrders[i] = legs[i].getTemplate().createLimitOrder(legs[i].getPrice(), legs[i].getAmount());
+		}
+		List<CompletableFuture<LegExecution>> executions = new ArrayList<>(legs.length);
+		NetworkExecutor networkExecutor = exchange.getNetworkExecutor();
+		long submitTime = System.nanoTime();
+		for (int i = 0; i < legs.length; i++) {
+			OrderLeg leg = legs[i];
+			LimitOrder limitOrder = limitOrders[i];
+			CompletableFuture<LegExecution> execution = new CompletableFuture<>();
+			executions.add(execution);
+			ordersInFlight.increment();
+			try {
+				networkExecutor.submitPriority(() -> {
+					execution.complete(send(leg, limitOrder, submitTime));
+					return null;
+				});
+			} catch (RejectedExecutionException e) {
+				ordersInFlight.decrement();
+				execution.completeExceptionally(e);
+			}
+		}
+		return executions;
+	}
+
+	public AbstractArbitrageExchange getExchange() {
+		return exchange;
+	}
+
+	/* private methods */
+
+	/**
+	 * Places order, called by a network thread.
+	 * @param leg
+	 * @param limitOrder
+	 * @param submitTime
+	 * @return
+	 */
+	private LegExecution send(OrderLeg leg, LimitOrder limitOrder, long submitTime) {
+		long startTime = System.nanoTime();
+		String orderId = null;
+		Exception error = null;
+		try {
+			orderId = exchange.placeLimitOrder(limitOrder);
+		} catch (Exception e) {
+			error = e;
+		} finally {
+			ordersInFlight.decrement();
+		}
+		long ackTime = System.nanoTime();
+		queueTimes.record(startTime - submitTime);
+		exchangeTimes.record(ackTime - startTime);
+		return new LegExecution(leg, orderId, error, submitTime, startTime, ackTime);
+	}
+
+}
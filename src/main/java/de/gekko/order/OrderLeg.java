@@ -0,0 +1,48 @@
+package de.gekko.order;
+
+/**
+ * One limit order of a multi leg execution, submitted by the {@link OrderGateway}.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderLeg {
+
+	/* variables */
+
+	private final OrderTemplate template;
+	private final double price;
+	private final double amount;
+
+	/* constructors */
+
+	/**
+	 * @param template market and side
+	 * @param price
+	 * @param amount base currency
+	 */
+	public OrderLeg(OrderTemplate template, double price, double amount) {
+		this.template = template;
+		this.price = price;
+		this.amount = amount;
+	}
+
+	/* public methods */
+
+	public OrderTemplate getTemplate() {
+		return template;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	@Override
+	public String toString() {
+		return template + " " + amount + " @ " + price;
+	}
+
+}
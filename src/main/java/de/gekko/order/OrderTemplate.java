@@ -0,0 +1,109 @@
+package de.gekko.order;
+
+import java.math.BigDecimal;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order.OrderType;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+/**
+ * Precomputed part of the limit orders of one market and side: pair, order type and scale of the exchange. Prices and
+ * amounts are rounded to the scale on a long and wrapped into a BigDecimal directly, without the decimal string
+ * conversion and rescaling of {@code BigDecimal.valueOf(double).setScale(...)}. The last price and amount are kept, so
+ * repeated orders at the same price or size reuse their immutable BigDecimal. The LimitOrder itself is created per
+ * order, the exchange API takes a new one for every request.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderTemplate {
+
+	/* variables */
+
+	private final CurrencyPair currencyPair;
+	private final OrderType orderType;
+	private final int scale;
+	private final double factor;
+	// Last rounded values, immutable and replaced as a whole
+	private volatile Decimal lastPrice = null;
+	private volatile Decimal lastAmount = null;
+
+	/* constructors */
+
+	/**
+	 * @param currencyPair
+	 * @param orderType BID or ASK
+	 * @param scale decimals allowed by the exchange
+	 */
+	public OrderTemplate(CurrencyPair currencyPair, OrderType orderType, int scale) {
+		this.currencyPair = currencyPair;
+		this.orderType = orderType;
+		this.scale = scale;
+		this.factor = Math.pow(10, scale);
+	}
+
+	/* public methods */
+
+	/**
+	 * Creates limit order, price and amount are rounded half up to the scale.
+	 * @param price
+	 * @param amount base currency
+	 * @return
+	 */
+	public LimitOrder createLimitOrder(double price, double amount) {
+		Decimal amountDecimal = toDecimal(amount, lastAmount);
+		lastAmount = amountDecimal;
+		Decimal priceDecimal = toDecimal(price, lastPrice);
+		lastPrice = priceDecimal;
+		return new LimitOrder(orderType, amountDecimal.value, currencyPair, null, null, priceDecimal.value);
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	public OrderType getOrderType() {
+		return orderType;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	@Override
+	public String toString() {
+		return orderType + " " + currencyPair;
+	}
+
+	/* private methods */
+
+	/**
+	 * Rounds value to the scale.
+	 * @param value
+	 * @param last previously rounded value, reused if equal
+	 * @return
+	 */
+	private Decimal toDecimal(double value, Decimal last) {
+		long unscaledValue = Math.round(value * factor);
+		if (last != null && last.unscaledValue == unscaledValue) {
+			return last;
+		}
+		return new Decimal(unscaledValue, BigDecimal.valueOf(unscaledValue, scale));
+	}
+
+	/* inner classes */
+
+	/**
+	 * Rounded value.
+	 */
+	private static class Decimal {
+
+		private final long unscaledValue;
+		private final BigDecimal value;
+
+		Decimal(long unscaledValue, BigDecimal value) {
+			this.unscaledValue = unscaledValue;
+			this.value = value;
+		}
+	}
+
+}
@@ -0,0 +1,728 @@
+package de.gekko.order;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.Order.OrderStatus;
+import org.knowm.xchange.dto.Order.OrderType;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.metrics.Counter;
+import de.gekko.metrics.Gauge;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.tracing.LatencyHistogram;
+
+/**
+ * Follows the legs submitted through the {@link OrderGateway} of one exchange until they are filled, cancelled or
+ * rejected, without blocking the submitting thread. Order states come from the exchange if it streams them (see
+ * {@link AbstractArbitrageExchange#addOrderSubscriber(ReceiveOrderUpdate)}) and from polling every leg that was silent
+ * for the poll interval.
+ * <p>
+ * If a leg of an execution is rejected, or a resting leg neither fills nor gains fills within the fill timeout, the
+ * open legs of the execution are unwound with the {@link UnwindPolicy}. All state is changed by one tracker thread:
+ * acknowledgements, fills and results of network calls are queued to it, so rejections and streamed fills are handled
+ * as soon as they arrive and timeouts within a millisecond.
+ * <p>
+ * Orders, cancels and replacements that get no answer within twice the fill timeout are given up, so a hung request
+ * cannot keep an execution open: an unanswered first order rejects its leg, an unanswered cancel counts as not
+ * confirmed and an unanswered replacement as failed. Orders that are placed anyway by a late answer are cancelled.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderTracker implements ReceiveOrderUpdate, Runnable {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderTracker.class);
+
+	public static final long DEFAULT_FILL_TIMEOUT = 2000; // milliseconds
+	public static final long DEFAULT_POLL_INTERVAL = 250; // milliseconds
+	public static final int DEFAULT_MAX_REPRICES = 2;
+
+	private static final long CHECK_INTERVAL = 1_000_000L; // nanoseconds, while executions are open
+	private static final long IDLE_INTERVAL = 1_000_000_000L; // nanoseconds
+	private static final long EARLY_UPDATE_TIMEOUT = 10_000_000_000L; // nanoseconds
+	private static final int MAX_UNCONFIRMED_CANCELS = 3;
+
+	/* variables */
+
+	private final AbstractArbitrageExchange exchange;
+	private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+	private volatile Thread thread;
+	private volatile boolean stop = false;
+	private volatile boolean streamed = false;
+	private volatile UnwindPolicy unwindPolicy = UnwindPolicy.CANCEL;
+	private volatile long fillTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FILL_TIMEOUT);
+	private volatile long pollInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_POLL_INTERVAL);
+	private volatile int maxReprices = DEFAULT_MAX_REPRICES;
+
+	// tracker thread only
+	private final List<TrackedExecution> executions = new ArrayList<>();
+	private final Map<String, TrackedLeg> legsByOrderId = new HashMap<>();
+	// updates that arrived before the order id was returned
+	private final Map<String, OrderUpdate> earlyUpdates = new HashMap<>();
+
+	private final Gauge openExecutions;
+	private final Map<LegState, Counter> completedLegs = new EnumMap<>(LegState.class);
+	private final Map<UnwindPolicy, Counter> unwinds = new EnumMap<>(UnwindPolicy.class);
+	private final Counter cancelActions;
+	private final Counter repriceActions;
+	private final Counter marketOutActions;
+	private final Counter pollErrors;
+	private final LatencyHistogram fillTimes;
+
+	/* constructors */
+
+	private OrderTracker(AbstractArbitrageExchange exchange) {
+		this.exchange = exchange;
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		String name = exchange.toString();
+		this.openExecutions = metrics.gauge("gekko_order_executions_open", "Executions with legs not done yet",
+				"exchange", name);
+		for (LegState state : LegState.values()) {
+			if (state.isTerminal()) {
+				completedLegs.put(state, metrics.counter("gekko_order_legs_total", "Order legs done by final state",
+						"exchange", name, "state", state.name().toLowerCase(Locale.ROOT)));
+			}
+		}
+		for (UnwindPolicy policy : UnwindPolicy.values()) {
+			unwinds.put(policy, metrics.counter("gekko_order_unwinds_total", "Executions unwound by policy",
+					"exchange", name, "policy", policy.name().toLowerCase(Locale.ROOT)));
+		}
+		this.cancelActions = metrics.counter("gekko_order_unwind_actions_total", "Orders cancelled, re-priced or "
+				+ "sent as market order while unwinding", "exchange", name, "action", "cancel");
+		this.repriceActions = metrics.counter("gekko_order_unwind_actions_total", "Orders cancelled, re-priced or "
+				+ "sent as market order while unwinding", "exchange", name, "action", "reprice");
+		this.marketOutActions = metrics.counter("gekko_order_unwind_actions_total", "Orders cancelled, re-priced or "
+				+ "sent as market order while unwinding", "exchange", name, "action", "marketout");
+		this.pollErrors = metrics.counter("gekko_order_poll_errors_total", "Failed order state requests", "exchange",
+				name);
+		this.fillTimes = metrics.histogram("gekko_order_fill_seconds", "Order legs from submission until filled",
+				"exchange", name);
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates an OrderTracker, subscribes it to the order updates of the exchange if it
+	 * streams them and runs it in a new thread.
+	 * @param exchange
+	 * @return
+	 */
+	public static OrderTracker createInstance(AbstractArbitrageExchange exchange) {
+		OrderTracker tracker = new OrderTracker(exchange);
+		tracker.streamed = exchange.addOrderSubscriber(tracker);
+		Thread thread = new Thread(tracker, "order-tracker-" + exchange);
+		thread.setDaemon(true);
+		tracker.thread = thread;
+		thread.start();
+		LOGGER.info("Order tracker [{}]: order states {}", exchange, tracker.streamed ? "streamed" : "polled");
+		return tracker;
+	}
+
+	/**
+	 * Submits all legs at once through the gateway of the exchange and tracks them. Returns immediately.
+	 * @param legs
+	 * @return
+	 */
+	public TrackedExecution submitAll(OrderLeg... legs) {
+		long submitTime = System.nanoTime();
+		List<CompletableFuture<LegExecution>> legExecutions = exchange.getOrderGateway().submitAll(legs);
+		List<TrackedLeg> trackedLegs = new ArrayList<>(legs.length);
+		for (OrderLeg leg : legs) {
+			trackedLegs.add(new TrackedLeg(leg, submitTime));
+		}
+		TrackedExecution execution = new TrackedExecution(trackedLegs);
+		openExecutions.increment();
+		// Queued before the acknowledgements
+		enqueue(() -> executions.add(execution));
+		for (int i = 0; i < legs.length; i++) {
+			TrackedLeg trackedLeg = trackedLegs.get(i);
+			legExecutions.get(i).whenComplete((legExecution, error) -> enqueue(() -> {
+				if (trackedLeg.step != 0) {
+					// Given up while the order was in flight
+					if (error == null && legExecution.isPlaced()) {
+						cancelLate(trackedLeg, legExecution.getOrderId());
+					}
+				} else if (error != null) {
+					// Never sent
+					trackedLeg.reject(error instanceof Exception ? (Exception) error : new ExchangeException(error));
+				} else {
+					acknowledge(trackedLeg, legExecution);
+				}
+			}));
+		}
+		return execution;
+	}
+
+	/**
+	 * Receives streamed order updates of the exchange.
+	 */
+	@Override
+	public void receiveOrderUpdate(String orderId, OrderStatus status, double filledAmount) {
+		long time = System.nanoTime();
+		enqueue(() -> update(orderId, status, filledAmount, time));
+	}
+
+	/**
+	 * Tracking routine.
+	 */
+	@Override
+	public void run() {
+		while (!stop) {
+			Runnable event;
+			while ((event = events.poll()) != null) {
+				try {
+					event.run();
+				} catch (RuntimeException e) {
+					LOGGER.error("Order tracker event failed [{}]", exchange, e);
+				}
+			}
+			long now = System.nanoTime();
+			Iterator<TrackedExecution> iterator = executions.iterator();
+			while (iterator.hasNext()) {
+				TrackedExecution execution = iterator.next();
+				if (check(execution, now)) {
+					iterator.remove();
+					complete(execution);
+				}
+			}
+			if (!earlyUpdates.isEmpty()) {
+				earlyUpdates.values().removeIf(update -> now - update.time > EARLY_UPDATE_TIMEOUT);
+			}
+			LockSupport.parkNanos(this, executions.isEmpty() ? IDLE_INTERVAL : CHECK_INTERVAL);
+		}
+	}
+
+	/**
+	 * Stops tracking, open orders stay on the exchange.
+	 */
+	public void stop() {
+		stop = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Checks if order states are streamed by the exchange, else they are only polled.
+	 * @return
+	 */
+	public boolean isStreamed() {
+		return streamed;
+	}
+
+	public long getOpenExecutions() {
+		return openExecutions.get();
+	}
+
+	public UnwindPolicy getUnwindPolicy() {
+		return unwindPolicy;
+	}
+
+	/**
+	 * Sets what happens to the open legs of an execution after one leg was rejected or got stuck.
+	 * @param unwindPolicy
+	 */
+	public void setUnwindPolicy(UnwindPolicy unwindPolicy) {
+		this.unwindPolicy = unwindPolicy;
+	}
+
+	/**
+	 * Sets how long a resting leg may go without fills before its execution is unwound.
+	 * @param fillTimeout
+	 * @param unit
+	 */
+	public void setFillTimeout(long fillTimeout, TimeUnit unit) {
+		this.fillTimeout = unit.toNanos(fillTimeout);
+	}
+
+	/**
+	 * Sets how long a leg may go without an update of the exchange before its state is requested.
+	 * @param pollInterval
+	 * @param unit
+	 */
+	public void setPollInterval(long pollInterval, TimeUnit unit) {
+		this.pollInterval = unit.toNanos(pollInterval);
+	}
+
+	/**
+	 * Sets how often a leg is placed again at a new price by {@link UnwindPolicy#REPRICE} before it is sent as market
+	 * order.
+	 * @param maxReprices
+	 */
+	public void setMaxReprices(int maxReprices) {
+		this.maxReprices = maxReprices;
+	}
+
+	/* private methods */
+
+	private void enqueue(Runnable event) {
+		events.add(event);
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Checks legs of an execution for rejections and timeouts, unwinds or polls them.
+	 * @param execution
+	 * @param now
+	 * @return true if the execution is done
+	 */
+	private boolean check(TrackedExecution execution, long now) {
+		List<TrackedLeg> legs = execution.getLegs();
+		for (TrackedLeg leg : legs) {
+			if (leg.getState() == LegState.PENDING && !leg.unwinding && isOverdue(leg.stepTime, now)) {
+				leg.abandonStep();
+				leg.reject(new ExchangeException("No answer to order within "
+						+ TimeUnit.NANOSECONDS.toMillis(now - leg.stepTime) + " ms"));
+			}
+		}
+		if (!execution.isUnwinding()) {
+			for (int i = 0; i < legs.size(); i++) {
+				TrackedLeg leg = legs.get(i);
+				String reason = null;
+				if (leg.getState() == LegState.REJECTED) {
+					reason = "leg " + (i + 1) + " rejected: " + leg.getError();
+				} else if (isOpen(leg) && isStuck(leg, now)) {
+					reason = "leg " + (i + 1) + " stuck " + leg.getState();
+				}
+				if (reason != null) {
+					UnwindPolicy policy = unwindPolicy;
+					execution.startUnwinding(reason, policy);
+					unwinds.get(policy).increment();
+					LOGGER.info("Unwinding execution [{}] with {}, {}", exchange, policy, reason);
+					break;
+				}
+			}
+		}
+		boolean done = true;
+		for (TrackedLeg leg : legs) {
+			if (isOpen(leg)) {
+				// Every open leg is cancelled once, legs placed again while unwinding get the fill timeout
+				if (execution.isUnwinding() && (leg.cancels == 0 || isStuck(leg, now))) {
+					unwind(execution, leg, now);
+				} else if ((!leg.pollPending || isOverdue(leg.pollTime, now))
+						&& now - leg.lastUpdateTime >= pollInterval) {
+					poll(leg, now);
+				}
+			} else if (leg.unwinding && isOverdue(leg.stepTime, now)) {
+				giveUp(execution, leg, now);
+			}
+			done &= leg.getState().isTerminal() && !leg.unwinding;
+		}
+		return done;
+	}
+
+	/**
+	 * Checks if the leg rests on the exchange and no unwind step is running.
+	 */
+	private boolean isOpen(TrackedLeg leg) {
+		LegState state = leg.getState();
+		return !state.isTerminal() && state != LegState.PENDING && !leg.unwinding;
+	}
+
+	/**
+	 * Checks if a leg gained no fills within the fill timeout. Silence of a stream means no fills, polled legs are
+	 * stuck once a poll answered after the timeout, or after twice the timeout if polls do not get through.
+	 */
+	private boolean isStuck(TrackedLeg leg, long now) {
+		long knownTime = streamed ? now : leg.lastUpdateTime;
+		return knownTime - leg.lastProgressTime >= fillTimeout || now - leg.lastProgressTime >= 2 * fillTimeout;
+	}
+
+	/**
+	 * Checks if a call started at the given time is not answered within twice the fill timeout.
+	 */
+	private boolean isOverdue(long startTime, long now) {
+		return now - startTime >= 2 * fillTimeout;
+	}
+
+	/**
+	 * Gives up unanswered cancel or replacement of a leg, the unwind continues as if it had failed.
+	 */
+	private void giveUp(TrackedExecution execution, TrackedLeg leg, long now) {
+		leg.abandonStep();
+		ExchangeException error = new ExchangeException("No answer within "
+				+ TimeUnit.NANOSECONDS.toMillis(now - leg.stepTime) + " ms");
+		LOGGER.warn("Unwind step of leg given up [{}] {}: {}", exchange, leg.getLeg(), error.getMessage());
+		if (leg.getState() == LegState.PENDING) {
+			// Replacement in flight
+			replaced(leg, null, error, now);
+		} else {
+			cancelled(execution, leg, leg.getOrderId(), false, null, now);
+		}
+	}
+
+	/**
+	 * Handles answer of the gateway to the first order of a leg.
+	 * @param leg
+	 * @param legExecution
+	 */
+	private void acknowledge(TrackedLeg leg, LegExecution legExecution) {
+		if (!legExecution.isPlaced()) {
+			leg.reject(legExecution.getError());
+			return;
+		}
+		follow(leg, legExecution.getOrderId(), legExecution.getAckTime());
+	}
+
+	/**
+	 * Follows order of a leg and applies updates that arrived before its id was known.
+	 */
+	private void follow(TrackedLeg leg, String orderId, long time) {
+		leg.acknowledge(orderId, time);
+		legsByOrderId.put(orderId, leg);
+		OrderUpdate earlyUpdate = earlyUpdates.remove(orderId);
+		if (earlyUpdate != null) {
+			apply(leg, earlyUpdate.status, earlyUpdate.filledAmount, earlyUpdate.time);
+		}
+	}
+
+	/**
+	 * Handles streamed or polled state of an order.
+	 */
+	private void update(String orderId, OrderStatus status, double filledAmount, long time) {
+		TrackedLeg leg = legsByOrderId.get(orderId);
+		if (leg == null) {
+			earlyUpdates.put(orderId, new OrderUpdate(status, filledAmount, time));
+			return;
+		}
+		apply(leg, status, filledAmount, time);
+	}
+
+	/**
+	 * Moves leg forward. Fills only grow and terminal states are kept, cancellations during an unwind step are
+	 * handled by the step itself.
+	 * @param leg
+	 * @param status
+	 * @param orderFilledAmount filled amount of the current order of the leg
+	 * @param time
+	 */
+	private void apply(TrackedLeg leg, OrderStatus status, double orderFilledAmount, long time) {
+		leg.lastUpdateTime = time;
+		double filledAmount = leg.replacedFilledAmount + orderFilledAmount;
+		if (filledAmount > leg.getFilledAmount()) {
+			leg.setFilledAmount(filledAmount);
+			leg.lastProgressTime = time;
+		}
+		LegState state = LegState.of(status, orderFilledAmount > 0);
+		LegState current = leg.getState();
+		if (state == null || state == current || state == LegState.PENDING || current.isTerminal()
+				|| (state == LegState.CANCELLED && leg.unwinding)) {
+			return;
+		}
+		leg.setState(state);
+		leg.lastProgressTime = time;
+		if (state == LegState.FILLED) {
+			fillTimes.record(time - leg.getSubmitTime());
+		}
+	}
+
+	/**
+	 * Requests state of the current order of a leg.
+	 * @param leg
+	 * @param now
+	 */
+	private void poll(TrackedLeg leg, long now) {
+		leg.pollPending = true;
+		leg.pollTime = now;
+		String orderId = leg.getOrderId();
+		// Tried again once overdue if the executor rejects it
+		submit(false, () -> {
+			Order order = null;
+			try {
+				order = exchange.fetchOrder(orderId);
+			} catch (Exception e) {
+				pollErrors.increment();
+				LOGGER.debug("Order state request failed [{} {}]: {}", exchange, orderId, e.toString());
+			}
+			Order result = order;
+			long time = System.nanoTime();
+			enqueue(() -> {
+				leg.pollPending = false;
+				leg.lastUpdateTime = time;
+				if (result != null) {
+					update(orderId, result.getStatus(), getFilledAmount(result), time);
+				}
+			});
+			return null;
+		});
+	}
+
+	/**
+	 * Cancels current order of a leg, then continues the unwind with the fills known after the cancel.
+	 * @param execution
+	 * @param leg
+	 * @param now
+	 */
+	private void unwind(TrackedExecution execution, TrackedLeg leg, long now) {
+		leg.unwinding = true;
+		leg.cancels++;
+		cancelActions.increment();
+		String orderId = leg.getOrderId();
+		int step = leg.startStep(now);
+		boolean submitted = submit(true, () -> {
+			boolean cancelled = false;
+			Order order = null;
+			try {
+				cancelled = exchange.cancelOrder(orderId);
+			} catch (Exception e) {
+				LOGGER.warn("Cancel failed [{} {}]: {}", exchange, orderId, e.toString());
+			}
+			// Fills may have raced the cancel
+			try {
+				order = exchange.fetchOrder(orderId);
+			} catch (Exception e) {
+				pollErrors.increment();
+			}
+			boolean result = cancelled;
+			Order finalOrder = order;
+			long time = System.nanoTime();
+			enqueue(() -> {
+				if (leg.step == step) {
+					cancelled(execution, leg, orderId, result, finalOrder, time);
+				}
+			});
+			return null;
+		});
+		if (!submitted) {
+			cancelled(execution, leg, orderId, false, null, now);
+		}
+	}
+
+	private void cancelled(TrackedExecution execution, TrackedLeg leg, String orderId, boolean cancelled, Order order,
+			long time) {
+		LegState state = null;
+		if (order != null) {
+			double orderFilledAmount = getFilledAmount(order);
+			apply(leg, order.getStatus(), orderFilledAmount, time);
+			state = LegState.of(order.getStatus(), orderFilledAmount > 0);
+		}
+		if (leg.getState() == LegState.FILLED) {
+			leg.unwinding = false;
+			return;
+		}
+		if (!cancelled && (state == null || !state.isTerminal()) && leg.cancels < MAX_UNCONFIRMED_CANCELS) {
+			// Still open or unknown, tried again after the fill timeout
+			LOGGER.info("Cancel not confirmed [{} {}], state {}", exchange, orderId, state);
+			leg.unwinding = false;
+			leg.lastProgressTime = time;
+			return;
+		}
+		legsByOrderId.remove(orderId);
+		double remainingAmount = leg.getRemainingAmount();
+		UnwindPolicy policy = execution.getUnwindPolicy();
+		if (remainingAmount == 0) {
+			finish(leg, LegState.FILLED);
+		} else if (policy == UnwindPolicy.CANCEL || leg.isMarketOut()) {
+			finish(leg, LegState.CANCELLED);
+		} else if (policy == UnwindPolicy.REPRICE && leg.getReprices() < maxReprices) {
+			reprice(leg, remainingAmount, time);
+		} else {
+			marketOut(leg, remainingAmount, time);
+		}
+	}
+
+	/**
+	 * Places remaining amount of a leg again at the opposite top of book.
+	 */
+	private void reprice(TrackedLeg leg, double remainingAmount, long now) {
+		leg.replace();
+		leg.incrementReprices();
+		repriceActions.increment();
+		OrderTemplate template = leg.getLeg().getTemplate();
+		int step = leg.startStep(now);
+		submitReplacement(leg, step, now, () -> {
+			String orderId = null;
+			Exception error = null;
+			try {
+				Ticker ticker = exchange.fetchTicker(template.getCurrencyPair());
+				BigDecimal price = template.getOrderType() == OrderType.BID ? ticker.getAsk() : ticker.getBid();
+				if (price == null) {
+					throw new ExchangeException("No top of book for " + template.getCurrencyPair());
+				}
+				orderId = exchange.placeLimitOrder(template.createLimitOrder(price.doubleValue(), remainingAmount));
+			} catch (Exception e) {
+				error = e;
+			}
+			String result = orderId;
+			Exception resultError = error;
+			long time = System.nanoTime();
+			enqueue(() -> replaced(leg, step, result, resultError, time));
+			return null;
+		});
+	}
+
+	/**
+	 * Sends remaining amount of a leg as market order.
+	 */
+	private void marketOut(TrackedLeg leg, double remainingAmount, long now) {
+		leg.replace();
+		leg.setMarketOut();
+		marketOutActions.increment();
+		CurrencyPair currencyPair = leg.getLeg().getTemplate().getCurrencyPair();
+		boolean bid = leg.getLeg().getTemplate().getOrderType() == OrderType.BID;
+		int step = leg.startStep(now);
+		submitReplacement(leg, step, now, () -> {
+			String orderId = null;
+			Exception error = null;
+			try {
+				orderId = bid ? exchange.placeMarketOrderBid(currencyPair, remainingAmount)
+						: exchange.placeMarketOrderAsk(currencyPair, remainingAmount);
+			} catch (Exception e) {
+				error = e;
+			}
+			String result = orderId;
+			Exception resultError = error;
+			long time = System.nanoTime();
+			enqueue(() -> replaced(leg, step, result, resultError, time));
+			return null;
+		});
+	}
+
+	/**
+	 * Submits replacement order of a leg, a rejected call counts as failed replacement.
+	 */
+	private void submitReplacement(TrackedLeg leg, int step, long now, Callable<Void> call) {
+		if (!submit(true, call)) {
+			replaced(leg, step, null, new ExchangeException("Network executor rejected the order"), now);
+		}
+	}
+
+	/**
+	 * Handles answer to a replacement order, orders placed by stale answers are cancelled.
+	 */
+	private void replaced(TrackedLeg leg, int step, String orderId, Exception error, long time) {
+		if (leg.step != step) {
+			if (orderId != null) {
+				cancelLate(leg, orderId);
+			}
+			return;
+		}
+		replaced(leg, orderId, error, time);
+	}
+
+	/**
+	 * Follows the order that replaced the cancelled one, a failed re-price falls back to a market order.
+	 */
+	private void replaced(TrackedLeg leg, String orderId, Exception error, long time) {
+		if (error != null) {
+			LOGGER.warn("Replacing leg failed [{}] {}: {}", exchange, leg.getLeg(), error.toString());
+			leg.setError(error);
+			if (leg.isMarketOut()) {
+				finish(leg, LegState.CANCELLED);
+			} else {
+				marketOut(leg, leg.getRemainingAmount(), time);
+			}
+			return;
+		}
+		follow(leg, orderId, time);
+		leg.unwinding = false;
+		// Replacements usually fill at once, poll right away unless the exchange streams
+		if (!streamed) {
+			leg.lastUpdateTime = time - pollInterval;
+		}
+	}
+
+	/**
+	 * Cancels order placed by a call that was given up, its fills are not tracked.
+	 */
+	private void cancelLate(TrackedLeg leg, String orderId) {
+		LOGGER.warn("Late answer [{}] {}, cancelling order {}", exchange, leg.getLeg(), orderId);
+		submit(true, () -> {
+			try {
+				exchange.cancelOrder(orderId);
+			} catch (Exception e) {
+				LOGGER.warn("Cancel failed [{} {}]: {}", exchange, orderId, e.toString());
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Submits network call of the tracker.
+	 * @param priority
+	 * @param call
+	 * @return false if the executor rejected it
+	 */
+	private boolean submit(boolean priority, Callable<Void> call) {
+		try {
+			if (priority) {
+				exchange.getNetworkExecutor().submitPriority(call);
+			} else {
+				exchange.getNetworkExecutor().submit(call);
+			}
+			return true;
+		} catch (RejectedExecutionException e) {
+			LOGGER.warn("Network call rejected [{}]: {}", exchange, e.toString());
+			return false;
+		}
+	}
+
+	private void finish(TrackedLeg leg, LegState state) {
+		leg.setState(state);
+		leg.unwinding = false;
+	}
+
+	private void complete(TrackedExecution execution) {
+		for (TrackedLeg leg : execution.getLegs()) {
+			if (leg.getOrderId() != null) {
+				legsByOrderId.remove(leg.getOrderId());
+			}
+			completedLegs.get(leg.getState()).increment();
+		}
+		openExecutions.decrement();
+		if (execution.isUnwinding()) {
+			LOGGER.info("Execution unwound [{}]: {}", exchange, execution);
+		}
+		execution.complete();
+	}
+
+	/**
+	 * Gets filled amount of an order, exchanges that do not report it are assumed to fill completely when the order
+	 * is filled.
+	 */
+	private static double getFilledAmount(Order order) {
+		if (order.getCumulativeAmount() != null) {
+			return order.getCumulativeAmount().doubleValue();
+		}
+		if (order.getStatus() == OrderStatus.FILLED && order.getOriginalAmount() != null) {
+			return order.getOriginalAmount().doubleValue();
+		}
+		return 0;
+	}
+
+	/* inner classes */
+
+	private static class OrderUpdate {
+
+		private final OrderStatus status;
+		private final double filledAmount;
+		private final long time;
+
+		private OrderUpdate(OrderStatus status, double filledAmount, long time) {
+			this.status = status;
+			this.filledAmount = filledAmount;
+			this.time = time;
+		}
+
+	}
+
+}
@@ -0,0 +1,20 @@
+package de.gekko.order;
+
+import org.knowm.xchange.dto.Order.OrderStatus;
+
+/**
+ * Receives state changes of the orders of an account, pushed by exchanges that stream them.
+ * @author Maximilian Pfister
+ *
+ */
+public interface ReceiveOrderUpdate {
+
+	/**
+	 * Called on the thread of the exchange, implementations must return quickly.
+	 * @param orderId id returned when the order was placed
+	 * @param status
+	 * @param filledAmount filled base amount of the order
+	 */
+	public void receiveOrderUpdate(String orderId, OrderStatus status, double filledAmount);
+
+}
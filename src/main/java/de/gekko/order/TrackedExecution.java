@@ -0,0 +1,112 @@
+package de.gekko.order;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Legs submitted together through the {@link OrderTracker}, e.g. the three orders of a triangle. The execution is
+ * done when every leg is filled, cancelled or rejected, unwinding included.
+ * @author Maximilian Pfister
+ *
+ */
+public class TrackedExecution {
+
+	/* variables */
+
+	private final List<TrackedLeg> legs;
+	private final CompletableFuture<TrackedExecution> completion = new CompletableFuture<>();
+	private volatile String unwindReason = null;
+	private volatile UnwindPolicy unwindPolicy = null;
+
+	/* constructors */
+
+	TrackedExecution(List<TrackedLeg> legs) {
+		this.legs = Collections.unmodifiableList(legs);
+	}
+
+	/* public methods */
+
+	/**
+	 * Gets legs in the order they were submitted.
+	 * @return
+	 */
+	public List<TrackedLeg> getLegs() {
+		return legs;
+	}
+
+	/**
+	 * Gets future that completes with this execution when it is done. Dependent actions run on the thread of the
+	 * tracker and must return quickly.
+	 * @return
+	 */
+	public CompletableFuture<TrackedExecution> getCompletion() {
+		return completion;
+	}
+
+	public boolean isDone() {
+		return completion.isDone();
+	}
+
+	/**
+	 * Checks if all legs were filled.
+	 * @return
+	 */
+	public boolean isFilled() {
+		for (TrackedLeg leg : legs) {
+			if (leg.getState() != LegState.FILLED) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the execution is unwound because a leg was rejected or got stuck.
+	 * @return
+	 */
+	public boolean isUnwinding() {
+		return unwindReason != null;
+	}
+
+	/**
+	 * Gets why the execution is unwound.
+	 * @return null if it is not
+	 */
+	public String getUnwindReason() {
+		return unwindReason;
+	}
+
+	/**
+	 * Gets policy the execution is unwound with.
+	 * @return null if it is not unwound
+	 */
+	public UnwindPolicy getUnwindPolicy() {
+		return unwindPolicy;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(isDone() ? (isFilled() ? "filled" : "done") : "open");
+		if (unwindReason != null) {
+			builder.append(", unwound (").append(unwindPolicy).append("): ").append(unwindReason);
+		}
+		for (int i = 0; i < legs.size(); i++) {
+			builder.append(System.lineSeparator()).append("  leg ").append(i + 1).append(": ").append(legs.get(i));
+		}
+		return builder.toString();
+	}
+
+	/* package methods */
+
+	void startUnwinding(String reason, UnwindPolicy policy) {
+		this.unwindPolicy = policy;
+		this.unwindReason = reason;
+	}
+
+	void complete() {
+		completion.complete(this);
+	}
+
+}
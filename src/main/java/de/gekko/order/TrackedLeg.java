@@ -0,0 +1,185 @@
+package de.gekko.order;
+
+/**
+ * State of one leg of a {@link TrackedExecution}. Changed by the thread of the {@link OrderTracker} only, other threads
+ * see the latest state through the getters. If the leg is unwound its order may be replaced by a re-priced limit order
+ * or a market order, the fills of all its orders add up.
+ * @author Maximilian Pfister
+ *
+ */
+public class TrackedLeg {
+
+	/* variables */
+
+	private final OrderLeg leg;
+	private final long submitTime;
+	private final double lotSize;
+	private volatile String orderId = null;
+	private volatile LegState state = LegState.PENDING;
+	private volatile double filledAmount = 0;
+	private volatile Exception error = null;
+	private volatile int reprices = 0;
+	private volatile boolean marketOut = false;
+
+	// tracker thread only
+	double replacedFilledAmount = 0; // fills of orders replaced while unwinding
+	long lastProgressTime; // last ack or fill, nanoseconds
+	long lastUpdateTime; // last answer of the exchange, nanoseconds
+	long stepTime; // start of the order, cancel or replacement call in flight, nanoseconds
+	long pollTime; // start of the pending poll, nanoseconds
+	int step = 0; // counts those calls, answers of abandoned calls are stale
+	int cancels = 0;
+	boolean pollPending = false;
+	boolean unwinding = false;
+
+	/* constructors */
+
+	TrackedLeg(OrderLeg leg, long submitTime) {
+		this.leg = leg;
+		this.submitTime = submitTime;
+		this.lotSize = Math.pow(10, -leg.getTemplate().getScale());
+		this.lastProgressTime = submitTime;
+		this.lastUpdateTime = submitTime;
+		this.stepTime = submitTime;
+	}
+
+	/* public methods */
+
+	public OrderLeg getLeg() {
+		return leg;
+	}
+
+	/**
+	 * Gets id of the current order of the leg.
+	 * @return null while an order is pending or if the leg was rejected
+	 */
+	public String getOrderId() {
+		return orderId;
+	}
+
+	public LegState getState() {
+		return state;
+	}
+
+	/**
+	 * Gets filled base amount of all orders of the leg.
+	 * @return
+	 */
+	public double getFilledAmount() {
+		return filledAmount;
+	}
+
+	/**
+	 * Gets base amount that is not filled, amounts below the lot size of the exchange count as filled.
+	 * @return
+	 */
+	public double getRemainingAmount() {
+		double remaining = leg.getAmount() - filledAmount;
+		return remaining < lotSize / 2 ? 0 : remaining;
+	}
+
+	/**
+	 * Gets error of the last rejected or failed order of the leg.
+	 * @return null if no order failed
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * Gets number of times the remaining amount was placed again at a new price.
+	 * @return
+	 */
+	public int getReprices() {
+		return reprices;
+	}
+
+	/**
+	 * Checks if the remaining amount was sent as market order.
+	 * @return
+	 */
+	public boolean isMarketOut() {
+		return marketOut;
+	}
+
+	public long getSubmitTime() {
+		return submitTime;
+	}
+
+	@Override
+	public String toString() {
+		return leg + " " + state + " (filled " + filledAmount + (orderId == null ? "" : ", order " + orderId)
+				+ (reprices > 0 ? ", repriced " + reprices + "x" : "") + (marketOut ? ", market out" : "")
+				+ (error == null ? "" : ", " + error) + ")";
+	}
+
+	/* package methods */
+
+	/**
+	 * Sets order the leg follows, after the exchange accepted it.
+	 * @param orderId
+	 * @param time
+	 */
+	void acknowledge(String orderId, long time) {
+		this.orderId = orderId;
+		this.state = LegState.ACKED;
+		this.lastProgressTime = time;
+		this.lastUpdateTime = time;
+	}
+
+	/**
+	 * Marks leg rejected, after the first order failed.
+	 * @param error
+	 */
+	void reject(Exception error) {
+		this.error = error;
+		this.state = LegState.REJECTED;
+	}
+
+	/**
+	 * Detaches current order before it is replaced.
+	 */
+	void replace() {
+		this.orderId = null;
+		this.state = LegState.PENDING;
+		this.replacedFilledAmount = filledAmount;
+	}
+
+	/**
+	 * Starts a cancel or replacement call, answers of earlier calls become stale.
+	 * @param time
+	 * @return number of the call
+	 */
+	int startStep(long time) {
+		this.stepTime = time;
+		return ++step;
+	}
+
+	/**
+	 * Gives up the call in flight, its answer becomes stale.
+	 */
+	void abandonStep() {
+		step++;
+	}
+
+	void setState(LegState state) {
+		this.state = state;
+	}
+
+	void setFilledAmount(double filledAmount) {
+		this.filledAmount = filledAmount;
+	}
+
+	void setError(Exception error) {
+		this.error = error;
+	}
+
+	void incrementReprices() {
+		reprices++;
+	}
+
+	void setMarketOut() {
+		this.marketOut = true;
+	}
+
+}
@@ -0,0 +1,18 @@
+package de.gekko.order;
+
+/**
+ * What the {@link OrderTracker} does with the open legs of an execution once one of its legs was rejected or got
+ * stuck. Legs that are filled, cancelled or rejected already are left as they are.
+ * @author Maximilian Pfister
+ *
+ */
+public enum UnwindPolicy {
+
+	/** Cancel open legs and keep their fills. */
+	CANCEL,
+	/** Cancel open legs and send their remaining amount as market order, once per leg. */
+	MARKET_OUT,
+	/** Cancel open legs and place their remaining amount again at the opposite top of book, then market out. */
+	REPRICE;
+
+}
@@ -0,0 +1,179 @@
+package de.gekko.orderbook;
+
+import java.util.Arrays;
+
+/**
+ * One side of a price level order book. Prices and quantities are fixed point longs (see {@link FixedPoint})
+ * held in sorted primitive arrays with the best level at the end, so top of book access is O(1) and most
+ * updates (which happen close to the top) only shift a few elements. Nothing is allocated per update unless
+ * the level count outgrows the current capacity.
+ * @author Maximilian Pfister
+ *
+ */
+public class BookSide {
+
+	/* constants */
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	/* variables */
+
+	private final boolean bidSide;
+	// Ascending sort keys: price for bids, negated price for asks. Best level is at index count - 1.
+	private long[] keys;
+	private long[] quantities;
+	private int count = 0;
+
+	/* constructors */
+
+	public BookSide(boolean bidSide) {
+		this(bidSide, DEFAULT_CAPACITY);
+	}
+
+	public BookSide(boolean bidSide, int initialCapacity) {
+		this.bidSide = bidSide;
+		this.keys = new long[initialCapacity];
+		this.quantities = new long[initialCapacity];
+	}
+
+	/* public methods */
+
+	/**
+	 * Sets quantity of a price level. A quantity of zero or less removes the level.
+	 * @param price
+	 * @param quantity
+	 */
+	public void set(long price, long quantity) {
+		if (quantity <= 0) {
+			remove(price);
+			return;
+		}
+		long key = toKey(price);
+		int index = search(key);
+		if (index >= 0) {
+			quantities[index] = quantity;
+			return;
+		}
+		index = -(index + 1);
+		if (count == keys.length) {
+			keys = Arrays.copyOf(keys, count * 2);
+			quantities = Arrays.copyOf(quantities, count * 2);
+		}
+		if (index < count) {
+			System.arraycopy(keys, index, keys, index + 1, count - index);
+			System.arraycopy(quantities, index, quantities, index + 1, count - index);
+		}
+		keys[index] = key;
+		quantities[index] = quantity;
+		count++;
+	}
+
+	/**
+	 * Removes a price level.
+	 * @param price
+	 * @return true if the level existed
+	 */
+	public boolean remove(long price) {
+		int index = search(toKey(price));
+		if (index < 0) {
+			return false;
+		}
+		int tail = count - index - 1;
+		if (tail > 0) {
+			System.arraycopy(keys, index + 1, keys, index, tail);
+			System.arraycopy(quantities, index + 1, quantities, index, tail);
+		}
+		count--;
+		return true;
+	}
+
+	/**
+	 * Removes all price levels, keeps allocated capacity.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Gets number of price levels.
+	 * @return
+	 */
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public boolean isBidSide() {
+		return bidSide;
+	}
+
+	/**
+	 * Gets price of level, where level 0 is the best price.
+	 * @param level
+	 * @return
+	 */
+	public long price(int level) {
+		return toPrice(keys[count - 1 - level]);
+	}
+
+	/**
+	 * Gets quantity of level, where level 0 is the best price.
+	 * @param level
+	 * @return
+	 */
+	public long quantity(int level) {
+		return quantities[count - 1 - level];
+	}
+
+	/**
+	 * Gets best price or 0 if side is empty.
+	 * @return
+	 */
+	public long bestPrice() {
+		return count == 0 ? 0 : price(0);
+	}
+
+	/**
+	 * Gets quantity at best price or 0 if side is empty.
+	 * @return
+	 */
+	public long bestQuantity() {
+		return count == 0 ? 0 : quantity(0);
+	}
+
+	/**
+	 * Gets quantity at given price or 0 if the level does not exist.
+	 * @param price
+	 * @return
+	 */
+	public long quantityAt(long price) {
+		int index = search(toKey(price));
+		return index >= 0 ? quantities[index] : 0;
+	}
+
+	/* private methods */
+
+	private long toKey(long price) {
+		return bidSide ? price : -price;
+	}
+
+	private long toPrice(long key) {
+		return bidSide ? key : -key;
+	}
+
+	/**
+	 * Binary search on the sorted keys. Checks the best level first because most updates touch the top of book.
+	 * @param key
+	 * @return index of key or (-(insertion point) - 1)
+	 */
+	private int search(long key) {
+		if (count > 0 && keys[count - 1] == key) {
+			return count - 1;
+		}
+		return Arrays.binarySearch(keys, 0, count, key);
+	}
+
+}
@@ -0,0 +1,183 @@
+package de.gekko.orderbook;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between decimal values and scaled longs with satoshi precision (8 decimals).
+ * @author Maximilian Pfister
+ *
+ */
+public final class FixedPoint {
+
+	/* constants */
+
+	public static final int SCALE = 8;
+	public static final long FACTOR = 100_000_000L;
+
+	private static final int MAX_DIGITS = 18;
+	private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/* constructors */
+
+	private FixedPoint() {
+	}
+
+	/* public methods */
+
+	/**
+	 * Converts decimal to scaled long, rounding half up to satoshi precision.
+	 * @param value
+	 * @return
+	 * @throws ArithmeticException if the scaled value does not fit into a long
+	 */
+	public static long fromBigDecimal(BigDecimal value) {
+		return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * Converts double to scaled long, rounding to nearest satoshi.
+	 * @param value
+	 * @return
+	 */
+	public static long fromDouble(double value) {
+		return Math.round(value * FACTOR);
+	}
+
+	/**
+	 * Parses a JSON number (optional sign, fraction and exponent) straight to a scaled long without creating
+	 * intermediate objects. Only the first 18 significant digits are taken, later digits are ignored; digits beyond
+	 * satoshi precision among them are rounded half up.
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws NumberFormatException if the number has no digits, a second decimal point or an invalid character
+	 */
+	public static long parse(char[] buffer, int offset, int length) {
+		int end = offset + length;
+		int position = offset;
+		boolean negative = false;
+		if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+			negative = buffer[position] == '-';
+			position++;
+		}
+		long mantissa = 0;
+		boolean hasDigits = false;
+		int digits = 0;
+		// decimal exponent of the mantissa
+		int exponent = 0;
+		boolean fraction = false;
+		for (; position < end; position++) {
+			char c = buffer[position];
+			if (c >= '0' && c <= '9') {
+				hasDigits = true;
+				if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa != 0) {
+						digits++;
+					}
+					if (fraction) {
+						exponent--;
+					}
+				} else if (!fraction) {
+					// drop insignificant integer digits but keep magnitude
+					exponent++;
+				}
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else if ((c == 'e' || c == 'E') && hasDigits) {
+				exponent += parseExponent(buffer, position + 1, end);
+				break;
+			} else {
+				throw new NumberFormatException("Invalid character '" + c + "' in number " + new String(buffer, offset, length));
+			}
+		}
+		if (!hasDigits) {
+			throw new NumberFormatException("No digits in number " + new String(buffer, offset, length));
+		}
+		long value = scale(mantissa, exponent + SCALE);
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a number string to a scaled long, see {@link #parse(char[], int, int)}.
+	 * @param value
+	 * @return
+	 */
+	public static long parse(String value) {
+		return parse(value.toCharArray(), 0, value.length());
+	}
+
+	/**
+	 * Converts scaled long back to decimal.
+	 * @param value
+	 * @return
+	 */
+	public static BigDecimal toBigDecimal(long value) {
+		return BigDecimal.valueOf(value, SCALE);
+	}
+
+	/**
+	 * Converts scaled long to double.
+	 * @param value
+	 * @return
+	 */
+	public static double toDouble(long value) {
+		return (double) value / FACTOR;
+	}
+
+	/* private methods */
+
+	private static int parseExponent(char[] buffer, int position, int end) {
+		boolean negative = false;
+		if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+			negative = buffer[position] == '-';
+			position++;
+		}
+		if (position == end) {
+			throw new NumberFormatException("No digits in exponent");
+		}
+		int exponent = 0;
+		for (; position < end; position++) {
+			char c = buffer[position];
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Invalid character '" + c + "' in exponent");
+			}
+			exponent = exponent * 10 + (c - '0');
+		}
+		return negative ? -exponent : exponent;
+	}
+
+	/**
+	 * Multiplies value by 10^power, rounding half up when power is negative.
+	 * @param value
+	 * @param power
+	 * @return
+	 */
+	private static long scale(long value, int power) {
+		if (value == 0) {
+			return 0;
+		}
+		if (power >= 0) {
+			if (power > MAX_DIGITS) {
+				throw new ArithmeticException("Fixed point overflow");
+			}
+			return Math.multiplyExact(value, POWERS_OF_TEN[power]);
+		}
+		if (-power > MAX_DIGITS) {
+			return 0;
+		}
+		long divisor = POWERS_OF_TEN[-power];
+		long quotient = value / divisor;
+		return (value % divisor) * 2 >= divisor ? quotient + 1 : quotient;
+	}
+
+}
@@ -0,0 +1,84 @@
+package de.gekko.orderbook;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+/**
+ * Order book keyed by fixed point prices with primitive quantities. Deltas are written directly into the
+ * two {@link BookSide}s; an xchange {@link OrderBook} is only materialized on demand for legacy callers.
+ * Not thread safe, meant to be owned by a single processing thread.
+ * @author Maximilian Pfister
+ *
+ */
+public class FixedPointOrderBook {
+
+	/* variables */
+
+	private final CurrencyPair currencyPair;
+	private final BookSide bids = new BookSide(true);
+	private final BookSide asks = new BookSide(false);
+
+	/* constructors */
+
+	public FixedPointOrderBook(CurrencyPair currencyPair) {
+		this.currencyPair = currencyPair;
+	}
+
+	/* public methods */
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	public BookSide getBids() {
+		return bids;
+	}
+
+	public BookSide getAsks() {
+		return asks;
+	}
+
+	/**
+	 * Removes all levels of both sides.
+	 */
+	public void clear() {
+		bids.clear();
+		asks.clear();
+	}
+
+	/**
+	 * Materializes all levels as xchange orderbook.
+	 * @return
+	 */
+	public OrderBook toOrderBook() {
+		return toOrderBook(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Materializes the best levels of each side as xchange orderbook.
+	 * @param depth maximum number of levels per side
+	 * @return
+	 */
+	public OrderBook toOrderBook(int depth) {
+		return new OrderBook(new Date(), toLimitOrders(asks, Order.OrderType.ASK, depth), toLimitOrders(bids, Order.OrderType.BID, depth));
+	}
+
+	/* private methods */
+
+	private List<LimitOrder> toLimitOrders(BookSide side, Order.OrderType orderType, int depth) {
+		int levels = Math.min(depth, side.size());
+		List<LimitOrder> limitOrders = new ArrayList<>(levels);
+		for (int level = 0; level < levels; level++) {
+			limitOrders.add(new LimitOrder(orderType, FixedPoint.toBigDecimal(side.quantity(level)), currencyPair, null, null,
+					FixedPoint.toBigDecimal(side.price(level))));
+		}
+		return limitOrders;
+	}
+
+}
@@ -0,0 +1,59 @@
+package de.gekko.orderbook;
+
+import java.util.Arrays;
+
+/**
+ * Last broadcasted top levels of one book side, used by channel handlers to suppress broadcasts that would not
+ * change anything.
+ * @author Maximilian Pfister
+ *
+ */
+public class TopLevels {
+
+	/* variables */
+
+	private long[] prices = new long[0];
+	private long[] quantities = new long[0];
+	private int levels = 0;
+
+	/* public methods */
+
+	/**
+	 * Copies the top levels of the side.
+	 * @param side
+	 * @param depth
+	 * @return true if any of the top levels differs from the previous capture
+	 */
+	public boolean capture(BookSide side, int depth) {
+		boolean changed = false;
+		if (prices.length != depth) {
+			prices = new long[depth];
+			quantities = new long[depth];
+			changed = true;
+		}
+		int newLevels = Math.min(depth, side.size());
+		if (newLevels != levels) {
+			levels = newLevels;
+			changed = true;
+		}
+		for (int level = 0; level < newLevels; level++) {
+			long price = side.price(level);
+			long quantity = side.quantity(level);
+			if (prices[level] != price || quantities[level] != quantity) {
+				prices[level] = price;
+				quantities[level] = quantity;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	public long[] copyPrices() {
+		return Arrays.copyOf(prices, levels);
+	}
+
+	public long[] copyQuantities() {
+		return Arrays.copyOf(quantities, levels);
+	}
+
+}
@@ -0,0 +1,337 @@
+package de.gekko.polling;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.metrics.MetricsRegistry;
+
+/**
+ * Polls the REST order books of all subscribed markets. Every market is fetched once per poll, no matter how many
+ * subscribers need it, and the book is handed to all of them. Each exchange has its own poll threads that fetch the
+ * market due next through the network executor of the exchange, so polls are paced by its market data rate limit
+ * and overdue markets are served in order.
+ * <p>
+ * Subscribers report how far a market is from their profit threshold after every poll: profitable markets are
+ * polled at the minimum interval, markets further below the threshold than the margin range at the maximum
+ * interval, the ones in between proportionally. Failed polls are retried after the maximum interval.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderBookPoller {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderBookPoller.class);
+
+	public static final long DEFAULT_MIN_INTERVAL = 1_000_000_000L; // nanoseconds
+	public static final long DEFAULT_MAX_INTERVAL = 10_000_000_000L; // nanoseconds
+	public static final double DEFAULT_MARGIN_RANGE = 1; // percent
+	public static final int DEFAULT_POLL_THREADS = 2;
+
+	/* variables */
+
+	private final long minInterval;
+	private final long maxInterval;
+	private final int pollThreads;
+	private final Map<AbstractArbitrageExchange, ExchangePoller> exchangePollers = new HashMap<>();
+	private volatile double marginRange = DEFAULT_MARGIN_RANGE;
+	private volatile boolean stop = false;
+
+	/* constructors */
+
+	private OrderBookPoller(long minInterval, long maxInterval, int pollThreads) {
+		if (minInterval <= 0 || maxInterval < minInterval || pollThreads < 1) {
+			throw new IllegalArgumentException("Invalid poll intervals " + minInterval + ", " + maxInterval
+					+ " or thread count " + pollThreads);
+		}
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.pollThreads = pollThreads;
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates an OrderBookPoller with default intervals. Poll threads are started per
+	 * exchange with its first subscription.
+	 * @return
+	 */
+	public static OrderBookPoller createInstance() {
+		return new OrderBookPoller(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_POLL_THREADS);
+	}
+
+	/**
+	 * Static factory method that creates an OrderBookPoller. Poll threads are started per exchange with its first
+	 * subscription.
+	 * @param minInterval interval of markets at or above the profit threshold
+	 * @param maxInterval interval of markets far below the profit threshold
+	 * @param unit
+	 * @param pollThreads concurrent polls per exchange
+	 * @return
+	 */
+	public static OrderBookPoller createInstance(long minInterval, long maxInterval, TimeUnit unit, int pollThreads) {
+		return new OrderBookPoller(unit.toNanos(minInterval), unit.toNanos(maxInterval), pollThreads);
+	}
+
+	/**
+	 * Subscribes to the order book of a market. The first subscription of a market schedules it for an immediate
+	 * poll.
+	 * @param exchange
+	 * @param currencyPair
+	 * @param subscriber
+	 * @return market shared by all subscribers
+	 */
+	public synchronized PolledMarket subscribe(AbstractArbitrageExchange exchange, CurrencyPair currencyPair,
+			ReceivePolledOrderBook subscriber) {
+		if (stop) {
+			throw new IllegalStateException("Poller stopped");
+		}
+		ExchangePoller exchangePoller = exchangePollers.get(exchange);
+		if (exchangePoller == null) {
+			exchangePoller = new ExchangePoller(exchange);
+			exchangePollers.put(exchange, exchangePoller);
+			exchangePoller.start();
+		}
+		return exchangePoller.subscribe(currencyPair, subscriber);
+	}
+
+	/**
+	 * Gets all subscribed markets.
+	 * @return
+	 */
+	public synchronized List<PolledMarket> getMarkets() {
+		List<PolledMarket> markets = new ArrayList<>();
+		for (ExchangePoller exchangePoller : exchangePollers.values()) {
+			markets.addAll(exchangePoller.markets.values());
+		}
+		return markets;
+	}
+
+	/**
+	 * Sets how far below the profit threshold a market has to be to be polled at the maximum interval.
+	 * @param marginRange percent
+	 */
+	public void setMarginRange(double marginRange) {
+		this.marginRange = marginRange;
+	}
+
+	/**
+	 * Stops poll threads after their current poll.
+	 */
+	public synchronized void stop() {
+		stop = true;
+		for (ExchangePoller exchangePoller : exchangePollers.values()) {
+			exchangePoller.wakeUp();
+		}
+	}
+
+	public long getMinInterval() {
+		return minInterval;
+	}
+
+	public long getMaxInterval() {
+		return maxInterval;
+	}
+
+	/* package methods */
+
+	/**
+	 * Gets poll interval of a market.
+	 * @param margin highest reported margin in percent
+	 * @return nanoseconds
+	 */
+	long getPollInterval(double margin) {
+		if (margin >= 0) {
+			return minInterval;
+		}
+		double distance = Math.min(1, -margin / marginRange);
+		return minInterval + (long) ((maxInterval - minInterval) * distance);
+	}
+
+	/* inner classes */
+
+	/**
+	 * Markets and poll threads of one exchange.
+	 */
+	class ExchangePoller implements Runnable {
+
+		private final AbstractArbitrageExchange exchange;
+		private final Map<CurrencyPair, PolledMarket> markets = new HashMap<>(); // guarded by the OrderBookPoller
+		private final Lock lock = new ReentrantLock();
+		private final Condition marketDue = lock.newCondition();
+		private final PriorityQueue<PolledMarket> schedule = new PriorityQueue<>(
+				Comparator.comparingLong(market -> market.nextPollTime));
+
+		ExchangePoller(AbstractArbitrageExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		/**
+		 * Poll routine, returns when stopped or interrupted.
+		 */
+		@Override
+		public void run() {
+			while (!stop && !Thread.currentThread().isInterrupted()) {
+				PolledMarket market;
+				try {
+					market = take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				if (market != null) {
+					poll(market);
+				}
+			}
+			if (!stop) {
+				LOGGER.warn("Poll thread of {} interrupted", exchange);
+			}
+		}
+
+		void start() {
+			for (int i = 1; i <= pollThreads; i++) {
+				new Thread(this, "poller-" + exchange + "-" + i).start();
+			}
+		}
+
+		PolledMarket subscribe(CurrencyPair currencyPair, ReceivePolledOrderBook subscriber) {
+			PolledMarket market = markets.get(currencyPair);
+			if (market != null) {
+				market.subscribe(subscriber);
+				return market;
+			}
+			market = new PolledMarket(this, exchange, currencyPair);
+			market.subscribe(subscriber);
+			markets.put(currencyPair, market);
+			register(market);
+			market.setPollInterval(maxInterval);
+			schedule(market, System.nanoTime());
+			return market;
+		}
+
+		void wakeUp() {
+			lock.lock();
+			try {
+				marketDue.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Waits for the market due next.
+		 * @return null if stopped
+		 * @throws InterruptedException
+		 */
+		private PolledMarket take() throws InterruptedException {
+			lock.lock();
+			try {
+				while (!stop) {
+					PolledMarket market = schedule.peek();
+					if (market == null) {
+						marketDue.await();
+						continue;
+					}
+					long delay = market.nextPollTime - System.nanoTime();
+					if (delay <= 0) {
+						market.scheduled = false;
+						return schedule.poll();
+					}
+					marketDue.awaitNanos(delay);
+				}
+				return null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void poll(PolledMarket market) {
+			long interval = maxInterval;
+			try {
+				OrderBook orderBook = exchange.getNetworkExecutor()
+						.submit(() -> exchange.fetchOrderbook(market.getCurrencyPair())).get();
+				market.update(orderBook, System.nanoTime());
+				interval = getPollInterval(market.getMargin());
+			} catch (ExecutionException e) {
+				LOGGER.warn("Polling {} failed: {}", market, e.getCause().toString());
+				market.failed();
+			} catch (InterruptedException e) {
+				// Market stays scheduled for the other poll threads, the interrupted one exits
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				LOGGER.warn("Subscriber of {} failed", market, e);
+				market.failed();
+			}
+			market.setPollInterval(interval);
+			schedule(market, System.nanoTime() + interval);
+		}
+
+		/**
+		 * Moves the next poll of a market up if its margin shortens the interval. Markets that are being polled
+		 * are scheduled with their margin afterwards.
+		 * @param market
+		 */
+		void reschedule(PolledMarket market) {
+			lock.lock();
+			try {
+				if (!market.scheduled || market.getUpdateTime() == 0) {
+					return;
+				}
+				long interval = getPollInterval(market.getMargin());
+				long time = market.getUpdateTime() + interval;
+				if (time < market.nextPollTime) {
+					schedule.remove(market);
+					market.nextPollTime = time;
+					market.setPollInterval(interval);
+					schedule.add(market);
+					marketDue.signal();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void schedule(PolledMarket market, long time) {
+			lock.lock();
+			try {
+				market.nextPollTime = time;
+				market.scheduled = true;
+				schedule.add(market);
+				marketDue.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void register(PolledMarket market) {
+			MetricsRegistry metrics = MetricsRegistry.getInstance();
+			String exchangeName = exchange.toString();
+			String marketName = market.getCurrencyPair().toString();
+			metrics.gauge("gekko_orderbook_age_seconds", "Time since the order book was fetched", market::getAgeSeconds,
+					"exchange", exchangeName, "market", marketName);
+			metrics.gauge("gekko_orderbook_poll_interval_seconds", "Current poll interval of the order book",
+					() -> market.getPollInterval() / 1e9, "exchange", exchangeName, "market", marketName);
+			metrics.counter("gekko_orderbook_polls_total", "Order books fetched", market::getPollCount, "exchange",
+					exchangeName, "market", marketName);
+			metrics.counter("gekko_orderbook_poll_errors_total", "Failed order book polls", market::getErrorCount,
+					"exchange", exchangeName, "market", marketName);
+		}
+
+	}
+
+}
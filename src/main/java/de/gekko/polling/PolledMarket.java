@@ -0,0 +1,160 @@
+package de.gekko.polling;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+
+import de.gekko.exchanges.AbstractArbitrageExchange;
+
+/**
+ * Order book of one market of one exchange, fetched by an {@link OrderBookPoller} and shared by all its subscribers.
+ * Keeps track of the freshness of the book and how close the subscribers see the market to their profit threshold.
+ * @author Maximilian Pfister
+ *
+ */
+public class PolledMarket {
+
+	/* constants */
+
+	private static final double NO_MARGIN = Double.NEGATIVE_INFINITY;
+
+	/* variables */
+
+	private final OrderBookPoller.ExchangePoller exchangePoller;
+	private final AbstractArbitrageExchange exchange;
+	private final CurrencyPair currencyPair;
+	private final List<ReceivePolledOrderBook> subscribers = new CopyOnWriteArrayList<>();
+	private volatile OrderBook orderBook = null;
+	private volatile long updateTime = 0; // nanoseconds
+	private volatile long pollInterval = 0; // nanoseconds
+	private volatile long pollCount = 0;
+	private volatile long errorCount = 0;
+	private double margin = NO_MARGIN;
+	// guarded by the poller
+	long nextPollTime = 0;
+	boolean scheduled = false;
+
+	/* constructors */
+
+	PolledMarket(OrderBookPoller.ExchangePoller exchangePoller, AbstractArbitrageExchange exchange,
+			CurrencyPair currencyPair) {
+		this.exchangePoller = exchangePoller;
+		this.exchange = exchange;
+		this.currencyPair = currencyPair;
+	}
+
+	/* public methods */
+
+	/**
+	 * Reports the distance of the market to the profit threshold of a subscriber, the highest report since the last
+	 * poll decides the next poll interval. Subscribers that evaluate asynchronously may report after the next poll
+	 * was scheduled, it is moved up if the report shortens the interval.
+	 * @param margin percent, 0 or more if profitable
+	 */
+	public void reportMargin(double margin) {
+		synchronized (this) {
+			if (margin <= this.margin) {
+				return;
+			}
+			this.margin = margin;
+		}
+		exchangePoller.reschedule(this);
+	}
+
+	public AbstractArbitrageExchange getExchange() {
+		return exchange;
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	/**
+	 * Gets last fetched order book.
+	 * @return null until the first poll succeeded
+	 */
+	public OrderBook getOrderBook() {
+		return orderBook;
+	}
+
+	/**
+	 * Gets time since the order book was fetched.
+	 * @return nanoseconds, Long.MAX_VALUE until the first poll succeeded
+	 */
+	public long getAge() {
+		long time = updateTime;
+		return time == 0 ? Long.MAX_VALUE : System.nanoTime() - time;
+	}
+
+	/**
+	 * Gets current poll interval.
+	 * @return nanoseconds
+	 */
+	public long getPollInterval() {
+		return pollInterval;
+	}
+
+	public long getPollCount() {
+		return pollCount;
+	}
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Gets highest margin reported during the last poll.
+	 * @return percent, negative infinity if no subscriber reported
+	 */
+	public synchronized double getMargin() {
+		return margin;
+	}
+
+	@Override
+	public String toString() {
+		return exchange + " " + currencyPair;
+	}
+
+	/* package methods */
+
+	void subscribe(ReceivePolledOrderBook subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	/**
+	 * Stores fetched order book and hands it to the subscribers.
+	 * @param orderBook
+	 * @param time nanoseconds
+	 */
+	void update(OrderBook orderBook, long time) {
+		this.orderBook = orderBook;
+		this.updateTime = time;
+		pollCount++;
+		synchronized (this) {
+			margin = NO_MARGIN;
+		}
+		for (ReceivePolledOrderBook subscriber : subscribers) {
+			subscriber.receivePolledOrderBook(this);
+		}
+	}
+
+	void failed() {
+		errorCount++;
+	}
+
+	void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	long getUpdateTime() {
+		return updateTime;
+	}
+
+	double getAgeSeconds() {
+		long age = getAge();
+		return age == Long.MAX_VALUE ? Double.NaN : age / 1e9;
+	}
+
+}
@@ -0,0 +1,18 @@
+package de.gekko.polling;
+
+/**
+ * Receives order books fetched by an {@link OrderBookPoller}. Called on the poll thread of the exchange, so
+ * implementations that subscribe to markets of several exchanges are called concurrently.
+ * @author Maximilian Pfister
+ *
+ */
+public interface ReceivePolledOrderBook {
+
+	/**
+	 * Implementations should report how close the market is to their profit threshold with
+	 * {@link PolledMarket#reportMargin(double)}, markets without report are polled at the maximum interval.
+	 * @param market market with the new order book
+	 */
+	public void receivePolledOrderBook(PolledMarket market);
+
+}
@@ -0,0 +1,31 @@
+package de.gekko.ratelimit;
+
+/**
+ * Classes of exchange endpoints that are rate limited separately.
+ * @author Maximilian Pfister
+ *
+ */
+public enum EndpointClass {
+
+	/** Orderbooks and tickers, polled continuously. */
+	MARKET_DATA(false),
+	/** Placing, cancelling and querying orders, served before waiting requests of the other classes. */
+	TRADING(true),
+	/** Wallets and balances. */
+	ACCOUNT(false);
+
+	private final boolean priority;
+
+	private EndpointClass(boolean priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Checks if requests of this class overtake waiting requests of classes without priority.
+	 * @return
+	 */
+	public boolean isPriority() {
+		return priority;
+	}
+
+}
@@ -0,0 +1,160 @@
+package de.gekko.ratelimit;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.concurrency.NetworkExecutor;
+import de.gekko.metrics.Counter;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.tracing.LatencyHistogram;
+
+/**
+ * Client side rate limits of one exchange, shared by everything that sends requests to it. Every
+ * {@link EndpointClass} can have its own {@link TokenBucket}, an optional total bucket limits all classes together.
+ * Trading requests overtake waiting market data and account requests in both, so order latency does not depend on
+ * how many polls are queued. Classes without limit are not throttled.
+ * <p>
+ * A call of a {@link NetworkExecutor} waits without its concurrency permit, so throttled polls do not hold all
+ * permits while trading calls of the same exchange have tokens left.
+ * @author Maximilian Pfister
+ *
+ */
+public class RateLimiter {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+	private static final EndpointClass[] ENDPOINT_CLASSES = EndpointClass.values();
+
+	/* variables */
+
+	private final String name;
+	private final AtomicReferenceArray<TokenBucket> buckets = new AtomicReferenceArray<>(ENDPOINT_CLASSES.length);
+	private volatile TokenBucket totalBucket = null;
+	private final LatencyHistogram[] waitTimes = new LatencyHistogram[ENDPOINT_CLASSES.length];
+	private final Counter[] throttledRequests = new Counter[ENDPOINT_CLASSES.length];
+
+	/* constructors */
+
+	/**
+	 * Creates rate limiter without limits.
+	 * @param name exchange name, used for metrics
+	 */
+	public RateLimiter(String name) {
+		this.name = name;
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		for (EndpointClass endpoint : ENDPOINT_CLASSES) {
+			String endpointName = endpoint.name().toLowerCase(Locale.ROOT);
+			waitTimes[endpoint.ordinal()] = metrics.histogram("gekko_rate_limit_wait_seconds",
+					"Time requests waited for the client side rate limit", "exchange", name, "endpoint", endpointName);
+			throttledRequests[endpoint.ordinal()] = metrics.counter("gekko_rate_limit_throttled_total",
+					"Requests that had to wait for the client side rate limit", "exchange", name, "endpoint",
+					endpointName);
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Limits requests of an endpoint class.
+	 * @param endpoint
+	 * @param requests burst size and requests per period
+	 * @param period
+	 * @param unit
+	 */
+	public void setLimit(EndpointClass endpoint, int requests, long period, TimeUnit unit) {
+		TokenBucket bucket = new TokenBucket(requests, unit.toNanos(period));
+		buckets.set(endpoint.ordinal(), bucket);
+		LOGGER.info("Rate limit [{}] {}: {}", name, endpoint, bucket);
+	}
+
+	/**
+	 * Limits requests of all endpoint classes together, e.g. the request weight limit of an API key.
+	 * @param requests burst size and requests per period
+	 * @param period
+	 * @param unit
+	 */
+	public void setTotalLimit(int requests, long period, TimeUnit unit) {
+		totalBucket = new TokenBucket(requests, unit.toNanos(period));
+		LOGGER.info("Rate limit [{}] total: {}", name, totalBucket);
+	}
+
+	/**
+	 * Removes limit of an endpoint class.
+	 * @param endpoint
+	 */
+	public void removeLimit(EndpointClass endpoint) {
+		buckets.set(endpoint.ordinal(), null);
+	}
+
+	public void removeTotalLimit() {
+		totalBucket = null;
+	}
+
+	/**
+	 * Waits until a request of the endpoint class may be sent.
+	 * @param endpoint
+	 * @return nanoseconds waited
+	 * @throws InterruptedException
+	 */
+	public long acquire(EndpointClass endpoint) throws InterruptedException {
+		long waitTime = 0;
+		TokenBucket bucket = buckets.get(endpoint.ordinal());
+		if (bucket != null) {
+			waitTime += acquire(bucket, endpoint.isPriority());
+		}
+		TokenBucket total = totalBucket;
+		if (total != null) {
+			waitTime += acquire(total, endpoint.isPriority());
+		}
+		waitTimes[endpoint.ordinal()].record(waitTime);
+		if (waitTime > 0) {
+			throttledRequests[endpoint.ordinal()].increment();
+		}
+		return waitTime;
+	}
+
+	/**
+	 * Gets limit of an endpoint class.
+	 * @param endpoint
+	 * @return null if not limited
+	 */
+	public TokenBucket getLimit(EndpointClass endpoint) {
+		return buckets.get(endpoint.ordinal());
+	}
+
+	/**
+	 * Gets limit of all endpoint classes together.
+	 * @return null if not limited
+	 */
+	public TokenBucket getTotalLimit() {
+		return totalBucket;
+	}
+
+	/**
+	 * Gets distribution of the time requests of an endpoint class waited.
+	 * @param endpoint
+	 * @return
+	 */
+	public LatencyHistogram getWaitTimes(EndpointClass endpoint) {
+		return waitTimes[endpoint.ordinal()];
+	}
+
+	/* private methods */
+
+	/**
+	 * Takes a token, releases the concurrency permit of the calling network call while it has to wait.
+	 */
+	private static long acquire(TokenBucket bucket, boolean priority) throws InterruptedException {
+		if (bucket.tryAcquire(priority)) {
+			return 0;
+		}
+		return NetworkExecutor.awaitWithoutPermit(() -> bucket.acquire(priority));
+	}
+
+}
@@ -0,0 +1,145 @@
+package de.gekko.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket that allows bursts of up to a number of requests and refills continuously at the rate of that number
+ * per period. Requests with priority take the next token before any waiting request without priority.
+ * @author Maximilian Pfister
+ *
+ */
+public class TokenBucket {
+
+	/* variables */
+
+	private final Lock lock = new ReentrantLock();
+	private final Condition tokenAvailable = lock.newCondition();
+	private final int requests;
+	private final long period;
+	private final double tokensPerNano;
+	private double tokens;
+	private long lastRefillTime;
+	private int waitingPriorityRequests = 0;
+
+	/* constructors */
+
+	/**
+	 * Creates full bucket.
+	 * @param requests burst size and requests per period
+	 * @param period nanoseconds
+	 */
+	public TokenBucket(int requests, long period) {
+		if (requests < 1 || period < 1) {
+			throw new IllegalArgumentException("Invalid rate " + requests + " per " + period + " ns");
+		}
+		this.requests = requests;
+		this.period = period;
+		this.tokensPerNano = requests / (double) period;
+		this.tokens = requests;
+		this.lastRefillTime = System.nanoTime();
+	}
+
+	/* public methods */
+
+	/**
+	 * Takes a token, waits until one is available.
+	 * @param priority overtake waiting requests without priority
+	 * @return nanoseconds waited, 0 if a token was available right away
+	 * @throws InterruptedException
+	 */
+	public long acquire(boolean priority) throws InterruptedException {
+		lock.lock();
+		try {
+			if (takeToken(priority)) {
+				return 0;
+			}
+			long startTime = System.nanoTime();
+			if (priority) {
+				waitingPriorityRequests++;
+			}
+			try {
+				while (!takeToken(priority)) {
+					if (priority || waitingPriorityRequests == 0) {
+						tokenAvailable.awaitNanos(getRefillTime());
+					} else {
+						// Woken up when the priority requests are served
+						tokenAvailable.await();
+					}
+				}
+			} finally {
+				if (priority && --waitingPriorityRequests == 0) {
+					tokenAvailable.signalAll();
+				}
+			}
+			return System.nanoTime() - startTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes a token if one is available and no priority request is waiting.
+	 * @return
+	 */
+	public boolean tryAcquire() {
+		return tryAcquire(false);
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 * @param priority overtake waiting requests without priority
+	 * @return
+	 */
+	public boolean tryAcquire(boolean priority) {
+		lock.lock();
+		try {
+			return takeToken(priority);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Gets period of the rate.
+	 * @return nanoseconds
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	@Override
+	public String toString() {
+		return requests + " per " + TimeUnit.NANOSECONDS.toMillis(period) + " ms";
+	}
+
+	/* private methods */
+
+	/**
+	 * Called with lock held.
+	 */
+	private boolean takeToken(boolean priority) {
+		long now = System.nanoTime();
+		tokens = Math.min(requests, tokens + (now - lastRefillTime) * tokensPerNano);
+		lastRefillTime = now;
+		if (tokens < 1 || (!priority && waitingPriorityRequests > 0)) {
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Gets time until the next token is available. Called with lock held.
+	 */
+	private long getRefillTime() {
+		return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+	}
+
+}
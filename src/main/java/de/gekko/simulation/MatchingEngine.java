@@ -0,0 +1,330 @@
+package de.gekko.simulation;
+
+import java.util.Arrays;
+
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Limit order book of one market matching with price-time priority. Prices and quantities are fixed point longs (see
+ * {@link FixedPoint}). Orders live in a pool of primitive arrays and are chained into one FIFO queue per price level,
+ * an order id index makes cancels O(1) plus the level lookup. Nothing is allocated per order once the pool and index
+ * have grown to the number of resting orders.
+ * <p>
+ * Not thread safe, callers serialize access per market.
+ * @author Maximilian Pfister
+ *
+ */
+public class MatchingEngine {
+
+	/* constants */
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int NO_ORDER = PriceLevels.NO_ORDER;
+
+	/* variables */
+
+	private final ReceiveFill fillReceiver;
+	private final PriceLevels bids;
+	private final PriceLevels asks;
+	private final OrderIndex index;
+
+	// order pool, free slots are chained through nextOrders
+	private long[] orderIds;
+	private long[] orderPrices;
+	private long[] orderQuantities;
+	private boolean[] orderBuys;
+	private int[] nextOrders;
+	private int[] previousOrders;
+	private int freeOrder = NO_ORDER;
+	private int usedOrders = 0;
+
+	private int changedDepth = Integer.MAX_VALUE;
+	private long lastPrice = 0;
+	private long tradeCount = 0;
+
+	/* constructors */
+
+	public MatchingEngine(ReceiveFill fillReceiver) {
+		this(fillReceiver, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param fillReceiver receives all trades, may be null
+	 * @param initialCapacity expected number of resting orders
+	 */
+	public MatchingEngine(ReceiveFill fillReceiver, int initialCapacity) {
+		this.fillReceiver = fillReceiver;
+		bids = new PriceLevels(true, Math.max(initialCapacity / 8, 16));
+		asks = new PriceLevels(false, Math.max(initialCapacity / 8, 16));
+		index = new OrderIndex(initialCapacity);
+		orderIds = new long[initialCapacity];
+		orderPrices = new long[initialCapacity];
+		orderQuantities = new long[initialCapacity];
+		orderBuys = new boolean[initialCapacity];
+		nextOrders = new int[initialCapacity];
+		previousOrders = new int[initialCapacity];
+	}
+
+	/* public methods */
+
+	/**
+	 * Submits a limit order. The order trades against resting orders at their prices as long as they cross the
+	 * limit, the remaining quantity rests in the book unless the order is immediate or cancel.
+	 * @param orderId positive id, unique among resting orders
+	 * @param buy
+	 * @param price fixed point limit price
+	 * @param quantity fixed point base quantity
+	 * @param immediateOrCancel
+	 * @return filled quantity
+	 */
+	public long submit(long orderId, boolean buy, long price, long quantity, boolean immediateOrCancel) {
+		if (orderId <= 0 || quantity <= 0) {
+			throw new IllegalArgumentException("Order id and quantity have to be positive");
+		}
+		if (index.get(orderId) != OrderIndex.ABSENT) {
+			throw new IllegalArgumentException("Order " + orderId + " is already resting");
+		}
+		long filled = match(orderId, buy, price, quantity);
+		if (filled < quantity && !immediateOrCancel) {
+			rest(orderId, buy, price, quantity - filled);
+		}
+		return filled;
+	}
+
+	/**
+	 * Submits a market order, any quantity that can not be filled immediately is cancelled.
+	 * @param orderId
+	 * @param buy
+	 * @param quantity fixed point base quantity
+	 * @return filled quantity
+	 */
+	public long submitMarket(long orderId, boolean buy, long quantity) {
+		return submit(orderId, buy, buy ? Long.MAX_VALUE : 0, quantity, true);
+	}
+
+	/**
+	 * Removes a resting order.
+	 * @param orderId
+	 * @return false if the order is not resting (unknown, filled or cancelled)
+	 */
+	public boolean cancel(long orderId) {
+		int order = index.remove(orderId);
+		if (order == OrderIndex.ABSENT) {
+			return false;
+		}
+		PriceLevels side = orderBuys[order] ? bids : asks;
+		int level = side.search(orderPrices[order]);
+		int previous = previousOrders[order];
+		int next = nextOrders[order];
+		if (previous == NO_ORDER) {
+			side.setHead(level, next);
+		} else {
+			nextOrders[previous] = next;
+		}
+		if (next == NO_ORDER) {
+			side.setTail(level, previous);
+		} else {
+			previousOrders[next] = previous;
+		}
+		side.addQuantity(level, -orderQuantities[order]);
+		markChanged(side.depth(level));
+		if (side.head(level) == NO_ORDER) {
+			side.remove(level);
+		}
+		free(order);
+		return true;
+	}
+
+	/**
+	 * Gets unfilled quantity of a resting order.
+	 * @param orderId
+	 * @return fixed point quantity, 0 if the order is not resting
+	 */
+	public long getRemainingQuantity(long orderId) {
+		int order = index.get(orderId);
+		return order == OrderIndex.ABSENT ? 0 : orderQuantities[order];
+	}
+
+	/**
+	 * Gets counter currency amount a market order would trade at the current book. Only the fillable part of the
+	 * quantity is valued.
+	 * @param buy
+	 * @param quantity fixed point base quantity
+	 * @return fixed point amount
+	 */
+	public long getMarketNotional(boolean buy, long quantity) {
+		PriceLevels opposite = buy ? asks : bids;
+		double notional = 0;
+		long remaining = quantity;
+		for (int level = opposite.best(); level >= 0 && remaining > 0; level--) {
+			long traded = Math.min(remaining, opposite.quantity(level));
+			notional += FixedPoint.toDouble(opposite.price(level)) * FixedPoint.toDouble(traded);
+			remaining -= traded;
+		}
+		return FixedPoint.fromDouble(notional);
+	}
+
+	/**
+	 * Gets the shallowest level (0 is the best level) of either side that changed since the last call.
+	 * @return level or {@link Integer#MAX_VALUE} if nothing changed
+	 */
+	public int pollChangedDepth() {
+		int depth = changedDepth;
+		changedDepth = Integer.MAX_VALUE;
+		return depth;
+	}
+
+	public int getBidLevels() {
+		return bids.size();
+	}
+
+	public int getAskLevels() {
+		return asks.size();
+	}
+
+	/**
+	 * Gets price of a bid level, where level 0 is the best price.
+	 * @param level
+	 * @return
+	 */
+	public long getBidPrice(int level) {
+		return bids.price(bids.best() - level);
+	}
+
+	public long getBidQuantity(int level) {
+		return bids.quantity(bids.best() - level);
+	}
+
+	/**
+	 * Gets price of an ask level, where level 0 is the best price.
+	 * @param level
+	 * @return
+	 */
+	public long getAskPrice(int level) {
+		return asks.price(asks.best() - level);
+	}
+
+	public long getAskQuantity(int level) {
+		return asks.quantity(asks.best() - level);
+	}
+
+	/**
+	 * Gets price of the last trade.
+	 * @return fixed point price, 0 before the first trade
+	 */
+	public long getLastPrice() {
+		return lastPrice;
+	}
+
+	public long getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * Gets number of resting orders.
+	 * @return
+	 */
+	public int getOrderCount() {
+		return index.size();
+	}
+
+	/* private methods */
+
+	private long match(long orderId, boolean buy, long price, long quantity) {
+		PriceLevels opposite = buy ? asks : bids;
+		long remaining = quantity;
+		while (remaining > 0 && opposite.size() > 0) {
+			int level = opposite.best();
+			if (!opposite.crosses(level, price)) {
+				break;
+			}
+			long levelPrice = opposite.price(level);
+			int order = opposite.head(level);
+			while (remaining > 0 && order != NO_ORDER) {
+				long traded = Math.min(remaining, orderQuantities[order]);
+				long makerOrderId = orderIds[order];
+				int next = nextOrders[order];
+				remaining -= traded;
+				orderQuantities[order] -= traded;
+				opposite.addQuantity(level, -traded);
+				if (orderQuantities[order] == 0) {
+					opposite.setHead(level, next);
+					if (next == NO_ORDER) {
+						opposite.setTail(level, NO_ORDER);
+					} else {
+						previousOrders[next] = NO_ORDER;
+					}
+					index.remove(makerOrderId);
+					free(order);
+				}
+				lastPrice = levelPrice;
+				tradeCount++;
+				if (fillReceiver != null) {
+					fillReceiver.receiveFill(orderId, makerOrderId, buy, levelPrice, traded);
+				}
+				order = next;
+			}
+			markChanged(0);
+			if (opposite.head(level) == NO_ORDER) {
+				opposite.remove(level);
+			}
+		}
+		return quantity - remaining;
+	}
+
+	private void rest(long orderId, boolean buy, long price, long quantity) {
+		PriceLevels side = buy ? bids : asks;
+		int level = side.search(price);
+		if (level < 0) {
+			level = -(level + 1);
+			side.insert(level, price);
+		}
+		int order = allocate();
+		orderIds[order] = orderId;
+		orderPrices[order] = price;
+		orderQuantities[order] = quantity;
+		orderBuys[order] = buy;
+		nextOrders[order] = NO_ORDER;
+		int tail = side.tail(level);
+		previousOrders[order] = tail;
+		if (tail == NO_ORDER) {
+			side.setHead(level, order);
+		} else {
+			nextOrders[tail] = order;
+		}
+		side.setTail(level, order);
+		side.addQuantity(level, quantity);
+		index.put(orderId, order);
+		markChanged(side.depth(level));
+	}
+
+	private int allocate() {
+		if (freeOrder != NO_ORDER) {
+			int order = freeOrder;
+			freeOrder = nextOrders[order];
+			return order;
+		}
+		if (usedOrders == orderIds.length) {
+			int capacity = usedOrders * 2;
+			orderIds = Arrays.copyOf(orderIds, capacity);
+			orderPrices = Arrays.copyOf(orderPrices, capacity);
+			orderQuantities = Arrays.copyOf(orderQuantities, capacity);
+			orderBuys = Arrays.copyOf(orderBuys, capacity);
+			nextOrders = Arrays.copyOf(nextOrders, capacity);
+			previousOrders = Arrays.copyOf(previousOrders, capacity);
+		}
+		return usedOrders++;
+	}
+
+	private void free(int order) {
+		nextOrders[order] = freeOrder;
+		freeOrder = order;
+	}
+
+	private void markChanged(int depth) {
+		if (depth < changedDepth) {
+			changedDepth = depth;
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package de.gekko.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+import de.gekko.exchanges.SimulatedArbitrageExchange;
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Generates random liquidity order flow on one market of a {@link SimulatedArbitrageExchange}: resting limit orders
+ * around a slowly drifting mid price, cancels of those orders and crossing orders that trade. Each step is one
+ * engine operation.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderFlowGenerator implements Runnable {
+
+	/* constants */
+
+	// resting orders tracked for cancels, power of two
+	private static final int TRACKED_ORDERS = 4096;
+	private static final int MAX_TICKS = 20;
+	private static final int CROSSING_TICKS = 3;
+	// parts per thousand of steps
+	private static final int DRIFT_RATE = 5;
+	private static final int CROSSING_RATE = 100;
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	/* variables */
+
+	private final SimulatedArbitrageExchange exchange;
+	private final CurrencyPair currencyPair;
+	private final long tick;
+	private final long maxQuantity;
+	private final SplittableRandom random;
+	private final long[] orderIds = new long[TRACKED_ORDERS];
+	private final AtomicLong operationCount = new AtomicLong();
+	private long mid;
+	private volatile long operationsPerSecond = 0;
+	private volatile boolean stop = false;
+
+	/* constructors */
+
+	/**
+	 * @param exchange
+	 * @param currencyPair
+	 * @param midPrice start price, orders are placed up to 20 ticks of 1 bp around it
+	 * @param maxQuantity maximum base quantity of an order
+	 * @param seed
+	 */
+	public OrderFlowGenerator(SimulatedArbitrageExchange exchange, CurrencyPair currencyPair, double midPrice,
+			double maxQuantity, long seed) {
+		this.exchange = exchange;
+		this.currencyPair = currencyPair;
+		this.mid = FixedPoint.fromDouble(midPrice);
+		this.tick = Math.max(mid / 10_000, 1);
+		this.maxQuantity = FixedPoint.fromDouble(maxQuantity);
+		this.random = new SplittableRandom(seed);
+	}
+
+	/* public methods */
+
+	@Override
+	public void run() {
+		long start = System.nanoTime();
+		long operations = 0;
+		while (!stop) {
+			step();
+			operations++;
+			operationCount.lazySet(operations);
+			long rate = operationsPerSecond;
+			if (rate > 0) {
+				long due = start + (long) (operations * ((double) NANOS_PER_SECOND / rate));
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Limits the generated order flow.
+	 * @param operationsPerSecond orders and cancels per second, 0 runs as fast as the engine allows
+	 */
+	public void setOperationsPerSecond(long operationsPerSecond) {
+		this.operationsPerSecond = operationsPerSecond;
+	}
+
+	/**
+	 * Gets number of submitted orders and cancels.
+	 * @return
+	 */
+	public long getOperationCount() {
+		return operationCount.get();
+	}
+
+	public void stop() {
+		stop = true;
+	}
+
+	/**
+	 * Static factory method that creates an OrderFlowGenerator and runs it in a new thread.
+	 * @param exchange
+	 * @param currencyPair
+	 * @param midPrice
+	 * @param maxQuantity
+	 * @param operationsPerSecond 0 for unlimited
+	 * @return
+	 */
+	public static OrderFlowGenerator createInstance(SimulatedArbitrageExchange exchange, CurrencyPair currencyPair,
+			double midPrice, double maxQuantity, long operationsPerSecond) {
+		OrderFlowGenerator ret = new OrderFlowGenerator(exchange, currencyPair, midPrice, maxQuantity,
+				currencyPair.hashCode());
+		ret.setOperationsPerSecond(operationsPerSecond);
+		Thread thread = new Thread(ret, "order-flow-" + currencyPair);
+		thread.setDaemon(true);
+		thread.start();
+		return ret;
+	}
+
+	/**
+	 * Measures throughput of the simulated exchange with one generator thread per market.
+	 * @param args
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int marketCount = Runtime.getRuntime().availableProcessors();
+		int seconds = 10;
+		long rate = 0;
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--markets=")) {
+				marketCount = Integer.parseInt(value);
+			} else if (arg.startsWith("--seconds=")) {
+				seconds = Integer.parseInt(value);
+			} else if (arg.startsWith("--rate=")) {
+				rate = Long.parseLong(value);
+			} else {
+				System.out.println("Usage: OrderFlowGenerator [--markets=n] [--seconds=10] [--rate=0]");
+				return;
+			}
+		}
+		List<CurrencyPair> currencyPairs = new ArrayList<>();
+		for (int market = 0; market < marketCount; market++) {
+			currencyPairs.add(new CurrencyPair("SIM" + market, "BTC"));
+		}
+		SimulatedArbitrageExchange exchange = new SimulatedArbitrageExchange("Simulated", currencyPairs);
+		AtomicLong topOfBookCount = new AtomicLong();
+		exchange.addSubscriber(topOfBookUpdate -> topOfBookCount.incrementAndGet());
+
+		List<OrderFlowGenerator> generators = new ArrayList<>();
+		for (CurrencyPair currencyPair : currencyPairs) {
+			generators.add(createInstance(exchange, currencyPair, 0.05, 10, rate));
+		}
+		long previousOperations = 0;
+		long previousUpdates = 0;
+		for (int second = 0; second < seconds; second++) {
+			Thread.sleep(1000);
+			long operations = 0;
+			for (OrderFlowGenerator generator : generators) {
+				operations += generator.getOperationCount();
+			}
+			long updates = topOfBookCount.get();
+			System.out.println(String.format("%d orders/s, %d top of book updates/s", operations - previousOperations,
+					updates - previousUpdates));
+			previousOperations = operations;
+			previousUpdates = updates;
+		}
+		generators.forEach(OrderFlowGenerator::stop);
+	}
+
+	/* private methods */
+
+	private void step() {
+		int action = random.nextInt(1000);
+		if (action < DRIFT_RATE) {
+			mid = Math.max(mid + (random.nextBoolean() ? tick : -tick), tick * MAX_TICKS * 2);
+		}
+		long quantity = 1 + random.nextLong(maxQuantity);
+		boolean buy = random.nextBoolean();
+		if (action < CROSSING_RATE) {
+			long price = buy ? mid + tick * CROSSING_TICKS : mid - tick * CROSSING_TICKS;
+			exchange.submitLiquidity(currencyPair, buy, price, quantity, true);
+			return;
+		}
+		// cancel the order tracked in a random slot, or place a new one there if the slot is free
+		int slot = random.nextInt(TRACKED_ORDERS);
+		if (orderIds[slot] != 0) {
+			exchange.cancelLiquidity(currencyPair, orderIds[slot]);
+			orderIds[slot] = 0;
+		} else {
+			long offset = tick * (1 + random.nextInt(MAX_TICKS));
+			orderIds[slot] = exchange.submitLiquidity(currencyPair, buy, buy ? mid - offset : mid + offset, quantity,
+					false);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package de.gekko.simulation;
+
+/**
+ * Open addressing hash map from positive order ids to pool slots of a {@link MatchingEngine}. Uses linear probing
+ * and backward shift deletion, so neither lookups nor removals allocate or leave tombstones behind.
+ * @author Maximilian Pfister
+ *
+ */
+class OrderIndex {
+
+	/* constants */
+
+	static final int ABSENT = -1;
+
+	private static final long EMPTY = 0;
+
+	/* variables */
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size = 0;
+
+	/* constructors */
+
+	OrderIndex(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/* package methods */
+
+	int get(long key) {
+		for (int slot = slot(key);; slot = (slot + 1) & mask) {
+			long current = keys[slot];
+			if (current == key) {
+				return values[slot];
+			}
+			if (current == EMPTY) {
+				return ABSENT;
+			}
+		}
+	}
+
+	/**
+	 * Adds a mapping, the key must not be present yet.
+	 * @param key positive order id
+	 * @param value
+	 */
+	void put(long key, int value) {
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		int slot = slot(key);
+		while (keys[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+	}
+
+	/**
+	 * Removes a mapping.
+	 * @param key
+	 * @return removed value or {@link #ABSENT}
+	 */
+	int remove(long key) {
+		int hole = slot(key);
+		while (keys[hole] != key) {
+			if (keys[hole] == EMPTY) {
+				return ABSENT;
+			}
+			hole = (hole + 1) & mask;
+		}
+		int value = values[hole];
+		// shift following entries of the probe sequence back unless that would move them before their home slot
+		for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			int home = slot(keys[slot]);
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				keys[hole] = keys[slot];
+				values[hole] = values[slot];
+				hole = slot;
+			}
+		}
+		keys[hole] = EMPTY;
+		size--;
+		return value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/* private methods */
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		mask = keys.length - 1;
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package de.gekko.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Price levels of one side of a {@link MatchingEngine}. Same layout as {@link de.gekko.orderbook.BookSide}: sorted
+ * primitive arrays with the best level at the end, each level additionally holds the first and last order of its
+ * FIFO queue.
+ * @author Maximilian Pfister
+ *
+ */
+class PriceLevels {
+
+	/* constants */
+
+	static final int NO_ORDER = -1;
+
+	/* variables */
+
+	private final boolean bidSide;
+	// Ascending sort keys: price for bids, negated price for asks. Best level is at index count - 1.
+	private long[] keys;
+	private long[] quantities;
+	private int[] heads;
+	private int[] tails;
+	private int count = 0;
+
+	/* constructors */
+
+	PriceLevels(boolean bidSide, int initialCapacity) {
+		this.bidSide = bidSide;
+		this.keys = new long[initialCapacity];
+		this.quantities = new long[initialCapacity];
+		this.heads = new int[initialCapacity];
+		this.tails = new int[initialCapacity];
+	}
+
+	/* package methods */
+
+	/**
+	 * Searches level of a price.
+	 * @param price
+	 * @return index of the level, or (-(insertion point) - 1) if the level does not exist
+	 */
+	int search(long price) {
+		return Arrays.binarySearch(keys, 0, count, toKey(price));
+	}
+
+	/**
+	 * Inserts an empty level.
+	 * @param index insertion point returned by {@link #search(long)}
+	 * @param price
+	 */
+	void insert(int index, long price) {
+		if (count == keys.length) {
+			keys = Arrays.copyOf(keys, count * 2);
+			quantities = Arrays.copyOf(quantities, count * 2);
+			heads = Arrays.copyOf(heads, count * 2);
+			tails = Arrays.copyOf(tails, count * 2);
+		}
+		if (index < count) {
+			System.arraycopy(keys, index, keys, index + 1, count - index);
+			System.arraycopy(quantities, index, quantities, index + 1, count - index);
+			System.arraycopy(heads, index, heads, index + 1, count - index);
+			System.arraycopy(tails, index, tails, index + 1, count - index);
+		}
+		keys[index] = toKey(price);
+		quantities[index] = 0;
+		heads[index] = NO_ORDER;
+		tails[index] = NO_ORDER;
+		count++;
+	}
+
+	void remove(int index) {
+		int tail = count - index - 1;
+		if (tail > 0) {
+			System.arraycopy(keys, index + 1, keys, index, tail);
+			System.arraycopy(quantities, index + 1, quantities, index, tail);
+			System.arraycopy(heads, index + 1, heads, index, tail);
+			System.arraycopy(tails, index + 1, tails, index, tail);
+		}
+		count--;
+	}
+
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Gets index of the best level.
+	 * @return
+	 */
+	int best() {
+		return count - 1;
+	}
+
+	/**
+	 * Gets distance of a level from the best level, 0 is the best level.
+	 * @param index
+	 * @return
+	 */
+	int depth(int index) {
+		return count - 1 - index;
+	}
+
+	long price(int index) {
+		return bidSide ? keys[index] : -keys[index];
+	}
+
+	long quantity(int index) {
+		return quantities[index];
+	}
+
+	void addQuantity(int index, long quantity) {
+		quantities[index] += quantity;
+	}
+
+	int head(int index) {
+		return heads[index];
+	}
+
+	void setHead(int index, int order) {
+		heads[index] = order;
+	}
+
+	int tail(int index) {
+		return tails[index];
+	}
+
+	void setTail(int index, int order) {
+		tails[index] = order;
+	}
+
+	/**
+	 * Checks if an order at a price would trade against this side.
+	 * @param index level of this side
+	 * @param price limit price of the incoming order
+	 * @return
+	 */
+	boolean crosses(int index, long price) {
+		return bidSide ? price(index) >= price : price(index) <= price;
+	}
+
+	/* private methods */
+
+	private long toKey(long price) {
+		return bidSide ? price : -price;
+	}
+
+}
@@ -0,0 +1,20 @@
+package de.gekko.simulation;
+
+/**
+ * Receives trades of a {@link MatchingEngine}. Called on the thread that submitted the taker order while the engine
+ * is matching, implementations must not modify the engine.
+ * @author Maximilian Pfister
+ *
+ */
+public interface ReceiveFill {
+
+	/**
+	 * @param takerOrderId incoming order
+	 * @param makerOrderId resting order, already removed from the engine if it is filled completely
+	 * @param takerBuy true if the taker bought
+	 * @param price fixed point price of the maker order
+	 * @param quantity fixed point base quantity
+	 */
+	public void receiveFill(long takerOrderId, long makerOrderId, boolean takerBuy, long price, long quantity);
+
+}
@@ -0,0 +1,110 @@
+package de.gekko.simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.dto.account.Balance;
+import org.knowm.xchange.dto.account.Wallet;
+
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Balances of a simulated account as fixed point longs (see {@link FixedPoint}). Funds of open orders are moved from
+ * available to reserved when the order is placed and are spent from the reservation when it fills.
+ * @author Maximilian Pfister
+ *
+ */
+public class SimulatedWallet {
+
+	/* constants */
+
+	private static final int AVAILABLE = 0;
+	private static final int RESERVED = 1;
+
+	/* variables */
+
+	private final Map<Currency, long[]> balances = new HashMap<>();
+
+	/* public methods */
+
+	public synchronized void deposit(Currency currency, double amount) {
+		balance(currency)[AVAILABLE] += FixedPoint.fromDouble(amount);
+	}
+
+	public synchronized double getAvailable(Currency currency) {
+		long[] balance = balances.get(currency);
+		return balance == null ? 0 : FixedPoint.toDouble(balance[AVAILABLE]);
+	}
+
+	public synchronized double getReserved(Currency currency) {
+		long[] balance = balances.get(currency);
+		return balance == null ? 0 : FixedPoint.toDouble(balance[RESERVED]);
+	}
+
+	/**
+	 * Gets balances in the format of the exchange APIs.
+	 * @return
+	 */
+	public synchronized Wallet toWallet() {
+		List<Balance> walletBalances = new ArrayList<>();
+		balances.forEach((currency, balance) -> walletBalances.add(new Balance(currency,
+				FixedPoint.toBigDecimal(balance[AVAILABLE] + balance[RESERVED]), FixedPoint.toBigDecimal(balance[AVAILABLE]),
+				FixedPoint.toBigDecimal(balance[RESERVED]))));
+		return new Wallet(walletBalances);
+	}
+
+	/**
+	 * Moves funds from available to reserved.
+	 * @param currency
+	 * @param amount fixed point
+	 * @return false if not enough funds are available, nothing is reserved then
+	 */
+	public synchronized boolean reserve(Currency currency, long amount) {
+		long[] balance = balance(currency);
+		if (balance[AVAILABLE] < amount) {
+			return false;
+		}
+		balance[AVAILABLE] -= amount;
+		balance[RESERVED] += amount;
+		return true;
+	}
+
+	/**
+	 * Moves unused funds of a reservation back to available.
+	 * @param currency
+	 * @param amount fixed point
+	 */
+	public synchronized void release(Currency currency, long amount) {
+		long[] balance = balance(currency);
+		balance[RESERVED] -= amount;
+		balance[AVAILABLE] += amount;
+	}
+
+	/**
+	 * Removes spent funds from the reservation.
+	 * @param currency
+	 * @param amount fixed point
+	 */
+	public synchronized void spend(Currency currency, long amount) {
+		balance(currency)[RESERVED] -= amount;
+	}
+
+	/**
+	 * Adds received funds to available.
+	 * @param currency
+	 * @param amount fixed point
+	 */
+	public synchronized void receive(Currency currency, long amount) {
+		balance(currency)[AVAILABLE] += amount;
+	}
+
+	/* private methods */
+
+	private long[] balance(Currency currency) {
+		return balances.computeIfAbsent(currency, key -> new long[2]);
+	}
+
+}
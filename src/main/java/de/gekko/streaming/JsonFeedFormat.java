@@ -0,0 +1,151 @@
+package de.gekko.streaming;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+/**
+ * Message layout of a JSON websocket feed, read by {@link JsonWebsocketMarketData}. The defaults describe the format
+ * of the {@link MockFeedServer}:
+ *
+ * <pre>
+ * {"type":"snapshot","market":"ETH-BTC","sequence":41,"bids":[["0.05","1.2"]],"asks":[["0.051","3"]]}
+ * {"type":"update","market":"ETH-BTC","sequence":42,"bids":[["0.05","0"]],"asks":[]}
+ * </pre>
+ *
+ * Levels are [price, quantity] arrays of strings or numbers, a quantity of 0 removes the level. Feeds without
+ * sequence numbers leave the field out. Messages of other types (heartbeats, confirmations) are ignored.
+ * @author Maximilian Pfister
+ *
+ */
+public class JsonFeedFormat {
+
+	/* variables */
+
+	private String typeField = "type";
+	private String snapshotType = "snapshot";
+	private String updateType = "update";
+	private String marketField = "market";
+	private String sequenceField = "sequence";
+	private String bidsField = "bids";
+	private String asksField = "asks";
+	private String symbolSeparator = "-";
+	private String subscribeTemplate = "{\"type\":\"subscribe\",\"market\":\"%s\"}";
+	private String snapshotTemplate = "{\"type\":\"snapshot\",\"market\":\"%s\"}";
+
+	/* public methods */
+
+	/**
+	 * Gets market name used by the feed.
+	 * @param currencyPair
+	 * @return e.g. ETH-BTC
+	 */
+	public String toSymbol(CurrencyPair currencyPair) {
+		return currencyPair.base.getCurrencyCode() + symbolSeparator + currencyPair.counter.getCurrencyCode();
+	}
+
+	/**
+	 * Creates message that subscribes a market.
+	 * @param symbol
+	 * @return
+	 */
+	public String subscribeMessage(String symbol) {
+		return String.format(subscribeTemplate, symbol);
+	}
+
+	/**
+	 * Creates message that requests a snapshot of a market.
+	 * @param symbol
+	 * @return
+	 */
+	public String snapshotMessage(String symbol) {
+		return String.format(snapshotTemplate, symbol);
+	}
+
+	public String getTypeField() {
+		return typeField;
+	}
+
+	public void setTypeField(String typeField) {
+		this.typeField = typeField;
+	}
+
+	public String getSnapshotType() {
+		return snapshotType;
+	}
+
+	public void setSnapshotType(String snapshotType) {
+		this.snapshotType = snapshotType;
+	}
+
+	public String getUpdateType() {
+		return updateType;
+	}
+
+	public void setUpdateType(String updateType) {
+		this.updateType = updateType;
+	}
+
+	public String getMarketField() {
+		return marketField;
+	}
+
+	public void setMarketField(String marketField) {
+		this.marketField = marketField;
+	}
+
+	public String getSequenceField() {
+		return sequenceField;
+	}
+
+	public void setSequenceField(String sequenceField) {
+		this.sequenceField = sequenceField;
+	}
+
+	public String getBidsField() {
+		return bidsField;
+	}
+
+	public void setBidsField(String bidsField) {
+		this.bidsField = bidsField;
+	}
+
+	public String getAsksField() {
+		return asksField;
+	}
+
+	public void setAsksField(String asksField) {
+		this.asksField = asksField;
+	}
+
+	public String getSymbolSeparator() {
+		return symbolSeparator;
+	}
+
+	public void setSymbolSeparator(String symbolSeparator) {
+		this.symbolSeparator = symbolSeparator;
+	}
+
+	public String getSubscribeTemplate() {
+		return subscribeTemplate;
+	}
+
+	/**
+	 * Sets subscribe message.
+	 * @param subscribeTemplate format string, %s is replaced by the market name
+	 */
+	public void setSubscribeTemplate(String subscribeTemplate) {
+		this.subscribeTemplate = subscribeTemplate;
+	}
+
+	public String getSnapshotTemplate() {
+		return snapshotTemplate;
+	}
+
+	/**
+	 * Sets snapshot request message.
+	 * @param snapshotTemplate format string, %s is replaced by the market name
+	 */
+	public void setSnapshotTemplate(String snapshotTemplate) {
+		this.snapshotTemplate = snapshotTemplate;
+	}
+
+}
@@ -0,0 +1,237 @@
+package de.gekko.streaming;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.handshake.ServerHandshake;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Generic streaming market data source for exchanges that publish snapshots and deltas as JSON over a websocket. The
+ * message layout is configured by a {@link JsonFeedFormat}. All markets share one connection, messages are decoded
+ * with a streaming reader into one reused {@link MarketDataEvent} and fed into the channel handler of the market.
+ * <p>
+ * A lost connection is opened again with the next request, usually the snapshot request of a handler that went
+ * silent, and all markets are subscribed again.
+ * @author Maximilian Pfister
+ *
+ */
+public class JsonWebsocketMarketData implements StreamingMarketData {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JsonWebsocketMarketData.class);
+
+	/* variables */
+
+	private final URI uri;
+	private final JsonFeedFormat format;
+	private final Map<String, StreamingChannelHandler> channelHandlers = new ConcurrentHashMap<>();
+	private final MarketDataEvent event = new MarketDataEvent(); // websocket thread only
+	private FeedClient client = null; // guarded by this
+	private volatile long malformedMessages = 0;
+
+	/* constructors */
+
+	public JsonWebsocketMarketData(URI uri) {
+		this(uri, new JsonFeedFormat());
+	}
+
+	public JsonWebsocketMarketData(URI uri, JsonFeedFormat format) {
+		this.uri = uri;
+		this.format = format;
+	}
+
+	/* public methods */
+
+	@Override
+	public synchronized void subscribe(CurrencyPair currencyPair, StreamingChannelHandler channelHandler)
+			throws IOException {
+		String symbol = format.toSymbol(currencyPair);
+		connect();
+		channelHandlers.put(symbol, channelHandler);
+		send(format.subscribeMessage(symbol));
+	}
+
+	@Override
+	public synchronized void requestSnapshot(CurrencyPair currencyPair) throws IOException {
+		connect();
+		send(format.snapshotMessage(format.toSymbol(currencyPair)));
+	}
+
+	@Override
+	public synchronized void close() {
+		if (client != null) {
+			client.close();
+			client = null;
+		}
+	}
+
+	/**
+	 * Gets number of messages that could not be decoded.
+	 * @return
+	 */
+	public long getMalformedMessages() {
+		return malformedMessages;
+	}
+
+	public URI getUri() {
+		return uri;
+	}
+
+	/* private methods */
+
+	/**
+	 * Opens connection if there is none and subscribes the markets of a lost connection again. Their handlers recover
+	 * from the snapshot sent with the subscription.
+	 * @throws IOException
+	 */
+	private void connect() throws IOException {
+		if (client != null && client.isOpen()) {
+			return;
+		}
+		if (client != null) {
+			LOGGER.info("Connection lost, reconnecting to {}", uri);
+		}
+		client = new FeedClient(uri);
+		boolean open;
+		try {
+			open = client.connectBlocking();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while connecting to " + uri, e);
+		}
+		if (!open) {
+			throw new IOException("Could not connect to " + uri);
+		}
+		for (String symbol : channelHandlers.keySet()) {
+			send(format.subscribeMessage(symbol));
+		}
+	}
+
+	private void send(String message) throws IOException {
+		try {
+			client.send(message);
+		} catch (WebsocketNotConnectedException e) {
+			throw new IOException("Not connected to " + uri, e);
+		}
+	}
+
+	/**
+	 * Decodes message and feeds it into the handler of its market. Called by the websocket thread.
+	 * @param message
+	 * @param receiveTime
+	 */
+	private void onMessage(String message, long receiveTime) {
+		event.clear();
+		event.setReceiveTime(receiveTime);
+		String type = null;
+		String symbol = null;
+		try (JsonReader reader = new JsonReader(new StringReader(message))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (name.equals(format.getTypeField())) {
+					type = reader.nextString();
+				} else if (name.equals(format.getMarketField())) {
+					symbol = reader.nextString();
+				} else if (name.equals(format.getSequenceField())) {
+					event.setSequence(reader.nextLong());
+				} else if (name.equals(format.getBidsField())) {
+					readLevels(reader, true);
+				} else if (name.equals(format.getAsksField())) {
+					readLevels(reader, false);
+				} else {
+					reader.skipValue();
+				}
+			}
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
+			malformedMessages++;
+			LOGGER.warn("Malformed message from {}: {}", uri, e.toString());
+			return;
+		}
+		if (format.getSnapshotType().equals(type)) {
+			event.setSnapshot(true);
+		} else if (!format.getUpdateType().equals(type)) {
+			return;
+		}
+		StreamingChannelHandler channelHandler = symbol == null ? null : channelHandlers.get(symbol);
+		if (channelHandler == null) {
+			return;
+		}
+		event.setCurrencyPair(channelHandler.getCurrencyPair());
+		channelHandler.feedEvent(event);
+	}
+
+	/**
+	 * Reads array of [price, quantity] levels into the event.
+	 * @param reader
+	 * @param bids
+	 * @throws IOException
+	 */
+	private void readLevels(JsonReader reader, boolean bids) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return;
+		}
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.beginArray();
+			long price = FixedPoint.parse(reader.nextString());
+			long quantity = FixedPoint.parse(reader.nextString());
+			// Additional fields like order counts are ignored
+			while (reader.hasNext()) {
+				reader.skipValue();
+			}
+			reader.endArray();
+			if (bids) {
+				event.addBid(price, quantity);
+			} else {
+				event.addAsk(price, quantity);
+			}
+		}
+		reader.endArray();
+	}
+
+	/* inner classes */
+
+	private class FeedClient extends WebSocketClient {
+
+		FeedClient(URI uri) {
+			super(uri);
+		}
+
+		@Override
+		public void onOpen(ServerHandshake handshake) {
+			LOGGER.info("Connected to {}", uri);
+		}
+
+		@Override
+		public void onMessage(String message) {
+			JsonWebsocketMarketData.this.onMessage(message, System.nanoTime());
+		}
+
+		@Override
+		public void onClose(int code, String reason, boolean remote) {
+			LOGGER.info("Disconnected from {}: {} {}", uri, code, reason);
+		}
+
+		@Override
+		public void onError(Exception e) {
+			LOGGER.warn("Websocket error {}: {}", uri, e.toString());
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package de.gekko.streaming;
+
+import java.util.Arrays;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+import de.gekko.orderbook.FixedPoint;
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.websocket.ChannelEntry;
+
+/**
+ * Normalized order book event of a streaming market data source, either a snapshot that replaces the book or a delta
+ * that changes single price levels. Prices and quantities are fixed point values (see {@link FixedPoint}), a quantity
+ * of zero removes the level. Instances are reused via {@link #clear()}, so adapters decode every message into the same
+ * event without allocating.
+ * @author Maximilian Pfister
+ *
+ */
+public class MarketDataEvent implements ChannelEntry<MarketDataEvent> {
+
+	/* constants */
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/* variables */
+
+	private CurrencyPair currencyPair;
+	private boolean snapshot;
+	private long sequence; // 0 if the exchange does not number its events
+	private long receiveTime; // System.nanoTime when the message arrived, 0 if unknown
+	private final Levels bids = new Levels();
+	private final Levels asks = new Levels();
+
+	/* public methods */
+
+	/**
+	 * Resets this event for reuse.
+	 */
+	public void clear() {
+		currencyPair = null;
+		snapshot = false;
+		sequence = 0;
+		receiveTime = 0;
+		bids.clear();
+		asks.clear();
+	}
+
+	/**
+	 * Copies another event into this one.
+	 * @param other
+	 */
+	public void copyFrom(MarketDataEvent other) {
+		currencyPair = other.currencyPair;
+		snapshot = other.snapshot;
+		sequence = other.sequence;
+		receiveTime = other.receiveTime;
+		bids.copyFrom(other.bids);
+		asks.copyFrom(other.asks);
+	}
+
+	/**
+	 * Applies the levels of this event to a book. A snapshot clears the book first.
+	 * @param book
+	 */
+	public void applyTo(FixedPointOrderBook book) {
+		if (snapshot) {
+			book.clear();
+		}
+		for (int i = 0; i < bids.size; i++) {
+			book.getBids().set(bids.prices[i], bids.quantities[i]);
+		}
+		for (int i = 0; i < asks.size; i++) {
+			book.getAsks().set(asks.prices[i], asks.quantities[i]);
+		}
+	}
+
+	/**
+	 * Adds bid level.
+	 * @param price fixed point
+	 * @param quantity fixed point, 0 removes the level
+	 */
+	public void addBid(long price, long quantity) {
+		bids.add(price, quantity);
+	}
+
+	/**
+	 * Adds ask level.
+	 * @param price fixed point
+	 * @param quantity fixed point, 0 removes the level
+	 */
+	public void addAsk(long price, long quantity) {
+		asks.add(price, quantity);
+	}
+
+	public int getBidCount() {
+		return bids.size;
+	}
+
+	public int getAskCount() {
+		return asks.size;
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	public void setCurrencyPair(CurrencyPair currencyPair) {
+		this.currencyPair = currencyPair;
+	}
+
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(boolean snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Gets sequence number of the exchange. A delta is expected to carry the sequence number of the previous event
+	 * plus one.
+	 * @return 0 if the exchange does not number its events
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Gets System.nanoTime when the message arrived.
+	 * @return 0 if unknown
+	 */
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	public void setReceiveTime(long receiveTime) {
+		this.receiveTime = receiveTime;
+	}
+
+	@Override
+	public String toString() {
+		return "MarketDataEvent [currencyPair=" + currencyPair + ", snapshot=" + snapshot + ", sequence=" + sequence
+				+ ", bids=" + bids.size + ", asks=" + asks.size + "]";
+	}
+
+	/* inner classes */
+
+	/**
+	 * Growable price and quantity arrays of one side.
+	 */
+	private static class Levels {
+
+		private long[] prices = new long[INITIAL_CAPACITY];
+		private long[] quantities = new long[INITIAL_CAPACITY];
+		private int size = 0;
+
+		void add(long price, long quantity) {
+			if (size == prices.length) {
+				prices = Arrays.copyOf(prices, size * 2);
+				quantities = Arrays.copyOf(quantities, size * 2);
+			}
+			prices[size] = price;
+			quantities[size++] = quantity;
+		}
+
+		void copyFrom(Levels other) {
+			if (prices.length < other.size) {
+				prices = new long[other.prices.length];
+				quantities = new long[other.prices.length];
+			}
+			System.arraycopy(other.prices, 0, prices, 0, other.size);
+			System.arraycopy(other.quantities, 0, quantities, 0, other.size);
+			size = other.size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+}
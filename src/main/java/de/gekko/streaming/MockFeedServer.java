@@ -0,0 +1,299 @@
+package de.gekko.streaming;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Local websocket server that streams random order books in the default {@link JsonFeedFormat}, for trying
+ * {@link JsonWebsocketMarketData} and {@link StreamingChannelHandler} without an exchange. Every market is created with
+ * its first subscription and gets a snapshot, then one delta per tick that changes one bid and one ask level near a
+ * fixed mid price. A configurable share of deltas is skipped so the clients see sequence gaps and have to recover.
+ * <p>
+ * Run with {@code MockFeedServer [--port=8765] [--rate=10] [--gaps=0.01] [--depth=20]}.
+ * @author Maximilian Pfister
+ *
+ */
+public class MockFeedServer extends WebSocketServer {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MockFeedServer.class);
+
+	public static final int DEFAULT_PORT = 8765;
+
+	/* variables */
+
+	private final Map<String, MockMarket> markets = new ConcurrentHashMap<>();
+	private final Random random = new Random();
+	private final int depth;
+	private final long tickInterval; // milliseconds
+	private final double gapProbability;
+	private volatile boolean stop = false;
+	private final AtomicLong sentMessages = new AtomicLong();
+	private final AtomicLong skippedDeltas = new AtomicLong();
+
+	/* constructors */
+
+	/**
+	 * @param port
+	 * @param rate deltas per market and second
+	 * @param gapProbability share of deltas that are skipped
+	 * @param depth levels per side
+	 */
+	public MockFeedServer(int port, double rate, double gapProbability, int depth) {
+		super(new InetSocketAddress(port));
+		this.tickInterval = Math.max(1, (long) (1000 / rate));
+		this.gapProbability = gapProbability;
+		this.depth = depth;
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates a MockFeedServer and runs it and its tick thread in new threads.
+	 * @param port
+	 * @param rate deltas per market and second
+	 * @param gapProbability share of deltas that are skipped
+	 * @param depth levels per side
+	 * @return
+	 */
+	public static MockFeedServer createInstance(int port, double rate, double gapProbability, int depth) {
+		MockFeedServer server = new MockFeedServer(port, rate, gapProbability, depth);
+		server.start();
+		Thread thread = new Thread(server::tick, "mock-feed-tick");
+		thread.setDaemon(true);
+		thread.start();
+		return server;
+	}
+
+	@Override
+	public void onOpen(WebSocket connection, ClientHandshake handshake) {
+		LOGGER.info("Client connected: {}", connection.getRemoteSocketAddress());
+	}
+
+	@Override
+	public void onClose(WebSocket connection, int code, String reason, boolean remote) {
+		for (MockMarket market : markets.values()) {
+			market.subscribers.remove(connection);
+		}
+	}
+
+	/**
+	 * Handles subscribe and snapshot requests, both are answered with a snapshot.
+	 */
+	@Override
+	public void onMessage(WebSocket connection, String message) {
+		String type = null;
+		String symbol = null;
+		try (JsonReader reader = new JsonReader(new StringReader(message))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (name.equals("type")) {
+					type = reader.nextString();
+				} else if (name.equals("market")) {
+					symbol = reader.nextString();
+				} else {
+					reader.skipValue();
+				}
+			}
+		} catch (IOException | IllegalStateException e) {
+			LOGGER.warn("Malformed request: {}", message);
+			return;
+		}
+		if (symbol == null) {
+			return;
+		}
+		MockMarket market = markets.computeIfAbsent(symbol, MockMarket::new);
+		synchronized (market) {
+			if ("subscribe".equals(type)) {
+				market.subscribers.add(connection);
+			} else if (!"snapshot".equals(type)) {
+				return;
+			}
+			send(connection, market.toMessage("snapshot", market.bids, market.asks));
+		}
+	}
+
+	@Override
+	public void onError(WebSocket connection, Exception e) {
+		LOGGER.warn("Websocket error: {}", e.toString());
+	}
+
+	@Override
+	public void onStart() {
+		LOGGER.info("Mock feed listening on port {}", getPort());
+	}
+
+	@Override
+	public void stop() throws IOException, InterruptedException {
+		stop = true;
+		super.stop();
+	}
+
+	public long getSentMessages() {
+		return sentMessages.get();
+	}
+
+	public long getSkippedDeltas() {
+		return skippedDeltas.get();
+	}
+
+	/**
+	 * Starts mock feed server.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int port = DEFAULT_PORT;
+		double rate = 10;
+		double gaps = 0.01;
+		int depth = 20;
+		for (String arg : args) {
+			if (arg.startsWith("--port=")) {
+				port = Integer.parseInt(arg.substring("--port=".length()));
+			} else if (arg.startsWith("--rate=")) {
+				rate = Double.parseDouble(arg.substring("--rate=".length()));
+			} else if (arg.startsWith("--gaps=")) {
+				gaps = Double.parseDouble(arg.substring("--gaps=".length()));
+			} else if (arg.startsWith("--depth=")) {
+				depth = Integer.parseInt(arg.substring("--depth=".length()));
+			} else {
+				System.err.println("Usage: MockFeedServer [--port=8765] [--rate=10] [--gaps=0.01] [--depth=20]");
+				return;
+			}
+		}
+		createInstance(port, rate, gaps, depth);
+	}
+
+	/* private methods */
+
+	/**
+	 * Tick routine, sends one delta per subscribed market.
+	 */
+	private void tick() {
+		while (!stop) {
+			try {
+				Thread.sleep(tickInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			for (MockMarket market : markets.values()) {
+				synchronized (market) {
+					if (!market.subscribers.isEmpty()) {
+						market.tick();
+					}
+				}
+			}
+		}
+	}
+
+	private void send(WebSocket connection, String message) {
+		if (connection.isOpen()) {
+			connection.send(message);
+			sentMessages.incrementAndGet();
+		}
+	}
+
+	/* inner classes */
+
+	/**
+	 * Random book of one market, guarded by its own lock.
+	 */
+	private class MockMarket {
+
+		private final String symbol;
+		private final Set<WebSocket> subscribers = new CopyOnWriteArraySet<>();
+		private final TreeMap<Long, Long> bids = new TreeMap<>();
+		private final TreeMap<Long, Long> asks = new TreeMap<>();
+		private final long mid;
+		private final long tickSize;
+		private long sequence = 0;
+
+		MockMarket(String symbol) {
+			this.symbol = symbol;
+			this.mid = FixedPoint.fromDouble(0.01 + random.nextDouble());
+			this.tickSize = Math.max(1, mid / 10_000);
+			for (int level = 0; level < depth; level++) {
+				bids.put(mid - (level + 1) * tickSize, randomQuantity());
+				asks.put(mid + (level + 1) * tickSize, randomQuantity());
+			}
+		}
+
+		/**
+		 * Changes or removes one level per side and sends the delta, unless it is skipped to cause a gap.
+		 */
+		void tick() {
+			TreeMap<Long, Long> bidChanges = new TreeMap<>();
+			TreeMap<Long, Long> askChanges = new TreeMap<>();
+			change(bids, mid - (random.nextInt(depth) + 1) * tickSize, bidChanges);
+			change(asks, mid + (random.nextInt(depth) + 1) * tickSize, askChanges);
+			sequence++;
+			if (random.nextDouble() < gapProbability) {
+				skippedDeltas.incrementAndGet();
+				return;
+			}
+			String message = toMessage("update", bidChanges, askChanges);
+			for (WebSocket connection : subscribers) {
+				send(connection, message);
+			}
+		}
+
+		private void change(TreeMap<Long, Long> side, long price, TreeMap<Long, Long> changes) {
+			// Every fourth change removes the level
+			long quantity = random.nextInt(4) == 0 ? 0 : randomQuantity();
+			if (quantity == 0) {
+				side.remove(price);
+			} else {
+				side.put(price, quantity);
+			}
+			changes.put(price, quantity);
+		}
+
+		private long randomQuantity() {
+			return FixedPoint.fromDouble(0.1 + random.nextInt(1000) / 100.0);
+		}
+
+		private String toMessage(String type, TreeMap<Long, Long> bidLevels, TreeMap<Long, Long> askLevels) {
+			StringBuilder builder = new StringBuilder(64 + 40 * (bidLevels.size() + askLevels.size()));
+			builder.append("{\"type\":\"").append(type).append("\",\"market\":\"").append(symbol)
+					.append("\",\"sequence\":").append(sequence).append(",\"bids\":");
+			appendLevels(builder, bidLevels.descendingMap());
+			builder.append(",\"asks\":");
+			appendLevels(builder, askLevels);
+			return builder.append('}').toString();
+		}
+
+		private void appendLevels(StringBuilder builder, Map<Long, Long> levels) {
+			builder.append('[');
+			boolean first = true;
+			for (Map.Entry<Long, Long> level : levels.entrySet()) {
+				if (!first) {
+					builder.append(',');
+				}
+				first = false;
+				builder.append("[\"").append(FixedPoint.toBigDecimal(level.getKey()).toPlainString()).append("\",\"")
+						.append(FixedPoint.toBigDecimal(level.getValue()).toPlainString()).append("\"]");
+			}
+			builder.append(']');
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package de.gekko.streaming;
+
+import java.io.IOException;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.concurrency.BlockingWaitStrategy;
+import de.gekko.concurrency.WaitStrategy;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.websocket.AbstractChannelHandler;
+
+/**
+ * Exchange independent channel handler that keeps the book of one market from the normalized events of a
+ * {@link StreamingMarketData} source, with the same handoff, recovery and broadcasts as the Bittrex channel handler
+ * (see {@link AbstractChannelHandler}).
+ * <p>
+ * Snapshots replace the book, deltas must carry the previous sequence number plus one unless the exchange does not
+ * number its events. On a gap or when the market goes silent the handler asks the source for a new snapshot.
+ * @author Maximilian Pfister
+ *
+ */
+public class StreamingChannelHandler extends AbstractChannelHandler<MarketDataEvent> {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StreamingChannelHandler.class);
+
+	/* variables */
+
+	private final String exchangeName;
+	private final StreamingMarketData source;
+	private long sequence = 0;
+
+	/* constructors */
+
+	private StreamingChannelHandler(String exchangeName, CurrencyPair currencyPair, StreamingMarketData source,
+			WaitStrategy waitStrategy, int ringBufferCapacity) {
+		super(currencyPair, exchangeName + " " + currencyPair, MarketDataEvent::new, waitStrategy, ringBufferCapacity,
+				MetricsRegistry.getInstance().counter("gekko_stream_events_total", "Events fed by the streaming source",
+						"exchange", exchangeName, "market", currencyPair.toString()),
+				MetricsRegistry.getInstance().histogram("gekko_stream_recovery_seconds",
+						"Duration of completed recoveries from gap or timeout until the book is in sync", "exchange",
+						exchangeName, "market", currencyPair.toString()));
+		this.exchangeName = exchangeName;
+		this.source = source;
+
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		String market = currencyPair.toString();
+		metrics.gauge("gekko_stream_queue_depth", "Events waiting in the ring buffer", this::getQueueDepth, "exchange",
+				exchangeName, "market", market);
+		metrics.counter("gekko_stream_dropped_events_total", "Events dropped because the ring buffer was full",
+				this::getDroppedEntries, "exchange", exchangeName, "market", market);
+		metrics.counter("gekko_stream_recoveries_total", "Completed recoveries after sequence gaps or timeouts",
+				this::getRecoveryCount, "exchange", exchangeName, "market", market);
+		metrics.gauge("gekko_stream_stale_seconds", "Time the book has been stale because of an ongoing recovery",
+				() -> getStaleTime() / 1e9, "exchange", exchangeName, "market", market);
+	}
+
+	/* public methods */
+
+	/**
+	 * Static factory method that creates a StreamingChannelHandler and runs it in a new thread. The market still has
+	 * to be subscribed at the source.
+	 * @param exchangeName label of the metrics
+	 * @param currencyPair
+	 * @param source asked for snapshots after gaps
+	 * @return
+	 */
+	public static StreamingChannelHandler createInstance(String exchangeName, CurrencyPair currencyPair,
+			StreamingMarketData source) {
+		return createInstance(exchangeName, currencyPair, source, new BlockingWaitStrategy(),
+				DEFAULT_RING_BUFFER_CAPACITY);
+	}
+
+	/**
+	 * Static factory method that creates a StreamingChannelHandler with a specific wait strategy and runs it in a new
+	 * thread.
+	 * @param exchangeName label of the metrics
+	 * @param currencyPair
+	 * @param source asked for snapshots after gaps
+	 * @param waitStrategy how the processing thread waits for events
+	 * @param ringBufferCapacity power of two
+	 * @return
+	 */
+	public static StreamingChannelHandler createInstance(String exchangeName, CurrencyPair currencyPair,
+			StreamingMarketData source, WaitStrategy waitStrategy, int ringBufferCapacity) {
+		StreamingChannelHandler channelHandler = new StreamingChannelHandler(exchangeName, currencyPair, source,
+				waitStrategy, ringBufferCapacity);
+		Thread thread = new Thread(channelHandler, "stream-" + exchangeName + "-" + currencyPair);
+		thread.start();
+		return channelHandler;
+	}
+
+	/**
+	 * Adds event to the handler. The event is copied into the ring buffer, so the caller may reuse it. Must only be
+	 * called by one thread at a time. If the processing thread falls behind events are dropped instead of stalling
+	 * the connection, the gap is recovered.
+	 * @param event
+	 */
+	public void feedEvent(MarketDataEvent event) {
+		feed(event);
+	}
+
+	public long getDroppedEvents() {
+		return getDroppedEntries();
+	}
+
+	/* protected methods */
+
+	/**
+	 * Replaces book with snapshot. While in sync only snapshots newer than the book are taken, late answers to
+	 * repeated requests are ignored.
+	 */
+	@Override
+	protected boolean applySnapshot(MarketDataEvent event) {
+		if (isSynchronized() && event.getSequence() != 0 && event.getSequence() <= sequence) {
+			return false;
+		}
+		event.applyTo(getBook());
+		sequence = event.getSequence();
+		return true;
+	}
+
+	/**
+	 * Applies delta if it follows the current sequence number. Deltas already contained in the book are dropped, a
+	 * gap starts a recovery.
+	 */
+	@Override
+	protected boolean applyDelta(MarketDataEvent event) {
+		if (event.getSequence() != 0 && sequence != 0) {
+			if (event.getSequence() <= sequence) {
+				return false;
+			}
+			if (event.getSequence() != sequence + 1) {
+				LOGGER.warn("Missing data, going to recover [{} {}], current sequence: {}, event sequence: {}", exchangeName,
+						getCurrencyPair(), sequence, event.getSequence());
+				startRecovery();
+				bufferEntry(event);
+				return false;
+			}
+		}
+		event.applyTo(getBook());
+		if (event.getSequence() != 0) {
+			sequence = event.getSequence();
+		}
+		return true;
+	}
+
+	@Override
+	protected void requestSnapshot() throws IOException {
+		source.requestSnapshot(getCurrencyPair());
+	}
+
+}
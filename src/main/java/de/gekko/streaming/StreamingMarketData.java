@@ -0,0 +1,35 @@
+package de.gekko.streaming;
+
+import java.io.IOException;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+/**
+ * Streaming market data source of one exchange. Implementations decode the exchange specific messages into
+ * {@link MarketDataEvent}s and feed them into the {@link StreamingChannelHandler} of the market, which keeps the book
+ * and recovers from gaps. Events of one market must be fed by one thread at a time.
+ * @author Maximilian Pfister
+ *
+ */
+public interface StreamingMarketData {
+
+	/**
+	 * Starts streaming a market into its handler. The source is expected to send a snapshot after subscribing.
+	 * @param currencyPair
+	 * @param channelHandler
+	 * @throws IOException
+	 */
+	public void subscribe(CurrencyPair currencyPair, StreamingChannelHandler channelHandler) throws IOException;
+
+	/**
+	 * Asks for a new snapshot of a subscribed market, called by its handler after a sequence gap or timeout.
+	 * @param currencyPair
+	 * @throws IOException
+	 */
+	public void requestSnapshot(CurrencyPair currencyPair) throws IOException;
+
+	/**
+	 * Closes the connection, handlers are not stopped.
+	 */
+	public void close();
+}
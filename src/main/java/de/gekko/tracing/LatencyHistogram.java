@@ -0,0 +1,148 @@
+package de.gekko.tracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of nanosecond latencies with log-linear buckets like HdrHistogram: every power of two range is split into
+ * 64 linear sub buckets, so recorded values keep two significant digits (relative error below 1.6 %) from
+ * nanoseconds up to minutes. Recording is lock free and allocation free and may be done by any number of threads,
+ * reads while recording are approximate.
+ * @author Maximilian Pfister
+ *
+ */
+public class LatencyHistogram {
+
+	/* constants */
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+	private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_BITS;
+	// about 18 minutes, larger values are counted in the last bucket
+	private static final long MAX_VALUE = (1L << 40) - 1;
+	private static final int BUCKET_COUNT = 64 - Long.numberOfLeadingZeros(MAX_VALUE) - SUB_BUCKET_HALF_BITS;
+
+	/* variables */
+
+	private final AtomicLongArray counts = new AtomicLongArray((BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/* public methods */
+
+	/**
+	 * Records a latency.
+	 * @param value nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+		counts.incrementAndGet(index(clamped));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(clamped);
+		long max;
+		while (clamped > (max = maxValue.get())) {
+			if (maxValue.compareAndSet(max, clamped)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Gets largest recorded value.
+	 * @return nanoseconds
+	 */
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets mean of the recorded values.
+	 * @return nanoseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalValue.get() / count;
+	}
+
+	/**
+	 * Gets the value below which the given share of recorded values lies, e.g. 99.9 for p99.9.
+	 * @param percentile 0 to 100
+	 * @return highest value of the bucket holding the percentile in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int index = 0; index < counts.length(); index++) {
+			seen += counts.get(index);
+			if (seen >= rank) {
+				return Math.min(highestValue(index), maxValue.get());
+			}
+		}
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets number of recorded values up to a bound, as needed for cumulative histogram buckets.
+	 * @param value nanoseconds
+	 * @return
+	 */
+	public long getCountAtOrBelow(long value) {
+		long seen = 0;
+		int last = index(Math.min(Math.max(value, 0), MAX_VALUE));
+		for (int index = 0; index <= last; index++) {
+			seen += counts.get(index);
+		}
+		return seen;
+	}
+
+	/**
+	 * Gets sum of all recorded values.
+	 * @return nanoseconds
+	 */
+	public long getTotal() {
+		return totalValue.get();
+	}
+
+	/**
+	 * Removes all recorded values. Values recorded concurrently may be lost or kept.
+	 */
+	public void reset() {
+		for (int index = 0; index < counts.length(); index++) {
+			counts.set(index, 0);
+		}
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+
+	/* private methods */
+
+	/**
+	 * Maps value to its bucket: values below 128 have their own bucket, above that each power of two range has 64.
+	 */
+	private static int index(long value) {
+		int bucket = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		int subBucket = (int) (value >>> bucket);
+		return (bucket << SUB_BUCKET_HALF_BITS) + subBucket;
+	}
+
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int bucket = (index >>> SUB_BUCKET_HALF_BITS) - 1;
+		long subBucket = index - ((long) bucket << SUB_BUCKET_HALF_BITS);
+		return ((subBucket + 1) << bucket) - 1;
+	}
+
+}
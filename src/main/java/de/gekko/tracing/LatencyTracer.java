@@ -0,0 +1,131 @@
+package de.gekko.tracing;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.metrics.MetricsRegistry;
+
+/**
+ * Aggregates tick to trade latencies per pipeline stage. Every stage of the pipeline stamps its data with
+ * {@link System#nanoTime()} and records the time since the previous stamp here, so the stages add up to the time
+ * between a websocket frame arriving and the order it caused being submitted. Recording is lock free and allocation
+ * free, cheap enough to stay enabled in production.
+ * @author Maximilian Pfister
+ *
+ */
+public class LatencyTracer {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LatencyTracer.class);
+
+	private static final LatencyTracer INSTANCE = new LatencyTracer();
+
+	/**
+	 * Consecutive stages of the streaming pipeline and the sum of them.
+	 */
+	public enum Stage {
+		/** Frame received to update decoded. */
+		DECODE,
+		/** Update decoded to taken from the ring buffer by the channelHandler. */
+		QUEUE,
+		/** Batch taken from the ring buffer to applied to the book. */
+		APPLY,
+		/** Top of book published to received by a subscriber. */
+		BROADCAST,
+		/** Top of book received to evaluated by the scanner. */
+		DETECTION,
+		/** Opportunity detected to orders submitted to the network executor. */
+		DISPATCH,
+		/** Frame received to orders submitted. */
+		TICK_TO_TRADE
+	}
+
+	/* variables */
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+	private volatile boolean enabled = true;
+
+	/* constructors */
+
+	private LatencyTracer() {
+		for (Stage stage : Stage.values()) {
+			histograms[stage.ordinal()] = new LatencyHistogram();
+			MetricsRegistry.getInstance().histogram("gekko_pipeline_latency_seconds", "Latency per pipeline stage",
+					histograms[stage.ordinal()], "stage", stage.name().toLowerCase(Locale.ROOT));
+		}
+	}
+
+	/* public methods */
+
+	public static LatencyTracer getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Records duration of a stage.
+	 * @param stage
+	 * @param startTime nanoTime stamp of the previous stage, 0 if unknown (nothing is recorded then)
+	 * @param endTime nanoTime stamp at the end of the stage
+	 */
+	public void record(Stage stage, long startTime, long endTime) {
+		if (enabled && startTime != 0) {
+			histograms[stage.ordinal()].record(endTime - startTime);
+		}
+	}
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Removes all recorded latencies, e.g. after warm up.
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Prints count, p50, p99, p99.9 and max in microseconds of every stage with recorded latencies.
+	 * @param out
+	 */
+	public void print(PrintStream out) {
+		out.println(String.format("%-14s %10s %10s %10s %10s %10s", "stage [us]", "count", "p50", "p99", "p99.9", "max"));
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getHistogram(stage);
+			if (histogram.getCount() > 0) {
+				out.println(String.format("%-14s %10d %10.1f %10.1f %10.1f %10.1f", stage, histogram.getCount(),
+						histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+						histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3));
+			}
+		}
+	}
+
+	/**
+	 * Logs one line per stage with recorded latencies.
+	 */
+	public void logSummary() {
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getHistogram(stage);
+			if (histogram.getCount() > 0) {
+				LOGGER.info("{}: {} samples, p50 {} us, p99 {} us, p99.9 {} us, max {} us", stage, histogram.getCount(),
+						histogram.getValueAtPercentile(50) / 1000, histogram.getValueAtPercentile(99) / 1000,
+						histogram.getValueAtPercentile(99.9) / 1000, histogram.getMax() / 1000);
+			}
+		}
+	}
+
+}
@@ -19,6 +19,8 @@ import org.slf4j.LoggerFactory;
 
 import de.gekko.concurrency.BinarySemaphore;
 import de.gekko.exchanges.AbstractArbitrageExchange;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.tracing.LatencyHistogram;
 
 /**
  * Class that provides an local image of an exchanges wallet. It is only possible to consume available balances and not to add to them.
@@ -37,11 +39,12 @@ public class AsyncWalletProvider implements Runnable {
 	private boolean stop = false;
 	private boolean active = false;
 	private long updateInterval = 60; // seconds
-	private long lastUpdated = 0;
-	private long apiLimit = 1000; // miliseconds
+	private final LatencyHistogram refreshLatency;
 	
 	private AsyncWalletProvider(AbstractArbitrageExchange exchange) {
 		this.exchange = exchange;
+		this.refreshLatency = MetricsRegistry.getInstance().histogram("gekko_wallet_refresh_seconds",
+				"Duration of wallet requests", "exchange", exchange.toString());
 	}
 
 	/**
@@ -78,22 +81,12 @@ public class AsyncWalletProvider implements Runnable {
 				e.printStackTrace();
 			}
 			
-			// wait to prevent running into API limit of exchange
-			long currentUpdateInterval = System.currentTimeMillis() - lastUpdated;
-			if(currentUpdateInterval < apiLimit) {
-				try {
-					Thread.sleep(apiLimit - currentUpdateInterval);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			
-			// get wallet from exchange
+			// get wallet from exchange, waits for the account rate limit of the exchange
 			Wallet wallet = null;
+			long requestTime = System.nanoTime();
 			try {
 				wallet = exchange.fetchWallet();
-				lastUpdated = System.currentTimeMillis();
+				refreshLatency.record(System.nanoTime() - requestTime);
 			} catch (NotAvailableFromExchangeException | NotYetImplementedForExchangeException | ExchangeException
 					| IOException e) {
 				// TODO Auto-generated catch block
@@ -198,11 +191,9 @@ public class AsyncWalletProvider implements Runnable {
 	}
 	
 	/**
-	 * Forces the AsyncWalletProvider to update its state immediately. 
-	 * WARNING: Ignores safety measures intended to prevent running into API limit.
+	 * Forces the AsyncWalletProvider to update its state as soon as the account rate limit of the exchange allows.
 	 */
 	public void forceUpdate() {
-		lastUpdated = 0;
 		walletUpdateSemaphore.release();
 	}
 	
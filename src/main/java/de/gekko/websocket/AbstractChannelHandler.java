@@ -0,0 +1,664 @@
+package de.gekko.websocket;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.concurrency.RingBuffer;
+import de.gekko.concurrency.WaitStrategy;
+import de.gekko.metrics.Counter;
+import de.gekko.orderbook.FixedPointOrderBook;
+import de.gekko.orderbook.TopLevels;
+import de.gekko.tracing.LatencyHistogram;
+
+/**
+ * Keeps the book of one market from the snapshots and deltas of a feed. Entries are handed over from the feed thread
+ * through a lock free {@link RingBuffer} and applied by a processing thread, which broadcasts {@link OrderBookUpdate}
+ * and {@link TopOfBookUpdate} events after every change.
+ * <p>
+ * Subclasses decide if a snapshot is taken and if a delta follows the book. On a gap, or if the market goes silent
+ * or a requested snapshot does not arrive, the handler recovers on its own: deltas are buffered, a new snapshot is
+ * requested for this market only and the buffered deltas are replayed on top of it. Other markets are not affected.
+ * Snapshots are requested on a thread of the handler, so a feed that reconnects does not stall the processing thread.
+ * @author Maximilian Pfister
+ *
+ * @param <E> entry type
+ */
+public abstract class AbstractChannelHandler<E extends ChannelEntry<E>> implements Runnable {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractChannelHandler.class);
+
+	public static final int DEFAULT_RING_BUFFER_CAPACITY = 256;
+
+	private static final int MAX_BUFFERED_ENTRIES = 10_000;
+	private static final long WATCHDOG_INTERVAL = 1000; // milliseconds
+	private static final long SNAPSHOT_TIMEOUT = 10_000_000_000L; // nanoseconds
+
+	/* variables */
+
+	private final CurrencyPair currencyPair;
+	private final String label; // market in log messages
+	private volatile boolean active = false;
+	private volatile boolean stop = false;
+	private volatile long silenceTimeout = 30_000_000_000L; // nanoseconds
+	private volatile long lastEventTime;
+
+	private final RingBuffer<E> ringBuffer;
+	private boolean dropping = false; // producer only
+	private volatile boolean blockWhenFull = false;
+	private volatile long droppedEntries = 0;
+	private EntryBuffer<E> recoveryBuffer;
+	private EntryBuffer<E> replayBuffer;
+	private volatile OrderBook orderBook = null; // snapshot published by the processing thread, null if outdated
+	private volatile boolean orderBookRead = false; // snapshots are published after every change once read
+
+	// Recovery state, only written by the processing thread
+	private volatile boolean recovering = true; // waiting for a snapshot, initially and after gaps
+	private volatile boolean snapshotRequested = false; // set by watchdog
+	private volatile long snapshotRequestTime;
+	private volatile long recoveryStartTime = 0; // 0 while in sync or during inital synchronization
+	private volatile long recoveryCount = 0;
+	private volatile long lastRecoveryTime = 0;
+	private volatile long maxRecoveryTime = 0;
+	private volatile long totalRecoveryTime = 0;
+	private final LatencyHistogram recoveryTimes;
+
+	private final Set<ReceiveOrderbook> subscribers = new CopyOnWriteArraySet<>();
+	private final Set<ReceiveTopOfBook> topOfBookSubscribers = new CopyOnWriteArraySet<>();
+	private volatile int topOfBookDepth = 0;
+	private long topOfBookSequence = 0;
+	private final TopLevels lastBids = new TopLevels();
+	private final TopLevels lastAsks = new TopLevels();
+	private final ExecutorService broadcastExecutorService = Executors.newCachedThreadPool();
+	// Order books are delivered in order, so the last one received is the current one
+	private final ExecutorService orderBookExecutorService = Executors.newSingleThreadExecutor();
+	private final AtomicInteger pendingBroadcasts = new AtomicInteger();
+	private final ExecutorService watchdogExecutor = Executors.newSingleThreadExecutor();
+	private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor();
+	private final AtomicBoolean snapshotRequestPending = new AtomicBoolean(false);
+
+	private final FixedPointOrderBook book;
+	private long lastReceiveTime = 0; // receive time of the newest processed entry, processing thread only
+	private final Counter receivedEntries;
+
+	/* constructors */
+
+	/**
+	 * @param currencyPair
+	 * @param label market in log messages
+	 * @param entryFactory creates the preallocated entries
+	 * @param waitStrategy how the processing thread waits for entries
+	 * @param ringBufferCapacity power of two
+	 * @param receivedEntries counts fed entries
+	 * @param recoveryTimes records durations of completed recoveries
+	 */
+	protected AbstractChannelHandler(CurrencyPair currencyPair, String label, Supplier<E> entryFactory,
+			WaitStrategy waitStrategy, int ringBufferCapacity, Counter receivedEntries, LatencyHistogram recoveryTimes) {
+		this.currencyPair = currencyPair;
+		this.label = label;
+		this.book = new FixedPointOrderBook(currencyPair);
+		this.ringBuffer = new RingBuffer<>(entryFactory, ringBufferCapacity, waitStrategy);
+		this.recoveryBuffer = new EntryBuffer<>(entryFactory);
+		this.replayBuffer = new EntryBuffer<>(entryFactory);
+		this.receivedEntries = receivedEntries;
+		this.recoveryTimes = recoveryTimes;
+		// Inital snapshot is requested by the subscription
+		this.snapshotRequestTime = System.nanoTime();
+		this.lastEventTime = System.nanoTime();
+	}
+
+	/* public methods */
+
+	/**
+	 * Entry processing routine, returns when stopped or interrupted.
+	 */
+	@Override
+	public void run() {
+		active = true;
+		watchdogExecutor.submit(this::watch);
+
+		long next = 0;
+		while (!stop) {
+			long available;
+			try {
+				available = ringBuffer.waitFor(next);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOGGER.warn("Processing thread interrupted [{}]", label);
+				break;
+			}
+			if (snapshotRequested) {
+				snapshotRequested = false;
+				startRecovery();
+			}
+			if (orderBookRead && orderBook == null && !recovering) {
+				publishOrderBook();
+			}
+			if (available < next) {
+				continue;
+			}
+
+			long takeTime = System.nanoTime();
+			boolean bookChanged = false;
+			for (; next <= available; next++) {
+				E entry = ringBuffer.get(next);
+				traceEntry(entry, takeTime);
+				if (entry.getReceiveTime() != 0) {
+					lastReceiveTime = entry.getReceiveTime();
+				}
+				bookChanged |= processEntry(entry);
+			}
+			traceBatch(takeTime);
+			// Counted before release, so the batch is not drained until its broadcasts were delivered
+			pendingBroadcasts.incrementAndGet();
+			ringBuffer.release(available);
+
+			if (bookChanged && !recovering) {
+				if (recoveryStartTime != 0) {
+					completeRecovery();
+				}
+				publishOrderBook();
+				broadcastOrderbook();
+				broadcastTopOfBook();
+			}
+			pendingBroadcasts.decrementAndGet();
+		}
+		stop = true;
+		broadcastExecutorService.shutdown();
+		orderBookExecutorService.shutdown();
+		watchdogExecutor.shutdown();
+		snapshotExecutor.shutdown();
+		active = false;
+	}
+
+	/**
+	 * Launches processing thread if it is not running.
+	 */
+	public void start() {
+		if (!active) {
+			Thread thread = new Thread(this);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops processing and watchdog thread.
+	 */
+	public void stop() {
+		stop = true;
+		// Processing thread may be waiting for entries
+		ringBuffer.wakeUp();
+	}
+
+	/**
+	 * Broadcasts last published snapshot of the book to all subscribers. Unlike top of book events order books are
+	 * delivered in order by one thread.
+	 */
+	public void broadcastOrderbook() {
+		// Only materialized if someone is listening
+		OrderBook snapshot = orderBook;
+		if (subscribers.isEmpty() || snapshot == null) {
+			return;
+		}
+		OrderBookUpdate orderBookUpdate = new OrderBookUpdate(currencyPair, snapshot);
+		subscribers.forEach(subscriber -> submitBroadcast(orderBookExecutorService,
+				() -> subscriber.receiveUpdate(orderBookUpdate)));
+	}
+
+	/**
+	 * Broadcasts top levels to all top of book subscribers, suppressed if none of the top levels moved since the last
+	 * broadcast. Subscribers may receive events out of order and should drop stale sequence numbers.
+	 */
+	public void broadcastTopOfBook() {
+		if (topOfBookSubscribers.isEmpty()) {
+			return;
+		}
+		int depth = topOfBookDepth;
+		// Non-short-circuit or so both sides are captured
+		boolean changed = lastBids.capture(book.getBids(), depth) | lastAsks.capture(book.getAsks(), depth);
+		if (!changed) {
+			return;
+		}
+		TopOfBookUpdate topOfBookUpdate = new TopOfBookUpdate(currencyPair, ++topOfBookSequence, lastBids.copyPrices(),
+				lastBids.copyQuantities(), lastAsks.copyPrices(), lastAsks.copyQuantities(), lastReceiveTime,
+				System.nanoTime());
+		topOfBookSubscribers.forEach(subscriber -> submitBroadcast(broadcastExecutorService,
+				() -> subscriber.receiveTopOfBook(topOfBookUpdate)));
+	}
+
+	/**
+	 * Gets snapshot of the book as of its last change, safe to call from any thread. Snapshots are materialized by the
+	 * processing thread, after the first call after every change; they are shared and must not be modified.
+	 * @return null until the processing thread published the first snapshot of the synchronized book
+	 */
+	public OrderBook getOrderBook() {
+		OrderBook snapshot = orderBook;
+		if (snapshot == null && !orderBookRead) {
+			orderBookRead = true;
+			// Processing thread publishes the current book
+			ringBuffer.wakeUp();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Gets the underlying fixed point book. Only safe to read from the processing thread.
+	 * @return
+	 */
+	public FixedPointOrderBook getBook() {
+		return book;
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	/**
+	 * Checks if the processing thread has taken all fed entries into the book and the resulting broadcasts were
+	 * delivered to all subscribers.
+	 * @return
+	 */
+	public boolean isDrained() {
+		return ringBuffer.getConsumerSequence() == ringBuffer.getCursor() && pendingBroadcasts.get() == 0;
+	}
+
+	/**
+	 * Adds a subscriber that receives the whole book after every change.
+	 * @param updateableObject
+	 */
+	public void addSubscriber(ReceiveOrderbook updateableObject) {
+		subscribers.add(updateableObject);
+	}
+
+	public void removeSubscriber(ReceiveOrderbook updateableObject) {
+		subscribers.remove(updateableObject);
+	}
+
+	/**
+	 * Adds a subscriber that only receives events when one of the top levels changed.
+	 * @param updateableObject
+	 * @param depth number of levels per side the subscriber is interested in
+	 */
+	public synchronized void addTopOfBookSubscriber(ReceiveTopOfBook updateableObject, int depth) {
+		if (depth > topOfBookDepth) {
+			topOfBookDepth = depth;
+		}
+		topOfBookSubscribers.add(updateableObject);
+	}
+
+	public void removeTopOfBookSubscriber(ReceiveTopOfBook updateableObject) {
+		topOfBookSubscribers.remove(updateableObject);
+	}
+
+	/**
+	 * Makes the feed wait for space in the ring buffer instead of dropping entries. Meant for replays, where the
+	 * producer is faster than live but must not lose entries.
+	 * @param blockWhenFull
+	 */
+	public void setBlockWhenFull(boolean blockWhenFull) {
+		this.blockWhenFull = blockWhenFull;
+	}
+
+	/**
+	 * Sets after how long without entries a new snapshot is requested.
+	 * @param silenceTimeout milliseconds
+	 */
+	public void setSilenceTimeout(long silenceTimeout) {
+		this.silenceTimeout = silenceTimeout * 1_000_000;
+	}
+
+	/**
+	 * Checks if the book is in sync with the exchange. While not in sync no updates are broadcasted.
+	 * @return
+	 */
+	public boolean isSynchronized() {
+		return !recovering;
+	}
+
+	/**
+	 * Gets for how long the book has been stale because of an ongoing recovery.
+	 * @return nanoseconds, 0 if no recovery is in progress
+	 */
+	public long getStaleTime() {
+		long start = recoveryStartTime;
+		return start == 0 ? 0 : System.nanoTime() - start;
+	}
+
+	/**
+	 * Gets number of completed recoveries.
+	 * @return
+	 */
+	public long getRecoveryCount() {
+		return recoveryCount;
+	}
+
+	/**
+	 * Gets duration of the last completed recovery.
+	 * @return nanoseconds
+	 */
+	public long getLastRecoveryTime() {
+		return lastRecoveryTime;
+	}
+
+	/**
+	 * Gets duration of the longest completed recovery.
+	 * @return nanoseconds
+	 */
+	public long getMaxRecoveryTime() {
+		return maxRecoveryTime;
+	}
+
+	/**
+	 * Gets summed up duration of all completed recoveries.
+	 * @return nanoseconds
+	 */
+	public long getTotalRecoveryTime() {
+		return totalRecoveryTime;
+	}
+
+	/* protected methods */
+
+	/**
+	 * Adds entry to the handler. The entry is copied into the ring buffer, so the caller may reuse it. Must only be
+	 * called by one thread at a time. If the processing thread falls behind entries are dropped instead of stalling
+	 * the connection, the gap is recovered.
+	 * @param entry
+	 */
+	protected void feed(E entry) {
+		receivedEntries.increment();
+		long slot = ringBuffer.tryNext();
+		while (slot < 0 && blockWhenFull) {
+			Thread.yield();
+			slot = ringBuffer.tryNext();
+		}
+		if (slot < 0) {
+			if (!dropping) {
+				dropping = true;
+				LOGGER.info("Ring buffer full, dropping entries [{}]", label);
+			}
+			droppedEntries++;
+		} else {
+			dropping = false;
+			ringBuffer.get(slot).copyFrom(entry);
+			ringBuffer.publish(slot);
+		}
+		signalAlive();
+	}
+
+	/**
+	 * Resets the silence timeout, e.g. on keep alive messages of the feed.
+	 */
+	protected void signalAlive() {
+		lastEventTime = System.nanoTime();
+	}
+
+	/**
+	 * Replaces book with a snapshot unless it is outdated. Called by processing thread.
+	 * @param snapshot
+	 * @return false if the snapshot was ignored
+	 */
+	protected abstract boolean applySnapshot(E snapshot);
+
+	/**
+	 * Applies delta if it follows the book. Deltas already contained in the book are dropped, a gap is handled with
+	 * {@link #startRecovery()} and {@link #bufferEntry(ChannelEntry)}. Called by processing thread while in sync.
+	 * @param delta
+	 * @return true if the book changed
+	 */
+	protected abstract boolean applyDelta(E delta);
+
+	/**
+	 * Asks the feed for a new snapshot of this market. Called by the snapshot thread of the handler, may block.
+	 * @throws IOException
+	 */
+	protected abstract void requestSnapshot() throws IOException;
+
+	/**
+	 * Checks if the book waits for deltas that did not arrive, in addition to the silence timeout. Called by
+	 * watchdog while in sync.
+	 * @param now System.nanoTime
+	 * @return true to recover
+	 */
+	protected boolean isStalled(long now) {
+		return false;
+	}
+
+	/**
+	 * Called by processing thread for every entry taken from the ring buffer.
+	 * @param entry
+	 * @param takeTime System.nanoTime when the batch was taken
+	 */
+	protected void traceEntry(E entry, long takeTime) {
+	}
+
+	/**
+	 * Called by processing thread after a batch was applied to the book.
+	 * @param takeTime System.nanoTime when the batch was taken
+	 */
+	protected void traceBatch(long takeTime) {
+	}
+
+	/**
+	 * Keeps delta for replay after recovery.
+	 * @param delta
+	 */
+	protected void bufferEntry(E delta) {
+		// Bound buffer, dropped deltas are either older than the snapshot or cause another recovery
+		if (recoveryBuffer.size() >= MAX_BUFFERED_ENTRIES) {
+			LOGGER.info("Recovery buffer full, dropping {} entries [{}]", recoveryBuffer.size(), label);
+			recoveryBuffer.clear();
+		}
+		recoveryBuffer.add(delta);
+	}
+
+	/**
+	 * Marks book as stale and requests a new snapshot for this market. Called by processing thread, which goes on
+	 * buffering deltas while the request is sent.
+	 */
+	protected void startRecovery() {
+		if (recoveryStartTime == 0) {
+			recoveryStartTime = System.nanoTime();
+		}
+		recovering = true;
+		snapshotRequestTime = System.nanoTime();
+		// A request still in flight answers this recovery as well
+		if (snapshotRequestPending.compareAndSet(false, true)) {
+			snapshotExecutor.submit(this::sendSnapshotRequest);
+		}
+	}
+
+	/**
+	 * Gets number of entries waiting in the ring buffer.
+	 * @return
+	 */
+	protected long getQueueDepth() {
+		return ringBuffer.getCursor() - ringBuffer.getConsumerSequence();
+	}
+
+	/**
+	 * Gets number of entries dropped because the processing thread fell behind.
+	 * @return
+	 */
+	protected long getDroppedEntries() {
+		return droppedEntries;
+	}
+
+	/* private methods */
+
+	/**
+	 * Watchdog routine, asks for a new snapshot if a requested one did not arrive, the market went silent or the
+	 * subclass waits for missing deltas.
+	 */
+	private void watch() {
+		while (!stop) {
+			try {
+				Thread.sleep(WATCHDOG_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			long now = System.nanoTime();
+			if (recovering) {
+				if (now - snapshotRequestTime > SNAPSHOT_TIMEOUT) {
+					LOGGER.info("Snapshot timeout [{}]", label);
+					requestRecovery();
+				}
+			} else if (now - lastEventTime > silenceTimeout) {
+				LOGGER.info("Silence timeout [{}]", label);
+				lastEventTime = now;
+				requestRecovery();
+			} else if (isStalled(now)) {
+				requestRecovery();
+			}
+		}
+	}
+
+	/**
+	 * Snapshot thread routine, sends one snapshot request.
+	 */
+	private void sendSnapshotRequest() {
+		try {
+			requestSnapshot();
+		} catch (IOException | RuntimeException e) {
+			// Retried by watchdog after timeout
+			LOGGER.info("Could not request snapshot [{}]: {}", label, e.toString());
+		} finally {
+			snapshotRequestPending.set(false);
+		}
+	}
+
+	/**
+	 * Processes snapshot or delta taken from the ring buffer.
+	 * @param entry
+	 * @return true if the book changed
+	 */
+	private boolean processEntry(E entry) {
+		if (!entry.isSnapshot()) {
+			return processDelta(entry);
+		}
+		if (!applySnapshot(entry)) {
+			return false;
+		}
+		recovering = false;
+		// Replay deltas buffered during recovery, a gap in them starts the next recovery
+		EntryBuffer<E> buffered = recoveryBuffer;
+		recoveryBuffer = replayBuffer;
+		replayBuffer = buffered;
+		for (int i = 0; i < buffered.size(); i++) {
+			processDelta(buffered.get(i));
+		}
+		buffered.clear();
+		return true;
+	}
+
+	private boolean processDelta(E delta) {
+		if (recovering) {
+			bufferEntry(delta);
+			return false;
+		}
+		return applyDelta(delta);
+	}
+
+	/**
+	 * Materializes book for readers and order book subscribers, else drops the outdated snapshot. Called by processing
+	 * thread.
+	 */
+	private void publishOrderBook() {
+		orderBook = orderBookRead || !subscribers.isEmpty() ? book.toOrderBook() : null;
+	}
+
+	/**
+	 * Records duration of finished recovery.
+	 */
+	private void completeRecovery() {
+		long recoveryTime = System.nanoTime() - recoveryStartTime;
+		recoveryStartTime = 0;
+		recoveryCount++;
+		lastRecoveryTime = recoveryTime;
+		totalRecoveryTime += recoveryTime;
+		if (recoveryTime > maxRecoveryTime) {
+			maxRecoveryTime = recoveryTime;
+		}
+		recoveryTimes.record(recoveryTime);
+		LOGGER.info("Recovered [{}] in {} ms", label, recoveryTime / 1_000_000);
+	}
+
+	/**
+	 * Asks processing thread to (re)start recovery. Called by watchdog.
+	 */
+	private void requestRecovery() {
+		snapshotRequestTime = System.nanoTime();
+		snapshotRequested = true;
+		ringBuffer.wakeUp();
+	}
+
+	/**
+	 * Delivers event to a subscriber on a broadcast executor.
+	 * @param executorService
+	 * @param broadcast
+	 */
+	private void submitBroadcast(ExecutorService executorService, Runnable broadcast) {
+		pendingBroadcasts.incrementAndGet();
+		executorService.submit(() -> {
+			try {
+				broadcast.run();
+			} finally {
+				pendingBroadcasts.decrementAndGet();
+			}
+		});
+	}
+
+	/* inner classes */
+
+	/**
+	 * Growable list of reused entries, buffers deltas during recovery.
+	 */
+	private static class EntryBuffer<E extends ChannelEntry<E>> {
+
+		private final Supplier<E> entryFactory;
+		private Object[] entries = new Object[16];
+		private int size = 0;
+
+		EntryBuffer(Supplier<E> entryFactory) {
+			this.entryFactory = entryFactory;
+		}
+
+		@SuppressWarnings("unchecked")
+		void add(E entry) {
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+			}
+			if (entries[size] == null) {
+				entries[size] = entryFactory.get();
+			}
+			((E) entries[size++]).copyFrom(entry);
+		}
+
+		@SuppressWarnings("unchecked")
+		E get(int index) {
+			return (E) entries[index];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+}
@@ -1,326 +1,232 @@
 package de.gekko.websocket;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.PriorityQueue;
-
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.BiConsumer;
+import java.net.URISyntaxException;
 
 import org.knowm.xchange.currency.CurrencyPair;
-import org.knowm.xchange.dto.Order;
-import org.knowm.xchange.dto.marketdata.OrderBook;
-import org.knowm.xchange.dto.trade.LimitOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.gekko.concurrency.BinarySemaphore;
-import de.gekko.exception.CurrencyMismatchException;
+import de.gekko.concurrency.BlockingWaitStrategy;
+import de.gekko.concurrency.WaitStrategy;
+import de.gekko.metrics.MetricsRegistry;
+import de.gekko.tracing.LatencyTracer;
 import de.gekko.websocket.pojo.ExchangeStateUpdate;
-import de.gekko.websocket.pojo.OrderUpdate;
 
 /**
- * Concurrent channel handler that processes orderbook updates fed by BittrexWebsocket.
+ * Concurrent channel handler that processes orderbook updates fed by BittrexWebsocket. Updates are handed over from
+ * the websocket thread through a lock free ring buffer; updates that arrive ahead of the next nounce wait in a
+ * small {@link ReorderWindow}.
+ * If a nounce gap is detected or the market goes silent the handler recovers on its own, see
+ * {@link AbstractChannelHandler}: a fresh exchange state is requested for this market only.
  * @author Maximilian Pfister
  *
  */
-public class BittrexChannelHandler implements Runnable {
-	
+public class BittrexChannelHandler extends AbstractChannelHandler<ExchangeStateUpdate> {
+
 	/* constants */
-	
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(BittrexWebsocket.class);
-	
+
+	private static final int REORDER_WINDOW_CAPACITY = 16;
+	private static final long REORDER_TIMEOUT = 1_000_000_000L; // nanoseconds
+
 	/* variables */
 
-	private final BinarySemaphore processUpdateSem = new BinarySemaphore(false);
-	private boolean active = false;
-	private boolean stop = false;
-	private int keepAliveTimeout = 30; // seconds
-	private long lastKeepAlive;
-	private CurrencyPair currencyPair;
-	
-	private Lock queueLock = new ReentrantLock();
-	private PriorityQueue<ExchangeStateUpdate> queue = new PriorityQueue<>((u1, u2) -> {
-		// Oldest nounces first
-		if(u1.getNounce() > u2.getNounce()) {
-			return 1;
-		} else {
-			return -1;
-		}
-	});
+	private final ReorderWindow reorderWindow = new ReorderWindow(REORDER_WINDOW_CAPACITY);
+	private volatile long reorderStartTime = 0; // 0 while reorder window is empty
 	private long nounce;
-	private boolean initalStateReceived = false;
-	private OrderBook orderBook = null;
 
-	private Set<ReceiveOrderbook> subscribers = new HashSet<>();
-	private ExecutorService broadcastExecutorService = Executors.newCachedThreadPool();
-	private ExecutorService keepAliveExecutor;
+	private final LatencyTracer tracer = LatencyTracer.getInstance();
 
-	private final TreeMap<BigDecimal, LimitOrder> asks = new TreeMap<>();
-	private final TreeMap<BigDecimal, LimitOrder> bids = new TreeMap<>((k1, k2) -> -k1.compareTo(k2));
-	
 	/* constructors */
-	
-	private BittrexChannelHandler(CurrencyPair currencyPair) {
-		this.currencyPair = currencyPair;
+
+	private BittrexChannelHandler(CurrencyPair currencyPair, WaitStrategy waitStrategy, int ringBufferCapacity) {
+		super(currencyPair, currencyPair.toString(), ExchangeStateUpdate::new, waitStrategy, ringBufferCapacity,
+				MetricsRegistry.getInstance().counter("gekko_feed_messages_total", "Updates fed by the websocket",
+						"market", currencyPair.toString()),
+				MetricsRegistry.getInstance().histogram("gekko_channel_recovery_seconds",
+						"Duration of completed recoveries from gap or timeout until the book is in sync", "market",
+						currencyPair.toString()));
+
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		String market = currencyPair.toString();
+		metrics.gauge("gekko_channel_queue_depth", "Updates waiting in the ring buffer", this::getQueueDepth, "market",
+				market);
+		metrics.counter("gekko_channel_dropped_updates_total", "Updates dropped because the ring buffer was full",
+				this::getDroppedEntries, "market", market);
+		metrics.counter("gekko_channel_recoveries_total", "Completed recoveries after nounce gaps or timeouts",
+				this::getRecoveryCount, "market", market);
+		metrics.gauge("gekko_channel_stale_seconds", "Time the book has been stale because of an ongoing recovery",
+				() -> getStaleTime() / 1e9, "market", market);
 	}
 
+	/* public methods */
+
 	/**
-	 * Update processing routine.
+	 * Static factory method that creates an ChannelHandler instance and runs it in a new thread.
+	 * @param currencyPair
+	 * @return
 	 */
-	@Override
-	public void run() {
-		active = true;
-		
-		// Keep alive checker in separate thread.
-		keepAliveExecutor = Executors.newSingleThreadExecutor();
-		// launch keep alive thread
-		keepAliveExecutor.submit(() -> {
-			while (!stop) {
-				// wait for seconds specified by keepAliveTimeout
-				try {
-					Thread.sleep(keepAliveTimeout * 1000);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				if((System.currentTimeMillis() - lastKeepAlive) > keepAliveTimeout * 1000) {
-					LOGGER.info("Keep alive timeout[{}]", currencyPair);
-					System.exit(1);
-				};
-			}
-		});
-		
-		while (!stop) {
-			try {
-				processUpdateSem.acquire();
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			// reset orderbook
-			orderBook = null;
-			
-			// Wait for inital state
-			if(!initalStateReceived) {
-				queueLock.lock();
-				// Get inital state
-				ExchangeStateUpdate initalState = queue.stream().filter(update -> update.getMarketName() == null).findFirst().orElse(null);
-				// Process inital state
-				if(initalState != null) {
-					LOGGER.info("Processing inital exchange state [{}]", currencyPair);
-					processInitalState(initalState);
-					// Deal with rest of queue
-					if(queue.size() == 1) {
-						queue.clear();
-					} else {
-						queue.forEach(update -> processUpdate(update));
-					}
-				}
-				queueLock.unlock();
-			} else {
-				LOGGER.info("Processing Update [{}]", currencyPair);
-				queueLock.lock();
-				// Process updates
-				queue.forEach(update -> processUpdate(update));
-				// Clear queue
-				queue.clear();
-				// Broadcast new orderbook
-				broadcastOrderbook();
-				queueLock.unlock();
-			}
-			
-		}
-		// Shut down executors
-		broadcastExecutorService.shutdown();
-		keepAliveExecutor.shutdown();
-		active = false;
+	public static BittrexChannelHandler createInstance(CurrencyPair currencyPair) {
+		return createInstance(currencyPair, new BlockingWaitStrategy(), DEFAULT_RING_BUFFER_CAPACITY);
 	}
-	
+
 	/**
-	 * Process inital exchange state.
-	 * @param exchangeUpdate
-	 * @throws InterruptedException 
+	 * Static factory method that creates an ChannelHandler instance with a specific wait strategy and runs it in a
+	 * new thread.
+	 * @param currencyPair
+	 * @param waitStrategy how the processing thread waits for updates
+	 * @param ringBufferCapacity power of two
+	 * @return
 	 */
-	private void processInitalState(ExchangeStateUpdate exchangeUpdate)  {
-		initalStateReceived = true;
-//        nounce = exchangeUpdate.getNounce();
-        bids.clear();
-        asks.clear();
-        exchangeUpdate.getBuys().forEach(buy -> bids.put(buy.getRate(), new LimitOrder(Order.OrderType.BID, buy.getQuantity(), currencyPair, null, null, buy.getRate())));
-        exchangeUpdate.getSells().forEach(sell -> asks.put(sell.getRate(), new LimitOrder(Order.OrderType.ASK, sell.getQuantity(), currencyPair, null, null, sell.getRate())));
-        queue.forEach(update -> {
-        		if(update.getMarketName() != null) { // If not inital state
-            		processUpdate(update);
-        		}
-        });
-        queue.clear();
+	public static BittrexChannelHandler createInstance(CurrencyPair currencyPair, WaitStrategy waitStrategy, int ringBufferCapacity) {
+		BittrexChannelHandler channelHandler = new BittrexChannelHandler(currencyPair, waitStrategy, ringBufferCapacity);
+		Thread thread = new Thread(channelHandler);
+		thread.start();
+		return channelHandler;
 	}
-	
-	/**
-	 * Process exchange state update.
-	 * @param exchangeUpdate
-	 */
-	private void processUpdate(ExchangeStateUpdate exchangeUpdate) {
-		if(nounce == 0) {
-			nounce = exchangeUpdate.getNounce();
-		} else {
-			if (exchangeUpdate.getNounce() <= nounce) {
-				LOGGER.info("MISSING DATA");
-				LOGGER.info("Current nounce: {}, update nounce: {}", nounce, exchangeUpdate.getNounce() );
-				System.exit(1);
-				return;
-			}
-			if (exchangeUpdate.getNounce() - nounce == 1) {
-				nounce++;
-			} else {
-				LOGGER.warn("Missing data, going to resubscribe " + currencyPair);
-				//TODO RESUBSCRIBE
-				LOGGER.info("Current nounce: {}, update nounce: {}", nounce, exchangeUpdate.getNounce() );
-				System.exit(1);
-				return;
-			}
-		}
-
 
-		// Processes bid updates
-		BiConsumer<OrderUpdate, TreeMap<BigDecimal, LimitOrder>> bidsProcessor = (update, bids) -> {
-			switch (update.getType()) {
-			case ADD:
-			case UPDATE:
-				bids.put(update.getRate(), new LimitOrder(Order.OrderType.BID, update.getQuantity(), currencyPair, null, null, update.getRate()));
-				break;
-			case REMOVE:
-				bids.remove(update.getRate());
-				break;
-			default:
-				throw new RuntimeException("Unknown update type " + update.getRate()); // should never happen
-			}
-		};
-
-		// Processes ask updates
-		BiConsumer<OrderUpdate, TreeMap<BigDecimal, LimitOrder>> asksProcessor = (update, asks) -> {
-			switch (update.getType()) {
-			case ADD:
-			case UPDATE:
-				asks.put(update.getRate(), new LimitOrder(Order.OrderType.ASK, update.getQuantity(), currencyPair, null, null, update.getRate()));
-				break;
-			case REMOVE:
-				asks.remove(update.getRate());
-				break;
-			default:
-				throw new RuntimeException("Unknown update type " + update.getType()); // should never happen
-			}
-		};
-
-		// Feed updates to processors 
-		exchangeUpdate.getBuys().forEach(update -> bidsProcessor.accept(update, bids));
-		exchangeUpdate.getSells().forEach(update -> asksProcessor.accept(update, asks));
-
-	}
-	
 	/**
-	 * Broadcasts current orderbook to all subscribers.
+	 * Adds update to channelHandler. The update is copied into the ring buffer, so the caller may reuse it. Updates
+	 * flagged as snapshot are exchange states. Must only be called by one thread at a time, which holds
+	 * as every market is subscribed on a single websocket session.
+	 * @param update
 	 */
-    public void broadcastOrderbook() {
-    		OrderBook orderBook = getOrderBook();
-    		OrderBookUpdate orderBookUpdate = new OrderBookUpdate(currencyPair, orderBook);
-		if(!subscribers.isEmpty()) {
-			subscribers.forEach(subscriber -> broadcastExecutorService.submit(
-					() -> {subscriber.receiveUpdate(orderBookUpdate);
-					}));
-		}
-	}
-    
-    /**
-     * Gets current orderBook.
-     * @return
-     */
-	public OrderBook getOrderBook() {
-		OrderBook old = orderBook;
-		if (old != null) {
-			return old;
-		}
-
-		orderBook = new OrderBook(new Date(), new ArrayList<>(asks.values()), new ArrayList<>(bids.values()));
-		return orderBook;
+	public void feedUpdate(ExchangeStateUpdate update) {
+		// Also signals that the SocketEndpoint is alive
+		feed(update);
 	}
 
 	/**
-	 * Static factory method that creates an ChannelHandler instance and runs it in a new thread.
-	 * @param exchange
-	 * @param basePair
-	 * @param crossPair1
-	 * @param crossPair2
+	 * Gets number of updates dropped because the processing thread fell behind.
 	 * @return
-	 * @throws IOException
-	 * @throws CurrencyMismatchException
 	 */
-	public static BittrexChannelHandler createInstance(CurrencyPair currencyPair) {
-		BittrexChannelHandler channelHandler = new BittrexChannelHandler(currencyPair);
-		Thread thread = new Thread(channelHandler);
-		thread.start();
-		return channelHandler;
+	public long getDroppedUpdates() {
+		return getDroppedEntries();
 	}
 
 	/**
-	 * Launches update thread.
+	 * Revceive sigal alive message from SocketEndpoint.
 	 */
-	public void start() {
-		if (!active) {
-			Thread thread = new Thread(this);
-			thread.start();
-		}
+	public void singalAlive() {
+		signalAlive();
 	}
 
+	/* protected methods */
+
 	/**
-	 * Stops update thread.
+	 * Replaces book with exchange state, late answers to repeated requests are ignored.
+	 * @param exchangeState
 	 */
-	public void stop() {
-		stop = true;
+	@Override
+	protected boolean applySnapshot(ExchangeStateUpdate exchangeState) {
+		if(isSynchronized()) {
+			return false;
+		}
+		LOGGER.info("Processing exchange state [{}]", getCurrencyPair());
+		getBook().clear();
+		// Snapshot levels are decoded as ADD
+		exchangeState.getBuys().applyTo(getBook().getBids());
+		exchangeState.getSells().applyTo(getBook().getAsks());
+		nounce = exchangeState.getNounce();
+		return true;
 	}
-	
+
 	/**
-	 * Adds update to channelHandler.
-	 * @param update
+	 * Applies delta if it carries the next nounce, together with the deltas in the reorder window that were waiting
+	 * for it. Deltas already contained in the book are dropped, deltas slightly ahead are kept in the reorder window
+	 * and deltas too far ahead start a recovery.
+	 * @param exchangeUpdate
+	 * @return true if the book changed
 	 */
-	public void feedUpdate(ExchangeStateUpdate update) {
-		queueLock.lock();
-		queue.add(update);
-		queueLock.unlock();
-		processUpdateSem.release();
-		singalAlive(); // While updates are received, SocketEndpoint is alive
+	@Override
+	protected boolean applyDelta(ExchangeStateUpdate exchangeUpdate) {
+		long expectedNounce = nounce + 1;
+		if(exchangeUpdate.getNounce() < expectedNounce) {
+			return false;
+		}
+		if(exchangeUpdate.getNounce() == expectedNounce) {
+			applyUpdate(exchangeUpdate);
+			ExchangeStateUpdate next;
+			while((next = reorderWindow.take(nounce + 1)) != null) {
+				applyUpdate(next);
+			}
+			reorderStartTime = reorderWindow.isEmpty() ? 0 : System.nanoTime();
+			return true;
+		}
+		if(reorderWindow.fits(expectedNounce, exchangeUpdate.getNounce())) {
+			if(reorderWindow.isEmpty()) {
+				reorderStartTime = System.nanoTime();
+			}
+			reorderWindow.add(exchangeUpdate);
+			return false;
+		}
+		LOGGER.warn("Missing data, going to recover [{}]", getCurrencyPair());
+		LOGGER.info("Current nounce: {}, update nounce: {}", nounce, exchangeUpdate.getNounce());
+		startRecovery();
+		bufferEntry(exchangeUpdate);
+		return false;
 	}
-	
+
+	@Override
+	protected void requestSnapshot() throws IOException {
+		try {
+			BittrexWebsocket.getInstance().queryExchangeState(getCurrencyPair());
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+	}
+
 	/**
-	 * Adds a subscriber to this ChannelHandler.
-	 * @param updateableObject
+	 * Checks if a missing nounce did not show up in time.
 	 */
-	public void addSubscriber(ReceiveOrderbook updateableObject) {
-		subscribers.add(updateableObject);
+	@Override
+	protected boolean isStalled(long now) {
+		long start = reorderStartTime;
+		if(start != 0 && now - start > REORDER_TIMEOUT) {
+			LOGGER.info("Reorder timeout [{}]", getCurrencyPair());
+			return true;
+		}
+		return false;
 	}
 
 	/**
-	 * Removes a subsciber to this ChannelHandler.
-	 * @param updateableObject
+	 * Deltas waiting for a missing nounce are replayed after the exchange state.
 	 */
-	public void removeSubscriber(ReceiveOrderbook updateableObject) {
-		subscribers.remove(updateableObject);
+	@Override
+	protected void startRecovery() {
+		for(int i = 0; i < reorderWindow.getCapacity(); i++) {
+			ExchangeStateUpdate waiting = reorderWindow.get(i);
+			if(waiting != null) {
+				bufferEntry(waiting);
+			}
+		}
+		reorderWindow.clear();
+		reorderStartTime = 0;
+		super.startRecovery();
+	}
+
+	@Override
+	protected void traceEntry(ExchangeStateUpdate update, long takeTime) {
+		tracer.record(LatencyTracer.Stage.QUEUE, update.getDecodeTime(), takeTime);
+	}
+
+	@Override
+	protected void traceBatch(long takeTime) {
+		tracer.record(LatencyTracer.Stage.APPLY, takeTime, System.nanoTime());
 	}
-	
+
+	/* private methods */
+
 	/**
-	 * Revceive sigal alive message from SocketEndpoint.
+	 * Feeds delta into book.
+	 * @param exchangeUpdate
 	 */
-	public void singalAlive() {
-		lastKeepAlive = System.currentTimeMillis();
+	private void applyUpdate(ExchangeStateUpdate exchangeUpdate) {
+		nounce = exchangeUpdate.getNounce();
+		exchangeUpdate.getBuys().applyTo(getBook().getBids());
+		exchangeUpdate.getSells().applyTo(getBook().getAsks());
 	}
 
 }
@@ -2,8 +2,12 @@ package de.gekko.websocket;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
@@ -20,6 +24,9 @@ import org.knowm.xchange.currency.CurrencyPair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.gekko.concurrency.BlockingWaitStrategy;
+import de.gekko.concurrency.WaitStrategy;
+import de.gekko.journal.FrameJournal;
 import de.gekko.websocket.pojo.ExchangeStateUpdate;
 
 /**
@@ -53,11 +60,16 @@ public class BittrexWebsocket {
 	private HttpClient httpClient;
 	private BittrexWebsocketHttp bittrexWebsocketHttp;
 	private Map<CurrencyPair, BittrexChannelHandler> channelHandlers;
+	private Map<String, BittrexChannelHandler> channelHandlersByMarket;
+	private Supplier<WaitStrategy> waitStrategyFactory = BlockingWaitStrategy::new;
+	private volatile FrameJournal journal;
+	private boolean offline = false;
 	
 	/* constructors */
 
 	private BittrexWebsocket() {
 		channelHandlers = new HashMap<>();
+		channelHandlersByMarket = new ConcurrentHashMap<>();
 	}
 
 	/* public methods */
@@ -88,6 +100,23 @@ public class BittrexWebsocket {
 		return BittrexWebsocket.instance;
 	}
 
+	/**
+	 * Creates the singleton instance without connecting to Bittrex, e.g. to replay journaled frames. Subscriptions
+	 * and exchange state requests are ignored and channelHandlers wait for space in their ring buffer instead of
+	 * dropping updates.
+	 * @return
+	 * @throws IllegalStateException if a connected instance exists already
+	 */
+	public static synchronized BittrexWebsocket createOfflineInstance() {
+		if (BittrexWebsocket.instance == null) {
+			BittrexWebsocket.instance = new BittrexWebsocket();
+			BittrexWebsocket.instance.offline = true;
+		} else if (!BittrexWebsocket.instance.offline) {
+			throw new IllegalStateException("BittrexWebsocket is already connected");
+		}
+		return BittrexWebsocket.instance;
+	}
+
 	/**
 	 * Converts currencyPair to bittrex currency string used in websocket messages.
 	 * @param currencyPair
@@ -144,9 +173,83 @@ public class BittrexWebsocket {
 	 * @throws URISyntaxException 
 	 */
 	public synchronized void subscribeOrderbook(CurrencyPair currencyPair) throws IOException, InterruptedException, URISyntaxException {
+		if (offline) {
+			return;
+		}
 		bittrexWebsocketHttp.subscribeToOrderbook(toBittrexCurrencyString(currencyPair));
 	}
 	
+	/**
+	 * Requests the current exchange state of a single market, used by channelHandlers to recover from missing data.
+	 * @param currencyPair
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public void queryExchangeState(CurrencyPair currencyPair) throws IOException, URISyntaxException {
+		if (offline) {
+			return;
+		}
+		bittrexWebsocketHttp.queryExchangeState(toBittrexCurrencyString(currencyPair));
+	}
+	
+	/**
+	 * Gets channelHandler of currencyPair, e.g. to read its recovery statistics.
+	 * @param currencyPair
+	 * @return channelHandler or null if currencyPair is not subscribed
+	 */
+	public synchronized BittrexChannelHandler getChannelHandler(CurrencyPair currencyPair) {
+		return channelHandlers.get(currencyPair);
+	}
+	
+	/**
+	 * Gets all channelHandlers created so far.
+	 * @return
+	 */
+	public synchronized List<BittrexChannelHandler> getChannelHandlers() {
+		return new ArrayList<>(channelHandlers.values());
+	}
+	
+	/**
+	 * Checks if this instance was created by {@link #createOfflineInstance()}.
+	 * @return
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+	
+	/**
+	 * Sets the maximum number of websocket connections that orderbook subscriptions are multiplexed over.
+	 * @param connectionPoolSize
+	 */
+	public void setConnectionPoolSize(int connectionPoolSize) {
+		if (offline) {
+			return;
+		}
+		bittrexWebsocketHttp.setConnectionPoolSize(connectionPoolSize);
+	}
+	
+	/**
+	 * Sets how processing threads of channelHandlers created afterwards wait for updates, e.g.
+	 * YieldingWaitStrategy::new for lower latency at the cost of CPU time.
+	 * @param waitStrategyFactory
+	 */
+	public synchronized void setWaitStrategy(Supplier<WaitStrategy> waitStrategyFactory) {
+		this.waitStrategyFactory = waitStrategyFactory;
+	}
+	
+	/**
+	 * Sets journal that all received frames are appended to, null stops journaling. The journal is not closed
+	 * by the websocket.
+	 * @param journal
+	 */
+	public void setJournal(FrameJournal journal) {
+		this.journal = journal;
+	}
+	
+	public FrameJournal getJournal() {
+		return journal;
+	}
+	
 	public synchronized void registerSubscriber(CurrencyPair currencyPair, ReceiveOrderbook updateableObject) throws Exception {
 		if(!channelHandlers.containsKey(currencyPair)) {
 			createChannelHandler(currencyPair);
@@ -156,43 +259,65 @@ public class BittrexWebsocket {
 	}
 	
 	/**
-	 * Sends update to channelHandler.
+	 * Registers a subscriber that only receives compact events when one of the top levels of the orderbook changed.
 	 * @param currencyPair
-	 * @param update
+	 * @param updateableObject
+	 * @param depth number of levels per side
+	 * @throws Exception
 	 */
-	public void sendToChannelHandler(String currencyPairBittrex, ExchangeStateUpdate update) {
-		CurrencyPair currencyPair = toCurrencyPair(currencyPairBittrex);
+	public synchronized void registerTopOfBookSubscriber(CurrencyPair currencyPair, ReceiveTopOfBook updateableObject, int depth) throws Exception {
 		if(!channelHandlers.containsKey(currencyPair)) {
 			createChannelHandler(currencyPair);
 		}
-		channelHandlers.get(currencyPair).feedUpdate(update);
+		channelHandlers.get(currencyPair).addTopOfBookSubscriber(updateableObject, depth);
+		subscribeOrderbook(currencyPair);
+	}
+	
+	/**
+	 * Sends update to channelHandler.
+	 * @param currencyPair
+	 * @param update
+	 */
+	public void sendToChannelHandler(String currencyPairBittrex, ExchangeStateUpdate update) {
+		getChannelHandler(currencyPairBittrex).feedUpdate(update);
 	}
 	
 	public void keepAliveChannelHandler(String currencyPairBittrex) {
-		CurrencyPair currencyPair = toCurrencyPair(currencyPairBittrex);
-		if(!channelHandlers.containsKey(currencyPair)) {
-			createChannelHandler(currencyPair);
-		}
-		channelHandlers.get(currencyPair).singalAlive();;
+		getChannelHandler(currencyPairBittrex).singalAlive();
 	}
 	
-	//TODO 
-//	public void resubscribe(String currencyPairBittrex) {
-//		CurrencyPair currencyPair = toCurrencyPair(currencyPairBittrex);
-//		channelHandlers.get(currencyPair).stop();
-//	}
-
 	/* private methods */
 	
+	/**
+	 * Gets channelHandler by bittrex currency string, creating it if necessary. Cached by string so the
+	 * message path does not have to split strings and create currency pairs.
+	 * @param currencyPairBittrex
+	 * @return
+	 */
+	private BittrexChannelHandler getChannelHandler(String currencyPairBittrex) {
+		BittrexChannelHandler channelHandler = channelHandlersByMarket.get(currencyPairBittrex);
+		if(channelHandler == null) {
+			channelHandler = createChannelHandler(toCurrencyPair(currencyPairBittrex));
+			channelHandlersByMarket.put(currencyPairBittrex, channelHandler);
+		}
+		return channelHandler;
+	}
+	
 	/**
 	 * Creates new ChannelHandler.
 	 * @param currencyPair
+	 * @return channelHandler of currencyPair
 	 */
-	private synchronized void createChannelHandler(CurrencyPair currencyPair) {
+	private synchronized BittrexChannelHandler createChannelHandler(CurrencyPair currencyPair) {
 		LOGGER.info("CREATE CHANNEL HANDLER " + currencyPair);
 		if(!channelHandlers.containsKey(currencyPair)) {
-			channelHandlers.put(currencyPair, BittrexChannelHandler.createInstance(currencyPair));
+			BittrexChannelHandler channelHandler = BittrexChannelHandler.createInstance(currencyPair, waitStrategyFactory.get(),
+					BittrexChannelHandler.DEFAULT_RING_BUFFER_CAPACITY);
+			// Without connection there is nothing to stall, replayed updates must not be lost
+			channelHandler.setBlockWhenFull(offline);
+			channelHandlers.put(currencyPair, channelHandler);
 		}
+		return channelHandlers.get(currencyPair);
 	}
 	
 	
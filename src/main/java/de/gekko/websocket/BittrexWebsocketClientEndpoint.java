@@ -2,7 +2,10 @@ package de.gekko.websocket;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.websocket.CloseReason;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.MessageHandler;
@@ -13,16 +16,13 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 
-import de.gekko.websocket.pojo.ExchangeStateUpdate;
+import de.gekko.journal.FrameJournal;
 import de.gekko.websocket.pojo.HubMessage;
-import de.gekko.websocket.pojo.PersistentConnectionMessage;
-import de.gekko.websocket.pojo.ResponseMessage;
 
 /**
- * Handles Bittrex websocket transport.
+ * Handles Bittrex websocket transport. One endpoint multiplexes the subscriptions of many markets over a
+ * single session, received frames are routed to the channelHandlers by a {@link HubFrameRouter}.
  * 
  * @author Maximilian Pfister
  *
@@ -37,114 +37,121 @@ public class BittrexWebsocketClientEndpoint extends Endpoint {
 
 	/* variables */
 
+	// Unique over all connections, so journaled responses of different connections can not be mixed up
+	private static final AtomicInteger invocationCounter = new AtomicInteger();
 	private Gson gson = new GsonBuilder()
 			// .setPrettyPrinting()
 			.create();
 	private BittrexWebsocket bittrexWebsocket = BittrexWebsocket.getInstance();
-	private String currencyPair;
-	private boolean startupSuccess = false;
+	private Session session;
+	private final HubFrameRouter router = new HubFrameRouter(bittrexWebsocket, marketName -> {
+		try {
+			queryExchangeState(marketName);
+		} catch (IOException e) {
+			LOGGER.info("Could not query exchange state [{}]: {}", marketName, e.toString());
+		}
+	}, marketName -> {
+		try {
+			subscribeToExchangeDeltas(marketName);
+		} catch (IOException e) {
+			LOGGER.info("Could not resubscribe [{}]: {}", marketName, e.toString());
+		}
+	});
+
+	/**
+	 * Subscribes to exchange deltas of a market on this connection. The inital exchange state is requested
+	 * as soon as the subscription is confirmed.
+	 * @param marketName bittrex currency string
+	 * @throws IOException
+	 */
+	public void subscribeToExchangeDeltas(String marketName) throws IOException {
+		invoke("SubscribeToExchangeDeltas", marketName);
+	}
 
-	public void setCurrencyPair(String currencyPair) {
-		this.currencyPair = currencyPair;
+	/**
+	 * Requests the current exchange state (orderbook snapshot) of a market.
+	 * @param marketName bittrex currency string
+	 * @throws IOException
+	 */
+	public void queryExchangeState(String marketName) throws IOException {
+		invoke("QueryExchangeState", marketName);
 	}
 
-	public void getExchangeState(Session session) throws IOException {
-		// Prepare and send exchange state request
+	/**
+	 * Gets the number of markets subscribed on this connection.
+	 * @return
+	 */
+	public int getMarketCount() {
+		return router.getMarkets().size();
+	}
 
-		HubMessage exchangeStateRequest = new HubMessage();
-		exchangeStateRequest.setHubName(BittrexWebsocket.DEFAULT_HUB);
-		exchangeStateRequest.setMethodName("QueryExchangeState");
-		exchangeStateRequest.setArguments(Arrays.asList(currencyPair));
-		exchangeStateRequest.setInvocationIdentifier(1);
-		session.getBasicRemote().sendText(gson.toJson(exchangeStateRequest));
+	/**
+	 * Gets the markets subscribed on this connection.
+	 * @return
+	 */
+	public Set<String> getMarkets() {
+		return router.getMarkets();
+	}
+	
+	/**
+	 * Checks if the websocket session of this connection is open.
+	 * @return
+	 */
+	public boolean isOpen() {
+		return session != null && session.isOpen();
 	}
 
 	/* public methods */
 
 	@Override
 	public void onOpen(Session session, EndpointConfig config) {
+		this.session = session;
 		session.addMessageHandler(new MessageHandler.Whole<String>() {
 			public void onMessage(String messageString) {
-				// Check if keep alive message
-				if (messageString.length() < 3) {
-					LOGGER.info("KeepAliveMessage");
-					bittrexWebsocket.keepAliveChannelHandler(currencyPair);
-					return;
+				long receiveTime = System.nanoTime();
+				FrameJournal journal = bittrexWebsocket.getJournal();
+				if (journal != null) {
+					journal.append(messageString, receiveTime);
 				}
-
-				/* begin persistent connection message */
-				if (messageString.charAt(2) == 'C') {
-					PersistentConnectionMessage message = gson.fromJson(messageString, PersistentConnectionMessage.class);
-
-					// Check if hub messages are present
-					if (message.getMessageData().size() != 0) {
-						try {
-							message.getMessageData().forEach((jsonElement) -> {
-								// Check each hub message for exchange state updates
-								JsonObject jsonObject = jsonElement.getAsJsonObject();
-								if (jsonObject.get("M").getAsString().equals("updateExchangeState")) {
-									// Get exchange state items
-									JsonArray exchangeStates = gson.fromJson(jsonObject.get("A"), JsonArray.class);
-									exchangeStates.forEach((exchangeStateElement) -> {
-										ExchangeStateUpdate exchangeState = gson.fromJson(exchangeStateElement, ExchangeStateUpdate.class);
-										bittrexWebsocket.sendToChannelHandler(exchangeState.getMarketName(), exchangeState);
-									});
-								} else {
-									// do something with other methods
-								}
-							});
-							return;
-						} catch (Exception e) {
-							LOGGER.info(message.getMessageData().toString());
-							LOGGER.info(e.toString());
-							System.exit(1);
-						}
-					}
-					
-					// Check for startup message
-					if (!startupSuccess) {
-						if (message.getTransportStartFlag() == 1) {
-							startupSuccess = true;
-							return;
-						}
-					}
-					
-				}
-				/* end persistent connection message */
-
-				/* begin response message */
-				if (messageString.charAt(2) == 'R') {
-
-					try {
-						ResponseMessage responseMessage = gson.fromJson(messageString, ResponseMessage.class);
-						if (responseMessage.getResponse().toString().equals("true")) {
-							LOGGER.info("RESPONSE RECEIVED");
-							getExchangeState(session);
-							return;
-						} else {
-							ExchangeStateUpdate exchangeState = gson.fromJson(responseMessage.getResponse(),
-									ExchangeStateUpdate.class);
-							bittrexWebsocket.sendToChannelHandler(currencyPair, exchangeState);
-							return;
-						}
-					} catch (Exception e) {
-						LOGGER.info(messageString);
-						LOGGER.info(e.toString());
-						System.exit(1);
-					}
-				}
-				/* end response message */
-
-				//TODO
-				if (messageString.charAt(2) == 'I') {
-					LOGGER.info(messageString);
-					JsonObject jsonOb = gson.fromJson(messageString, JsonObject.class);
-					return;
-				}
-				LOGGER.info(messageString);
+				router.route(messageString, receiveTime);
 			}
 		});
 
 	}
 
+	@Override
+	public void onClose(Session session, CloseReason closeReason) {
+		LOGGER.info("Websocket connection closed: {}", closeReason);
+		router.clearInvocations();
+	}
+
+	/* private methods */
+
+	/**
+	 * Sends hub method invocation with a unique identifier and remembers the market it belongs to.
+	 * @param methodName
+	 * @param marketName
+	 * @throws IOException
+	 */
+	private void invoke(String methodName, String marketName) throws IOException {
+		int invocationIdentifier = invocationCounter.getAndIncrement();
+		router.addInvocation(invocationIdentifier, methodName, marketName);
+
+		HubMessage hubMessage = new HubMessage();
+		hubMessage.setHubName(BittrexWebsocket.DEFAULT_HUB);
+		hubMessage.setMethodName(methodName);
+		hubMessage.setArguments(Arrays.asList(marketName));
+		hubMessage.setInvocationIdentifier(invocationIdentifier);
+		String message = gson.toJson(hubMessage);
+		// Journaled as well, so a replay can route the responses
+		FrameJournal journal = bittrexWebsocket.getJournal();
+		if (journal != null) {
+			journal.append(message, System.nanoTime());
+		}
+		// Basic remote is not thread safe
+		synchronized (session) {
+			session.getBasicRemote().sendText(message);
+		}
+	}
+
 }
@@ -5,10 +5,10 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.websocket.ClientEndpointConfig;
 import javax.websocket.ContainerProvider;
@@ -31,14 +31,21 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 
 import de.gekko.websocket.pojo.Hub;
-import de.gekko.websocket.pojo.HubMessage;
 import de.gekko.websocket.pojo.NegotiationResponse;
 
+/**
+ * Performs the signalR handshake and multiplexes orderbook subscriptions over a small pool of websocket
+ * connections instead of opening one connection per market.
+ * @author Maximilian Pfister
+ *
+ */
 public class BittrexWebsocketHttp {
 	
 	/* constants */
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(BittrexWebsocketHttp.class);
+	
+	public static final int DEFAULT_CONNECTION_POOL_SIZE = 1;
 
 	
 	/* variables */
@@ -47,7 +54,10 @@ public class BittrexWebsocketHttp {
 	private HttpClient httpClient;
 	private CookieStore cookieStore;
 	private ArrayList<Hub> hubs;
-	private Map<String, Session> webSocketSessions;
+	private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
+	private List<BittrexWebsocketClientEndpoint> connections;
+	private List<Session> webSocketSessions;
+	private Map<String, BittrexWebsocketClientEndpoint> subscriptions;
 	
 	/* constructors */
 	
@@ -58,35 +68,66 @@ public class BittrexWebsocketHttp {
 				// .setPrettyPrinting()
 				.create();
 		this.hubs = new ArrayList<>();
-		this.webSocketSessions = new HashMap<>();
+		this.connections = new ArrayList<>();
+		this.webSocketSessions = new ArrayList<>();
+		this.subscriptions = new ConcurrentHashMap<>();
 	}
 	
 	/* public methods */
 
-	public void subscribeToOrderbook(String currencyPair) throws ClientProtocolException, URISyntaxException, IOException, InterruptedException {
+	/**
+	 * Subscribes to orderbook updates of a market on one of the pooled connections. Connections are opened lazily
+	 * until the pool is full, after that the connection with the fewest markets is used.
+	 * @param currencyPair bittrex currency string
+	 * @throws ClientProtocolException
+	 * @throws URISyntaxException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public synchronized void subscribeToOrderbook(String currencyPair) throws ClientProtocolException, URISyntaxException, IOException, InterruptedException {
 		// Check if already subscribed
-		if(webSocketSessions.containsKey(currencyPair)) {
+		if(subscriptions.containsKey(currencyPair)) {
 			LOGGER.info("Already subscribed to {}.", currencyPair);
 			return;
 		}
 		
-		// Negotiate new connection with server
-		NegotiationResponse negotiationResponse  = negotiate();
-		if(negotiationResponse == null) {
-			LOGGER.info("ERROR: Negotiation with server failed while subscribing to {}.", currencyPair);
-		}
-		
-		// Create new websocket session for subscription 
-		Session webSocketSession = connect(negotiationResponse, currencyPair);
-		if(webSocketSession == null) {
-			LOGGER.info("ERROR: Could not create websocket session while subscribing to {}.", currencyPair);
-		} else {
-			start(negotiationResponse);
+		BittrexWebsocketClientEndpoint connection = acquireConnection();
+		if(connection == null) {
+			LOGGER.info("ERROR: No websocket connection available while subscribing to {}.", currencyPair);
+			return;
 		}
 		
 		// Subscribe to updates
-		subscribe(currencyPair, webSocketSession);
-		webSocketSessions.put(currencyPair, webSocketSession);
+		LOGGER.info("Subscribing to [{}].", currencyPair);
+		connection.subscribeToExchangeDeltas(currencyPair);
+		subscriptions.put(currencyPair, connection);
+	}
+	
+	/**
+	 * Requests the current exchange state of a subscribed market. If the connection of the market was closed, all
+	 * of its markets are moved to a new connection and their exchange states are requested once resubscribed. A market
+	 * whose subscription was rejected is subscribed again. Only reconnects and resubscriptions wait for the lock of
+	 * the pool, requests on open connections are sent right away.
+	 * @param currencyPair bittrex currency string
+	 * @throws URISyntaxException
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 */
+	public void queryExchangeState(String currencyPair) throws URISyntaxException, ClientProtocolException, IOException {
+		BittrexWebsocketClientEndpoint connection = subscriptions.get(currencyPair);
+		if(connection != null && connection.isOpen() && connection.getMarkets().contains(currencyPair)) {
+			connection.queryExchangeState(currencyPair);
+			return;
+		}
+		resubscribe(currencyPair);
+	}
+	
+	/**
+	 * Sets the maximum number of websocket connections used for subscriptions.
+	 * @param connectionPoolSize
+	 */
+	public synchronized void setConnectionPoolSize(int connectionPoolSize) {
+		this.connectionPoolSize = Math.max(1, connectionPoolSize);
 	}
 	
 	
@@ -102,6 +143,103 @@ public class BittrexWebsocketHttp {
 	
 	/* private methods */
 	
+	/**
+	 * Subscribes market again whose subscription was rejected or whose connection was closed, checked again under
+	 * the lock as another market may have moved it already.
+	 * @param currencyPair bittrex currency string
+	 * @throws URISyntaxException
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 */
+	private synchronized void resubscribe(String currencyPair) throws URISyntaxException, ClientProtocolException, IOException {
+		BittrexWebsocketClientEndpoint connection = subscriptions.get(currencyPair);
+		if(connection == null) {
+			LOGGER.info("ERROR: Not subscribed to {}.", currencyPair);
+			return;
+		}
+		if(connection.isOpen()) {
+			if(!connection.getMarkets().contains(currencyPair)) {
+				// Dropped after rejected subscriptions, the exchange state follows the confirmation
+				LOGGER.info("Resubscribing to [{}].", currencyPair);
+				connection.subscribeToExchangeDeltas(currencyPair);
+				return;
+			}
+			connection.queryExchangeState(currencyPair);
+			return;
+		}
+		
+		// Connection is gone, resubscribe its markets
+		LOGGER.info("Websocket connection of {} closed, resubscribing {} markets.", currencyPair, connection.getMarketCount());
+		connections.remove(connection);
+		for(String market : connection.getMarkets()) {
+			subscriptions.remove(market);
+		}
+		for(String market : connection.getMarkets()) {
+			BittrexWebsocketClientEndpoint newConnection = acquireConnection();
+			if(newConnection == null) {
+				LOGGER.info("ERROR: No websocket connection available while resubscribing to {}.", market);
+				// Keep old connection so the next request tries again
+				subscriptions.put(market, connection);
+				continue;
+			}
+			newConnection.subscribeToExchangeDeltas(market);
+			subscriptions.put(market, newConnection);
+		}
+	}
+	
+	/**
+	 * Gets connection for a new subscription, opening a new one while the pool is not full.
+	 * @return connection or null if no connection could be established
+	 * @throws URISyntaxException
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 */
+	private BittrexWebsocketClientEndpoint acquireConnection() throws URISyntaxException, ClientProtocolException, IOException {
+		if(connections.size() < connectionPoolSize) {
+			BittrexWebsocketClientEndpoint connection = openConnection();
+			if(connection != null) {
+				connections.add(connection);
+				return connection;
+			}
+		}
+		// Use least loaded connection
+		BittrexWebsocketClientEndpoint leastLoaded = null;
+		for(BittrexWebsocketClientEndpoint connection : connections) {
+			if(leastLoaded == null || connection.getMarketCount() < leastLoaded.getMarketCount()) {
+				leastLoaded = connection;
+			}
+		}
+		return leastLoaded;
+	}
+	
+	/**
+	 * Performs negotiate, connect and start handshake for a new connection.
+	 * @return connection or null if handshake failed
+	 * @throws URISyntaxException
+	 * @throws ClientProtocolException
+	 * @throws IOException
+	 */
+	private BittrexWebsocketClientEndpoint openConnection() throws URISyntaxException, ClientProtocolException, IOException {
+		// Negotiate new connection with server
+		NegotiationResponse negotiationResponse  = negotiate();
+		if(negotiationResponse == null) {
+			LOGGER.info("ERROR: Negotiation with server failed.");
+			return null;
+		}
+		
+		// Create new websocket session
+		BittrexWebsocketClientEndpoint endpoint = new BittrexWebsocketClientEndpoint();
+		Session webSocketSession = connect(negotiationResponse, endpoint);
+		if(webSocketSession == null) {
+			LOGGER.info("ERROR: Could not create websocket session.");
+			return null;
+		}
+		start(negotiationResponse);
+		webSocketSessions.add(webSocketSession);
+		LOGGER.info("Opened websocket connection {} of {}.", connections.size() + 1, connectionPoolSize);
+		return endpoint;
+	}
+	
 	/**
 	 * Sends signalR negotiation request and sets negotiationResponse variable.
 	 * @throws URISyntaxException
@@ -144,7 +282,7 @@ public class BittrexWebsocketHttp {
 	 * Starts the websocket transport.
 	 * @throws URISyntaxException
 	 */
-	private Session connect(NegotiationResponse negotiationResponse, String currencyPair) throws URISyntaxException {
+	private Session connect(NegotiationResponse negotiationResponse, BittrexWebsocketClientEndpoint endpoint) throws URISyntaxException {
 		// Create cookie strings for websocket connection if cloudflare DDOS protection is enabled
 		ArrayList<String> cookies = new ArrayList<>();
 		cookieStore.getCookies().forEach((item) -> {
@@ -180,8 +318,6 @@ public class BittrexWebsocketHttp {
 			// Connect websocket to server
 			WebSocketContainer container = ContainerProvider.getWebSocketContainer();
 			container.setDefaultMaxTextMessageBufferSize(1048576);
-			BittrexWebsocketClientEndpoint endpoint = new BittrexWebsocketClientEndpoint();
-			endpoint.setCurrencyPair(currencyPair);
 			webSocketSession = container.connectToServer(endpoint, cec, builder.build());
 			try {
 				Thread.sleep(1000);
@@ -226,14 +362,4 @@ public class BittrexWebsocketHttp {
 		}
 	}
 
-	private void subscribe(String currencyPair, Session webSocketSession) throws IOException, InterruptedException {
-		LOGGER.info("Subscribing to [{}].", currencyPair);
-		// Prepare and send subscription message
-		HubMessage subscriptionMessage = new HubMessage();
-		subscriptionMessage.setHubName(BittrexWebsocket.DEFAULT_HUB);
-		subscriptionMessage.setMethodName("SubscribeToExchangeDeltas");
-		subscriptionMessage.setArguments(Arrays.asList(currencyPair));
-		webSocketSession.getBasicRemote().sendText(gson.toJson(subscriptionMessage));
-	}
-
 }
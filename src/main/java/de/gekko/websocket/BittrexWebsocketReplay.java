@@ -0,0 +1,364 @@
+package de.gekko.websocket;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import de.gekko.arbitrager.BittrexStreamingTriangularScanner;
+import de.gekko.journal.FrameJournal;
+import de.gekko.journal.FrameJournalReader;
+import de.gekko.tracing.LatencyTracer;
+import de.gekko.websocket.pojo.HubMessage;
+
+/**
+ * Replays frames of a {@link FrameJournal} through the same path as live frames: {@link HubFrameRouter}, decoder,
+ * channelHandlers and their subscribers. Runs on the offline {@link BittrexWebsocket}, nothing is sent to Bittrex.
+ * Sent hub invocations are journaled as well, so responses (exchange states) are routed to their market like live.
+ * <p>
+ * Frames are replayed as fast as possible, which measures the throughput of decoding, book building and scanning,
+ * or paced like they were received. In lockstep mode the next frame is only routed once the previous one went
+ * through books and subscribers, so subscribers see the same sequence of books and decide the same on every run.
+ * @author Maximilian Pfister
+ *
+ */
+public class BittrexWebsocketReplay {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BittrexWebsocketReplay.class);
+
+	private static final long DEFAULT_MAX_PAUSE = 10_000_000_000L; // nanoseconds
+
+	public enum Pacing {
+		AS_FAST_AS_POSSIBLE, RECORDED
+	}
+
+	/* variables */
+
+	private final BittrexWebsocket bittrexWebsocket;
+	// Exchange states are part of the journal, nothing to query
+	private final HubFrameRouter router;
+	private final Gson gson = new Gson();
+	private Pacing pacing = Pacing.AS_FAST_AS_POSSIBLE;
+	private double speed = 1;
+	private long maxPause = DEFAULT_MAX_PAUSE;
+	private boolean lockstep = false;
+	private final List<BooleanSupplier> idleConditions = new CopyOnWriteArrayList<>();
+
+	private volatile long position = -1;
+	private long frameCount = 0;
+	private long invocationCount = 0;
+	private long byteCount = 0;
+	private long elapsedTime = 0;
+
+	/* constructors */
+
+	public BittrexWebsocketReplay() {
+		bittrexWebsocket = BittrexWebsocket.createOfflineInstance();
+		// Requests and retries of the recording are journaled and replayed as they were sent
+		router = new HubFrameRouter(bittrexWebsocket, marketName -> {
+		}, marketName -> {
+		});
+	}
+
+	/* public methods */
+
+	/**
+	 * Replays all frames of the journal. Blocks until the last frame was routed, channelHandlers may still be
+	 * processing it unless in lockstep mode.
+	 * @param reader
+	 * @throws IOException
+	 */
+	public void replay(FrameJournalReader reader) throws IOException {
+		long startTime = System.nanoTime();
+		long firstReceiveTime = 0;
+		boolean first = true;
+		while (reader.next()) {
+			position++;
+			String frame = reader.getFrame();
+			if (frame.startsWith("{\"H\"")) {
+				addInvocation(frame);
+				continue;
+			}
+			if (pacing == Pacing.RECORDED) {
+				if (first) {
+					firstReceiveTime = reader.getReceiveTime();
+					startTime = System.nanoTime();
+				}
+				// Skipped gaps move the replay clock
+				startTime = pace(startTime, reader.getReceiveTime() - firstReceiveTime);
+			}
+			first = false;
+			router.route(frame, System.nanoTime());
+			frameCount++;
+			byteCount += reader.getFrameLength();
+			if (lockstep) {
+				awaitDrained();
+			}
+		}
+		elapsedTime = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Waits until every channelHandler took all routed updates into its book and delivered the broadcasts, then
+	 * until all subscribers added by {@link #addIdleCondition(BooleanSupplier)} are idle.
+	 */
+	public void awaitDrained() {
+		for (BittrexChannelHandler channelHandler : bittrexWebsocket.getChannelHandlers()) {
+			while (!channelHandler.isDrained()) {
+				Thread.yield();
+			}
+		}
+		for (BooleanSupplier idleCondition : idleConditions) {
+			while (!idleCondition.getAsBoolean()) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Adds condition that lockstep waits for after the channelHandlers drained, e.g. a subscriber that processes
+	 * updates on its own thread.
+	 * @param idleCondition
+	 */
+	public void addIdleCondition(BooleanSupplier idleCondition) {
+		idleConditions.add(idleCondition);
+	}
+
+	/**
+	 * Sets whether frames are replayed as fast as possible or with the recorded gaps.
+	 * @param pacing
+	 */
+	public void setPacing(Pacing pacing) {
+		this.pacing = pacing;
+	}
+
+	/**
+	 * Sets speed of recorded pacing, e.g. 10 replays ten times faster than received.
+	 * @param speed
+	 */
+	public void setSpeed(double speed) {
+		if (speed <= 0) {
+			throw new IllegalArgumentException("Speed must be positive: " + speed);
+		}
+		this.speed = speed;
+	}
+
+	/**
+	 * Limits gaps of recorded pacing, e.g. while the recording was reconnecting.
+	 * @param maxPause nanoseconds
+	 */
+	public void setMaxPause(long maxPause) {
+		this.maxPause = maxPause;
+	}
+
+	/**
+	 * Sets whether each frame waits for the channelHandlers and subscribers to process the previous one, which makes
+	 * the decisions of subscribers reproducible at the cost of throughput.
+	 * @param lockstep
+	 */
+	public void setLockstep(boolean lockstep) {
+		this.lockstep = lockstep;
+	}
+
+	/**
+	 * Gets index of the journal record that was routed last, frames and invocations are counted. Subscribers can
+	 * tag their decisions with it to compare runs.
+	 * @return
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Gets number of routed frames, without sent invocations.
+	 * @return
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	public long getInvocationCount() {
+		return invocationCount;
+	}
+
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Gets duration of the last replay.
+	 * @return nanoseconds
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Gets throughput of the last replay.
+	 * @return frames per second
+	 */
+	public double getFramesPerSecond() {
+		return elapsedTime == 0 ? 0 : frameCount * 1e9 / elapsedTime;
+	}
+
+	/**
+	 * Collects the markets subscribed in a journal.
+	 * @param reader
+	 * @return bittrex currency strings
+	 * @throws IOException
+	 */
+	public static Set<String> readSubscribedMarkets(FrameJournalReader reader) throws IOException {
+		Gson gson = new Gson();
+		Set<String> markets = new TreeSet<>();
+		while (reader.next()) {
+			String frame = reader.getFrame();
+			if (frame.startsWith("{\"H\"")) {
+				HubMessage hubMessage = gson.fromJson(frame, HubMessage.class);
+				if (hubMessage.getMethodName().equals("SubscribeToExchangeDeltas")) {
+					markets.add(hubMessage.getArguments().get(0));
+				}
+			}
+		}
+		return markets;
+	}
+
+	/**
+	 * Replays a journal into a {@link BittrexStreamingTriangularScanner} over all subscribed markets and writes its
+	 * decisions, so the output of two builds can be compared with diff.
+	 * <p>
+	 * Usage: BittrexWebsocketReplay directory name [--paced] [--speed=x] [--lockstep] [--decisions=file]
+	 * [--fee=0.0025] [--min-profit=0]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: BittrexWebsocketReplay directory name [--paced] [--speed=x] [--lockstep] "
+					+ "[--decisions=file] [--fee=0.0025] [--min-profit=0]");
+			return;
+		}
+		Path directory = Paths.get(args[0]);
+		String name = args[1];
+		BittrexWebsocketReplay replay = new BittrexWebsocketReplay();
+		Path decisionsFile = null;
+		double fee = 0.0025;
+		double minProfit = 0;
+		for (int i = 2; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--paced")) {
+				replay.setPacing(Pacing.RECORDED);
+			} else if (arg.startsWith("--speed=")) {
+				replay.setSpeed(Double.parseDouble(arg.substring("--speed=".length())));
+			} else if (arg.equals("--lockstep")) {
+				replay.setLockstep(true);
+			} else if (arg.startsWith("--decisions=")) {
+				decisionsFile = Paths.get(arg.substring("--decisions=".length()));
+			} else if (arg.startsWith("--fee=")) {
+				fee = Double.parseDouble(arg.substring("--fee=".length()));
+			} else if (arg.startsWith("--min-profit=")) {
+				minProfit = Double.parseDouble(arg.substring("--min-profit=".length()));
+			} else {
+				throw new IllegalArgumentException("Unknown argument: " + arg);
+			}
+		}
+
+		Set<String> markets;
+		try (FrameJournalReader reader = new FrameJournalReader(directory, name)) {
+			markets = readSubscribedMarkets(reader);
+		}
+		LOGGER.info("Replaying {} markets of journal {} in {}", markets.size(), name, directory);
+		Set<CurrencyPair> currencyPairs = new TreeSet<>();
+		for (String marketName : markets) {
+			// BTC-ETH is ETH/BTC in xchange notation
+			String[] currencies = marketName.split("-");
+			currencyPairs.add(new CurrencyPair(Currency.getInstance(currencies[1]), Currency.getInstance(currencies[0])));
+		}
+		BittrexStreamingTriangularScanner scanner = BittrexStreamingTriangularScanner.createInstance(currencyPairs, fee,
+				minProfit);
+		replay.addIdleCondition(scanner::isIdle);
+
+		PrintWriter decisions = null;
+		if (decisionsFile != null) {
+			BufferedWriter writer = Files.newBufferedWriter(decisionsFile, StandardCharsets.UTF_8);
+			decisions = new PrintWriter(writer);
+			PrintWriter decisionWriter = decisions;
+			// Called by the scanner thread only
+			scanner.addSubscriber((cycle, profit) -> decisionWriter.println(replay.getPosition() + "\t" + cycle + "\t"
+					+ String.format("%.8f", profit)));
+		}
+
+		try (FrameJournalReader reader = new FrameJournalReader(directory, name)) {
+			replay.replay(reader);
+		}
+		replay.awaitDrained();
+		scanner.stop();
+		replay.bittrexWebsocket.getChannelHandlers().forEach(BittrexChannelHandler::stop);
+		if (decisions != null) {
+			decisions.close();
+		}
+
+		System.out.println(String.format("%d frames (%d invocations, %d bytes) in %.3f s: %.0f frames/s",
+				replay.getFrameCount(), replay.getInvocationCount(), replay.getByteCount(),
+				replay.getElapsedTime() / 1e9, replay.getFramesPerSecond()));
+		LatencyTracer.getInstance().print(System.out);
+	}
+
+	/* private methods */
+
+	/**
+	 * Registers a journaled invocation with the router, so its response finds the market.
+	 * @param frame
+	 */
+	private void addInvocation(String frame) {
+		try {
+			HubMessage hubMessage = gson.fromJson(frame, HubMessage.class);
+			router.addInvocation(hubMessage.getInvocationIdentifier(), hubMessage.getMethodName(),
+					hubMessage.getArguments().get(0));
+			invocationCount++;
+		} catch (JsonSyntaxException e) {
+			LOGGER.info("Could not replay invocation: {}", frame);
+		}
+	}
+
+	/**
+	 * Waits until the recorded offset of the frame has passed on the replay clock.
+	 * @param startTime System.nanoTime of the first frame on the replay clock
+	 * @param recordedOffset nanoseconds since the first frame in the recording
+	 * @return startTime, moved forward by the part of the gap that was skipped
+	 */
+	private long pace(long startTime, long recordedOffset) {
+		long target = startTime + (long) (recordedOffset / speed);
+		long wait = target - System.nanoTime();
+		if (wait > maxPause) {
+			// Skip long gaps, e.g. while the recording was reconnecting
+			startTime -= wait - maxPause;
+			target -= wait - maxPause;
+			wait = maxPause;
+		}
+		while (wait > 0) {
+			LockSupport.parkNanos(wait);
+			wait = target - System.nanoTime();
+		}
+		return startTime;
+	}
+
+}
@@ -0,0 +1,30 @@
+package de.gekko.websocket;
+
+/**
+ * Snapshot or delta handed from a feed to an {@link AbstractChannelHandler}. Entries are preallocated in its ring
+ * buffer and reused, the feed's entry is copied in.
+ * @author Maximilian Pfister
+ *
+ * @param <E> entry type
+ */
+public interface ChannelEntry<E> {
+
+	/**
+	 * Overwrites this entry with the content of another one.
+	 * @param other
+	 */
+	void copyFrom(E other);
+
+	/**
+	 * Checks if the entry replaces the whole book.
+	 * @return
+	 */
+	boolean isSnapshot();
+
+	/**
+	 * Gets receive time of the message.
+	 * @return System.nanoTime, 0 if unknown
+	 */
+	long getReceiveTime();
+
+}
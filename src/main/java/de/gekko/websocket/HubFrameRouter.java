@@ -0,0 +1,240 @@
+package de.gekko.websocket;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.gekko.tracing.LatencyTracer;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Routes received frames of one hub connection to the channelHandlers: deltas by MarketName, hub responses by
+ * invocation identifier and keep alive frames to all markets of the connection. Shared by the live endpoint and
+ * the replay of journaled frames, so both take the same path. Not thread safe, frames of a connection are routed
+ * by a single thread.
+ * <p>
+ * A rejected subscription is sent again a few times, then the market is dropped from the connection so it no longer
+ * gets keep alive signals and its channelHandler recovers it. Invocations without an answer expire.
+ * @author Maximilian Pfister
+ *
+ */
+class HubFrameRouter {
+
+	/* constants */
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HubFrameRouter.class);
+
+	private static final int MAX_SUBSCRIBE_ATTEMPTS = 3;
+	private static final long INVOCATION_TIMEOUT = 60_000_000_000L; // nanoseconds
+	private static final long EXPIRY_INTERVAL = 1_000_000_000L; // nanoseconds
+
+	/* variables */
+
+	private final BittrexWebsocket bittrexWebsocket;
+	private final Consumer<String> exchangeStateQuery;
+	private final Consumer<String> resubscription;
+	private final Set<String> markets = ConcurrentHashMap.newKeySet();
+	private final Map<Integer, Invocation> pendingInvocations = new ConcurrentHashMap<>();
+	private final Map<String, Integer> failedSubscriptions = new ConcurrentHashMap<>();
+	private long lastExpiryTime = System.nanoTime();
+	private final HubMessageDecoder decoder = new HubMessageDecoder();
+	private final HubMessageHandler hubMessageHandler = new HubMessageHandler() {
+
+		@Override
+		public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate) {
+			stamp(exchangeStateUpdate);
+			bittrexWebsocket.sendToChannelHandler(exchangeStateUpdate.getMarketName(), exchangeStateUpdate);
+		}
+
+		@Override
+		public void onTransportStart() {
+			transportStarted = true;
+		}
+
+		@Override
+		public void onResponse(int invocationIdentifier, boolean result) {
+			Invocation invocation = pendingInvocations.remove(invocationIdentifier);
+			if (invocation == null) {
+				LOGGER.info("Response for unknown invocation {}", invocationIdentifier);
+				return;
+			}
+			boolean subscription = invocation.methodName.equals("SubscribeToExchangeDeltas");
+			if (!result) {
+				LOGGER.warn("{} failed [{}]", invocation.methodName, invocation.marketName);
+				if (subscription) {
+					subscriptionFailed(invocation.marketName);
+				}
+				return;
+			}
+			if (subscription) {
+				LOGGER.info("RESPONSE RECEIVED [{}]", invocation.marketName);
+				failedSubscriptions.remove(invocation.marketName);
+				exchangeStateQuery.accept(invocation.marketName);
+			}
+		}
+
+		@Override
+		public void onExchangeState(int invocationIdentifier, ExchangeStateUpdate exchangeState) {
+			Invocation invocation = pendingInvocations.remove(invocationIdentifier);
+			if (invocation == null) {
+				LOGGER.info("Exchange state for unknown invocation {}", invocationIdentifier);
+				return;
+			}
+			// Answer to QueryExchangeState, recognized by the invocation rather than by its content
+			exchangeState.setSnapshot(true);
+			stamp(exchangeState);
+			bittrexWebsocket.sendToChannelHandler(invocation.marketName, exchangeState);
+		}
+
+		@Override
+		public void onError(int invocationIdentifier, String error) {
+			Invocation invocation = pendingInvocations.remove(invocationIdentifier);
+			LOGGER.info("Hub error for invocation {} [{}]: {}", invocationIdentifier,
+					invocation == null ? null : invocation.marketName, error);
+		}
+	};
+	private volatile boolean transportStarted = false;
+	private final LatencyTracer tracer = LatencyTracer.getInstance();
+	private long receiveTime;
+
+	/* constructors */
+
+	/**
+	 * @param bittrexWebsocket
+	 * @param exchangeStateQuery requests the inital exchange state of a market once its subscription is confirmed
+	 * @param resubscription sends the subscription of a market again after it was rejected
+	 */
+	HubFrameRouter(BittrexWebsocket bittrexWebsocket, Consumer<String> exchangeStateQuery,
+			Consumer<String> resubscription) {
+		this.bittrexWebsocket = bittrexWebsocket;
+		this.exchangeStateQuery = exchangeStateQuery;
+		this.resubscription = resubscription;
+	}
+
+	/* package methods */
+
+	/**
+	 * Routes a received frame.
+	 * @param frame
+	 * @param receiveTime System.nanoTime when the frame arrived, carried by the decoded updates for tracing
+	 */
+	void route(String frame, long receiveTime) {
+		this.receiveTime = receiveTime;
+		if (receiveTime - lastExpiryTime > EXPIRY_INTERVAL) {
+			lastExpiryTime = receiveTime;
+			expireInvocations(receiveTime);
+		}
+		// Check if keep alive message
+		if (frame.length() < 3) {
+			LOGGER.debug("KeepAliveMessage");
+			// Connection is shared, so all of its markets are alive
+			markets.forEach(marketName -> bittrexWebsocket.keepAliveChannelHandler(marketName));
+			return;
+		}
+
+		// Decode persistent connection and response messages in a single pass
+		try {
+			if (!decoder.decode(frame, hubMessageHandler)) {
+				LOGGER.info(frame);
+			}
+		} catch (Exception e) {
+			// A lost delta shows up as nounce gap and is recovered by the channelHandler
+			LOGGER.info(frame);
+			LOGGER.info(e.toString());
+		}
+	}
+
+	/**
+	 * Remembers a sent hub method invocation, so its response can be routed to the market.
+	 * @param invocationIdentifier
+	 * @param methodName
+	 * @param marketName
+	 */
+	void addInvocation(int invocationIdentifier, String methodName, String marketName) {
+		if (methodName.equals("SubscribeToExchangeDeltas")) {
+			markets.add(marketName);
+		}
+		pendingInvocations.put(invocationIdentifier, new Invocation(methodName, marketName, System.nanoTime()));
+	}
+
+	/**
+	 * Forgets pending invocations, their answers can not arrive after the connection was closed.
+	 */
+	void clearInvocations() {
+		pendingInvocations.clear();
+	}
+
+	Set<String> getMarkets() {
+		return Collections.unmodifiableSet(markets);
+	}
+
+	boolean isTransportStarted() {
+		return transportStarted;
+	}
+
+	/* private methods */
+
+	/**
+	 * Sends rejected subscription again or, after too many attempts, drops the market from the connection.
+	 * @param marketName
+	 */
+	private void subscriptionFailed(String marketName) {
+		int attempts = failedSubscriptions.merge(marketName, 1, Integer::sum);
+		if (attempts < MAX_SUBSCRIBE_ATTEMPTS) {
+			resubscription.accept(marketName);
+			return;
+		}
+		LOGGER.error("Subscription failed {} times, dropping market [{}]", attempts, marketName);
+		failedSubscriptions.remove(marketName);
+		markets.remove(marketName);
+	}
+
+	/**
+	 * Drops invocations that did not get an answer within the timeout.
+	 * @param now
+	 */
+	private void expireInvocations(long now) {
+		Iterator<Invocation> iterator = pendingInvocations.values().iterator();
+		while (iterator.hasNext()) {
+			Invocation invocation = iterator.next();
+			if (now - invocation.sendTime > INVOCATION_TIMEOUT) {
+				LOGGER.info("No response to {} [{}]", invocation.methodName, invocation.marketName);
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Stamps decoded update with receive and decode time.
+	 * @param update
+	 */
+	private void stamp(ExchangeStateUpdate update) {
+		long decodeTime = System.nanoTime();
+		update.setReceiveTime(receiveTime);
+		update.setDecodeTime(decodeTime);
+		tracer.record(LatencyTracer.Stage.DECODE, receiveTime, decodeTime);
+	}
+
+	/**
+	 * Pending hub method invocation.
+	 */
+	private static class Invocation {
+
+		private final String methodName;
+		private final String marketName;
+		private final long sendTime;
+
+		Invocation(String methodName, String marketName, long sendTime) {
+			this.methodName = methodName;
+			this.marketName = marketName;
+			this.sendTime = sendTime;
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+package de.gekko.websocket;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import de.gekko.orderbook.FixedPoint;
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+import de.gekko.websocket.pojo.OrderUpdates;
+
+/**
+ * Single pass streaming decoder for signalR frames of the Bittrex hub. Walks the Jackson token stream once and
+ * writes exchange state deltas directly into a reused {@link ExchangeStateUpdate}: no DOM nodes, no
+ * BigDecimals (numbers are parsed from the token characters to fixed point) and market names are
+ * canonicalized, so a typical delta frame is decoded without allocating per level.
+ * Not thread safe, use one instance per connection.
+ * @author Maximilian Pfister
+ *
+ */
+public class HubMessageDecoder {
+
+	/* constants */
+
+	private static final String UPDATE_EXCHANGE_STATE = "updateExchangeState";
+	private static final int MARKET_NAME_CACHE_SIZE = 1024; // power of two
+
+	/* variables */
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+	private final ExchangeStateUpdate exchangeStateUpdate = new ExchangeStateUpdate();
+	private final String[] marketNames = new String[MARKET_NAME_CACHE_SIZE];
+
+	/* public methods */
+
+	/**
+	 * Decodes a frame and dispatches its content to the handler.
+	 * @param message
+	 * @param handler
+	 * @return false if the frame is neither a persistent connection message nor a hub response
+	 * @throws IOException on malformed frames
+	 */
+	public boolean decode(String message, HubMessageHandler handler) throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(message)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return false;
+			}
+			boolean recognized = false;
+			boolean transportStart = false;
+			int invocationIdentifier = -1;
+			JsonToken response = null;
+			String error = null;
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				switch (fieldName) {
+				case "C":
+					recognized = true;
+					break;
+				case "S":
+					transportStart = token == JsonToken.VALUE_NUMBER_INT && parser.getIntValue() == 1;
+					break;
+				case "M":
+					recognized = true;
+					if (token == JsonToken.START_ARRAY) {
+						decodeHubMessages(parser, handler);
+					} else {
+						parser.skipChildren();
+					}
+					break;
+				case "R":
+					recognized = true;
+					response = token;
+					if (token == JsonToken.START_OBJECT) {
+						decodeExchangeState(parser);
+					} else {
+						parser.skipChildren();
+					}
+					break;
+				case "E":
+					recognized = true;
+					error = parser.getText();
+					break;
+				case "I":
+					invocationIdentifier = parser.getValueAsInt(-1);
+					break;
+				default:
+					parser.skipChildren();
+					break;
+				}
+			}
+
+			// Responses carry the invocation identifier after the result, so dispatch at the end
+			if (response == JsonToken.VALUE_TRUE || response == JsonToken.VALUE_FALSE) {
+				handler.onResponse(invocationIdentifier, response == JsonToken.VALUE_TRUE);
+			} else if (response == JsonToken.START_OBJECT) {
+				handler.onExchangeState(invocationIdentifier, exchangeStateUpdate);
+			} else if (error != null) {
+				handler.onError(invocationIdentifier, error);
+			}
+			if (transportStart) {
+				handler.onTransportStart();
+			}
+			return recognized;
+		}
+	}
+
+	/* private methods */
+
+	/**
+	 * Decodes array of hub messages, parser is positioned on START_ARRAY. Expects the method name ("M") before the
+	 * arguments ("A") as sent by Bittrex, arguments of other methods are skipped.
+	 * @param parser
+	 * @param handler
+	 * @throws IOException
+	 */
+	private void decodeHubMessages(JsonParser parser, HubMessageHandler handler) throws IOException {
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			boolean exchangeStateUpdateMethod = false;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (fieldName.equals("M")) {
+					exchangeStateUpdateMethod = token == JsonToken.VALUE_STRING && textEquals(parser, UPDATE_EXCHANGE_STATE);
+				} else if (fieldName.equals("A") && token == JsonToken.START_ARRAY && exchangeStateUpdateMethod) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						decodeExchangeState(parser);
+						handler.onExchangeStateUpdate(exchangeStateUpdate);
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes exchange state object into the reused update instance, parser is positioned on START_OBJECT.
+	 * @param parser
+	 * @throws IOException
+	 */
+	private void decodeExchangeState(JsonParser parser) throws IOException {
+		exchangeStateUpdate.clear();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			switch (fieldName) {
+			case "MarketName":
+				exchangeStateUpdate.setMarketName(token == JsonToken.VALUE_STRING ? canonicalMarketName(parser) : null);
+				break;
+			case "Nounce":
+				exchangeStateUpdate.setNounce(parser.getLongValue());
+				break;
+			case "Buys":
+				decodeOrderUpdates(parser, token, exchangeStateUpdate.getBuys());
+				break;
+			case "Sells":
+				decodeOrderUpdates(parser, token, exchangeStateUpdate.getSells());
+				break;
+			default:
+				parser.skipChildren();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Decodes array of level updates. Levels of the inital exchange state have no type and are decoded as ADD.
+	 * @param parser
+	 * @param token current token
+	 * @param orderUpdates
+	 * @throws IOException
+	 */
+	private void decodeOrderUpdates(JsonParser parser, JsonToken token, OrderUpdates orderUpdates) throws IOException {
+		if (token != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return;
+		}
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			int type = 0;
+			long rate = 0;
+			long quantity = 0;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				parser.nextToken();
+				switch (fieldName) {
+				case "Type":
+					type = parser.getIntValue();
+					break;
+				case "Rate":
+					rate = FixedPoint.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+					break;
+				case "Quantity":
+					quantity = FixedPoint.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+					break;
+				default:
+					parser.skipChildren();
+					break;
+				}
+			}
+			orderUpdates.add(type, rate, quantity);
+		}
+	}
+
+	/**
+	 * Gets canonical String instance for the current text token, only allocates for unseen market names.
+	 * @param parser
+	 * @return
+	 * @throws IOException
+	 */
+	private String canonicalMarketName(JsonParser parser) throws IOException {
+		char[] buffer = parser.getTextCharacters();
+		int offset = parser.getTextOffset();
+		int length = parser.getTextLength();
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer[offset + i];
+		}
+		int mask = MARKET_NAME_CACHE_SIZE - 1;
+		for (int probe = 0; probe < MARKET_NAME_CACHE_SIZE; probe++) {
+			int slot = (hash + probe) & mask;
+			String marketName = marketNames[slot];
+			if (marketName == null) {
+				marketName = new String(buffer, offset, length);
+				marketNames[slot] = marketName;
+				return marketName;
+			}
+			if (regionEquals(marketName, buffer, offset, length)) {
+				return marketName;
+			}
+		}
+		// cache full
+		return new String(buffer, offset, length);
+	}
+
+	private boolean textEquals(JsonParser parser, String value) throws IOException {
+		return regionEquals(value, parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+	}
+
+	private static boolean regionEquals(String value, char[] buffer, int offset, int length) {
+		if (value.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
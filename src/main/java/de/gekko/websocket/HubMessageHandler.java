@@ -0,0 +1,45 @@
+package de.gekko.websocket;
+
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Callbacks of {@link HubMessageDecoder}. Passed {@link ExchangeStateUpdate} instances are reused by the decoder
+ * and only valid for the duration of the callback.
+ * @author Maximilian Pfister
+ *
+ */
+public interface HubMessageHandler {
+
+	/**
+	 * Exchange state delta pushed by the hub (updateExchangeState).
+	 * @param exchangeStateUpdate
+	 */
+	public void onExchangeStateUpdate(ExchangeStateUpdate exchangeStateUpdate);
+
+	/**
+	 * Transport start flag of a persistent connection message.
+	 */
+	public void onTransportStart();
+
+	/**
+	 * Boolean result of a hub method invocation, e.g. SubscribeToExchangeDeltas.
+	 * @param invocationIdentifier
+	 * @param result
+	 */
+	public void onResponse(int invocationIdentifier, boolean result);
+
+	/**
+	 * Exchange state returned by QueryExchangeState.
+	 * @param invocationIdentifier
+	 * @param exchangeState
+	 */
+	public void onExchangeState(int invocationIdentifier, ExchangeStateUpdate exchangeState);
+
+	/**
+	 * Error returned for a hub method invocation.
+	 * @param invocationIdentifier
+	 * @param error
+	 */
+	public void onError(int invocationIdentifier, String error);
+
+}
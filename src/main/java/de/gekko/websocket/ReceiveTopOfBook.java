@@ -0,0 +1,6 @@
+package de.gekko.websocket;
+
+public interface ReceiveTopOfBook {
+
+	public void receiveTopOfBook(TopOfBookUpdate topOfBookUpdate);
+}
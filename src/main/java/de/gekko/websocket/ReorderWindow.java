@@ -0,0 +1,107 @@
+package de.gekko.websocket;
+
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Small window of exchange state updates that arrived ahead of the next expected nounce. Slots are indexed by
+ * nounce, so inserting and taking are constant time and the updates are copied into preallocated instances.
+ * Not thread safe.
+ * @author Maximilian Pfister
+ *
+ */
+public class ReorderWindow {
+
+	/* variables */
+
+	private final ExchangeStateUpdate[] updates;
+	private final boolean[] occupied;
+	private final int mask;
+	private int size = 0;
+
+	/* constructors */
+
+	/**
+	 * @param capacity power of two, maximum distance of a buffered nounce to the expected nounce
+	 */
+	public ReorderWindow(int capacity) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		this.updates = new ExchangeStateUpdate[capacity];
+		this.occupied = new boolean[capacity];
+		this.mask = capacity - 1;
+		for (int i = 0; i < capacity; i++) {
+			updates[i] = new ExchangeStateUpdate();
+		}
+	}
+
+	/* public methods */
+
+	/**
+	 * Checks if an update can be buffered.
+	 * @param expectedNounce next nounce that can be applied
+	 * @param nounce nounce of the update
+	 * @return
+	 */
+	public boolean fits(long expectedNounce, long nounce) {
+		return nounce >= expectedNounce && nounce - expectedNounce < updates.length;
+	}
+
+	/**
+	 * Copies update into the window, see {@link #fits(long, long)}. Duplicates replace each other.
+	 * @param update
+	 */
+	public void add(ExchangeStateUpdate update) {
+		int index = (int) update.getNounce() & mask;
+		if (!occupied[index]) {
+			occupied[index] = true;
+			size++;
+		}
+		updates[index].copyFrom(update);
+	}
+
+	/**
+	 * Removes and returns the update with the nounce. The returned instance is only valid until the next
+	 * {@link #add(ExchangeStateUpdate)}.
+	 * @param nounce
+	 * @return update or null if not buffered
+	 */
+	public ExchangeStateUpdate take(long nounce) {
+		int index = (int) nounce & mask;
+		if (!occupied[index] || updates[index].getNounce() != nounce) {
+			return null;
+		}
+		occupied[index] = false;
+		size--;
+		return updates[index];
+	}
+
+	/**
+	 * Gets buffered update by slot, e.g. to move all of them elsewhere before {@link #clear()}.
+	 * @param index slot between 0 and capacity
+	 * @return update or null if slot is empty
+	 */
+	public ExchangeStateUpdate get(int index) {
+		return occupied[index] ? updates[index] : null;
+	}
+
+	public void clear() {
+		for (int i = 0; i < occupied.length; i++) {
+			occupied[i] = false;
+		}
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getCapacity() {
+		return updates.length;
+	}
+
+}
@@ -0,0 +1,143 @@
+package de.gekko.websocket;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Compact immutable event holding the top N levels of both sides of an orderbook as fixed point values
+ * (see {@link FixedPoint}). Level 0 is the best price. Only emitted when one of the top N levels changed.
+ * @author Maximilian Pfister
+ */
+public class TopOfBookUpdate {
+
+	private final CurrencyPair currencyPair;
+	private final long sequence;
+	private final long[] bidPrices;
+	private final long[] bidQuantities;
+	private final long[] askPrices;
+	private final long[] askQuantities;
+	private final long receiveTime;
+	private final long publishTime;
+
+	public TopOfBookUpdate(CurrencyPair currencyPair, long sequence, long[] bidPrices, long[] bidQuantities, long[] askPrices,
+			long[] askQuantities) {
+		this(currencyPair, sequence, bidPrices, bidQuantities, askPrices, askQuantities, 0, 0);
+	}
+
+	/**
+	 * @param currencyPair
+	 * @param sequence
+	 * @param bidPrices
+	 * @param bidQuantities
+	 * @param askPrices
+	 * @param askQuantities
+	 * @param receiveTime System.nanoTime when the newest frame of the update was received, 0 if unknown
+	 * @param publishTime System.nanoTime when the update was handed to the subscribers, 0 if unknown
+	 */
+	public TopOfBookUpdate(CurrencyPair currencyPair, long sequence, long[] bidPrices, long[] bidQuantities, long[] askPrices,
+			long[] askQuantities, long receiveTime, long publishTime) {
+		this.receiveTime = receiveTime;
+		this.publishTime = publishTime;
+		this.currencyPair = currencyPair;
+		this.sequence = sequence;
+		this.bidPrices = bidPrices;
+		this.bidQuantities = bidQuantities;
+		this.askPrices = askPrices;
+		this.askQuantities = askQuantities;
+	}
+
+	public CurrencyPair getCurrencyPair() {
+		return currencyPair;
+	}
+
+	/**
+	 * Gets sequence number, increases by one with every emitted event of a channel.
+	 * @return
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets System.nanoTime when the newest websocket frame that went into this update was received, the start of
+	 * its tick to trade latency.
+	 * @return 0 if unknown
+	 */
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	/**
+	 * Gets System.nanoTime when this update was handed to the subscribers.
+	 * @return 0 if unknown
+	 */
+	public long getPublishTime() {
+		return publishTime;
+	}
+
+	public int getBidLevels() {
+		return bidPrices.length;
+	}
+
+	public int getAskLevels() {
+		return askPrices.length;
+	}
+
+	public long getBidPrice(int level) {
+		return bidPrices[level];
+	}
+
+	public long getBidQuantity(int level) {
+		return bidQuantities[level];
+	}
+
+	public long getAskPrice(int level) {
+		return askPrices[level];
+	}
+
+	public long getAskQuantity(int level) {
+		return askQuantities[level];
+	}
+
+	public double getBestBidPrice() {
+		return bidPrices.length == 0 ? 0 : FixedPoint.toDouble(bidPrices[0]);
+	}
+
+	public double getBestBidQuantity() {
+		return bidQuantities.length == 0 ? 0 : FixedPoint.toDouble(bidQuantities[0]);
+	}
+
+	public double getBestAskPrice() {
+		return askPrices.length == 0 ? 0 : FixedPoint.toDouble(askPrices[0]);
+	}
+
+	public double getBestAskQuantity() {
+		return askQuantities.length == 0 ? 0 : FixedPoint.toDouble(askQuantities[0]);
+	}
+
+	/**
+	 * Materializes the contained levels as xchange orderbook for callers that expect one.
+	 * @return
+	 */
+	public OrderBook toOrderBook() {
+		return new OrderBook(new Date(), toLimitOrders(Order.OrderType.ASK, askPrices, askQuantities),
+				toLimitOrders(Order.OrderType.BID, bidPrices, bidQuantities));
+	}
+
+	private List<LimitOrder> toLimitOrders(Order.OrderType orderType, long[] prices, long[] quantities) {
+		List<LimitOrder> limitOrders = new ArrayList<>(prices.length);
+		for (int level = 0; level < prices.length; level++) {
+			limitOrders.add(new LimitOrder(orderType, FixedPoint.toBigDecimal(quantities[level]), currencyPair, null, null,
+					FixedPoint.toBigDecimal(prices[level])));
+		}
+		return limitOrders;
+	}
+}
@@ -1,52 +1,108 @@
 package de.gekko.websocket.pojo;
 
-import java.util.Arrays;
-import java.util.List;
+import de.gekko.websocket.ChannelEntry;
 
-import com.google.gson.annotations.SerializedName;
-
-
-public class ExchangeStateUpdate {
+/**
+ * Exchange state delta or inital exchange state (snapshot) as decoded by the streaming hub message decoder.
+ * Instances can be reused via {@link #clear()}.
+ * @author Maximilian Pfister
+ *
+ */
+public class ExchangeStateUpdate implements ChannelEntry<ExchangeStateUpdate> {
 	
-    @SerializedName("MarketName")
-    private String marketName;      // always null
+    private String marketName;      // null for inital exchange state
+    
+    private boolean snapshot;       // true for inital exchange state, set by the receiver of the query response
     
-    @SerializedName("Nounce")
     private long nounce;
     
-    @SerializedName("Buys")
-    private List<OrderUpdate> buys;
+    private final OrderUpdates buys = new OrderUpdates();
+    
+    private final OrderUpdates sells = new OrderUpdates();
+    
+    private long receiveTime;      // System.nanoTime when the frame arrived, 0 if unknown
+    
+    private long decodeTime;       // System.nanoTime after decoding, 0 if unknown
     
-    @SerializedName("Sells")
-    private List<OrderUpdate> sells;
+    @Override
+    public String toString() {
+        return "ExchangeStateUpdate [marketName=" + marketName + ", snapshot=" + snapshot + ", nounce=" + nounce + ", buys=" + buys
+                + ", sells=" + sells + "]";
+    }
     
-//    @SerializedName("Fills")
-//    private Fill[] fills;
+    /**
+     * Resets this update for reuse.
+     */
+    public void clear() {
+    		marketName = null;
+    		snapshot = false;
+    		nounce = 0;
+    		receiveTime = 0;
+    		decodeTime = 0;
+    		buys.clear();
+    		sells.clear();
+    }
     
-//    @Override
-//    public String toString() {
-//        return "QueryExchangeState [marketName=" + marketName + ", nounce=" + nounce + ", buys=" + Arrays.toString(buys)
-//                + ", sells=" + Arrays.toString(sells) + ", fills=" + Arrays.toString(fills) + "]";
-//    }
+    /**
+     * Copies another update into this one.
+     * @param other
+     */
+    public void copyFrom(ExchangeStateUpdate other) {
+    		marketName = other.marketName;
+    		snapshot = other.snapshot;
+    		nounce = other.nounce;
+    		receiveTime = other.receiveTime;
+    		decodeTime = other.decodeTime;
+    		buys.copyFrom(other.buys);
+    		sells.copyFrom(other.sells);
+    }
 
 	public String getMarketName() {
 		return marketName;
 	}
 
+	public void setMarketName(String marketName) {
+		this.marketName = marketName;
+	}
+
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(boolean snapshot) {
+		this.snapshot = snapshot;
+	}
+
 	public long getNounce() {
 		return nounce;
 	}
 
-	public List<OrderUpdate> getBuys() {
+	public void setNounce(long nounce) {
+		this.nounce = nounce;
+	}
+
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	public void setReceiveTime(long receiveTime) {
+		this.receiveTime = receiveTime;
+	}
+
+	public long getDecodeTime() {
+		return decodeTime;
+	}
+
+	public void setDecodeTime(long decodeTime) {
+		this.decodeTime = decodeTime;
+	}
+
+	public OrderUpdates getBuys() {
 		return buys;
 	}
 
-	public List<OrderUpdate> getSells() {
+	public OrderUpdates getSells() {
 		return sells;
 	}
-
-//	public Fill[] getFills() {
-//		return fills;
-//	}
  
-}
\ No newline at end of file
+}
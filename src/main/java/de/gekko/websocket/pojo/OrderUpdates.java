@@ -0,0 +1,107 @@
+package de.gekko.websocket.pojo;
+
+import java.util.Arrays;
+
+import de.gekko.orderbook.BookSide;
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Reusable list of orderbook level updates of one book side. Rates and quantities are fixed point values
+ * (see {@link FixedPoint}) held in primitive arrays, so decoding an update allocates nothing once the
+ * arrays have grown to the typical update size.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderUpdates {
+	
+	private static final UpdateType[] UPDATE_TYPES = UpdateType.values();
+	private static final int DEFAULT_CAPACITY = 8;
+	
+	private byte[] types = new byte[DEFAULT_CAPACITY];
+	private long[] rates = new long[DEFAULT_CAPACITY];
+	private long[] quantities = new long[DEFAULT_CAPACITY];
+	private int size = 0;
+	
+	/**
+	 * Appends a level update.
+	 * @param type ordinal of {@link UpdateType} as sent by Bittrex
+	 * @param rate
+	 * @param quantity
+	 */
+	public void add(int type, long rate, long quantity) {
+		if (size == rates.length) {
+			types = Arrays.copyOf(types, size * 2);
+			rates = Arrays.copyOf(rates, size * 2);
+			quantities = Arrays.copyOf(quantities, size * 2);
+		}
+		types[size] = (byte) type;
+		rates[size] = rate;
+		quantities[size] = quantity;
+		size++;
+	}
+	
+	/**
+	 * Copies all level updates of another list into this one.
+	 * @param other
+	 */
+	public void copyFrom(OrderUpdates other) {
+		clear();
+		for (int i = 0; i < other.size; i++) {
+			add(other.types[i], other.rates[i], other.quantities[i]);
+		}
+	}
+	
+	/**
+	 * Writes all level updates into one side of a book.
+	 * @param side
+	 */
+	public void applyTo(BookSide side) {
+		for (int i = 0; i < size; i++) {
+			switch (UPDATE_TYPES[types[i]]) {
+			case ADD:
+			case UPDATE:
+				side.set(rates[i], quantities[i]);
+				break;
+			case REMOVE:
+				side.remove(rates[i]);
+				break;
+			default:
+				throw new RuntimeException("Unknown update type " + getType(i)); // should never happen
+			}
+		}
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+
+	public UpdateType getType(int index) {
+		return UPDATE_TYPES[types[index]];
+	}
+
+	public long getRate(int index) {
+		return rates[index];
+	}
+
+	public long getQuantity(int index) {
+		return quantities[index];
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append("Order [type=").append(getType(i)).append(", quantity=").append(FixedPoint.toBigDecimal(quantities[i]))
+					.append(", rate=").append(FixedPoint.toBigDecimal(rates[i])).append("]");
+		}
+		return builder.append("]").toString();
+	}
+
+}
@@ -0,0 +1,131 @@
+package de.gekko.arbitrager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests ordering of the venue heap against a linear scan of the prices.
+ * @author Maximilian Pfister
+ *
+ */
+public class VenueHeapTest {
+
+	/* public methods */
+
+	@Test
+	public void emptyHeapHasNoVenue() {
+		VenueHeap heap = new VenueHeap(4, true);
+		assertEquals(-1, heap.best());
+		assertEquals(-1, heap.secondBest());
+		assertEquals(-1, heap.bestExcept(0));
+		assertEquals(0, heap.size());
+		assertTrue(Double.isNaN(heap.getPrice(0)));
+	}
+
+	@Test
+	public void ordersBidsHighestFirst() {
+		VenueHeap heap = new VenueHeap(4, true);
+		heap.set(0, 0.049);
+		heap.set(1, 0.051);
+		heap.set(2, 0.050);
+		assertEquals(1, heap.best());
+		assertEquals(2, heap.secondBest());
+		assertEquals(2, heap.bestExcept(1));
+		assertEquals(1, heap.bestExcept(0));
+	}
+
+	@Test
+	public void ordersAsksLowestFirst() {
+		VenueHeap heap = new VenueHeap(4, false);
+		heap.set(0, 0.049);
+		heap.set(1, 0.051);
+		heap.set(2, 0.050);
+		assertEquals(0, heap.best());
+		assertEquals(2, heap.secondBest());
+	}
+
+	@Test
+	public void updatesAndRemovesVenues() {
+		VenueHeap heap = new VenueHeap(4, true);
+		heap.set(0, 1);
+		heap.set(1, 2);
+		heap.set(2, 3);
+		heap.set(3, 4);
+
+		// Worse and better price of a venue already in the heap
+		heap.set(3, 0.5);
+		assertEquals(2, heap.best());
+		heap.set(0, 5);
+		assertEquals(0, heap.best());
+		assertEquals(2, heap.secondBest());
+
+		heap.remove(0);
+		assertEquals(2, heap.best());
+		assertEquals(3, heap.size());
+		heap.set(2, Double.NaN);
+		assertEquals(1, heap.best());
+		assertEquals(3, heap.secondBest());
+		assertTrue(Double.isNaN(heap.getPrice(2)));
+
+		// Removing an absent venue is ignored
+		heap.remove(2);
+		assertEquals(2, heap.size());
+	}
+
+	@Test
+	public void matchesLinearScan() {
+		int venues = 7;
+		Random random = new Random(42);
+		for (boolean highestFirst : new boolean[] { true, false }) {
+			VenueHeap heap = new VenueHeap(venues, highestFirst);
+			double[] prices = new double[venues];
+			Arrays.fill(prices, Double.NaN);
+			for (int i = 0; i < 10_000; i++) {
+				int venue = random.nextInt(venues);
+				// Some removals and ties
+				double price = random.nextInt(5) == 0 ? Double.NaN : random.nextInt(20);
+				heap.set(venue, price);
+				prices[venue] = price;
+
+				int best = scan(prices, highestFirst, -1);
+				assertEquals(best < 0 ? Double.NaN : prices[best], priceOf(heap, heap.best()));
+				int secondBest = best < 0 ? -1 : scan(prices, highestFirst, best);
+				assertEquals(secondBest < 0 ? Double.NaN : prices[secondBest], priceOf(heap, heap.secondBest()));
+				int excluded = random.nextInt(venues);
+				int bestExcept = scan(prices, highestFirst, excluded);
+				if (heap.best() == excluded) {
+					assertEquals(bestExcept < 0 ? Double.NaN : prices[bestExcept],
+							priceOf(heap, heap.bestExcept(excluded)));
+				}
+			}
+		}
+	}
+
+	/* private methods */
+
+	/**
+	 * Gets venue with the best price, ties are compared by price only.
+	 */
+	private static int scan(double[] prices, boolean highestFirst, int excludedVenue) {
+		int best = -1;
+		for (int venue = 0; venue < prices.length; venue++) {
+			if (venue == excludedVenue || Double.isNaN(prices[venue])) {
+				continue;
+			}
+			if (best < 0 || (highestFirst ? prices[venue] > prices[best] : prices[venue] < prices[best])) {
+				best = venue;
+			}
+		}
+		return best;
+	}
+
+	private static double priceOf(VenueHeap heap, int venue) {
+		return venue < 0 ? Double.NaN : heap.getPrice(venue);
+	}
+
+}
@@ -0,0 +1,206 @@
+package de.gekko.order;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order.OrderType;
+import org.knowm.xchange.exceptions.FundsExceededException;
+
+import de.gekko.exchanges.SimulatedArbitrageExchange;
+import de.gekko.orderbook.FixedPoint;
+
+/**
+ * Tests fills and unwinding of triangular executions against a simulated exchange. Order states are polled, so the
+ * outcome does not depend on the delivery of streamed updates.
+ * @author Maximilian Pfister
+ *
+ */
+public class OrderTrackerTest {
+
+	/* constants */
+
+	private static final CurrencyPair LTC_ETH = new CurrencyPair("LTC/ETH");
+	private static final long TIMEOUT = 5000; // milliseconds
+
+	// Metrics are registered per exchange, every test gets its own exchange name
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	/* variables */
+
+	private SimulatedArbitrageExchange exchange;
+	private OrderTracker orderTracker;
+
+	/* public methods */
+
+	@BeforeEach
+	public void setUp() {
+		List<CurrencyPair> currencyPairs = Arrays.asList(CurrencyPair.ETH_BTC, CurrencyPair.LTC_BTC, LTC_ETH);
+		exchange = new SimulatedArbitrageExchange("Test" + INSTANCES.incrementAndGet(), currencyPairs) {
+
+			@Override
+			public boolean addOrderSubscriber(ReceiveOrderUpdate subscriber) {
+				return false;
+			}
+		};
+		exchange.getSimulatedWallet().deposit(Currency.BTC, 10);
+		exchange.getSimulatedWallet().deposit(Currency.ETH, 10);
+		exchange.getSimulatedWallet().deposit(Currency.LTC, 100);
+		exchange.setLatency(TimeUnit.MILLISECONDS.toNanos(2));
+		submitLiquidity(CurrencyPair.ETH_BTC, 0.049, 0.051);
+		submitLiquidity(CurrencyPair.LTC_BTC, 0.0099, 0.0101);
+		submitLiquidity(LTC_ETH, 0.19, 0.21);
+
+		orderTracker = exchange.getOrderTracker();
+		orderTracker.setFillTimeout(200, TimeUnit.MILLISECONDS);
+		orderTracker.setPollInterval(10, TimeUnit.MILLISECONDS);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		orderTracker.stop();
+	}
+
+	@Test
+	public void fillsAllLegs() throws Exception {
+		orderTracker.setUnwindPolicy(UnwindPolicy.CANCEL);
+		TrackedExecution execution = submit(leg(CurrencyPair.ETH_BTC, OrderType.BID, 0.051, 1),
+				leg(CurrencyPair.LTC_BTC, OrderType.ASK, 0.0099, 5), leg(LTC_ETH, OrderType.BID, 0.21, 5));
+
+		assertTrue(execution.isFilled());
+		assertFalse(execution.isUnwinding());
+		for (TrackedLeg leg : execution.getLegs()) {
+			assertEquals(LegState.FILLED, leg.getState());
+			assertEquals(leg.getLeg().getAmount(), leg.getFilledAmount(), 1e-9);
+		}
+		assertReleased();
+	}
+
+	@Test
+	public void rejectedLegCancelsOtherLegs() throws Exception {
+		orderTracker.setUnwindPolicy(UnwindPolicy.CANCEL);
+		// Not enough ETH for the last leg, the limits of the others are out of the market
+		TrackedExecution execution = submit(leg(CurrencyPair.ETH_BTC, OrderType.BID, 0.04, 1),
+				leg(CurrencyPair.LTC_BTC, OrderType.ASK, 0.02, 5), leg(LTC_ETH, OrderType.BID, 0.21, 500));
+
+		assertFalse(execution.isFilled());
+		assertTrue(execution.isUnwinding());
+		assertEquals(UnwindPolicy.CANCEL, execution.getUnwindPolicy());
+		List<TrackedLeg> legs = execution.getLegs();
+		assertEquals(LegState.CANCELLED, legs.get(0).getState());
+		assertEquals(LegState.CANCELLED, legs.get(1).getState());
+		assertEquals(LegState.REJECTED, legs.get(2).getState());
+		assertTrue(legs.get(2).getError() instanceof FundsExceededException);
+		assertReleased();
+	}
+
+	@Test
+	public void stuckLegIsCancelled() throws Exception {
+		orderTracker.setUnwindPolicy(UnwindPolicy.CANCEL);
+		TrackedExecution execution = submitWithStuckLeg();
+
+		assertFalse(execution.isFilled());
+		List<TrackedLeg> legs = execution.getLegs();
+		assertEquals(LegState.FILLED, legs.get(0).getState());
+		assertEquals(LegState.CANCELLED, legs.get(1).getState());
+		assertEquals(0, legs.get(1).getFilledAmount(), 1e-9);
+		assertEquals(LegState.FILLED, legs.get(2).getState());
+		assertReleased();
+	}
+
+	@Test
+	public void stuckLegIsMarketedOut() throws Exception {
+		orderTracker.setUnwindPolicy(UnwindPolicy.MARKET_OUT);
+		TrackedExecution execution = submitWithStuckLeg();
+
+		assertTrue(execution.isFilled());
+		assertEquals(UnwindPolicy.MARKET_OUT, execution.getUnwindPolicy());
+		TrackedLeg stuckLeg = execution.getLegs().get(1);
+		assertEquals(LegState.FILLED, stuckLeg.getState());
+		assertTrue(stuckLeg.isMarketOut());
+		assertEquals(5, stuckLeg.getFilledAmount(), 1e-9);
+		assertReleased();
+	}
+
+	@Test
+	public void stuckLegIsRepriced() throws Exception {
+		orderTracker.setUnwindPolicy(UnwindPolicy.REPRICE);
+		TrackedExecution execution = submitWithStuckLeg();
+
+		assertTrue(execution.isFilled());
+		TrackedLeg stuckLeg = execution.getLegs().get(1);
+		assertEquals(LegState.FILLED, stuckLeg.getState());
+		assertFalse(stuckLeg.isMarketOut());
+		assertTrue(stuckLeg.getReprices() >= 1);
+		assertTrue(stuckLeg.getReprices() <= OrderTracker.DEFAULT_MAX_REPRICES);
+		assertReleased();
+	}
+
+	@Test
+	public void partiallyFilledLegIsCancelled() throws Exception {
+		orderTracker.setUnwindPolicy(UnwindPolicy.CANCEL);
+		// Only 2 LTC are bid at the limit
+		exchange.submitLiquidity(CurrencyPair.LTC_BTC, true, FixedPoint.fromDouble(0.01), FixedPoint.fromDouble(2),
+				false);
+		TrackedExecution execution = submit(leg(CurrencyPair.LTC_BTC, OrderType.ASK, 0.01, 5));
+
+		TrackedLeg leg = execution.getLegs().get(0);
+		assertEquals(LegState.CANCELLED, leg.getState());
+		assertEquals(2, leg.getFilledAmount(), 1e-9);
+		assertEquals(3, leg.getRemainingAmount(), 1e-9);
+		assertEquals(100 - 2, exchange.getSimulatedWallet().getAvailable(Currency.LTC), 1e-9);
+		assertReleased();
+	}
+
+	/* private methods */
+
+	/**
+	 * Submits three legs of which the second is out of the market.
+	 */
+	private TrackedExecution submitWithStuckLeg() throws Exception {
+		return submit(leg(CurrencyPair.ETH_BTC, OrderType.BID, 0.051, 1),
+				leg(CurrencyPair.LTC_BTC, OrderType.ASK, 0.02, 5), leg(LTC_ETH, OrderType.BID, 0.21, 5));
+	}
+
+	private TrackedExecution submit(OrderLeg... legs)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		TrackedExecution execution = orderTracker.submitAll(legs);
+		execution.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertTrue(execution.isDone());
+		assertEquals(0, orderTracker.getOpenExecutions());
+		return execution;
+	}
+
+	private OrderLeg leg(CurrencyPair currencyPair, OrderType orderType, double price, double amount) {
+		return new OrderLeg(exchange.getOrderGateway().getTemplate(currencyPair, orderType), price, amount);
+	}
+
+	private void submitLiquidity(CurrencyPair currencyPair, double bidPrice, double askPrice) {
+		exchange.submitLiquidity(currencyPair, true, FixedPoint.fromDouble(bidPrice), FixedPoint.fromDouble(1000),
+				false);
+		exchange.submitLiquidity(currencyPair, false, FixedPoint.fromDouble(askPrice), FixedPoint.fromDouble(1000),
+				false);
+	}
+
+	/**
+	 * Checks that no funds are reserved by open orders.
+	 */
+	private void assertReleased() {
+		for (Currency currency : new Currency[] { Currency.BTC, Currency.ETH, Currency.LTC }) {
+			assertEquals(0, exchange.getSimulatedWallet().getReserved(currency), 1e-9, currency.toString());
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.gekko.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests burst, refill and priority of the token bucket.
+ * @author Maximilian Pfister
+ *
+ */
+public class TokenBucketTest {
+
+	/* constants */
+
+	private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/* public methods */
+
+	@Test
+	public void allowsBurstUpToRequests() {
+		TokenBucket bucket = new TokenBucket(3, PERIOD);
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire(true));
+	}
+
+	@Test
+	public void acquireWaitsForRefill() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(1, PERIOD);
+		assertEquals(0, bucket.acquire(false));
+		long waited = bucket.acquire(false);
+		// One token per period, minus the time since the first token
+		assertTrue(waited > PERIOD / 2, "waited " + waited + " ns");
+		assertFalse(bucket.tryAcquire());
+	}
+
+	@Test
+	public void priorityRequestOvertakesWaitingRequest() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(1, PERIOD);
+		assertTrue(bucket.tryAcquire());
+
+		List<Boolean> order = new CopyOnWriteArrayList<>();
+		Thread normal = new Thread(() -> acquire(bucket, false, order));
+		Thread priority = new Thread(() -> acquire(bucket, true, order));
+		normal.start();
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PERIOD) / 5);
+		priority.start();
+		normal.join(5000);
+		priority.join(5000);
+
+		assertEquals(2, order.size());
+		assertTrue(order.get(0));
+		assertFalse(order.get(1));
+	}
+
+	@Test
+	public void rejectsInvalidRate() {
+		assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, PERIOD));
+		assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+	}
+
+	@Test
+	public void describesRate() {
+		TokenBucket bucket = new TokenBucket(6, TimeUnit.SECONDS.toNanos(1));
+		assertEquals(6, bucket.getRequests());
+		assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.getPeriod());
+		assertEquals("6 per 1000 ms", bucket.toString());
+	}
+
+	/* private methods */
+
+	private static void acquire(TokenBucket bucket, boolean priority, List<Boolean> order) {
+		try {
+			bucket.acquire(priority);
+			order.add(priority);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
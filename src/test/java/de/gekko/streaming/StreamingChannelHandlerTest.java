@@ -0,0 +1,220 @@
+package de.gekko.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import de.gekko.orderbook.FixedPoint;
+import de.gekko.websocket.ReceiveTopOfBook;
+import de.gekko.websocket.TopOfBookUpdate;
+
+/**
+ * Tests sequencing and gap recovery of the streaming channel handler with a source that only counts snapshot
+ * requests, the snapshots are fed by the test.
+ * @author Maximilian Pfister
+ *
+ */
+public class StreamingChannelHandlerTest {
+
+	/* constants */
+
+	private static final CurrencyPair CURRENCY_PAIR = CurrencyPair.ETH_BTC;
+	private static final long TIMEOUT = 5000; // milliseconds
+
+	// Metrics are registered per exchange and market, every test gets its own exchange name
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	/* variables */
+
+	private final Semaphore snapshotRequests = new Semaphore(0);
+	private final TopOfBook topOfBook = new TopOfBook();
+	private StreamingChannelHandler channelHandler;
+
+	/* public methods */
+
+	@BeforeEach
+	public void setUp() {
+		StreamingMarketData source = new StreamingMarketData() {
+
+			@Override
+			public void subscribe(CurrencyPair currencyPair, StreamingChannelHandler channelHandler) {
+			}
+
+			@Override
+			public void requestSnapshot(CurrencyPair currencyPair) {
+				snapshotRequests.release();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		channelHandler = StreamingChannelHandler.createInstance("Test" + INSTANCES.incrementAndGet(), CURRENCY_PAIR,
+				source);
+		channelHandler.addTopOfBookSubscriber(topOfBook, 1);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		channelHandler.stop();
+	}
+
+	@Test
+	public void appliesSnapshotAndDeltas() throws InterruptedException {
+		feed(true, 10, 0.050, 1, 0.051, 1);
+		awaitDrained();
+		assertTrue(channelHandler.isSynchronized());
+		assertTopOfBook(0.050, 0.051);
+
+		feed(false, 11, 0.0505, 1, 0, 0);
+		feed(false, 12, 0, 0, 0.051, 0);
+		feed(false, 13, 0, 0, 0.052, 2);
+		awaitDrained();
+		assertTopOfBook(0.0505, 0.052);
+		assertEquals(0, channelHandler.getRecoveryCount());
+		assertEquals(0, snapshotRequests.availablePermits());
+	}
+
+	@Test
+	public void dropsDeltasContainedInBook() throws InterruptedException {
+		feed(true, 10, 0.050, 1, 0.051, 1);
+		feed(false, 11, 0.0505, 1, 0, 0);
+		// Repeated and older deltas, e.g. after reconnecting
+		feed(false, 11, 0.0506, 1, 0, 0);
+		feed(false, 9, 0.0507, 1, 0, 0);
+		awaitDrained();
+		assertTrue(channelHandler.isSynchronized());
+		assertTopOfBook(0.0505, 0.051);
+		assertEquals(0, snapshotRequests.availablePermits());
+	}
+
+	@Test
+	public void recoversFromGap() throws InterruptedException {
+		feed(true, 10, 0.050, 1, 0.051, 1);
+		feed(false, 11, 0.0505, 1, 0, 0);
+		// Nothing is broadcasted for a batch that ends in a recovery
+		awaitDrained();
+		assertTopOfBook(0.0505, 0.051);
+
+		// Delta 12 is lost
+		feed(false, 13, 0, 0, 0.0508, 1);
+		assertTrue(snapshotRequests.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertFalse(channelHandler.isSynchronized());
+
+		// Buffered while recovering and replayed on top of the snapshot
+		feed(false, 14, 0.0506, 1, 0, 0);
+		awaitDrained();
+		assertFalse(channelHandler.isSynchronized());
+		assertTopOfBook(0.0505, 0.051);
+
+		MarketDataEvent snapshot = event(true, 12, 0.0505, 1, 0.051, 1);
+		snapshot.addBid(FixedPoint.fromDouble(0.050), FixedPoint.fromDouble(1));
+		channelHandler.feedEvent(snapshot);
+		awaitDrained();
+		assertTrue(channelHandler.isSynchronized());
+		assertEquals(1, channelHandler.getRecoveryCount());
+		assertTopOfBook(0.0506, 0.0508);
+
+		// Back in sequence
+		feed(false, 15, 0, 0, 0.0507, 1);
+		awaitDrained();
+		assertTopOfBook(0.0506, 0.0507);
+		assertEquals(1, channelHandler.getRecoveryCount());
+	}
+
+	@Test
+	public void ignoresOutdatedSnapshotWhileInSync() throws InterruptedException {
+		feed(true, 10, 0.050, 1, 0.051, 1);
+		feed(false, 11, 0.0505, 1, 0, 0);
+		// Late answer to an earlier request
+		feed(true, 10, 0.049, 1, 0.052, 1);
+		awaitDrained();
+		assertTopOfBook(0.0505, 0.051);
+		feed(false, 12, 0.0506, 1, 0, 0);
+		awaitDrained();
+		assertTopOfBook(0.0506, 0.051);
+		assertEquals(0, snapshotRequests.availablePermits());
+	}
+
+	/* private methods */
+
+	private void feed(boolean snapshot, long sequence, double bidPrice, double bidQuantity, double askPrice,
+			double askQuantity) {
+		channelHandler.feedEvent(event(snapshot, sequence, bidPrice, bidQuantity, askPrice, askQuantity));
+	}
+
+	/**
+	 * Creates event with up to one level per side, price 0 leaves the side out.
+	 */
+	private static MarketDataEvent event(boolean snapshot, long sequence, double bidPrice, double bidQuantity,
+			double askPrice, double askQuantity) {
+		MarketDataEvent event = new MarketDataEvent();
+		event.setCurrencyPair(CURRENCY_PAIR);
+		event.setSnapshot(snapshot);
+		event.setSequence(sequence);
+		event.setReceiveTime(System.nanoTime());
+		if (bidPrice != 0) {
+			event.addBid(FixedPoint.fromDouble(bidPrice), FixedPoint.fromDouble(bidQuantity));
+		}
+		if (askPrice != 0) {
+			event.addAsk(FixedPoint.fromDouble(askPrice), FixedPoint.fromDouble(askQuantity));
+		}
+		return event;
+	}
+
+	private void awaitDrained() throws InterruptedException {
+		await(channelHandler::isDrained);
+	}
+
+	private void assertTopOfBook(double bidPrice, double askPrice) throws InterruptedException {
+		// Broadcasts are delivered by another thread and may arrive after the handler is drained
+		await(() -> topOfBook.matches(bidPrice, askPrice));
+		TopOfBookUpdate update = topOfBook.get();
+		assertEquals(bidPrice, update.getBestBidPrice(), 1e-12);
+		assertEquals(askPrice, update.getBestAskPrice(), 1e-12);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	/* inner classes */
+
+	/**
+	 * Keeps the newest top of book, broadcasts may arrive out of order.
+	 */
+	private static class TopOfBook implements ReceiveTopOfBook {
+
+		private TopOfBookUpdate update;
+
+		@Override
+		public synchronized void receiveTopOfBook(TopOfBookUpdate topOfBookUpdate) {
+			if (update == null || topOfBookUpdate.getSequence() > update.getSequence()) {
+				update = topOfBookUpdate;
+			}
+		}
+
+		synchronized TopOfBookUpdate get() {
+			return update;
+		}
+
+		synchronized boolean matches(double bidPrice, double askPrice) {
+			return update != null && Math.abs(update.getBestBidPrice() - bidPrice) < 1e-12
+					&& Math.abs(update.getBestAskPrice() - askPrice) < 1e-12;
+		}
+	}
+
+}
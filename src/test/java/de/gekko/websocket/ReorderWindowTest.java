@@ -0,0 +1,112 @@
+package de.gekko.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import de.gekko.websocket.pojo.ExchangeStateUpdate;
+
+/**
+ * Tests buffering of out of order exchange state updates.
+ * @author Maximilian Pfister
+ *
+ */
+public class ReorderWindowTest {
+
+	/* public methods */
+
+	@Test
+	public void fitsNouncesWithinCapacity() {
+		ReorderWindow window = new ReorderWindow(4);
+		assertTrue(window.fits(10, 10));
+		assertTrue(window.fits(10, 13));
+		assertFalse(window.fits(10, 14));
+		assertFalse(window.fits(10, 9));
+	}
+
+	@Test
+	public void takesUpdatesInNounceOrder() {
+		ReorderWindow window = new ReorderWindow(4);
+		window.add(update(13, 3));
+		window.add(update(11, 1));
+		window.add(update(12, 2));
+		assertEquals(3, window.size());
+
+		long expected = 11;
+		ExchangeStateUpdate update;
+		while ((update = window.take(expected)) != null) {
+			assertEquals(expected, update.getNounce());
+			assertEquals(expected - 10, update.getBuys().getQuantity(0));
+			expected++;
+		}
+		assertEquals(14, expected);
+		assertTrue(window.isEmpty());
+	}
+
+	@Test
+	public void copiesUpdates() {
+		ReorderWindow window = new ReorderWindow(4);
+		ExchangeStateUpdate update = update(11, 1);
+		window.add(update);
+		// The caller may reuse its instance
+		update.clear();
+		update.setNounce(12);
+		ExchangeStateUpdate taken = window.take(11);
+		assertEquals(11, taken.getNounce());
+		assertEquals("BTC-ETH", taken.getMarketName());
+		assertEquals(1, taken.getBuys().size());
+	}
+
+	@Test
+	public void duplicateReplacesEarlierUpdate() {
+		ReorderWindow window = new ReorderWindow(4);
+		window.add(update(12, 1));
+		window.add(update(12, 2));
+		assertEquals(1, window.size());
+		assertEquals(2, window.take(12).getBuys().getQuantity(0));
+		assertNull(window.take(12));
+	}
+
+	@Test
+	public void doesNotTakeOtherNounceOfSameSlot() {
+		ReorderWindow window = new ReorderWindow(4);
+		window.add(update(12, 1));
+		assertNull(window.take(16));
+		assertNull(window.take(11));
+		assertEquals(1, window.size());
+		assertEquals(12, window.get(12 & 3).getNounce());
+		assertNull(window.get(11 & 3));
+	}
+
+	@Test
+	public void clearEmptiesWindow() {
+		ReorderWindow window = new ReorderWindow(8);
+		window.add(update(12, 1));
+		window.add(update(13, 1));
+		window.clear();
+		assertTrue(window.isEmpty());
+		assertNull(window.take(12));
+		assertEquals(8, window.getCapacity());
+	}
+
+	@Test
+	public void rejectsCapacityOtherThanPowerOfTwo() {
+		assertThrows(IllegalArgumentException.class, () -> new ReorderWindow(0));
+		assertThrows(IllegalArgumentException.class, () -> new ReorderWindow(6));
+	}
+
+	/* private methods */
+
+	private static ExchangeStateUpdate update(long nounce, long quantity) {
+		ExchangeStateUpdate update = new ExchangeStateUpdate();
+		update.setMarketName("BTC-ETH");
+		update.setNounce(nounce);
+		update.getBuys().add(0, 100, quantity);
+		return update;
+	}
+
+}